@@ -0,0 +1,99 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.processor;
+
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opensaml.DefaultBootstrap;
+import org.opensaml.common.SAMLObject;
+import org.opensaml.saml2.binding.encoding.HTTPRedirectDeflateEncoder;
+import org.opensaml.saml2.core.AuthnRequest;
+import org.opensaml.saml2.core.Issuer;
+import org.opensaml.saml2.core.impl.AuthnRequestBuilder;
+import org.opensaml.saml2.core.impl.IssuerBuilder;
+import org.opensaml.ws.message.encoder.MessageEncodingException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deflates and Base64 encodes the same AuthnRequest with {@link PooledHTTPRedirectDeflateEncoder} and with the stock
+ * {@link HTTPRedirectDeflateEncoder}, from several threads.
+ *
+ * @author Ulises Bocchio
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(4)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RedirectDeflateEncoderBenchmark {
+
+    private PooledEncoder pooled;
+    private StockEncoder stock;
+
+    @Setup
+    public void setup() throws Exception {
+        DefaultBootstrap.bootstrap();
+        pooled = new PooledEncoder();
+        stock = new StockEncoder();
+    }
+
+    @TearDown
+    public void tearDown() {
+        pooled.destroy();
+    }
+
+    @Benchmark
+    public String pooled(Message message) throws MessageEncodingException {
+        return pooled.encode(message.request);
+    }
+
+    @Benchmark
+    public String stock(Message message) throws MessageEncodingException {
+        return stock.encode(message.request);
+    }
+
+    /**
+     * A request per thread, since serializing a shared DOM isn't thread safe. Its DOM is cached on the first encoding.
+     */
+    @State(Scope.Thread)
+    public static class Message {
+        private AuthnRequest request;
+
+        @Setup
+        public void setup(RedirectDeflateEncoderBenchmark benchmark) throws MessageEncodingException {
+            Issuer issuer = new IssuerBuilder().buildObject();
+            issuer.setValue("https://sp.example.com/saml/metadata");
+            request = new AuthnRequestBuilder().buildObject();
+            request.setID("a1b2c3d4e5f6a7b8c9d0e1f2a3b4c5d6e7f8a9b");
+            request.setIssueInstant(new DateTime(0));
+            request.setDestination("https://idp.example.com/sso");
+            request.setAssertionConsumerServiceURL("https://sp.example.com/saml/SSO");
+            request.setIssuer(issuer);
+            benchmark.stock.encode(request);
+        }
+    }
+
+    private static class PooledEncoder extends PooledHTTPRedirectDeflateEncoder {
+        String encode(SAMLObject message) throws MessageEncodingException {
+            return deflateAndBase64Encode(message);
+        }
+    }
+
+    private static class StockEncoder extends HTTPRedirectDeflateEncoder {
+        String encode(SAMLObject message) throws MessageEncodingException {
+            return deflateAndBase64Encode(message);
+        }
+    }
+}
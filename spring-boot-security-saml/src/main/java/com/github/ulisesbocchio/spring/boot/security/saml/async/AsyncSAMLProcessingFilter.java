@@ -0,0 +1,265 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.async;
+
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.saml.SAMLProcessingFilter;
+import org.springframework.security.web.authentication.session.SessionAuthenticationException;
+import org.springframework.security.web.authentication.session.SessionAuthenticationStrategy;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.security.web.context.SecurityContextRepository;
+import org.springframework.util.Assert;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * {@link SAMLProcessingFilter} that releases the container thread while the SAML Response is processed. Requests to the
+ * SSO processing URL are put in servlet async mode, and authentication, including the user details lookup, runs on a
+ * bounded executor, completing the async request once the success or failure handler is done. Falls back to
+ * synchronous processing when async is not supported by the request or the executor is saturated.
+ * <p>
+ * When the async request times out or fails, the processing is cancelled and the request is completed right away,
+ * with a 503 status on timeout. The async request is completed only once, and once completed the success and failure
+ * handlers are skipped, so the response and session of a recycled request are never touched.
+ * </p>
+ * <p>
+ * Since Spring Security doesn't save the security context of async requests on response commit, the context is saved
+ * explicitly through the {@link SecurityContextRepository} before the success handler runs. State bound to the
+ * container thread can be carried onto the executor thread through a {@link TaskDecorator}. The executor is owned by
+ * the filter and shut down on {@link #destroy()}.
+ * </p>
+ *
+ * @author Ulises Bocchio
+ */
+public class AsyncSAMLProcessingFilter extends SAMLProcessingFilter {
+
+    private static final ThreadLocal<AsyncProcessing> CURRENT = new ThreadLocal<>();
+
+    private final Executor executor;
+    private final long asyncTimeout;
+    private SecurityContextRepository securityContextRepository = new HttpSessionSecurityContextRepository();
+    private TaskDecorator taskDecorator = task -> task;
+
+    /**
+     * @param executor     bounded executor to process SAML Responses on.
+     * @param asyncTimeout servlet async timeout in milliseconds.
+     */
+    public AsyncSAMLProcessingFilter(Executor executor, long asyncTimeout) {
+        Assert.notNull(executor, "'executor' cannot be null.");
+        this.executor = executor;
+        this.asyncTimeout = asyncTimeout;
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) req;
+        HttpServletResponse response = (HttpServletResponse) res;
+        if (!request.isAsyncSupported() || request.isAsyncStarted() || !requiresAuthentication(request, response)) {
+            super.doFilter(req, res, chain);
+            return;
+        }
+        AsyncContext asyncContext = request.startAsync(request, response);
+        asyncContext.setTimeout(asyncTimeout);
+        AsyncProcessing processing = new AsyncProcessing(asyncContext, response);
+        asyncContext.addListener(processing);
+        Runnable processingTask = taskDecorator.decorate(() -> process(processing, request, response, chain));
+        FutureTask<Void> task = new FutureTask<>(processingTask, null);
+        processing.task = task;
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+
+    private void process(AsyncProcessing processing, HttpServletRequest request, HttpServletResponse response,
+                         FilterChain chain) {
+        CURRENT.set(processing);
+        try {
+            super.doFilter(request, response, chain);
+        } catch (IOException | ServletException | RuntimeException e) {
+            if (!processing.isCompleted()) {
+                logger.error("Error processing SAML Response", e);
+            }
+            processing.sendErrorAndComplete(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        } finally {
+            CURRENT.remove();
+            SecurityContextHolder.clearContext();
+            processing.complete();
+        }
+    }
+
+    @Override
+    protected void successfulAuthentication(HttpServletRequest request, HttpServletResponse response, FilterChain chain,
+                                            Authentication authResult) throws IOException, ServletException {
+        AsyncProcessing processing = CURRENT.get();
+        if (processing == null) {
+            super.successfulAuthentication(request, response, chain, authResult);
+            return;
+        }
+        synchronized (processing) {
+            if (processing.isCompleted()) {
+                logger.debug("Async SSO request already completed, discarding authentication");
+                return;
+            }
+            SecurityContext context = SecurityContextHolder.createEmptyContext();
+            context.setAuthentication(authResult);
+            SecurityContextHolder.setContext(context);
+            securityContextRepository.saveContext(context, request, response);
+            super.successfulAuthentication(request, response, chain, authResult);
+        }
+    }
+
+    @Override
+    protected void unsuccessfulAuthentication(HttpServletRequest request, HttpServletResponse response,
+                                              AuthenticationException failed) throws IOException, ServletException {
+        AsyncProcessing processing = CURRENT.get();
+        if (processing == null) {
+            super.unsuccessfulAuthentication(request, response, failed);
+            return;
+        }
+        synchronized (processing) {
+            if (processing.isCompleted()) {
+                logger.debug("Async SSO request already completed, discarding authentication failure");
+                return;
+            }
+            super.unsuccessfulAuthentication(request, response, failed);
+        }
+    }
+
+    /**
+     * Sets the given strategy, skipped once the async request is completed so that the session of a recycled request
+     * is not touched.
+     */
+    @Override
+    public void setSessionAuthenticationStrategy(SessionAuthenticationStrategy sessionStrategy) {
+        Assert.notNull(sessionStrategy, "'sessionStrategy' cannot be null.");
+        super.setSessionAuthenticationStrategy((authentication, request, response) -> {
+            AsyncProcessing processing = CURRENT.get();
+            if (processing != null && processing.isCompleted()) {
+                throw new SessionAuthenticationException("Async SSO request already completed");
+            }
+            sessionStrategy.onAuthentication(authentication, request, response);
+        });
+    }
+
+    /**
+     * Repository the security context is saved to after asynchronous authentication. Defaults to
+     * {@link HttpSessionSecurityContextRepository}.
+     *
+     * @param securityContextRepository the repository.
+     */
+    public void setSecurityContextRepository(SecurityContextRepository securityContextRepository) {
+        Assert.notNull(securityContextRepository, "'securityContextRepository' cannot be null.");
+        this.securityContextRepository = securityContextRepository;
+    }
+
+    /**
+     * Decorates the task that processes a SAML Response. The decorator is called on the container thread as the request
+     * arrives, so it can capture state bound to that thread and restore it around the task on the executor thread.
+     *
+     * @param taskDecorator the decorator.
+     */
+    public void setTaskDecorator(TaskDecorator taskDecorator) {
+        Assert.notNull(taskDecorator, "'taskDecorator' cannot be null.");
+        this.taskDecorator = taskDecorator;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Shuts down the executor, interrupting the SAML Responses being processed.
+     */
+    @Override
+    public void destroy() {
+        if (executor instanceof ExecutorService) {
+            ((ExecutorService) executor).shutdownNow();
+        }
+    }
+
+    /**
+     * State of a single async SSO request, completed either by the processing task or by the container on timeout or
+     * error, whichever comes first. Writes to the response happen while holding its monitor.
+     */
+    private static final class AsyncProcessing implements AsyncListener {
+        private final AsyncContext asyncContext;
+        private final HttpServletResponse response;
+        private volatile FutureTask<Void> task;
+        private boolean completed;
+
+        AsyncProcessing(AsyncContext asyncContext, HttpServletResponse response) {
+            this.asyncContext = asyncContext;
+            this.response = response;
+        }
+
+        synchronized boolean isCompleted() {
+            return completed;
+        }
+
+        synchronized void complete() {
+            if (!completed) {
+                completed = true;
+                asyncContext.complete();
+            }
+        }
+
+        synchronized void sendErrorAndComplete(int status) {
+            if (completed) {
+                return;
+            }
+            if (!response.isCommitted()) {
+                try {
+                    response.sendError(status);
+                } catch (IOException ignored) {
+                    // response is gone, nothing else to do
+                }
+            }
+            complete();
+        }
+
+        private void cancel() {
+            FutureTask<Void> current = task;
+            if (current != null) {
+                current.cancel(true);
+            }
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            sendErrorAndComplete(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            cancel();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            complete();
+            cancel();
+        }
+
+        @Override
+        public synchronized void onComplete(AsyncEvent event) {
+            completed = true;
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.async;
+
+import org.springframework.security.saml.SAMLCredential;
+import org.springframework.security.saml.userdetails.SAMLUserDetailsService;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+/**
+ * Asynchronous variant of {@link SAMLUserDetailsService}, for user enrichment backed by slow or remote user stores.
+ * Implementations return without blocking and complete the stage when the user is loaded, either with their own
+ * non-blocking client or by running blocking lookups on the given executor, e.g.
+ * {@code CompletableFuture.supplyAsync(() -> lookup(credential), executor)}.
+ *
+ * @author Ulises Bocchio
+ * @see AsyncSAMLUserDetailsServiceAdapter
+ */
+@FunctionalInterface
+public interface AsyncSAMLUserDetailsService {
+
+    /**
+     * Loads the user identified by the given credential.
+     *
+     * @param credential the authenticated SAML credential.
+     * @param executor   bounded executor to run blocking work on.
+     * @return a stage completed with the user details object, or completed exceptionally with a
+     * {@link org.springframework.security.core.userdetails.UsernameNotFoundException} if the user must not log in.
+     */
+    CompletionStage<Object> loadUserBySAML(SAMLCredential credential, Executor executor);
+}
@@ -0,0 +1,108 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.async;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.saml.SAMLCredential;
+import org.springframework.security.saml.userdetails.SAMLUserDetailsService;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Adapts an {@link AsyncSAMLUserDetailsService} to the {@link SAMLUserDetailsService} used by
+ * {@link org.springframework.security.saml.SAMLAuthenticationProvider}. The user is awaited for at most
+ * {@code timeout} milliseconds. When the load times out, fails with anything other than an
+ * {@link AuthenticationException}, or the executor is saturated, the fallback service is used instead, usually the
+ * bare {@link com.github.ulisesbocchio.spring.boot.security.saml.user.SAMLUserDetails}.
+ * <p>
+ * Combined with {@link AsyncSAMLProcessingFilter}, the wait happens on the filter executor instead of a
+ * container thread, and when the async request times out the interrupted wait cancels the user load.
+ * The executor is owned by the adapter and shut down on {@link #destroy()}.
+ * </p>
+ *
+ * @author Ulises Bocchio
+ */
+public class AsyncSAMLUserDetailsServiceAdapter implements SAMLUserDetailsService, DisposableBean {
+
+    private final AsyncSAMLUserDetailsService delegate;
+    private final Executor executor;
+    private final long timeout;
+    private final SAMLUserDetailsService fallback;
+
+    /**
+     * @param delegate the asynchronous user details service.
+     * @param executor the bounded executor for blocking work.
+     * @param timeout  maximum time to wait for the user in milliseconds.
+     * @param fallback the user details service used on timeout or failure.
+     */
+    public AsyncSAMLUserDetailsServiceAdapter(AsyncSAMLUserDetailsService delegate, Executor executor, long timeout,
+                                              SAMLUserDetailsService fallback) {
+        Assert.notNull(delegate, "'delegate' cannot be null.");
+        Assert.notNull(executor, "'executor' cannot be null.");
+        Assert.isTrue(timeout > 0, "'timeout' must be greater than 0.");
+        Assert.notNull(fallback, "'fallback' cannot be null.");
+        this.delegate = delegate;
+        this.executor = executor;
+        this.timeout = timeout;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public Object loadUserBySAML(SAMLCredential credential) throws UsernameNotFoundException {
+        CompletableFuture<Object> user;
+        try {
+            user = delegate.loadUserBySAML(credential, executor).toCompletableFuture();
+        } catch (RejectedExecutionException e) {
+            return fallback.loadUserBySAML(credential);
+        }
+        try {
+            return user.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            user.cancel(true);
+            return fallback.loadUserBySAML(credential);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof AuthenticationException) {
+                throw (AuthenticationException) e.getCause();
+            }
+            return fallback.loadUserBySAML(credential);
+        } catch (InterruptedException e) {
+            user.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new AuthenticationServiceException("Interrupted while waiting for user details", e);
+        }
+    }
+
+    /**
+     * Shuts down the executor, interrupting the user loads in progress.
+     */
+    @Override
+    public void destroy() {
+        if (executor instanceof ExecutorService) {
+            ((ExecutorService) executor).shutdownNow();
+        }
+    }
+
+    public AsyncSAMLUserDetailsService getDelegate() {
+        return delegate;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public SAMLUserDetailsService getFallback() {
+        return fallback;
+    }
+}
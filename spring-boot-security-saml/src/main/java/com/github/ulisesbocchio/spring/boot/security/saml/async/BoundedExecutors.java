@@ -0,0 +1,57 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.async;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory of the bounded executors used for asynchronous and background SSO processing.
+ *
+ * @author Ulises Bocchio
+ */
+public final class BoundedExecutors {
+
+    private BoundedExecutors() {
+    }
+
+    /**
+     * Creates an executor with at most {@code poolSize} daemon threads, idle threads time out after a minute, and at
+     * most {@code queueCapacity} waiting tasks. Tasks submitted beyond that are rejected with a
+     * {@link java.util.concurrent.RejectedExecutionException}.
+     *
+     * @param name          prefix of the thread names.
+     * @param poolSize      maximum number of threads.
+     * @param queueCapacity maximum number of queued tasks.
+     * @return the executor.
+     */
+    public static ThreadPoolExecutor newBoundedExecutor(String name, int poolSize, int queueCapacity) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), daemonThreadFactory(name));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Creates a scheduled executor with a single daemon thread, that drops delayed tasks once cancelled.
+     *
+     * @param name prefix of the thread name.
+     * @return the executor.
+     */
+    public static ScheduledThreadPoolExecutor newBackgroundExecutor(String name) {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, daemonThreadFactory(name));
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    private static ThreadFactory daemonThreadFactory(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
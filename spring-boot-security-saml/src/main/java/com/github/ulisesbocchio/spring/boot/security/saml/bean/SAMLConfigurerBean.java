@@ -4,31 +4,41 @@ import com.github.ulisesbocchio.spring.boot.security.saml.annotation.EnableSAMLS
 import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderBuilder;
 import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderConfigurer;
 import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderEndpoints;
+import com.github.ulisesbocchio.spring.boot.security.saml.reload.ReloadableServiceProvider;
+import com.github.ulisesbocchio.spring.boot.security.saml.storage.CookieSAMLMessageStorageFactory;
+import com.github.ulisesbocchio.spring.boot.security.saml.storage.CookieSAMLMessageStorageFilter;
 import com.github.ulisesbocchio.spring.boot.security.saml.util.FunctionalUtils.CheckedConsumer;
 import lombok.SneakyThrows;
 import org.opensaml.saml2.metadata.EntitiesDescriptor;
 import org.opensaml.saml2.metadata.EntityDescriptor;
-import org.opensaml.xml.XMLObject;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.config.annotation.SecurityConfigurerAdapter;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.saml.*;
 import org.springframework.security.saml.metadata.*;
+import org.springframework.security.saml.storage.SAMLMessageStorageFactory;
+import org.springframework.security.web.AuthenticationEntryPoint;
 import org.springframework.security.web.DefaultSecurityFilterChain;
 import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
+import org.springframework.security.web.savedrequest.NullRequestCache;
 import org.springframework.security.web.util.matcher.RequestMatcher;
 import org.springframework.util.Assert;
 
 import javax.servlet.Filter;
 import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
 import static com.github.ulisesbocchio.spring.boot.security.saml.util.FunctionalUtils.unchecked;
@@ -140,6 +150,8 @@ public class SAMLConfigurerBean extends SecurityConfigurerAdapter<DefaultSecurit
     protected ServiceProviderBuilder serviceProviderBuilder;
     @Autowired
     protected AuthenticationManager authenticationManager;
+    @Autowired(required = false)
+    protected ReloadableServiceProvider reloadableServiceProvider;
 
     private Class<? extends Filter> afterFilter = BasicAuthenticationFilter.class;
 
@@ -207,6 +219,9 @@ public class SAMLConfigurerBean extends SecurityConfigurerAdapter<DefaultSecurit
      * @return the {@link RequestMatcher}
      */
     public RequestMatcher endpointsMatcher() {
+        if (reloadableServiceProvider != null) {
+            return reloadableServiceProvider.endpointsMatcher();
+        }
         ServiceProviderEndpoints endpoints = Optional.of(serviceProviderBuilder)
                 .map(builder -> builder.getSharedObject(ServiceProviderEndpoints.class))
                 .orElseThrow(() -> new IllegalStateException("Can't find SAML Endpoints"));
@@ -222,11 +237,18 @@ public class SAMLConfigurerBean extends SecurityConfigurerAdapter<DefaultSecurit
     @SuppressWarnings("unchecked")
     @Override
     public void init(HttpSecurity http) throws Exception {
-        serviceProviderBuilder.build();
-        SAMLAuthenticationProvider authenticationProvider = serviceProviderBuilder.getSharedObject(SAMLAuthenticationProvider.class);
-        SAMLEntryPoint sAMLEntryPoint = serviceProviderBuilder.getSharedObject(SAMLEntryPoint.class);
+        Map<Class<?>, Object> sharedObjects = new HashMap<>(serviceProviderBuilder.getSharedObjects());
+        serviceProviderBuilder.getStartupTimings().record("build", serviceProviderBuilder::build);
+        AuthenticationProvider authenticationProvider = serviceProviderBuilder.getSharedObject(SAMLAuthenticationProvider.class);
+        AuthenticationEntryPoint sAMLEntryPoint = serviceProviderBuilder.getSharedObject(SAMLEntryPoint.class);
         CheckedConsumer<HttpSecurity, Exception> httpConsumer = serviceProviderBuilder.getSharedObject(CheckedConsumer.class);
 
+        if (reloadableServiceProvider != null) {
+            reloadableServiceProvider.initialize(serviceProviderBuilder, sharedObjects, this::serviceProviderFilters);
+            authenticationProvider = reloadableServiceProvider.authenticationProvider();
+            sAMLEntryPoint = reloadableServiceProvider.authenticationEntryPoint();
+        }
+
         // @formatter:off
         http
             .exceptionHandling()
@@ -237,6 +259,12 @@ public class SAMLConfigurerBean extends SecurityConfigurerAdapter<DefaultSecurit
         http.
             authenticationProvider(authenticationProvider);
 
+        if(isStatelessMessageStorage()) {
+            http
+                .requestCache()
+                .requestCache(new NullRequestCache());
+        }
+
         if(httpConsumer != null) {
             httpConsumer.accept(http);
         }
@@ -245,18 +273,25 @@ public class SAMLConfigurerBean extends SecurityConfigurerAdapter<DefaultSecurit
 
     @Override
     public void configure(HttpSecurity http) throws Exception {
-        // @formatter:off
-        if(!hasStaticServiceProviderMetadataConfigured()) {
-            addFilter(http, MetadataGeneratorFilter.class);
+        if (isStatelessMessageStorage()) {
+            http.addFilterAfter(new CookieSAMLMessageStorageFilter(), afterFilter);
+            afterFilter = CookieSAMLMessageStorageFilter.class;
         }
-        addFilter(http, MetadataDisplayFilter.class);
-        addFilter(http, SAMLEntryPoint.class);
-        addFilter(http, SAMLProcessingFilter.class);
-        addFilter(http, SAMLWebSSOHoKProcessingFilter.class);
-        addFilter(http, SAMLLogoutProcessingFilter.class);
-        addFilter(http, SAMLDiscovery.class);
-        addFilter(http, SAMLLogoutFilter.class);
-        // @formatter:on
+        if (reloadableServiceProvider != null) {
+            http.addFilterAfter(reloadableServiceProvider.filter(), afterFilter);
+        } else {
+            serviceProviderFilterClasses(serviceProviderBuilder).forEach(filterClass -> addFilter(http, filterClass));
+        }
+        serviceProviderBuilder.reportStartup();
+    }
+
+    /**
+     * Whether outgoing SAML requests are stored in cookies, in which case no session must be created before
+     * authentication: the request that triggered authentication is not saved, since saving it would create the
+     * session, and consumed cookies are expired through a {@link CookieSAMLMessageStorageFilter}.
+     */
+    private boolean isStatelessMessageStorage() {
+        return serviceProviderBuilder.getSharedObject(SAMLMessageStorageFactory.class) instanceof CookieSAMLMessageStorageFactory;
     }
 
     protected void addFilter(HttpSecurity http, Class<? extends Filter> filterClass) {
@@ -268,9 +303,47 @@ public class SAMLConfigurerBean extends SecurityConfigurerAdapter<DefaultSecurit
                 });
     }
 
-    private boolean hasStaticServiceProviderMetadataConfigured() {
-        MetadataManager metadataManager = serviceProviderBuilder.getSharedObject(MetadataManager.class);
-        return metadataManager.getAvailableProviders().stream().anyMatch(this::isLocal);
+    /**
+     * Returns the SAML filters of a built Service Provider, in the order they go into the Spring Security filter
+     * chain.
+     *
+     * @param serviceProvider the built Service Provider.
+     * @return the filters.
+     */
+    protected List<Filter> serviceProviderFilters(ServiceProviderBuilder serviceProvider) {
+        return serviceProviderFilterClasses(serviceProvider).stream()
+                .<Filter>map(serviceProvider::getSharedObject)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private List<Class<? extends Filter>> serviceProviderFilterClasses(ServiceProviderBuilder serviceProvider) {
+        // @formatter:off
+        List<Class<? extends Filter>> filterClasses = new ArrayList<>();
+        if(!hasStaticServiceProviderMetadataConfigured(serviceProvider)) {
+            filterClasses.add(MetadataGeneratorFilter.class);
+        }
+        filterClasses.add(MetadataDisplayFilter.class);
+        filterClasses.add(SAMLEntryPoint.class);
+        filterClasses.add(SAMLProcessingFilter.class);
+        filterClasses.add(SAMLWebSSOHoKProcessingFilter.class);
+        filterClasses.add(SAMLLogoutProcessingFilter.class);
+        filterClasses.add(SAMLDiscovery.class);
+        filterClasses.add(SAMLLogoutFilter.class);
+        // @formatter:on
+        return filterClasses;
+    }
+
+    /**
+     * Whether the metadata manager, already initialized by the build, indexed a local Service Provider, in which case
+     * the {@link MetadataGeneratorFilter} is not needed. The entity index of the metadata manager is used, instead of
+     * initializing every metadata provider again and walking its entity descriptors, so that large remote metadata is
+     * not loaded twice before the filter chain exists.
+     */
+    private boolean hasStaticServiceProviderMetadataConfigured(ServiceProviderBuilder serviceProvider) {
+        MetadataManager metadataManager = serviceProvider.getSharedObject(MetadataManager.class);
+        return serviceProvider.getStartupTimings().measure("local metadata scan",
+                () -> metadataManager.getSPEntityNames().stream().anyMatch(entityId -> isLocal(metadataManager, entityId)));
     }
 
     private enum EntityDescriptorType {
@@ -292,23 +365,8 @@ public class SAMLConfigurerBean extends SecurityConfigurerAdapter<DefaultSecurit
     }
 
     @SneakyThrows
-    private boolean isLocal(ExtendedMetadataDelegate delegate) {
-        delegate.initialize();
-        XMLObject metadata = delegate.getDelegate().getMetadata();
-
-        List<EntityDescriptor> descriptors = EntityDescriptor.class.isAssignableFrom(metadata.getClass())
-                ? Collections.singletonList((EntityDescriptor) metadata)
-                : (EntitiesDescriptor.class.isAssignableFrom(metadata.getClass())
-                    ? ((EntitiesDescriptor) metadata).getEntityDescriptors()
-                    : Collections.emptyList());
-
-        return descriptors.stream()
-                        .anyMatch(ed -> isLocal(delegate, ed.getEntityID()));
-    }
-
-    @SneakyThrows
-    private boolean isLocal(ExtendedMetadataDelegate delegate, String entityId) {
-        return Optional.ofNullable(delegate.getExtendedMetadata(entityId))
+    private boolean isLocal(MetadataManager metadataManager, String entityId) {
+        return Optional.ofNullable(metadataManager.getExtendedMetadata(entityId))
                 .map(ExtendedMetadata::isLocal)
                 .orElse(false);
     }
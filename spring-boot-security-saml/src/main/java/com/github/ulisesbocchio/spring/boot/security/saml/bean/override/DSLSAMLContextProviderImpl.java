@@ -1,16 +1,19 @@
 package com.github.ulisesbocchio.spring.boot.security.saml.bean.override;
 
+import com.github.ulisesbocchio.spring.boot.security.saml.context.CachingSAMLContextProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.saml.context.SAMLContextProviderImpl;
 import org.springframework.security.saml.key.KeyManager;
 import org.springframework.security.saml.metadata.MetadataManager;
 
 /**
- * {@link SAMLContextProviderImpl} with non-required Autowire.
+ * {@link SAMLContextProviderImpl} with non-required Autowire. As a {@link CachingSAMLContextProvider}, a
+ * {@link com.github.ulisesbocchio.spring.boot.security.saml.trust.SignatureTrustCache} and a
+ * {@link com.github.ulisesbocchio.spring.boot.security.saml.context.LocalEntityCache} can be set on it.
  *
  * @author Ulises Bocchio
  */
-public class DSLSAMLContextProviderImpl extends SAMLContextProviderImpl {
+public class DSLSAMLContextProviderImpl extends CachingSAMLContextProvider {
 
 
     /**
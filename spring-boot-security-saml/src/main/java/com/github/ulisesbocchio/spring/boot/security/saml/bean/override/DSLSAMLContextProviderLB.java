@@ -1,5 +1,6 @@
 package com.github.ulisesbocchio.spring.boot.security.saml.bean.override;
 
+import com.github.ulisesbocchio.spring.boot.security.saml.context.CachingSAMLContextProviderLB;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.saml.context.SAMLContextProviderLB;
 import org.springframework.security.saml.key.KeyManager;
@@ -7,11 +8,13 @@ import org.springframework.security.saml.metadata.MetadataManager;
 
 /**
  * /**
- * {@link SAMLContextProviderLB} with non-required Autowire.
+ * {@link SAMLContextProviderLB} with non-required Autowire. As a {@link CachingSAMLContextProviderLB}, a
+ * {@link com.github.ulisesbocchio.spring.boot.security.saml.trust.SignatureTrustCache} and a
+ * {@link com.github.ulisesbocchio.spring.boot.security.saml.context.LocalEntityCache} can be set on it.
  *
  * @author Ulises Bocchio
  */
-public class DSLSAMLContextProviderLB extends SAMLContextProviderLB {
+public class DSLSAMLContextProviderLB extends CachingSAMLContextProviderLB {
 
     /**
      * {@inheritDoc}
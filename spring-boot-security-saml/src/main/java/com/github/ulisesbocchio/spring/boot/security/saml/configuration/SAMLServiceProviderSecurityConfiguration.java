@@ -7,12 +7,17 @@ import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProv
 import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderConfigurerAdapter;
 import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderEndpoints;
 import com.github.ulisesbocchio.spring.boot.security.saml.properties.SAMLSSOProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.reload.ReloadableServiceProvider;
+import com.github.ulisesbocchio.spring.boot.security.saml.replay.AssertionReplayCache;
+import com.github.ulisesbocchio.spring.boot.security.saml.resource.KeystoreFactory;
+import com.github.ulisesbocchio.spring.boot.security.saml.startup.TimedSAMLBootstrap;
 import org.assertj.core.util.Lists;
 import org.opensaml.xml.parse.ParserPool;
 import org.opensaml.xml.parse.StaticBasicParserPool;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
@@ -39,6 +44,7 @@ import org.springframework.security.saml.websso.*;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 
 import static com.github.ulisesbocchio.spring.boot.security.saml.util.FunctionalUtils.unchecked;
 
@@ -95,6 +101,12 @@ public class SAMLServiceProviderSecurityConfiguration implements InitializingBea
     @Autowired(required = false)
     private WebSSOProfileConsumerHoKImpl hokWebSSOProfileConsumer;
 
+    @Autowired(required = false)
+    private AssertionReplayCache assertionReplayCache;
+
+    @Autowired(required = false)
+    private KeystoreFactory keystoreFactory;
+
     @Autowired(required = false)
     private WebSSOProfile webSSOProfile;
 
@@ -119,13 +131,16 @@ public class SAMLServiceProviderSecurityConfiguration implements InitializingBea
     @Autowired(required = false)
     ApplicationEventPublisher eventPublisher;
 
+    @Autowired(required = false)
+    SAMLBootstrap samlBootstrap;
+
     @Autowired
     ServiceProviderBuilder serviceProviderBuilder;
 
     @Bean
     @ConditionalOnMissingBean
     public static SAMLBootstrap sAMLBootstrap() {
-        return new SAMLBootstrap();
+        return new TimedSAMLBootstrap();
     }
 
     @Bean
@@ -151,6 +166,12 @@ public class SAMLServiceProviderSecurityConfiguration implements InitializingBea
         return new ServiceProviderBuilder();
     }
 
+    @Bean
+    @ConditionalOnProperty(prefix = "saml.sso", name = "reloadable", havingValue = "true")
+    public ReloadableServiceProvider reloadableServiceProvider() {
+        return new ReloadableServiceProvider(sAMLSsoProperties, serviceProviderConfigurers);
+    }
+
     /**
      * Default Web Security Configurer that delegates configuration of the service provider to {@link
      * ServiceProviderConfigurer}
@@ -223,6 +244,8 @@ public class SAMLServiceProviderSecurityConfiguration implements InitializingBea
         serviceProviderBuilder.setSharedObject(WebSSOProfileConsumerHoKImpl.class, hokWebSSOProfileConsumer);
         serviceProviderBuilder.setSharedObject(ServiceProviderEndpoints.class, new ServiceProviderEndpoints());
         serviceProviderBuilder.setSharedObject(ResourceLoader.class, resourceLoader);
+        serviceProviderBuilder.setSharedObject(KeystoreFactory.class,
+                Optional.ofNullable(keystoreFactory).orElseGet(() -> new KeystoreFactory(resourceLoader)));
         serviceProviderBuilder.setSharedObject(SAMLSSOProperties.class, sAMLSsoProperties);
         serviceProviderBuilder.setSharedObject(ExtendedMetadata.class, extendedMetadata);
         serviceProviderBuilder.setSharedObject(LocalExtendedMetadata.class, localExtendedMetadata);
@@ -238,8 +261,12 @@ public class SAMLServiceProviderSecurityConfiguration implements InitializingBea
         serviceProviderBuilder.setSharedObject(SingleLogoutProfile.class, sloProfile);
         serviceProviderBuilder.setSharedObject(WebSSOProfileConsumer.class, webSSOProfileConsumer);
         serviceProviderBuilder.setSharedObject(WebSSOProfileConsumerHoKImpl.class, hokWebSSOProfileConsumer);
+        serviceProviderBuilder.setSharedObject(AssertionReplayCache.class, assertionReplayCache);
         serviceProviderBuilder.setSharedObject(SAMLLogger.class, samlLogger);
         serviceProviderBuilder.setSharedObject(ApplicationEventPublisher.class, eventPublisher);
+        if (samlBootstrap instanceof TimedSAMLBootstrap && ((TimedSAMLBootstrap) samlBootstrap).getPhase() != null) {
+            serviceProviderBuilder.getStartupTimings().add(((TimedSAMLBootstrap) samlBootstrap).getPhase());
+        }
     }
 
 }
@@ -0,0 +1,118 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.configurer;
+
+import com.github.ulisesbocchio.spring.boot.security.saml.async.BoundedExecutors;
+import com.github.ulisesbocchio.spring.boot.security.saml.configurer.builder.*;
+import com.github.ulisesbocchio.spring.boot.security.saml.startup.StartupTimings;
+import org.springframework.security.config.annotation.SecurityConfigurerAdapter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Dependencies between the configure phases of the {@link ServiceProviderBuilder} configurers: a configurer depends
+ * on the ones whose shared objects it reads while configuring. The rest of the shared objects are read on init or
+ * on {@link ServiceProviderBuilder#performBuild()}, once all configurers are done.
+ * <p>
+ * Configure phases run in the builder order, either one after the other or, in parallel, each one as soon as the
+ * ones it depends on are done. Both yield the same shared objects: a configurer that replaces a shared object set by
+ * another one depends on it, e.g. {@link TenantsConfigurer} wraps the {@code KeyManager} set by
+ * {@link KeyManagerConfigurer}, and so does any configurer reading it, e.g. {@link TLSConfigurer}.
+ * </p>
+ *
+ * @author Ulises Bocchio
+ */
+final class ConfigurerGraph {
+
+    private static final Map<Class<?>, List<Class<?>>> DEPENDENCIES = new HashMap<>();
+
+    static {
+        dependsOn(TenantsConfigurer.class, KeyManagerConfigurer.class);
+        dependsOn(TLSConfigurer.class, KeyManagerConfigurer.class, TenantsConfigurer.class);
+        dependsOn(MetadataManagerConfigurer.class, ExtendedMetadataConfigurer.class, LocalExtendedMetadataConfigurer.class);
+        dependsOn(MetadataGeneratorConfigurer.class, ExtendedMetadataConfigurer.class);
+        dependsOn(SSOConfigurer.class, AuthenticationProviderConfigurer.class, SAMLContextProviderConfigurer.class,
+                SAMLContextProviderLBConfigurer.class);
+        dependsOn(WebSSOProfileHoKConsumerConfigurer.class, WebSSOProfileConsumerConfigurer.class);
+        dependsOn(SAMLProcessorConfigurer.class, WebSSOProfileConsumerConfigurer.class);
+    }
+
+    private ConfigurerGraph() {
+    }
+
+    private static void dependsOn(Class<?> configurer, Class<?>... dependencies) {
+        DEPENDENCIES.put(configurer, Arrays.asList(dependencies));
+    }
+
+    static List<Class<?>> dependencies(Class<?> configurer) {
+        for (Class<?> type = configurer; type != null; type = type.getSuperclass()) {
+            if (DEPENDENCIES.containsKey(type)) {
+                return DEPENDENCIES.get(type);
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Runs the configure phase of the given configurers.
+     *
+     * @param builder     the builder being configured.
+     * @param configurers the configurers, in the builder order.
+     * @param parallel    whether independent configurers run at the same time.
+     * @param timings     where each configure phase is recorded.
+     * @return the milliseconds each configurer took to configure, by configurer name, in the builder order.
+     * @throws Exception the first exception thrown by a configurer.
+     */
+    static Map<String, Long> configure(ServiceProviderBuilder builder,
+                                       List<SecurityConfigurerAdapter<Void, ServiceProviderBuilder>> configurers,
+                                       boolean parallel, StartupTimings timings) throws Exception {
+        Map<String, Long> millis = Collections.synchronizedMap(new LinkedHashMap<>());
+        configurers.forEach(configurer -> millis.put(configurer.getClass().getSimpleName(), 0L));
+        if (!parallel || configurers.size() < 2) {
+            for (SecurityConfigurerAdapter<Void, ServiceProviderBuilder> configurer : configurers) {
+                configure(builder, configurer, millis, timings);
+            }
+            return millis;
+        }
+        int threads = Math.max(1, Math.min(configurers.size(), Runtime.getRuntime().availableProcessors()));
+        ThreadPoolExecutor executor = BoundedExecutors.newBoundedExecutor("saml-configure", threads, configurers.size());
+        try {
+            Map<Class<?>, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+            for (SecurityConfigurerAdapter<Void, ServiceProviderBuilder> configurer : configurers) {
+                List<Class<?>> dependencyTypes = dependencies(configurer.getClass());
+                CompletableFuture<?>[] dependencies = futures.entrySet().stream()
+                        .filter(future -> dependencyTypes.stream().anyMatch(type -> type.isAssignableFrom(future.getKey())))
+                        .map(Map.Entry::getValue)
+                        .toArray(CompletableFuture[]::new);
+                futures.put(configurer.getClass(), CompletableFuture.allOf(dependencies).thenRunAsync(() -> {
+                    try {
+                        configure(builder, configurer, millis, timings);
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        } finally {
+            executor.shutdown();
+        }
+        return millis;
+    }
+
+    private static void configure(ServiceProviderBuilder builder, SecurityConfigurerAdapter<Void, ServiceProviderBuilder> configurer,
+                                  Map<String, Long> millis, StartupTimings timings) throws Exception {
+        String name = configurer.getClass().getSimpleName();
+        millis.put(name, timings.record("configure " + name, () -> configurer.configure(builder)).getMillis());
+    }
+}
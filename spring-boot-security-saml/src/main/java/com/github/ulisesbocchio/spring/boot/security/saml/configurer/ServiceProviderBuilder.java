@@ -5,8 +5,18 @@ import com.github.ulisesbocchio.spring.boot.security.saml.bean.override.DSLSAMLC
 import com.github.ulisesbocchio.spring.boot.security.saml.bean.override.LocalExtendedMetadata;
 import com.github.ulisesbocchio.spring.boot.security.saml.configurer.builder.*;
 import com.github.ulisesbocchio.spring.boot.security.saml.properties.SAMLSSOProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.startup.ServiceProviderStartupEvent;
+import com.github.ulisesbocchio.spring.boot.security.saml.startup.StartupTimings;
+import com.github.ulisesbocchio.spring.boot.security.saml.tenant.ServiceProviderTenants;
+import com.github.ulisesbocchio.spring.boot.security.saml.trust.CRLCache;
+import com.github.ulisesbocchio.spring.boot.security.saml.trust.SignatureTrustCache;
 import com.github.ulisesbocchio.spring.boot.security.saml.util.FunctionalUtils.CheckedConsumer;
 import lombok.SneakyThrows;
+import org.opensaml.saml2.metadata.provider.ObservableMetadataProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.config.annotation.AbstractConfiguredSecurityBuilder;
 import org.springframework.security.config.annotation.ObjectPostProcessor;
 import org.springframework.security.config.annotation.SecurityConfigurerAdapter;
@@ -24,7 +34,14 @@ import org.springframework.security.saml.processor.SAMLProcessorImpl;
 import org.springframework.security.saml.trust.httpclient.TLSProtocolConfigurer;
 import org.springframework.security.saml.websso.*;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -43,7 +60,15 @@ import java.util.stream.Stream;
  * @author Ulises Bocchio
  */
 public class ServiceProviderBuilder extends
-        AbstractConfiguredSecurityBuilder<Void, ServiceProviderBuilder> {
+        AbstractConfiguredSecurityBuilder<Void, ServiceProviderBuilder> implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(ServiceProviderBuilder.class);
+
+    private final Map<Class<?>, SecurityConfigurerAdapter<Void, ServiceProviderBuilder>> configured = new LinkedHashMap<>();
+    private List<SecurityConfigurerAdapter<Void, ServiceProviderBuilder>> orderedConfigurers = Collections.emptyList();
+    private Map<String, Long> configurerTimings = Collections.emptyMap();
+    private final StartupTimings startupTimings = new StartupTimings();
+    private final List<DisposableBean> disposables = new ArrayList<>();
 
     public ServiceProviderBuilder() {
         super(new ObjectPostProcessor<Object>() {
@@ -55,17 +80,56 @@ public class ServiceProviderBuilder extends
     }
 
     @Override
-    public <C> void setSharedObject(Class<C> sharedType, C object) {
+    public synchronized <C> void setSharedObject(Class<C> sharedType, C object) {
         if (object != null) {
             super.setSharedObject(sharedType, object);
         }
     }
 
+    @Override
+    public synchronized <C> C getSharedObject(Class<C> sharedType) {
+        return super.getSharedObject(sharedType);
+    }
+
+    /**
+     * Registers an object created while building this Service Provider, such as a connection pool or a cache with
+     * background threads, to be destroyed along with it on {@link #destroy()}.
+     *
+     * @param disposable the object to destroy with this Service Provider.
+     */
+    public synchronized void registerDisposable(DisposableBean disposable) {
+        disposables.add(disposable);
+    }
+
+    /**
+     * Destroys the objects registered through {@link #registerDisposable(DisposableBean)}, in reverse registration
+     * order. Invoked by the application context on shutdown, or when a reloaded Service Provider is retired.
+     */
+    @Override
+    public void destroy() {
+        List<DisposableBean> toDestroy;
+        synchronized (this) {
+            toDestroy = new ArrayList<>(disposables);
+            disposables.clear();
+        }
+        Collections.reverse(toDestroy);
+        for (DisposableBean disposable : toDestroy) {
+            try {
+                disposable.destroy();
+            } catch (Exception e) {
+                logger.warn("Error destroying {}", disposable.getClass().getSimpleName(), e);
+            }
+        }
+    }
+
     @SuppressWarnings("unchecked")
     @SneakyThrows
     private <C extends SecurityConfigurerAdapter<Void, ServiceProviderBuilder>> C getOrApply(
             C configurer) {
         C existingConfig = (C) getConfigurer(configurer.getClass());
+        if (existingConfig == null) {
+            existingConfig = (C) configured.get(configurer.getClass());
+        }
         if (existingConfig != null) {
             return existingConfig;
         }
@@ -74,26 +138,40 @@ public class ServiceProviderBuilder extends
 
     @SuppressWarnings("unchecked")
     @SneakyThrows
-    private <C extends SecurityConfigurerAdapter<Void, ServiceProviderBuilder>> void reApply(C configurer) {
+    private <C extends SecurityConfigurerAdapter<Void, ServiceProviderBuilder>> C reApply(C configurer) {
         C existing = (C) removeConfigurer(configurer.getClass());
-        apply(existing);
+        return apply(existing);
     }
 
     @Override
     protected void beforeInit() throws Exception {
         //All configurers are initialized only once.
-        //Order of configurers is established by the following stream.
+        orderedConfigurers = builtInConfigurers();
+        //They are taken out of the builder, which then only initializes and configures any other configurer, so that
+        //they are initialized and configured here, timed, right after those, as when applied last to the builder.
+        for (SecurityConfigurerAdapter<Void, ServiceProviderBuilder> configurer : orderedConfigurers) {
+            removeConfigurer(configurer.getClass());
+            configured.put(configurer.getClass(), configurer);
+        }
+    }
+
+    /**
+     * Re-applies the built-in configurers so that they come after any other configurer, in the order established by
+     * the following stream.
+     */
+    List<SecurityConfigurerAdapter<Void, ServiceProviderBuilder>> builtInConfigurers() {
         boolean lbEnabled = getSharedObject(SAMLSSOProperties.class).getContextProvider().getLb().isEnabled();
-        Stream.of(keyManager(),
+        return Stream.of(keyManager(),
+                tenants(),
                 tls(),
                 extendedMetadata(),
                 localExtendedMetadata(),
                 metadataManager(),
                 authenticationProvider(),
                 (lbEnabled ? samlContextProviderLb() : samlContextProvider()),
-                samlProcessor(),
                 ssoProfileConsumer(),
                 hokProfileConsumer(),
+                samlProcessor(),
                 ssoProfile(),
                 ecpProfile(),
                 hokProfile(),
@@ -101,11 +179,74 @@ public class ServiceProviderBuilder extends
                 logout(),
                 sso(),
                 metadataGenerator())
-                .forEach(this::reApply);
+                .<SecurityConfigurerAdapter<Void, ServiceProviderBuilder>>map(this::reApply)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Initializes the configurers ordered on {@link #beforeInit()}, one by one, recording how long each one took. Any
+     * other configurer was already initialized by the builder.
+     */
+    @Override
+    protected void beforeConfigure() throws Exception {
+        for (SecurityConfigurerAdapter<Void, ServiceProviderBuilder> configurer : orderedConfigurers) {
+            startupTimings.record("init " + configurer.getClass().getSimpleName(), () -> configurer.init(this));
+        }
+    }
+
+    /**
+     * Configures the configurers ordered on {@link #beforeInit()}, after any other configurer was configured by the
+     * builder, in parallel when enabled through {@link SAMLSSOProperties#isParallelConfiguration()}, as per their
+     * dependencies on each other's shared objects, recording how long each one took.
+     */
+    private void configureOrderedConfigurers() throws Exception {
+        boolean parallel = getSharedObject(SAMLSSOProperties.class).isParallelConfiguration();
+        long start = System.nanoTime();
+        configurerTimings = Collections.unmodifiableMap(new LinkedHashMap<>(
+                ConfigurerGraph.configure(this, orderedConfigurers, parallel, startupTimings)));
+        logger.debug("SAML Service Provider configured in {} ms{}: {}", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                parallel ? " (parallel)" : "", configurerTimings);
+    }
+
+    /**
+     * Milliseconds each configurer took to configure on {@link #build()}, by configurer name, in configuration order.
+     *
+     * @return the configurer timings, empty until built.
+     */
+    public Map<String, Long> getConfigurerTimings() {
+        return configurerTimings;
+    }
+
+    /**
+     * Phases of this Service Provider startup recorded so far: the OpenSAML bootstrap, the initialization and
+     * configuration of each configurer, the metadata manager and metadata providers initialization, and, once the
+     * SAML filters are resolved, the whole build and the local metadata scan.
+     *
+     * @return the startup timings.
+     */
+    public StartupTimings getStartupTimings() {
+        return startupTimings;
+    }
+
+    /**
+     * Logs a summary of the {@link #getStartupTimings()} and, when {@link SAMLSSOProperties#isEnableEventPublisher()},
+     * publishes them as a {@link ServiceProviderStartupEvent} through the {@link ApplicationEventPublisher}.
+     */
+    public void reportStartup() {
+        ApplicationEventPublisher eventPublisher = getSharedObject(SAMLSSOProperties.class).isEnableEventPublisher()
+                ? getSharedObject(ApplicationEventPublisher.class)
+                : null;
+        startupTimings.report(this, eventPublisher);
     }
 
     @Override
     protected Void performBuild() throws Exception {
+        MetadataManager metadataManagerBean = getSharedObject(MetadataManager.class);
+        List<ObservableMetadataProvider.Observer> existingObservers = metadataManagerBean != null
+                ? new ArrayList<>(metadataManagerBean.getObservers())
+                : Collections.emptyList();
+        configureOrderedConfigurers();
+
         KeyManager keyManager = getSharedObject(KeyManager.class);
         MetadataManager metadataManager = getSharedObject(MetadataManager.class);
         SAMLContextProvider samlContextProvider = getSharedObject(SAMLContextProvider.class);
@@ -133,13 +274,19 @@ public class ServiceProviderBuilder extends
         metadataManager.setKeyManager(keyManager);
         metadataManager.setTLSConfigurer(tlsProtocolConfigurer);
         metadataManager.setRefreshRequired(true);
-        metadataManager.afterPropertiesSet();
+        startupTimings.record(MetadataManager.class.getSimpleName() + ".afterPropertiesSet", metadataManager::afterPropertiesSet);
 
         if (samlContextProvider instanceof SAMLContextProviderImpl) {
             SAMLContextProviderImpl impl = (SAMLContextProviderImpl) samlContextProvider;
             impl.setKeyManager(keyManager);
             impl.setMetadata(metadataManager);
-            impl.afterPropertiesSet();
+            startupTimings.record(SAMLContextProvider.class.getSimpleName() + ".afterPropertiesSet", impl::afterPropertiesSet);
+        }
+
+        CRLCache crlCache = getSharedObject(CRLCache.class);
+        SignatureTrustCache signatureTrustCache = getSharedObject(SignatureTrustCache.class);
+        if (crlCache != null && signatureTrustCache != null) {
+            crlCache.addListener(signatureTrustCache::clear);
         }
 
         maybePopulateBaseProfile(webSSOprofileConsumer, metadataManager, samlProcessor);
@@ -162,6 +309,11 @@ public class ServiceProviderBuilder extends
         metadataGenerator.setSamlEntryPoint(sAMLEntryPoint);
         metadataGenerator.setKeyManager(keyManager);
 
+        ServiceProviderTenants tenants = getSharedObject(ServiceProviderTenants.class);
+        if (tenants != null) {
+            startupTimings.record("register tenants", () -> tenants.register(metadataManager, metadataGenerator));
+        }
+
         authenticationProvider.setSamlLogger(samlLogger);
         authenticationProvider.setConsumer(webSSOprofileConsumer);
         authenticationProvider.setHokConsumer(hokWebSSOprofileConsumer);
@@ -211,9 +363,29 @@ public class ServiceProviderBuilder extends
         sAMLEntryPoint.setMetadata(metadataManager);
         sAMLEntryPoint.afterPropertiesSet();
 
+        unregisterObserversOnDestroy(metadataManager, existingObservers);
+
         return null;
     }
 
+    /**
+     * Registers the observers added to the metadata manager since the given snapshot, e.g. caches cleared on metadata
+     * refresh, to be removed from it on {@link #destroy()}, so that a metadata manager bean shared with reloaded
+     * Service Providers doesn't keep them, and this Service Provider, reachable.
+     *
+     * @param metadataManager   the metadata manager.
+     * @param existingObservers the observers of the metadata manager before this Service Provider was wired to it.
+     */
+    protected void unregisterObserversOnDestroy(MetadataManager metadataManager,
+                                                List<ObservableMetadataProvider.Observer> existingObservers) {
+        List<ObservableMetadataProvider.Observer> registeredObservers = metadataManager.getObservers().stream()
+                .filter(observer -> existingObservers.stream().noneMatch(existing -> existing == observer))
+                .collect(Collectors.toList());
+        if (!registeredObservers.isEmpty()) {
+            registerDisposable(() -> metadataManager.getObservers().removeAll(registeredObservers));
+        }
+    }
+
     @SneakyThrows
     private void maybePopulateBaseProfile(Object obj, MetadataManager metadataManager, SAMLProcessor samlProcessor) {
         if (obj instanceof AbstractProfileBase) {
@@ -364,6 +536,22 @@ public class ServiceProviderBuilder extends
         return this;
     }
 
+    /**
+     * Returns a {@link TenantsConfigurer} for the configuration of tenant Service Providers, hosted by this Service
+     * Provider configuration along with the default one.
+     * Alternatively use properties exposed at: {@link SAMLSSOProperties#getTenants()}.
+     * <p>
+     * Tenants share the metadata manager, and with it the Identity Provider metadata, while each one has its own
+     * entity ID, key and alias endpoints.
+     * </p>
+     *
+     * @return the {@link ServiceProviderTenants} configurer.
+     * @throws Exception Any exception during configuration.
+     */
+    public TenantsConfigurer tenants() {
+        return getOrApply(new TenantsConfigurer());
+    }
+
     /**
      * Returns a {@link SAMLProcessorConfigurer} for customization of the {@link SAMLProcessor} default
      * implementation {@link SAMLProcessorImpl}. Either use this method or {@link #samlProcessor(SAMLProcessor)}.
@@ -5,7 +5,9 @@ import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 import org.springframework.security.web.util.matcher.OrRequestMatcher;
 import org.springframework.security.web.util.matcher.RequestMatcher;
 
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -28,16 +30,24 @@ public class ServiceProviderEndpoints {
     private String defaultTargetURL;
     private String logoutURL;
     private String singleLogoutURL;
+    private Set<String> aliases = new LinkedHashSet<>();
 
     /**
      * Returns an {@link OrRequestMatcher} that contains all the different URLs configured throughout the Service
-     * Provider configuration.
+     * Provider configuration, along with the alias URLs of the SAML processing endpoints, e.g.
+     * {@code /saml/SSO/alias/acme}, for every tenant alias.
      *
      * @return
      */
     public RequestMatcher getRequestMatcher() {
-        return new OrRequestMatcher(requestMatchers(defaultFailureURL, ssoProcessingURL, ssoHoKProcessingURL, discoveryProcessingURL,
-                idpSelectionPageURL, ssoLoginURL, metadataURL, defaultTargetURL, logoutURL, singleLogoutURL));
+        List<RequestMatcher> matchers = requestMatchers(defaultFailureURL, ssoProcessingURL, ssoHoKProcessingURL, discoveryProcessingURL,
+                idpSelectionPageURL, ssoLoginURL, metadataURL, defaultTargetURL, logoutURL, singleLogoutURL);
+        aliases.forEach(alias -> matchers.addAll(requestMatchers(Stream.of(ssoProcessingURL, ssoHoKProcessingURL,
+                discoveryProcessingURL, ssoLoginURL, metadataURL, logoutURL, singleLogoutURL)
+                .filter(p -> p != null)
+                .map(p -> p + "/alias/" + alias + "/**")
+                .toArray(String[]::new))));
+        return new OrRequestMatcher(matchers);
     }
 
     private List<RequestMatcher> requestMatchers(String... patterns) {
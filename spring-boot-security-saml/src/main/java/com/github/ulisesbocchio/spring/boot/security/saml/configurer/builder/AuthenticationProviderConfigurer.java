@@ -1,9 +1,20 @@
 package com.github.ulisesbocchio.spring.boot.security.saml.configurer.builder;
 
+import com.github.ulisesbocchio.spring.boot.security.saml.async.AsyncSAMLUserDetailsService;
+import com.github.ulisesbocchio.spring.boot.security.saml.async.AsyncSAMLUserDetailsServiceAdapter;
+import com.github.ulisesbocchio.spring.boot.security.saml.async.BoundedExecutors;
 import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderBuilder;
 import com.github.ulisesbocchio.spring.boot.security.saml.properties.SAMLSSOProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.AsyncUserDetailsProperties;
 import com.github.ulisesbocchio.spring.boot.security.saml.properties.AuthenticationProviderProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.AuthorityMappingProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.UserDetailsCacheProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.user.CachingSAMLUserDetailsService;
+import com.github.ulisesbocchio.spring.boot.security.saml.user.CompactSAMLAuthenticationProvider;
+import com.github.ulisesbocchio.spring.boot.security.saml.user.SAMLAuthorityMapper;
+import com.github.ulisesbocchio.spring.boot.security.saml.user.SAMLPrincipal;
 import com.github.ulisesbocchio.spring.boot.security.saml.user.SimpleSAMLUserDetailsService;
+import org.assertj.core.util.VisibleForTesting;
 import org.springframework.security.config.annotation.SecurityConfigurerAdapter;
 import org.springframework.security.saml.SAMLAuthenticationProvider;
 import org.springframework.security.saml.userdetails.SAMLUserDetailsService;
@@ -26,6 +37,20 @@ import java.util.Optional;
  * <pre>
  *     saml.sso.authentication-provider.force-principal-as-string
  *     saml.sso.authentication-provider.exclude-credential
+ *     saml.sso.authentication-provider.compact-principal
+ *     saml.sso.authentication-provider.user-details-cache.enabled
+ *     saml.sso.authentication-provider.user-details-cache.time-to-live
+ *     saml.sso.authentication-provider.user-details-cache.max-size
+ *     saml.sso.authentication-provider.async-user-details.timeout
+ *     saml.sso.authentication-provider.async-user-details.pool-size
+ *     saml.sso.authentication-provider.async-user-details.queue-capacity
+ * </pre>
+ * <p>
+ * When no {@link SAMLUserDetailsService} is provided, the default {@link SimpleSAMLUserDetailsService} maps user
+ * attributes to authorities according to:
+ * <pre>
+ *     saml.sso.authority-mapping.default-authorities
+ *     saml.sso.authority-mapping.rules
  * </pre>
  * <p/>
  *
@@ -35,7 +60,12 @@ public class AuthenticationProviderConfigurer extends SecurityConfigurerAdapter<
 
     private Boolean excludeCredential = null;
     private Boolean forcePrincipalAsString = null;
+    private Boolean compactPrincipal = null;
+    private Boolean cacheUserDetails = null;
     private SAMLUserDetailsService userDetailsService;
+    private AsyncSAMLUserDetailsService asyncUserDetailsService;
+    private SAMLAuthorityMapper authorityMapper;
+    private AuthorityMappingProperties authorityMappingConfig;
     private SAMLAuthenticationProvider authenticationProvider;
     private AuthenticationProviderProperties config;
     private SAMLAuthenticationProvider authenticationProviderBean;
@@ -58,27 +88,73 @@ public class AuthenticationProviderConfigurer extends SecurityConfigurerAdapter<
     @Override
     public void init(ServiceProviderBuilder builder) throws Exception {
         authenticationProviderBean = builder.getSharedObject(SAMLAuthenticationProvider.class);
-        config = builder.getSharedObject(SAMLSSOProperties.class).getAuthenticationProvider();
+        SAMLSSOProperties properties = builder.getSharedObject(SAMLSSOProperties.class);
+        config = properties.getAuthenticationProvider();
+        authorityMappingConfig = properties.getAuthorityMapping();
     }
 
     @Override
     public void configure(ServiceProviderBuilder builder) throws Exception {
         if (authenticationProviderBean == null) {
             if (authenticationProvider == null) {
-                authenticationProvider = new SAMLAuthenticationProvider();
+                authenticationProvider = Optional.ofNullable(compactPrincipal).orElseGet(config::isCompactPrincipal)
+                        ? createCompactAuthenticationProvider()
+                        : createDefaultAuthenticationProvider();
                 authenticationProvider.setExcludeCredential(Optional.ofNullable(excludeCredential).
                         orElseGet(config::isExcludeCredential));
 
                 authenticationProvider.setForcePrincipalAsString(Optional.ofNullable(forcePrincipalAsString)
                         .orElseGet(config::isForcePrincipalAsString));
 
-                authenticationProvider.setUserDetails(postProcess(Optional.ofNullable(userDetailsService)
-                        .orElseGet(SimpleSAMLUserDetailsService::new)));
+                SAMLUserDetailsService userDetails = postProcess(Optional.ofNullable(userDetailsService)
+                        .orElseGet(this::createDefaultUserDetailsService));
+                if (asyncUserDetailsService != null) {
+                    AsyncSAMLUserDetailsServiceAdapter asyncUserDetails = postProcess(createAsyncUserDetailsService(
+                            asyncUserDetailsService, userDetails, config.getAsyncUserDetails()));
+                    builder.setSharedObject(AsyncSAMLUserDetailsServiceAdapter.class, asyncUserDetails);
+                    builder.registerDisposable(asyncUserDetails);
+                    userDetails = asyncUserDetails;
+                }
+                if (Optional.ofNullable(cacheUserDetails).orElseGet(() -> config.getUserDetailsCache().isEnabled())) {
+                    userDetails = createCachingUserDetailsService(userDetails, config.getUserDetailsCache());
+                }
+                authenticationProvider.setUserDetails(userDetails);
             }
             builder.setSharedObject(SAMLAuthenticationProvider.class, authenticationProvider);
         }
     }
 
+    @VisibleForTesting
+    protected SAMLAuthenticationProvider createDefaultAuthenticationProvider() {
+        return new SAMLAuthenticationProvider();
+    }
+
+    @VisibleForTesting
+    protected SAMLAuthenticationProvider createCompactAuthenticationProvider() {
+        return new CompactSAMLAuthenticationProvider();
+    }
+
+    @VisibleForTesting
+    protected SAMLUserDetailsService createDefaultUserDetailsService() {
+        SAMLAuthorityMapper mapper = Optional.ofNullable(authorityMapper)
+                .orElseGet(() -> authorityMappingConfig != null ? new SAMLAuthorityMapper(authorityMappingConfig) : null);
+        return new SimpleSAMLUserDetailsService(mapper);
+    }
+
+    @VisibleForTesting
+    protected SAMLUserDetailsService createCachingUserDetailsService(SAMLUserDetailsService delegate, UserDetailsCacheProperties cacheConfig) {
+        return new CachingSAMLUserDetailsService(delegate, cacheConfig.getTimeToLive() * 1000L, cacheConfig.getMaxSize());
+    }
+
+    @VisibleForTesting
+    protected AsyncSAMLUserDetailsServiceAdapter createAsyncUserDetailsService(AsyncSAMLUserDetailsService delegate,
+                                                                               SAMLUserDetailsService fallback,
+                                                                               AsyncUserDetailsProperties asyncConfig) {
+        return new AsyncSAMLUserDetailsServiceAdapter(delegate,
+                BoundedExecutors.newBoundedExecutor("saml-user-details", asyncConfig.getPoolSize(), asyncConfig.getQueueCapacity()),
+                asyncConfig.getTimeout(), fallback);
+    }
+
     /**
      * When false (default) the resulting Authentication object will include instance of SAMLCredential as a credential
      * value. The credential includes information related to the authentication process, received attributes and is
@@ -118,6 +194,27 @@ public class AuthenticationProviderConfigurer extends SecurityConfigurerAdapter<
         return this;
     }
 
+    /**
+     * When true the SAML Credential is reduced after authentication to a compact, immutable and serializable
+     * {@link SAMLPrincipal} holding the NameID, session indexes, IDP entity ID and attribute values, and the
+     * credential is replaced by a lightweight one rebuilt from it so that Single Logout keeps working. The principal
+     * keeps its type: the default {@link com.github.ulisesbocchio.spring.boot.security.saml.user.SAMLUserDetails}
+     * is bound to the lightweight credential with the same authorities. Useful to shrink sessions stored in
+     * replicated session stores. Default is {@code false}.
+     * <p>
+     * Alternatively use property:
+     * <pre>
+     *      saml.sso.authentication-provider.compact-principal
+     * </pre>
+     *
+     * @param compactPrincipal true to use a compact principal.
+     * @return This Configurer to keep customizing the Authentication Provider
+     */
+    public AuthenticationProviderConfigurer compactPrincipal(boolean compactPrincipal) {
+        this.compactPrincipal = compactPrincipal;
+        return this;
+    }
+
     /**
      * The user details can be optionally set and is automatically called while user SAML assertion is validated.
      *
@@ -128,4 +225,70 @@ public class AuthenticationProviderConfigurer extends SecurityConfigurerAdapter<
         this.userDetailsService = userDetailsService;
         return this;
     }
+
+    /**
+     * Loads the user details asynchronously, typically by calling remote user stores in parallel, on a bounded
+     * executor. If the user isn't loaded within the timeout, the load fails with anything other than an
+     * {@link org.springframework.security.core.AuthenticationException}, or the executor is saturated, the
+     * {@link #userDetailsService(SAMLUserDetailsService)} or the default {@link SimpleSAMLUserDetailsService} is used
+     * instead, so logins degrade to the SAML attributes only. Also makes the SSO processing filter process SAML
+     * Responses on its own bounded executor, releasing the container thread while the user is loaded.
+     * <p>
+     * Alternatively use properties:
+     * <pre>
+     *      saml.sso.authentication-provider.async-user-details.timeout
+     *      saml.sso.authentication-provider.async-user-details.pool-size
+     *      saml.sso.authentication-provider.async-user-details.queue-capacity
+     * </pre>
+     *
+     * @param asyncUserDetailsService the asynchronous user details service to use.
+     * @return This Configurer to keep customizing the Authentication Provider
+     */
+    public AuthenticationProviderConfigurer asyncUserDetailsService(AsyncSAMLUserDetailsService asyncUserDetailsService) {
+        this.asyncUserDetailsService = asyncUserDetailsService;
+        return this;
+    }
+
+    /**
+     * When true the users loaded by the {@link SAMLUserDetailsService} are cached by IDP, NameID and attributes, so
+     * that repeated logins of the same user don't hit the user store each time. Concurrent logins of the same user
+     * share a single load. Only the authorities and attributes of the default
+     * {@link com.github.ulisesbocchio.spring.boot.security.saml.user.SAMLUserDetails} are cached, each login gets user
+     * details with its own credential. A custom {@link SAMLUserDetailsService} is cached as is, so it should only be
+     * cached if what it returns doesn't depend on the credential of a single login. See
+     * {@link CachingSAMLUserDetailsService} for hit ratio metrics.
+     * Default is {@code false}.
+     * <p>
+     * Alternatively use properties:
+     * <pre>
+     *      saml.sso.authentication-provider.user-details-cache.enabled
+     *      saml.sso.authentication-provider.user-details-cache.time-to-live
+     *      saml.sso.authentication-provider.user-details-cache.max-size
+     * </pre>
+     *
+     * @param cacheUserDetails true to cache the loaded users.
+     * @return This Configurer to keep customizing the Authentication Provider
+     */
+    public AuthenticationProviderConfigurer cacheUserDetails(boolean cacheUserDetails) {
+        this.cacheUserDetails = cacheUserDetails;
+        return this;
+    }
+
+    /**
+     * Mapper of user attributes to authorities used by the default {@link SimpleSAMLUserDetailsService}. Not used if a
+     * custom {@link SAMLUserDetailsService} is provided.
+     * <p>
+     * Alternatively use properties:
+     * <pre>
+     *      saml.sso.authority-mapping.default-authorities
+     *      saml.sso.authority-mapping.rules
+     * </pre>
+     *
+     * @param authorityMapper the authority mapper to use.
+     * @return This Configurer to keep customizing the Authentication Provider
+     */
+    public AuthenticationProviderConfigurer authorityMapper(SAMLAuthorityMapper authorityMapper) {
+        this.authorityMapper = authorityMapper;
+        return this;
+    }
 }
@@ -33,6 +33,7 @@ import java.util.Optional;
  *     saml.sso.key-manager.private-key-der-location
  *     saml.sso.key-manager.store-location
  *     saml.sso.key-manager.store-pass
+ *     saml.sso.key-manager.store-type
  *     saml.sso.key-manager.key-passwords
  *     saml.sso.key-manager.default-key
  * </pre>
@@ -49,6 +50,7 @@ public class KeyManagerConfigurer extends SecurityConfigurerAdapter<Void, Servic
     private String privateKeyDERLocation;
     private String storeLocation;
     private String storePass;
+    private String storeType;
     private Map<String, String> keyPasswords;
     private String defaultKey;
     private KeyManagerProperties config;
@@ -68,7 +70,8 @@ public class KeyManagerConfigurer extends SecurityConfigurerAdapter<Void, Servic
         keyManagerBean = builder.getSharedObject(KeyManager.class);
         config = builder.getSharedObject(SAMLSSOProperties.class).getKeyManager();
         resourceLoader = builder.getSharedObject(ResourceLoader.class);
-        keystoreFactory = new KeystoreFactory(resourceLoader);
+        keystoreFactory = Optional.ofNullable(builder.getSharedObject(KeystoreFactory.class))
+                .orElseGet(() -> new KeystoreFactory(resourceLoader));
     }
 
     @Override
@@ -92,7 +95,9 @@ public class KeyManagerConfigurer extends SecurityConfigurerAdapter<Void, Servic
                         }
                     } else {
                         validateDefaultKeyAndPasswords();
-                        keyManager = new JKSKeyManager(resourceLoader.getResource(storeLocation), storePass, keyPasswords, defaultKey);
+                        storeType = Optional.ofNullable(storeType).orElseGet(config::getStoreType);
+                        keyStore = keystoreFactory.loadKeystore(storeLocation, storePass, storeType);
+                        keyManager = new JKSKeyManager(keyStore, keyPasswords, defaultKey);
                     }
                 } else {
                     keyManager = new JKSKeyManager(keyStore, keyPasswords, defaultKey);
@@ -125,7 +130,8 @@ public class KeyManagerConfigurer extends SecurityConfigurerAdapter<Void, Servic
 
     /**
      * If no {@link KeyStore} is provided, specify a PEM certificate location. Used in conjunction with
-     * {@link #privateKeyDERLocation(String)}.
+     * {@link #privateKeyDERLocation(String)}. The resource might contain a full certificate chain, leaf certificate
+     * first.
      * <p>
      * Alternatively use property:
      * <pre>
@@ -142,8 +148,8 @@ public class KeyManagerConfigurer extends SecurityConfigurerAdapter<Void, Servic
     }
 
     /**
-     * If no {@link KeyStore} is provided, specify a DER private key location. Used in conjunction with
-     * {@link #publicKeyPEMLocation(String)}.
+     * If no {@link KeyStore} is provided, specify a private key location. Used in conjunction with
+     * {@link #publicKeyPEMLocation(String)}. Both DER and PEM (PKCS#8 or PKCS#1) encoded RSA keys are accepted.
      * <p>
      * Alternatively use property:
      * <pre>
@@ -151,7 +157,7 @@ public class KeyManagerConfigurer extends SecurityConfigurerAdapter<Void, Servic
      * </pre>
      * </p>
      *
-     * @param privateKeyDERLocation the location of the DER private key.
+     * @param privateKeyDERLocation the location of the DER or PEM private key.
      * @return this configurer for further customization
      */
     public KeyManagerConfigurer privateKeyDERLocation(String privateKeyDERLocation) {
@@ -196,6 +202,25 @@ public class KeyManagerConfigurer extends SecurityConfigurerAdapter<Void, Servic
         return this;
     }
 
+    /**
+     * Specify the {@link KeyStore} type, i.e. {@code JKS} or {@code PKCS12}. If not specified, it is inferred from the
+     * {@link #storeLocation(String)} extension: {@code .p12} and {@code .pfx} are treated as PKCS12, anything else as
+     * JKS. Not relevant if using {@link #publicKeyPEMLocation(String)} and {@link #privateKeyDERLocation(String)}.
+     * <p>
+     * Alternatively use property:
+     * <pre>
+     *      saml.sso.key-manager.store-type
+     * </pre>
+     * </p>
+     *
+     * @param storeType the KeyStore type.
+     * @return this configurer for further customization
+     */
+    public KeyManagerConfigurer storeType(String storeType) {
+        this.storeType = storeType;
+        return this;
+    }
+
     /**
      * Specify the passwords of the keys stored in the {@link KeyStore}. Not relevant if using {@link
      * #publicKeyPEMLocation(String)} and
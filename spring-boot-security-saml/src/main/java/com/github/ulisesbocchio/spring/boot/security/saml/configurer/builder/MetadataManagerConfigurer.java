@@ -6,7 +6,12 @@ import com.github.ulisesbocchio.spring.boot.security.saml.properties.IdentityPro
 import com.github.ulisesbocchio.spring.boot.security.saml.properties.SAMLSSOProperties;
 import com.github.ulisesbocchio.spring.boot.security.saml.properties.ExtendedMetadataDelegateProperties;
 import com.github.ulisesbocchio.spring.boot.security.saml.properties.MetadataManagerProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.RevocationCacheProperties;
 import com.github.ulisesbocchio.spring.boot.security.saml.resource.SpringResourceWrapperOpenSAMLResource;
+import com.github.ulisesbocchio.spring.boot.security.saml.startup.StartupTimings;
+import com.github.ulisesbocchio.spring.boot.security.saml.startup.TimedExtendedMetadataDelegate;
+import com.github.ulisesbocchio.spring.boot.security.saml.trust.CRLCache;
+import com.github.ulisesbocchio.spring.boot.security.saml.trust.RevocationCachingMetadataManager;
 import lombok.SneakyThrows;
 import org.assertj.core.util.VisibleForTesting;
 import org.opensaml.saml2.metadata.provider.*;
@@ -55,6 +60,19 @@ import static java.util.stream.Collectors.toSet;
  *     saml.sso.idp.metadata-location
  * </pre>
  * </p>
+ * <p>
+ * The default implementation can also validate metadata signatures against CRLs fetched ahead of time and refreshed in
+ * the background by a {@link CRLCache}, through {@link #revocationCache(boolean)} or the following properties:
+ * <pre>
+ *     saml.sso.metadata-manager.revocation-cache.enabled
+ *     saml.sso.metadata-manager.revocation-cache.refresh-interval
+ *     saml.sso.metadata-manager.revocation-cache.timeout
+ *     saml.sso.metadata-manager.revocation-cache.stale-policy
+ *     saml.sso.metadata-manager.revocation-cache.max-staleness
+ *     saml.sso.metadata-manager.revocation-cache.max-entries
+ *     saml.sso.metadata-manager.revocation-cache.initial-fetch-timeout
+ * </pre>
+ * </p>
  *
  * @author Ulises Bocchio
  */
@@ -76,6 +94,7 @@ public class MetadataManagerConfigurer extends SecurityConfigurerAdapter<Void, S
     private String defaultIDP;
     private String hostedSPName;
     private Long refreshCheckInterval;
+    private Boolean revocationCache;
     private List<String> metadataProviderLocations = new ArrayList<>();
     private String localMetadataLocation = null;
     private MetadataManager metadataManager;
@@ -85,6 +104,8 @@ public class MetadataManagerConfigurer extends SecurityConfigurerAdapter<Void, S
     private ExtendedMetadataDelegateProperties localExtendedDelegateConfig;
     private MetadataManagerProperties managerConfig;
     private IdentityProvidersProperties idpConfig;
+    private StartupTimings startupTimings;
+    private int delegateCount;
 
     public MetadataManagerConfigurer(MetadataManager metadataManager) {
         this.metadataManager = metadataManager;
@@ -101,6 +122,7 @@ public class MetadataManagerConfigurer extends SecurityConfigurerAdapter<Void, S
         localExtendedDelegateConfig = builder.getSharedObject(SAMLSSOProperties.class).getLocalExtendedDelegate();
         managerConfig = builder.getSharedObject(SAMLSSOProperties.class).getMetadataManager();
         idpConfig = builder.getSharedObject(SAMLSSOProperties.class).getIdp();
+        startupTimings = builder.getStartupTimings();
     }
 
     @Override
@@ -110,7 +132,15 @@ public class MetadataManagerConfigurer extends SecurityConfigurerAdapter<Void, S
 
         if (metadataManagerBean == null) {
             if (metadataManager == null) {
-                metadataManager = createDefaultMetadataManager();
+                RevocationCacheProperties revocationCacheConfig = managerConfig.getRevocationCache();
+                if (Optional.ofNullable(revocationCache).orElseGet(revocationCacheConfig::isEnabled)) {
+                    CRLCache crlCache = postProcess(createDefaultCRLCache(revocationCacheConfig));
+                    builder.registerDisposable(crlCache);
+                    builder.setSharedObject(CRLCache.class, crlCache);
+                    metadataManager = createRevocationCachingMetadataManager(crlCache);
+                } else {
+                    metadataManager = createDefaultMetadataManager();
+                }
                 metadataManager.setDefaultIDP(Optional.ofNullable(defaultIDP).orElseGet(managerConfig::getDefaultIdp));
                 metadataManager.setHostedSPName(Optional.ofNullable(hostedSPName).orElseGet(managerConfig::getHostedSpName));
                 metadataManager.setRefreshCheckInterval(Optional.ofNullable(refreshCheckInterval).orElseGet(managerConfig::getRefreshCheckInterval));
@@ -165,9 +195,24 @@ public class MetadataManagerConfigurer extends SecurityConfigurerAdapter<Void, S
         return new CachingMetadataManager(null);
     }
 
+    @VisibleForTesting
+    protected CachingMetadataManager createRevocationCachingMetadataManager(CRLCache crlCache) throws MetadataProviderException {
+        return new RevocationCachingMetadataManager(null, crlCache);
+    }
+
+    @VisibleForTesting
+    protected CRLCache createDefaultCRLCache(RevocationCacheProperties config) {
+        return new CRLCache(config.getRefreshInterval() * 1000L, config.getTimeout(), config.getStalePolicy(),
+                config.getMaxStaleness() * 1000L, config.getMaxEntries(), config.getInitialFetchTimeout());
+    }
+
     @VisibleForTesting
     protected ExtendedMetadataDelegate createDefaultExtendedMetadataDelegate(MetadataProvider provider, ExtendedMetadata extendedMetadata) {
-        return new ExtendedMetadataDelegate(provider, extendedMetadata);
+        if (startupTimings == null) {
+            return new ExtendedMetadataDelegate(provider, extendedMetadata);
+        }
+        return new TimedExtendedMetadataDelegate(provider, extendedMetadata, startupTimings,
+                "initialize " + provider.getClass().getSimpleName() + " #" + (++delegateCount));
     }
 
     private MetadataProvider setParserPool(MetadataProvider provider) {
@@ -552,4 +597,23 @@ public class MetadataManagerConfigurer extends SecurityConfigurerAdapter<Void, S
         localDelegate.requireValidMetadata = requireValidMetadata;
         return this;
     }
+
+    /**
+     * Whether to validate metadata signatures against CRLs fetched ahead of time and refreshed in the background,
+     * instead of letting revocation checking, see {@link #forceMetadataRevocationCheck(boolean)}, fetch them during
+     * validation. See {@link CRLCache}.
+     * <p>
+     * Alternatively use property:
+     * <pre>
+     *      saml.sso.metadata-manager.revocation-cache.enabled
+     * </pre>
+     * </p>
+     *
+     * @param revocationCache true to enable the revocation cache.
+     * @return this configurer for further customization
+     */
+    public MetadataManagerConfigurer revocationCache(boolean revocationCache) {
+        this.revocationCache = revocationCache;
+        return this;
+    }
 }
@@ -1,13 +1,22 @@
 package com.github.ulisesbocchio.spring.boot.security.saml.configurer.builder;
 
 import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderBuilder;
+import com.github.ulisesbocchio.spring.boot.security.saml.context.CachingSAMLContextProvider;
+import com.github.ulisesbocchio.spring.boot.security.saml.context.LocalEntityCache;
 import com.github.ulisesbocchio.spring.boot.security.saml.properties.SAMLContextProviderProperties;
 import com.github.ulisesbocchio.spring.boot.security.saml.properties.SAMLSSOProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.SignatureTrustCacheProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.StatelessMessageStorageProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.storage.CookieSAMLMessageStorageFactory;
+import com.github.ulisesbocchio.spring.boot.security.saml.trust.SignatureTrustCache;
 import org.assertj.core.util.VisibleForTesting;
 import org.springframework.security.config.annotation.SecurityConfigurerAdapter;
 import org.springframework.security.saml.context.SAMLContextProvider;
 import org.springframework.security.saml.context.SAMLContextProviderImpl;
 import org.springframework.security.saml.context.SAMLContextProviderLB;
+import org.springframework.security.saml.storage.SAMLMessageStorageFactory;
+
+import java.util.Optional;
 
 /**
  * Builder configurer that takes care of configuring/customizing the {@link SAMLContextProvider} bean.
@@ -17,6 +26,36 @@ import org.springframework.security.saml.context.SAMLContextProviderLB;
  * provided explicitly to this configurer through the constructor. And if not provided through the constructor, a
  * default implementation is instantiated.
  * </p>
+ * <p>
+ * The default implementation keeps outgoing SAML messages in the HTTP Session unless a custom
+ * {@link SAMLMessageStorageFactory} is provided, or stateless message storage is enabled, in which case a
+ * {@link CookieSAMLMessageStorageFactory} is used. The stateless storage is configurable through the following
+ * properties:
+ * <pre>
+ *     saml.sso.context-provider.stateless-storage.enabled
+ *     saml.sso.context-provider.stateless-storage.secret
+ *     saml.sso.context-provider.stateless-storage.cookie-name
+ *     saml.sso.context-provider.stateless-storage.cookie-path
+ *     saml.sso.context-provider.stateless-storage.max-age
+ *     saml.sso.context-provider.stateless-storage.secure
+ * </pre>
+ * </p>
+ * <p>
+ * The default implementation can also cache the trust decisions taken for the signing certificates of the IDPs, see
+ * {@link SignatureTrustCache}, through {@link #signatureTrustCache(boolean)} or the following properties:
+ * <pre>
+ *     saml.sso.context-provider.trust-cache.enabled
+ *     saml.sso.context-provider.trust-cache.max-entries
+ *     saml.sso.context-provider.trust-cache.max-age
+ * </pre>
+ * </p>
+ * <p>
+ * And it can cache the local entity resolved for every request per alias, see {@link LocalEntityCache}, through
+ * {@link #localEntityCache(boolean)} or the following property:
+ * <pre>
+ *     saml.sso.context-provider.local-entity-cache
+ * </pre>
+ * </p>
  *
  * @author Ulises Bocchio
  */
@@ -24,6 +63,11 @@ public class SAMLContextProviderConfigurer extends SecurityConfigurerAdapter<Voi
 
     private SAMLContextProvider samlContextProvider;
     private SAMLContextProviderProperties samlContextProviderProperties;
+    private SAMLMessageStorageFactory messageStorageFactory;
+    private Boolean statelessMessageStorage;
+    private SignatureTrustCacheProperties trustCacheConfig;
+    private Boolean signatureTrustCache;
+    private Boolean localEntityCache;
 
     public SAMLContextProviderConfigurer(SAMLContextProvider samlContextProvider) {
 
@@ -36,7 +80,9 @@ public class SAMLContextProviderConfigurer extends SecurityConfigurerAdapter<Voi
 
     @Override
     public void init(ServiceProviderBuilder builder) throws Exception {
-        samlContextProviderProperties = builder.getSharedObject(SAMLSSOProperties.class).getContextProvider();
+        SAMLSSOProperties properties = builder.getSharedObject(SAMLSSOProperties.class);
+        samlContextProviderProperties = properties.getContextProvider();
+        trustCacheConfig = properties.getContextProvider().getTrustCache();
     }
 
     @Override
@@ -44,7 +90,32 @@ public class SAMLContextProviderConfigurer extends SecurityConfigurerAdapter<Voi
         SAMLContextProvider samlContextProviderBean = builder.getSharedObject(SAMLContextProvider.class);
         if (samlContextProviderBean == null && !samlContextProviderProperties.getLb().isEnabled()) {
             if (samlContextProvider == null) {
-                samlContextProvider = createDefaultSamlContextProvider();
+                boolean trustCacheEnabled = Optional.ofNullable(signatureTrustCache).orElseGet(trustCacheConfig::isEnabled);
+                boolean localEntityCacheEnabled = Optional.ofNullable(localEntityCache).orElseGet(samlContextProviderProperties::isLocalEntityCache);
+                if (trustCacheEnabled || localEntityCacheEnabled) {
+                    CachingSAMLContextProvider cachingProvider = createCachingSamlContextProvider();
+                    if (trustCacheEnabled) {
+                        SignatureTrustCache trustCache = createDefaultSignatureTrustCache(trustCacheConfig);
+                        cachingProvider.setSignatureTrustCache(trustCache);
+                        builder.setSharedObject(SignatureTrustCache.class, trustCache);
+                    }
+                    if (localEntityCacheEnabled) {
+                        LocalEntityCache entityCache = createDefaultLocalEntityCache();
+                        cachingProvider.setLocalEntityCache(entityCache);
+                        builder.setSharedObject(LocalEntityCache.class, entityCache);
+                    }
+                    samlContextProvider = cachingProvider;
+                } else {
+                    samlContextProvider = createDefaultSamlContextProvider();
+                }
+                StatelessMessageStorageProperties storageConfig = samlContextProviderProperties.getStatelessStorage();
+                if (messageStorageFactory == null && Optional.ofNullable(statelessMessageStorage).orElseGet(storageConfig::isEnabled)) {
+                    messageStorageFactory = createDefaultStatelessStorageFactory(storageConfig);
+                }
+                if (messageStorageFactory != null && samlContextProvider instanceof SAMLContextProviderImpl) {
+                    ((SAMLContextProviderImpl) samlContextProvider).setStorageFactory(messageStorageFactory);
+                    builder.setSharedObject(SAMLMessageStorageFactory.class, messageStorageFactory);
+                }
             }
             builder.setSharedObject(SAMLContextProvider.class, samlContextProvider);
         }
@@ -54,4 +125,92 @@ public class SAMLContextProviderConfigurer extends SecurityConfigurerAdapter<Voi
     protected SAMLContextProvider createDefaultSamlContextProvider() {
         return new SAMLContextProviderImpl();
     }
+
+    @VisibleForTesting
+    protected CachingSAMLContextProvider createCachingSamlContextProvider() {
+        return new CachingSAMLContextProvider();
+    }
+
+    @VisibleForTesting
+    protected SignatureTrustCache createDefaultSignatureTrustCache(SignatureTrustCacheProperties config) {
+        return new SignatureTrustCache(config.getMaxEntries(), config.getMaxAge() * 1000L);
+    }
+
+    @VisibleForTesting
+    protected LocalEntityCache createDefaultLocalEntityCache() {
+        return new LocalEntityCache();
+    }
+
+    @VisibleForTesting
+    protected SAMLMessageStorageFactory createDefaultStatelessStorageFactory(StatelessMessageStorageProperties config) {
+        return new CookieSAMLMessageStorageFactory(config);
+    }
+
+    /**
+     * Provide a specific {@link SAMLMessageStorageFactory} for the default {@link SAMLContextProvider}. Takes
+     * precedence over {@link #statelessMessageStorage(boolean)}.
+     *
+     * @param messageStorageFactory the message storage factory.
+     * @return this configurer for further customization
+     */
+    public SAMLContextProviderConfigurer messageStorageFactory(SAMLMessageStorageFactory messageStorageFactory) {
+        this.messageStorageFactory = messageStorageFactory;
+        return this;
+    }
+
+    /**
+     * Whether to store outgoing SAML messages in encrypted cookies instead of the HTTP Session, so that no session is
+     * created until authentication succeeds. See {@link CookieSAMLMessageStorageFactory}.
+     * <p>
+     * Alternatively use property:
+     * <pre>
+     *      saml.sso.context-provider.stateless-storage.enabled
+     * </pre>
+     * </p>
+     *
+     * @param statelessMessageStorage true to enable stateless message storage.
+     * @return this configurer for further customization
+     */
+    public SAMLContextProviderConfigurer statelessMessageStorage(boolean statelessMessageStorage) {
+        this.statelessMessageStorage = statelessMessageStorage;
+        return this;
+    }
+
+    /**
+     * Whether to cache the trust decisions taken for the signing certificates of the IDPs, so that only the first
+     * signature of each certificate goes through metadata credential resolution and certificate path building. The
+     * cache is cleared on metadata refresh and whenever a new CRL is fetched. See {@link SignatureTrustCache}.
+     * <p>
+     * Alternatively use property:
+     * <pre>
+     *      saml.sso.context-provider.trust-cache.enabled
+     * </pre>
+     * </p>
+     *
+     * @param signatureTrustCache true to enable the signature trust cache.
+     * @return this configurer for further customization
+     */
+    public SAMLContextProviderConfigurer signatureTrustCache(boolean signatureTrustCache) {
+        this.signatureTrustCache = signatureTrustCache;
+        return this;
+    }
+
+    /**
+     * Whether to cache the local entity resolved for every request per alias: entity and role descriptors, extended
+     * metadata, and signing, decryption and TLS credentials. The cache is cleared on metadata refresh. See
+     * {@link LocalEntityCache}.
+     * <p>
+     * Alternatively use property:
+     * <pre>
+     *      saml.sso.context-provider.local-entity-cache
+     * </pre>
+     * </p>
+     *
+     * @param localEntityCache true to enable the local entity cache.
+     * @return this configurer for further customization
+     */
+    public SAMLContextProviderConfigurer localEntityCache(boolean localEntityCache) {
+        this.localEntityCache = localEntityCache;
+        return this;
+    }
 }
@@ -1,14 +1,26 @@
 package com.github.ulisesbocchio.spring.boot.security.saml.configurer.builder;
 
 import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderBuilder;
+import com.github.ulisesbocchio.spring.boot.security.saml.context.CachingSAMLContextProviderLB;
+import com.github.ulisesbocchio.spring.boot.security.saml.context.ForwardedHeadersSAMLContextProvider;
+import com.github.ulisesbocchio.spring.boot.security.saml.context.LocalEntityCache;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.ForwardedHeadersProperties;
 import com.github.ulisesbocchio.spring.boot.security.saml.properties.SAMLContextProviderLBProperties;
 import com.github.ulisesbocchio.spring.boot.security.saml.properties.SAMLContextProviderProperties;
 import com.github.ulisesbocchio.spring.boot.security.saml.properties.SAMLSSOProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.SignatureTrustCacheProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.StatelessMessageStorageProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.storage.CookieSAMLMessageStorageFactory;
+import com.github.ulisesbocchio.spring.boot.security.saml.trust.SignatureTrustCache;
 import org.assertj.core.util.VisibleForTesting;
 import org.springframework.security.config.annotation.SecurityConfigurerAdapter;
 import org.springframework.security.saml.context.SAMLContextProvider;
+import org.springframework.security.saml.context.SAMLContextProviderImpl;
 import org.springframework.security.saml.context.SAMLContextProviderLB;
+import org.springframework.security.saml.storage.SAMLMessageStorageFactory;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -30,6 +42,39 @@ import java.util.Optional;
  *     saml.sso.context-provider.lb.include-server-port-in-request-url
  *     saml.sso.context-provider.lb.server-port
  *     saml.sso.context-provider.lb.context-path
+ *     saml.sso.context-provider.stateless-storage.enabled
+ *     saml.sso.context-provider.stateless-storage.secret
+ *     saml.sso.context-provider.stateless-storage.cookie-name
+ *     saml.sso.context-provider.stateless-storage.cookie-path
+ *     saml.sso.context-provider.stateless-storage.max-age
+ *     saml.sso.context-provider.stateless-storage.secure
+ * </pre>
+ * </p>
+ * <p>
+ * The default implementation can also cache the trust decisions taken for the signing certificates of the IDPs, see
+ * {@link SignatureTrustCache}, through {@link #signatureTrustCache(boolean)} or the following properties:
+ * <pre>
+ *     saml.sso.context-provider.trust-cache.enabled
+ *     saml.sso.context-provider.trust-cache.max-entries
+ *     saml.sso.context-provider.trust-cache.max-age
+ * </pre>
+ * </p>
+ * <p>
+ * And it can cache the local entity resolved for every request per alias, see {@link LocalEntityCache}, through
+ * {@link #localEntityCache(boolean)} or the following property:
+ * <pre>
+ *     saml.sso.context-provider.local-entity-cache
+ * </pre>
+ * </p>
+ * <p>
+ * Instead of fixed LB values, scheme, server name, port and context path can be derived on every request from
+ * trusted forwarded headers, see {@link ForwardedHeadersSAMLContextProvider}, through
+ * {@link #forwardedHeaders(String...)} or the following properties:
+ * <pre>
+ *     saml.sso.context-provider.lb.forwarded-headers.enabled
+ *     saml.sso.context-provider.lb.forwarded-headers.allowed-hosts
+ *     saml.sso.context-provider.lb.forwarded-headers.allowed-prefixes
+ *     saml.sso.context-provider.lb.forwarded-headers.max-cached-hosts
  * </pre>
  * </p>
  *
@@ -44,7 +89,16 @@ public class SAMLContextProviderLBConfigurer extends SecurityConfigurerAdapter<V
     private Boolean includeServerPortInRequestURL;
     private Integer serverPort;
     private String contextPath;
+    private SAMLContextProviderProperties contextProviderConfig;
     private SAMLContextProviderLBProperties config;
+    private StatelessMessageStorageProperties storageConfig;
+    private SAMLMessageStorageFactory messageStorageFactory;
+    private Boolean statelessMessageStorage;
+    private SignatureTrustCacheProperties trustCacheConfig;
+    private Boolean signatureTrustCache;
+    private Boolean localEntityCache;
+    private Boolean forwardedHeaders;
+    private List<String> allowedHosts;
 
     public SAMLContextProviderLBConfigurer() {
 
@@ -56,22 +110,64 @@ public class SAMLContextProviderLBConfigurer extends SecurityConfigurerAdapter<V
 
     @Override
     public void init(ServiceProviderBuilder builder) throws Exception {
-        config = builder.getSharedObject(SAMLSSOProperties.class).getContextProvider().getLb();
+        SAMLSSOProperties properties = builder.getSharedObject(SAMLSSOProperties.class);
+        contextProviderConfig = properties.getContextProvider();
+        trustCacheConfig = properties.getContextProvider().getTrustCache();
+        config = contextProviderConfig.getLb();
+        storageConfig = contextProviderConfig.getStatelessStorage();
     }
 
     @Override
     public void configure(ServiceProviderBuilder builder) throws Exception {
         SAMLContextProvider samlContextProviderBean = builder.getSharedObject(SAMLContextProvider.class);
         if (samlContextProviderBean == null) {
-            if (samlContextProvider == null) {
-                samlContextProvider = createDefaultSamlContextProviderLB();
-                samlContextProvider.setScheme(Optional.ofNullable(scheme).orElseGet(config::getScheme));
-                samlContextProvider.setServerName(Optional.ofNullable(serverName).orElseGet(config::getServerName));
-                samlContextProvider.setIncludeServerPortInRequestURL(Optional.ofNullable(includeServerPortInRequestURL).orElseGet(config::getIncludeServerPortInRequestUrl));
-                samlContextProvider.setServerPort(Optional.ofNullable(serverPort).orElseGet(config::getServerPort));
-                samlContextProvider.setContextPath(Optional.ofNullable(contextPath).orElseGet(config::getContextPath));
+            SAMLContextProviderImpl provider = samlContextProvider;
+            if (provider == null) {
+                SignatureTrustCache trustCache = null;
+                if (Optional.ofNullable(signatureTrustCache).orElseGet(trustCacheConfig::isEnabled)) {
+                    trustCache = createDefaultSignatureTrustCache(trustCacheConfig);
+                    builder.setSharedObject(SignatureTrustCache.class, trustCache);
+                }
+                LocalEntityCache entityCache = null;
+                if (Optional.ofNullable(localEntityCache).orElseGet(contextProviderConfig::isLocalEntityCache)) {
+                    entityCache = createDefaultLocalEntityCache();
+                    builder.setSharedObject(LocalEntityCache.class, entityCache);
+                }
+                ForwardedHeadersProperties forwardedConfig = config.getForwardedHeaders();
+                if (Optional.ofNullable(forwardedHeaders).orElseGet(forwardedConfig::isEnabled)) {
+                    ForwardedHeadersSAMLContextProvider forwardedProvider = createForwardedHeadersSamlContextProvider();
+                    forwardedProvider.setAllowedHosts(Optional.ofNullable(allowedHosts).orElseGet(forwardedConfig::getAllowedHosts));
+                    forwardedProvider.setAllowedPrefixes(forwardedConfig.getAllowedPrefixes());
+                    forwardedProvider.setMaxCachedHosts(forwardedConfig.getMaxCachedHosts());
+                    forwardedProvider.setSignatureTrustCache(trustCache);
+                    forwardedProvider.setLocalEntityCache(entityCache);
+                    provider = forwardedProvider;
+                } else {
+                    SAMLContextProviderLB lbProvider;
+                    if (trustCache != null || entityCache != null) {
+                        CachingSAMLContextProviderLB cachingProvider = createCachingSamlContextProviderLB();
+                        cachingProvider.setSignatureTrustCache(trustCache);
+                        cachingProvider.setLocalEntityCache(entityCache);
+                        lbProvider = cachingProvider;
+                    } else {
+                        lbProvider = createDefaultSamlContextProviderLB();
+                    }
+                    lbProvider.setScheme(Optional.ofNullable(scheme).orElseGet(config::getScheme));
+                    lbProvider.setServerName(Optional.ofNullable(serverName).orElseGet(config::getServerName));
+                    lbProvider.setIncludeServerPortInRequestURL(Optional.ofNullable(includeServerPortInRequestURL).orElseGet(config::getIncludeServerPortInRequestUrl));
+                    lbProvider.setServerPort(Optional.ofNullable(serverPort).orElseGet(config::getServerPort));
+                    lbProvider.setContextPath(Optional.ofNullable(contextPath).orElseGet(config::getContextPath));
+                    provider = lbProvider;
+                }
+                if (messageStorageFactory == null && Optional.ofNullable(statelessMessageStorage).orElseGet(storageConfig::isEnabled)) {
+                    messageStorageFactory = createDefaultStatelessStorageFactory(storageConfig);
+                }
+                if (messageStorageFactory != null) {
+                    provider.setStorageFactory(messageStorageFactory);
+                    builder.setSharedObject(SAMLMessageStorageFactory.class, messageStorageFactory);
+                }
             }
-            builder.setSharedObject(SAMLContextProvider.class, samlContextProvider);
+            builder.setSharedObject(SAMLContextProvider.class, provider);
         }
     }
 
@@ -80,6 +176,61 @@ public class SAMLContextProviderLBConfigurer extends SecurityConfigurerAdapter<V
         return new SAMLContextProviderLB();
     }
 
+    @VisibleForTesting
+    protected CachingSAMLContextProviderLB createCachingSamlContextProviderLB() {
+        return new CachingSAMLContextProviderLB();
+    }
+
+    @VisibleForTesting
+    protected ForwardedHeadersSAMLContextProvider createForwardedHeadersSamlContextProvider() {
+        return new ForwardedHeadersSAMLContextProvider();
+    }
+
+    @VisibleForTesting
+    protected SignatureTrustCache createDefaultSignatureTrustCache(SignatureTrustCacheProperties config) {
+        return new SignatureTrustCache(config.getMaxEntries(), config.getMaxAge() * 1000L);
+    }
+
+    @VisibleForTesting
+    protected LocalEntityCache createDefaultLocalEntityCache() {
+        return new LocalEntityCache();
+    }
+
+    @VisibleForTesting
+    protected SAMLMessageStorageFactory createDefaultStatelessStorageFactory(StatelessMessageStorageProperties config) {
+        return new CookieSAMLMessageStorageFactory(config);
+    }
+
+    /**
+     * Provide a specific {@link SAMLMessageStorageFactory} for the default {@link SAMLContextProviderLB}. Takes
+     * precedence over {@link #statelessMessageStorage(boolean)}.
+     *
+     * @param messageStorageFactory the message storage factory.
+     * @return this configurer for further customization
+     */
+    public SAMLContextProviderLBConfigurer messageStorageFactory(SAMLMessageStorageFactory messageStorageFactory) {
+        this.messageStorageFactory = messageStorageFactory;
+        return this;
+    }
+
+    /**
+     * Whether to store outgoing SAML messages in encrypted cookies instead of the HTTP Session, so that no session is
+     * created until authentication succeeds. See {@link CookieSAMLMessageStorageFactory}.
+     * <p>
+     * Alternatively use property:
+     * <pre>
+     *      saml.sso.context-provider.stateless-storage.enabled
+     * </pre>
+     * </p>
+     *
+     * @param statelessMessageStorage true to enable stateless message storage.
+     * @return this configurer for further customization
+     */
+    public SAMLContextProviderLBConfigurer statelessMessageStorage(boolean statelessMessageStorage) {
+        this.statelessMessageStorage = statelessMessageStorage;
+        return this;
+    }
+
     /**
      * Scheme of the LB server - either http or https.
      * <p>
@@ -166,4 +317,63 @@ public class SAMLContextProviderLBConfigurer extends SecurityConfigurerAdapter<V
         this.contextPath = contextPath;
         return this;
     }
+
+    /**
+     * Whether to cache the trust decisions taken for the signing certificates of the IDPs, so that only the first
+     * signature of each certificate goes through metadata credential resolution and certificate path building. The
+     * cache is cleared on metadata refresh and whenever a new CRL is fetched. See {@link SignatureTrustCache}.
+     * <p>
+     * Alternatively use property:
+     * <pre>
+     *      saml.sso.context-provider.trust-cache.enabled
+     * </pre>
+     * </p>
+     *
+     * @param signatureTrustCache true to enable the signature trust cache.
+     * @return this configurer for further customization
+     */
+    public SAMLContextProviderLBConfigurer signatureTrustCache(boolean signatureTrustCache) {
+        this.signatureTrustCache = signatureTrustCache;
+        return this;
+    }
+
+    /**
+     * Whether to cache the local entity resolved for every request per alias: entity and role descriptors, extended
+     * metadata, and signing, decryption and TLS credentials. The cache is cleared on metadata refresh. See
+     * {@link LocalEntityCache}.
+     * <p>
+     * Alternatively use property:
+     * <pre>
+     *      saml.sso.context-provider.local-entity-cache
+     * </pre>
+     * </p>
+     *
+     * @param localEntityCache true to enable the local entity cache.
+     * @return this configurer for further customization
+     */
+    public SAMLContextProviderLBConfigurer localEntityCache(boolean localEntityCache) {
+        this.localEntityCache = localEntityCache;
+        return this;
+    }
+
+    /**
+     * Derive scheme, server name, port and context path of every request from the {@code Forwarded} or
+     * {@code X-Forwarded-*} headers, trusted only for the given hosts, instead of the fixed LB values, so that a single
+     * instance serves many public host names. See {@link ForwardedHeadersSAMLContextProvider}.
+     * <p>
+     * Alternatively use properties:
+     * <pre>
+     *      saml.sso.context-provider.lb.forwarded-headers.enabled
+     *      saml.sso.context-provider.lb.forwarded-headers.allowed-hosts
+     * </pre>
+     * </p>
+     *
+     * @param allowedHosts host names the forwarded headers are trusted for, e.g. sp.example.com or *.example.com.
+     * @return this configurer for further customization
+     */
+    public SAMLContextProviderLBConfigurer forwardedHeaders(String... allowedHosts) {
+        this.forwardedHeaders = true;
+        this.allowedHosts = Arrays.asList(allowedHosts);
+        return this;
+    }
 }
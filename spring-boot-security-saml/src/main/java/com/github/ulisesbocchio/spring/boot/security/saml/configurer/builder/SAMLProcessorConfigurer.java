@@ -1,23 +1,37 @@
 package com.github.ulisesbocchio.spring.boot.security.saml.configurer.builder;
 
 import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderBuilder;
+import com.github.ulisesbocchio.spring.boot.security.saml.processor.LazyMessageEncoder;
+import com.github.ulisesbocchio.spring.boot.security.saml.processor.LimitedHTTPPostDecoder;
+import com.github.ulisesbocchio.spring.boot.security.saml.processor.LimitedHTTPRedirectDeflateDecoder;
+import com.github.ulisesbocchio.spring.boot.security.saml.processor.PooledHTTPRedirectDeflateEncoder;
+import com.github.ulisesbocchio.spring.boot.security.saml.processor.PooledHttpConnectionManager;
+import com.github.ulisesbocchio.spring.boot.security.saml.processor.SecurityPolicySAMLProcessor;
+import com.github.ulisesbocchio.spring.boot.security.saml.processor.StaticHTTPPostEncoder;
+import com.github.ulisesbocchio.spring.boot.security.saml.processor.UrlConnectionArtifactResolutionProfile;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.HttpClientProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.HttpClientProperties.Transport;
 import com.github.ulisesbocchio.spring.boot.security.saml.properties.SAMLProcessorProperties;
 import com.github.ulisesbocchio.spring.boot.security.saml.properties.SAMLSSOProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.websso.FailFastWebSSOProfileConsumer;
 import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.HttpConnectionManager;
-import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.params.HttpClientParams;
-import org.apache.commons.httpclient.params.HttpConnectionParams;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import org.apache.velocity.app.VelocityEngine;
 import org.assertj.core.util.VisibleForTesting;
+import org.opensaml.ws.security.SecurityPolicyRule;
 import org.opensaml.xml.parse.ParserPool;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.security.config.annotation.SecurityConfigurerAdapter;
 import org.springframework.security.saml.processor.*;
 import org.springframework.security.saml.util.VelocityFactory;
 import org.springframework.security.saml.websso.ArtifactResolutionProfile;
+import org.springframework.security.saml.websso.ArtifactResolutionProfileBase;
 import org.springframework.security.saml.websso.ArtifactResolutionProfileImpl;
+import org.springframework.security.saml.websso.WebSSOProfileConsumer;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
@@ -41,14 +55,41 @@ import java.util.Optional;
  *     saml.sso.saml-processor.artifact
  *     saml.sso.saml-processor.soap
  *     saml.sso.saml-processor.paos
+ *     saml.sso.saml-processor.static-post-form
+ *     saml.sso.saml-processor.max-message-size
+ *     saml.sso.saml-processor.max-inflate-ratio
+ *     saml.sso.saml-processor.http-client.transport
+ *     saml.sso.saml-processor.http-client.max-total-connections
+ *     saml.sso.saml-processor.http-client.max-connections-per-host
+ *     saml.sso.saml-processor.http-client.connect-timeout
+ *     saml.sso.saml-processor.http-client.read-timeout
+ *     saml.sso.saml-processor.http-client.pool-timeout
+ *     saml.sso.saml-processor.http-client.idle-connection-timeout
+ *     saml.sso.saml-processor.http-client.stale-checking-enabled
  * </pre>
  * </p>
+ * <p>
+ * The connection manager of the default Artifact binding is shared as a {@link PooledHttpConnectionManager}, exposing
+ * pool utilization metrics. Alternatively, artifacts can be resolved with the JDK HTTP client through an
+ * {@link UrlConnectionArtifactResolutionProfile}.
+ * </p>
+ * <p>
+ * The default Redirect binding encodes messages with a {@link PooledHTTPRedirectDeflateEncoder}, destroyed along with
+ * the Service Provider. The default POST and Redirect bindings decode messages with a {@link LimitedHTTPPostDecoder}
+ * and a {@link LimitedHTTPRedirectDeflateDecoder}, that reject oversized messages before parsing them. The default POST
+ * and Artifact bindings encode messages through a {@link LazyMessageEncoder}, so Velocity is only initialized once a
+ * message is sent with a Velocity template.
+ * </p>
+ * <p>
+ * When the {@link WebSSOProfileConsumer} is a {@link FailFastWebSSOProfileConsumer} with fail fast enabled, the default
+ * SAMLProcessor is a {@link SecurityPolicySAMLProcessor} that evaluates its inexpensive checks before the signature
+ * rules of the bindings.
+ * </p>
  *
  * @author Ulises Bocchio
  */
 public class SAMLProcessorConfigurer extends SecurityConfigurerAdapter<Void, ServiceProviderBuilder> {
 
-    private static VelocityEngine velocityEngine;
     private SAMLProcessor sAMLProcessor;
     private SAMLProcessor sAMLProcessorBean;
     private Boolean redirect = null;
@@ -56,6 +97,9 @@ public class SAMLProcessorConfigurer extends SecurityConfigurerAdapter<Void, Ser
     private Boolean artifact = null;
     private Boolean soap = null;
     private Boolean paos = null;
+    private Boolean staticPostForm = null;
+    private Long maxMessageSize = null;
+    private Integer maxInflateRatio = null;
 
     private HTTPRedirectDeflateBinding redirectBinding;
     private HTTPPostBinding postBinding;
@@ -89,7 +133,11 @@ public class SAMLProcessorConfigurer extends SecurityConfigurerAdapter<Void, Ser
                 if (redirectBinding != null) {
                     bindings.add(redirectBinding);
                 } else if (Optional.ofNullable(redirect).orElseGet(processorConfig::isRedirect)) {
-                    bindings.add(postProcess(createDefaultRedirectBinding()));
+                    HTTPRedirectDeflateBinding binding = postProcess(createDefaultRedirectBinding());
+                    if (binding.getMessageEncoder() instanceof DisposableBean) {
+                        builder.registerDisposable((DisposableBean) binding.getMessageEncoder());
+                    }
+                    bindings.add(binding);
                 }
 
                 if (postBinding != null) {
@@ -115,7 +163,14 @@ public class SAMLProcessorConfigurer extends SecurityConfigurerAdapter<Void, Ser
                 } else if (Optional.ofNullable(paos).orElseGet(processorConfig::isPaos)) {
                     bindings.add(postProcess(createDefaultPaosBinding()));
                 }
-                sAMLProcessor = createDefaultSamlProcessor(bindings);
+                WebSSOProfileConsumer consumer = builder.getSharedObject(WebSSOProfileConsumer.class);
+                if (consumer instanceof FailFastWebSSOProfileConsumer
+                        && ((FailFastWebSSOProfileConsumer) consumer).isFailFast()) {
+                    SecurityPolicyRule rule = ((FailFastWebSSOProfileConsumer) consumer).getSecurityPolicyRule();
+                    sAMLProcessor = createSecurityPolicySamlProcessor(bindings, Collections.singletonList(rule));
+                } else {
+                    sAMLProcessor = createDefaultSamlProcessor(bindings);
+                }
             }
 
             builder.setSharedObject(SAMLProcessor.class, sAMLProcessor);
@@ -134,24 +189,72 @@ public class SAMLProcessorConfigurer extends SecurityConfigurerAdapter<Void, Ser
 
     @VisibleForTesting
     protected HTTPArtifactBinding createDefaultArtifactBinding(ServiceProviderBuilder builder) {
-        HttpClientParams params = new HttpClientParams();
-        params.setIntParameter(HttpConnectionParams.CONNECTION_TIMEOUT, 60000);
-        HttpClient httpClient = new HttpClient(params, new MultiThreadedHttpConnectionManager());
-        ArtifactResolutionProfileImpl artifactResolutionProfile = new ArtifactResolutionProfileImpl(httpClient);
+        HttpClientProperties httpClientConfig = processorConfig.getHttpClient();
+        ArtifactResolutionProfileBase artifactResolutionProfile = httpClientConfig.getTransport() == Transport.URL_CONNECTION
+                ? createUrlConnectionArtifactResolutionProfile(httpClientConfig)
+                : createHttpClientArtifactResolutionProfile(builder, httpClientConfig);
         builder.setSharedObject(ArtifactResolutionProfile.class, artifactResolutionProfile);
         HTTPSOAP11Binding soapBinding = new HTTPSOAP11Binding(parserPool);
         artifactResolutionProfile.setProcessor(new SAMLProcessorImpl(soapBinding));
-        return new HTTPArtifactBinding(parserPool, getVelocityEngine(), artifactResolutionProfile);
+        // the stock encoder only keeps the engine, which is created once a message is sent through the binding
+        HTTPArtifactBinding binding = new HTTPArtifactBinding(parserPool, null, artifactResolutionProfile);
+        LazyMessageEncoder encoder = new LazyMessageEncoder(() ->
+                new HTTPArtifactBinding(parserPool, getVelocityEngine(), artifactResolutionProfile)
+                        .getMessageEncoder());
+        return new HTTPArtifactBinding(binding.getMessageDecoder(), encoder);
+    }
+
+    private ArtifactResolutionProfileBase createHttpClientArtifactResolutionProfile(ServiceProviderBuilder builder,
+                                                                                    HttpClientProperties httpClientConfig) {
+        PooledHttpConnectionManager connectionManager = postProcess(createDefaultHttpConnectionManager(httpClientConfig));
+        builder.registerDisposable(connectionManager);
+        builder.setSharedObject(PooledHttpConnectionManager.class, connectionManager);
+        HttpClientParams params = new HttpClientParams();
+        params.setConnectionManagerTimeout(httpClientConfig.getPoolTimeout());
+        params.setSoTimeout(httpClientConfig.getReadTimeout());
+        return new ArtifactResolutionProfileImpl(new HttpClient(params, connectionManager));
+    }
+
+    @VisibleForTesting
+    protected UrlConnectionArtifactResolutionProfile createUrlConnectionArtifactResolutionProfile(HttpClientProperties httpClientConfig) {
+        return new UrlConnectionArtifactResolutionProfile(httpClientConfig.getConnectTimeout(), httpClientConfig.getReadTimeout());
+    }
+
+    @VisibleForTesting
+    protected PooledHttpConnectionManager createDefaultHttpConnectionManager(HttpClientProperties httpClientConfig) {
+        PooledHttpConnectionManager connectionManager = new PooledHttpConnectionManager();
+        HttpConnectionManagerParams params = connectionManager.getParams();
+        params.setMaxTotalConnections(httpClientConfig.getMaxTotalConnections());
+        params.setDefaultMaxConnectionsPerHost(httpClientConfig.getMaxConnectionsPerHost());
+        params.setConnectionTimeout(httpClientConfig.getConnectTimeout());
+        params.setSoTimeout(httpClientConfig.getReadTimeout());
+        params.setStaleCheckingEnabled(httpClientConfig.isStaleCheckingEnabled());
+        if (httpClientConfig.getIdleConnectionTimeout() > 0) {
+            connectionManager.evictIdleConnections(httpClientConfig.getIdleConnectionTimeout(),
+                    Math.max(httpClientConfig.getIdleConnectionTimeout() / 2, 1000));
+        }
+        return connectionManager;
     }
 
     @VisibleForTesting
     protected HTTPPostBinding createDefaultPostBinding() {
-        return new HTTPPostBinding(parserPool, getVelocityEngine());
+        LimitedHTTPPostDecoder decoder = new LimitedHTTPPostDecoder(parserPool, getMaxMessageSize());
+        if (Optional.ofNullable(staticPostForm).orElseGet(processorConfig::isStaticPostForm)) {
+            return new HTTPPostBinding(parserPool, decoder, new StaticHTTPPostEncoder());
+        }
+        return new HTTPPostBinding(parserPool, decoder, new LazyMessageEncoder(() ->
+                new HTTPPostBinding(parserPool, getVelocityEngine()).getMessageEncoder()));
     }
 
     @VisibleForTesting
     protected HTTPRedirectDeflateBinding createDefaultRedirectBinding() {
-        return new HTTPRedirectDeflateBinding(parserPool);
+        int inflateRatio = Optional.ofNullable(maxInflateRatio).orElseGet(processorConfig::getMaxInflateRatio);
+        return new HTTPRedirectDeflateBinding(new LimitedHTTPRedirectDeflateDecoder(parserPool, getMaxMessageSize(), inflateRatio),
+                new PooledHTTPRedirectDeflateEncoder());
+    }
+
+    private long getMaxMessageSize() {
+        return Optional.ofNullable(maxMessageSize).orElseGet(processorConfig::getMaxMessageSize);
     }
 
     @VisibleForTesting
@@ -159,11 +262,14 @@ public class SAMLProcessorConfigurer extends SecurityConfigurerAdapter<Void, Ser
         return new SAMLProcessorImpl(bindings);
     }
 
-    private VelocityEngine getVelocityEngine() {
-        if (velocityEngine == null) {
-            velocityEngine = VelocityFactory.getEngine();
-        }
-        return velocityEngine;
+    @VisibleForTesting
+    protected SecurityPolicySAMLProcessor createSecurityPolicySamlProcessor(List<SAMLBinding> bindings,
+                                                                            List<SecurityPolicyRule> rules) {
+        return new SecurityPolicySAMLProcessor(bindings, rules);
+    }
+
+    private static VelocityEngine getVelocityEngine() {
+        return VelocityEngineHolder.ENGINE;
     }
 
     /**
@@ -213,6 +319,64 @@ public class SAMLProcessorConfigurer extends SecurityConfigurerAdapter<Void, Ser
         return this;
     }
 
+    /**
+     * When true the default HTTP Post Bindings write a precompiled auto-submit form straight to the response, with a
+     * {@link StaticHTTPPostEncoder}, instead of rendering a Velocity template. Default is {@code false}.
+     * Not relevant if using {@link #postBinding(HTTPPostBinding)}.
+     * <p>
+     * Alternatively use property:
+     * <pre>
+     *      saml.sso.saml-processor.static-post-form
+     * </pre>
+     * </p>
+     *
+     * @param staticPostForm true to write a precompiled form.
+     * @return this configurer for further customization
+     */
+    public SAMLProcessorConfigurer staticPostForm(boolean staticPostForm) {
+        this.staticPostForm = staticPostForm;
+        return this;
+    }
+
+    /**
+     * Maximum size in bytes of messages received through the default HTTP Post and HTTP Redirect Bindings, after
+     * Base64 decoding. Redirect messages are checked both deflated and inflated. Larger messages are rejected before
+     * they are parsed. 0 means no limit. Default is 1MB.
+     * Not relevant if using {@link #postBinding(HTTPPostBinding)} or {@link #redirectBinding(HTTPRedirectDeflateBinding)}.
+     * <p>
+     * Alternatively use property:
+     * <pre>
+     *      saml.sso.saml-processor.max-message-size
+     * </pre>
+     * </p>
+     *
+     * @param maxMessageSize the maximum message size in bytes.
+     * @return this configurer for further customization
+     */
+    public SAMLProcessorConfigurer maxMessageSize(long maxMessageSize) {
+        this.maxMessageSize = maxMessageSize;
+        return this;
+    }
+
+    /**
+     * Maximum ratio between the inflated and deflated sizes of messages received through the default HTTP Redirect
+     * Bindings. Messages that inflate more are rejected before they are parsed. 0 means no limit. Default is 100.
+     * Not relevant if using {@link #redirectBinding(HTTPRedirectDeflateBinding)}.
+     * <p>
+     * Alternatively use property:
+     * <pre>
+     *      saml.sso.saml-processor.max-inflate-ratio
+     * </pre>
+     * </p>
+     *
+     * @param maxInflateRatio the maximum inflate ratio.
+     * @return this configurer for further customization
+     */
+    public SAMLProcessorConfigurer maxInflateRatio(int maxInflateRatio) {
+        this.maxInflateRatio = maxInflateRatio;
+        return this;
+    }
+
     /**
      * Provide a specific {@link HTTPPostBinding} bindings. Overrides value set by {@link #disablePostBinding()}
      *
@@ -312,4 +476,11 @@ public class SAMLProcessorConfigurer extends SecurityConfigurerAdapter<Void, Ser
         paosBinding = binding;
         return this;
     }
+
+    /**
+     * Initializes the Velocity engine, shared by all Service Providers, on first use only.
+     */
+    private static final class VelocityEngineHolder {
+        private static final VelocityEngine ENGINE = VelocityFactory.getEngine();
+    }
 }
@@ -1,9 +1,15 @@
 package com.github.ulisesbocchio.spring.boot.security.saml.configurer.builder;
 
+import com.github.ulisesbocchio.spring.boot.security.saml.async.AsyncSAMLProcessingFilter;
+import com.github.ulisesbocchio.spring.boot.security.saml.async.AsyncSAMLUserDetailsServiceAdapter;
+import com.github.ulisesbocchio.spring.boot.security.saml.async.BoundedExecutors;
 import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderEndpoints;
 import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderBuilder;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.AsyncUserDetailsProperties;
 import com.github.ulisesbocchio.spring.boot.security.saml.properties.SAMLSSOProperties;
 import com.github.ulisesbocchio.spring.boot.security.saml.properties.WebSSOProfileOptionProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.storage.CookieSAMLMessageStorageFactory;
+import com.github.ulisesbocchio.spring.boot.security.saml.storage.StatelessSAMLEntryPoint;
 import org.assertj.core.util.VisibleForTesting;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -12,6 +18,7 @@ import org.springframework.security.saml.SAMLDiscovery;
 import org.springframework.security.saml.SAMLEntryPoint;
 import org.springframework.security.saml.SAMLProcessingFilter;
 import org.springframework.security.saml.SAMLWebSSOHoKProcessingFilter;
+import org.springframework.security.saml.storage.SAMLMessageStorageFactory;
 import org.springframework.security.saml.websso.WebSSOProfileOptions;
 import org.springframework.security.web.authentication.AuthenticationFailureHandler;
 import org.springframework.security.web.authentication.AuthenticationSuccessHandler;
@@ -29,7 +36,13 @@ import java.util.Optional;
  * <p>
  * This configurer always instantiates its own {@link SAMLProcessingFilter},
  * {@link SAMLWebSSOHoKProcessingFilter}, {@link SAMLDiscovery}, and {@link SAMLEntryPoint} based on the specified
- * configuration.
+ * configuration. When stateless message storage is enabled on the SAML Context Provider, i.e. a
+ * {@link CookieSAMLMessageStorageFactory} is in use, the default entry point is a {@link StatelessSAMLEntryPoint}.
+ * </p>
+ * <p>
+ * When the Authentication Provider loads users asynchronously, i.e. an {@link AsyncSAMLUserDetailsServiceAdapter} is
+ * shared, the SSO processing filter is an {@link AsyncSAMLProcessingFilter} running on its own bounded executor, sized
+ * by the {@code saml.sso.authentication-provider.async-user-details} properties.
  * </p>
  * <p>
  * This configurer also reads the values from {@link SAMLSSOProperties} for some DSL methods if they are not used.
@@ -63,6 +76,11 @@ import java.util.Optional;
  */
 public class SSOConfigurer extends SecurityConfigurerAdapter<Void, ServiceProviderBuilder> {
 
+    /**
+     * Time allowed for SAML Response processing on top of the user details timeout before the async request expires.
+     */
+    private static final long ASYNC_PROCESSING_MARGIN = 30000;
+
     private String defaultSuccessURL;
     private AuthenticationSuccessHandler successHandler;
     private String defaultFailureURL;
@@ -109,7 +127,13 @@ public class SSOConfigurer extends SecurityConfigurerAdapter<Void, ServiceProvid
         endpoints.setDefaultFailureURL(defaultFailureURL);
 
 
-        SAMLProcessingFilter ssoFilter = createDefaultSamlProcessingFilter();
+        AsyncSAMLUserDetailsServiceAdapter asyncUserDetails = builder.getSharedObject(AsyncSAMLUserDetailsServiceAdapter.class);
+        SAMLProcessingFilter ssoFilter = asyncUserDetails != null
+                ? createAsyncSamlProcessingFilter(asyncUserDetails.getTimeout(), config.getAuthenticationProvider().getAsyncUserDetails())
+                : createDefaultSamlProcessingFilter();
+        if (ssoFilter instanceof AsyncSAMLProcessingFilter) {
+            builder.registerDisposable(ssoFilter);
+        }
         ssoFilter.setAuthenticationManager(authenticationManager);
         ssoFilter.setAuthenticationSuccessHandler(successHandler);
         ssoFilter.setAuthenticationFailureHandler(failureHandler);
@@ -142,7 +166,9 @@ public class SSOConfigurer extends SecurityConfigurerAdapter<Void, ServiceProvid
         endpoints.setIdpSelectionPageURL(idpSelectionPageURL);
         discoveryFilter.setIdpSelectionPath(idpSelectionPageURL);
 
-        SAMLEntryPoint entryPoint = Optional.ofNullable(samlEntryPointBean).orElseGet(this::createDefaultSamlEntryPoint);
+        boolean statelessStorage = builder.getSharedObject(SAMLMessageStorageFactory.class) instanceof CookieSAMLMessageStorageFactory;
+        SAMLEntryPoint entryPoint = Optional.ofNullable(samlEntryPointBean)
+                .orElseGet(statelessStorage ? this::createStatelessSamlEntryPoint : this::createDefaultSamlEntryPoint);
         entryPoint.setDefaultProfileOptions(Optional.ofNullable(profileOptions).orElseGet(this::getProfileOptions));
         ssoLoginURL = Optional.ofNullable(ssoLoginURL).orElseGet(config::getSsoLoginUrl);
         endpoints.setSsoLoginURL(ssoLoginURL);
@@ -185,6 +211,11 @@ public class SSOConfigurer extends SecurityConfigurerAdapter<Void, ServiceProvid
         return new SAMLEntryPoint();
     }
 
+    @VisibleForTesting
+    protected SAMLEntryPoint createStatelessSamlEntryPoint() {
+        return new StatelessSAMLEntryPoint();
+    }
+
     @VisibleForTesting
     protected SAMLDiscovery createDefaultSamlDiscoveryFilter() {
         return new SAMLDiscovery();
@@ -197,6 +228,15 @@ public class SSOConfigurer extends SecurityConfigurerAdapter<Void, ServiceProvid
         return filter;
     }
 
+    @VisibleForTesting
+    protected SAMLProcessingFilter createAsyncSamlProcessingFilter(long userDetailsTimeout, AsyncUserDetailsProperties asyncConfig) {
+        AsyncSAMLProcessingFilter filter = new AsyncSAMLProcessingFilter(
+                BoundedExecutors.newBoundedExecutor("saml-sso", asyncConfig.getPoolSize(), asyncConfig.getQueueCapacity()),
+                userDetailsTimeout + ASYNC_PROCESSING_MARGIN);
+        filter.setApplicationEventPublisher(eventPublisher);
+        return filter;
+    }
+
     @VisibleForTesting
     protected SimpleUrlAuthenticationFailureHandler createDefaultFailureHandler() {
         return new SimpleUrlAuthenticationFailureHandler();
@@ -208,7 +248,8 @@ public class SSOConfigurer extends SecurityConfigurerAdapter<Void, ServiceProvid
     }
 
     /**
-     * Provide a specific {@link SAMLEntryPoint}.
+     * Provide a specific {@link SAMLEntryPoint}. When using stateless message storage it should extend
+     * {@link StatelessSAMLEntryPoint}.
      *
      * @param samlEntryPoint the actual entry point.
      * @return this configurer for further customization
@@ -0,0 +1,165 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.configurer.builder;
+
+import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderBuilder;
+import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderEndpoints;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.SAMLSSOProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.TenantProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.resource.KeystoreFactory;
+import com.github.ulisesbocchio.spring.boot.security.saml.tenant.ServiceProviderTenants;
+import com.github.ulisesbocchio.spring.boot.security.saml.tenant.ServiceProviderTenants.Tenant;
+import com.github.ulisesbocchio.spring.boot.security.saml.tenant.TenantKeyManager;
+import org.assertj.core.util.VisibleForTesting;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.security.config.annotation.SecurityConfigurerAdapter;
+import org.springframework.security.saml.key.JKSKeyManager;
+import org.springframework.security.saml.key.KeyManager;
+
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Builder configurer that takes care of configuring the tenant Service Providers, see {@link ServiceProviderTenants}.
+ * <p>
+ * Tenants are hosted by the same Service Provider configuration, and therefore share its {@link
+ * org.springframework.security.saml.metadata.MetadataManager}, parser pool, metadata refresh timer, HTTP client and
+ * Identity Provider metadata. Each tenant has its own entity ID and alias endpoints, e.g. {@code
+ * /saml/SSO/alias/acme}, and optionally its own key, made available through a {@link TenantKeyManager} wrapping the
+ * configured {@link KeyManager}. Tenants are registered once the rest of the Service Provider is built.
+ * </p>
+ * <p>
+ * This configurer also reads the values from {@link SAMLSSOProperties#getTenants()}, for tenants not configured
+ * through the DSL. In other words, the user is able to configure the tenants through the following properties:
+ * <pre>
+ *     saml.sso.tenants.[alias].entity-id
+ *     saml.sso.tenants.[alias].entity-base-url
+ *     saml.sso.tenants.[alias].public-key-pem-location
+ *     saml.sso.tenants.[alias].private-key-der-location
+ *     saml.sso.tenants.[alias].key-password
+ * </pre>
+ * </p>
+ *
+ * @author Ulises Bocchio
+ */
+public class TenantsConfigurer extends SecurityConfigurerAdapter<Void, ServiceProviderBuilder> {
+
+    private final Map<String, TenantProperties> tenants = new LinkedHashMap<>();
+    private Map<String, TenantProperties> config;
+    private KeystoreFactory keystoreFactory;
+
+    @Override
+    public void init(ServiceProviderBuilder builder) throws Exception {
+        config = builder.getSharedObject(SAMLSSOProperties.class).getTenants();
+        keystoreFactory = Optional.ofNullable(builder.getSharedObject(KeystoreFactory.class))
+                .orElseGet(() -> new KeystoreFactory(builder.getSharedObject(ResourceLoader.class)));
+    }
+
+    @Override
+    public void configure(ServiceProviderBuilder builder) throws Exception {
+        Map<String, TenantProperties> allTenants = new LinkedHashMap<>();
+        if (config != null) {
+            allTenants.putAll(config);
+        }
+        allTenants.putAll(tenants);
+        if (allTenants.isEmpty()) {
+            return;
+        }
+        List<Tenant> tenantList = new ArrayList<>();
+        Map<String, KeyManager> tenantKeyManagers = new LinkedHashMap<>();
+        Set<String> entityIds = new HashSet<>();
+        for (Map.Entry<String, TenantProperties> entry : allTenants.entrySet()) {
+            String alias = entry.getKey();
+            TenantProperties tenant = entry.getValue();
+            if (tenant.getEntityId() == null || tenant.getEntityId().trim().equals("")) {
+                throw new IllegalArgumentException("'entityId' of tenant '" + alias + "' cannot be null or empty.");
+            }
+            if (!entityIds.add(tenant.getEntityId())) {
+                throw new IllegalArgumentException("Duplicate tenant 'entityId': " + tenant.getEntityId());
+            }
+            String keyName = null;
+            if (tenant.getPublicKeyPemLocation() != null && tenant.getPrivateKeyDerLocation() != null) {
+                keyName = TenantKeyManager.keyName(alias);
+                tenantKeyManagers.put(keyName, createTenantKeyManager(keyName, tenant));
+            }
+            tenantList.add(new Tenant(alias, tenant.getEntityId(), tenant.getEntityBaseUrl(), keyName));
+        }
+        if (!tenantKeyManagers.isEmpty()) {
+            builder.setSharedObject(KeyManager.class,
+                    new TenantKeyManager(builder.getSharedObject(KeyManager.class), tenantKeyManagers));
+        }
+        ServiceProviderEndpoints endpoints = builder.getSharedObject(ServiceProviderEndpoints.class);
+        if (endpoints != null) {
+            endpoints.getAliases().addAll(allTenants.keySet());
+        }
+        builder.setSharedObject(ServiceProviderTenants.class, createServiceProviderTenants(tenantList));
+    }
+
+    @VisibleForTesting
+    protected KeyManager createTenantKeyManager(String keyName, TenantProperties tenant) throws Exception {
+        KeyStore keyStore = keystoreFactory.loadKeystore(tenant.getPublicKeyPemLocation(), tenant.getPrivateKeyDerLocation(),
+                keyName, tenant.getKeyPassword());
+        return new JKSKeyManager(keyStore, Collections.singletonMap(keyName, tenant.getKeyPassword()), keyName);
+    }
+
+    @VisibleForTesting
+    protected ServiceProviderTenants createServiceProviderTenants(List<Tenant> tenants) {
+        return new ServiceProviderTenants(tenants);
+    }
+
+    /**
+     * Adds a tenant Service Provider that uses the default key. Takes precedence over a tenant with the same alias
+     * configured through properties.
+     * <p>
+     * Alternatively use properties:
+     * <pre>
+     *      saml.sso.tenants.[alias].entity-id
+     *      saml.sso.tenants.[alias].entity-base-url
+     * </pre>
+     * </p>
+     *
+     * @param alias         the tenant alias, used in the tenant endpoint URLs.
+     * @param entityId      the tenant entity ID.
+     * @param entityBaseURL the tenant base URL, or null for the metadata generator one.
+     * @return this configurer for further customization
+     */
+    public TenantsConfigurer tenant(String alias, String entityId, String entityBaseURL) {
+        return tenant(alias, entityId, entityBaseURL, null, null);
+    }
+
+    /**
+     * Adds a tenant Service Provider with its own key. Takes precedence over a tenant with the same alias configured
+     * through properties.
+     * <p>
+     * Alternatively use properties:
+     * <pre>
+     *      saml.sso.tenants.[alias].entity-id
+     *      saml.sso.tenants.[alias].entity-base-url
+     *      saml.sso.tenants.[alias].public-key-pem-location
+     *      saml.sso.tenants.[alias].private-key-der-location
+     * </pre>
+     * </p>
+     *
+     * @param alias                 the tenant alias, used in the tenant endpoint URLs.
+     * @param entityId              the tenant entity ID.
+     * @param entityBaseURL         the tenant base URL, or null for the metadata generator one.
+     * @param publicKeyPEMLocation  the location of the PEM certificate of the tenant key.
+     * @param privateKeyDERLocation the location of the DER or PEM private key of the tenant.
+     * @return this configurer for further customization
+     */
+    public TenantsConfigurer tenant(String alias, String entityId, String entityBaseURL, String publicKeyPEMLocation,
+                                    String privateKeyDERLocation) {
+        TenantProperties tenant = new TenantProperties();
+        tenant.setEntityId(entityId);
+        tenant.setEntityBaseUrl(entityBaseURL);
+        tenant.setPublicKeyPemLocation(publicKeyPEMLocation);
+        tenant.setPrivateKeyDerLocation(privateKeyDERLocation);
+        tenants.put(alias, tenant);
+        return this;
+    }
+}
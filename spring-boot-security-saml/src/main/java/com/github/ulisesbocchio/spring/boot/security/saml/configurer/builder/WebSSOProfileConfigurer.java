@@ -1,10 +1,18 @@
 package com.github.ulisesbocchio.spring.boot.security.saml.configurer.builder;
 
 import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderBuilder;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.PreSignedRequestProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.SAMLSSOProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.WebSSOProfileProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.websso.PreSignedWebSSOProfile;
+import com.github.ulisesbocchio.spring.boot.security.saml.websso.TemplateWebSSOProfile;
 import org.assertj.core.util.VisibleForTesting;
 import org.springframework.security.config.annotation.SecurityConfigurerAdapter;
 import org.springframework.security.saml.websso.WebSSOProfile;
 import org.springframework.security.saml.websso.WebSSOProfileImpl;
+import org.springframework.util.Assert;
+
+import java.util.Optional;
 
 /**
  * Builder configurer that takes care of configuring/customizing the {@link WebSSOProfile} bean.
@@ -15,6 +23,23 @@ import org.springframework.security.saml.websso.WebSSOProfileImpl;
  * to this configurer through the constructor. And if not provided through the constructor, a default implementation is
  * instantiated.
  * </p>
+ * <p>
+ * The default implementation can sign AuthnRequests ahead of time on a background thread, through a
+ * {@link PreSignedWebSSOProfile}, configurable through the following properties:
+ * <pre>
+ *     saml.sso.sso-profile.pre-signed-requests.enabled
+ *     saml.sso.sso-profile.pre-signed-requests.pool-size
+ *     saml.sso.sso-profile.pre-signed-requests.max-age
+ * </pre>
+ * </p>
+ * <p>
+ * Alternatively, the default implementation can reuse the AuthnRequest of each IDP as a template, through a
+ * {@link TemplateWebSSOProfile}, enabled through property:
+ * <pre>
+ *     saml.sso.sso-profile.request-templates
+ * </pre>
+ * Pre-signed requests and request templates can't be enabled at the same time.
+ * </p>
  *
  * @author Ulises Bocchio
  */
@@ -22,6 +47,12 @@ public class WebSSOProfileConfigurer extends SecurityConfigurerAdapter<Void, Ser
 
     private WebSSOProfile webSSOProfile;
     private WebSSOProfile webSSOProfileBean;
+    private Boolean preSignRequests;
+    private Integer preSignedPoolSize;
+    private Integer preSignedMaxAge;
+    private Boolean requestTemplates;
+    private WebSSOProfileProperties ssoProfileConfig;
+    private PreSignedRequestProperties preSignedConfig;
 
     public WebSSOProfileConfigurer() {
 
@@ -34,13 +65,30 @@ public class WebSSOProfileConfigurer extends SecurityConfigurerAdapter<Void, Ser
     @Override
     public void init(ServiceProviderBuilder builder) throws Exception {
         webSSOProfileBean = builder.getSharedObject(WebSSOProfile.class);
+        ssoProfileConfig = builder.getSharedObject(SAMLSSOProperties.class).getSsoProfile();
+        preSignedConfig = ssoProfileConfig.getPreSignedRequests();
     }
 
     @Override
     public void configure(ServiceProviderBuilder builder) throws Exception {
         if (webSSOProfileBean == null) {
             if (webSSOProfile == null) {
-                webSSOProfile = createDefaultWebSSOProfile();
+                boolean preSigned = Optional.ofNullable(preSignRequests).orElseGet(preSignedConfig::isEnabled);
+                boolean templates = Optional.ofNullable(requestTemplates)
+                        .orElseGet(ssoProfileConfig::isRequestTemplates);
+                Assert.state(!(preSigned && templates),
+                        "Pre-signed requests and request templates can't be enabled at the same time.");
+                if (preSigned) {
+                    PreSignedWebSSOProfile preSignedProfile = postProcess(createPreSignedWebSSOProfile(
+                            Optional.ofNullable(preSignedPoolSize).orElseGet(preSignedConfig::getPoolSize),
+                            Optional.ofNullable(preSignedMaxAge).orElseGet(preSignedConfig::getMaxAge)));
+                    builder.registerDisposable(preSignedProfile);
+                    webSSOProfile = preSignedProfile;
+                } else if (templates) {
+                    webSSOProfile = createTemplateWebSSOProfile();
+                } else {
+                    webSSOProfile = createDefaultWebSSOProfile();
+                }
             }
             builder.setSharedObject(WebSSOProfile.class, webSSOProfile);
         }
@@ -50,4 +98,86 @@ public class WebSSOProfileConfigurer extends SecurityConfigurerAdapter<Void, Ser
     protected WebSSOProfile createDefaultWebSSOProfile() {
         return new WebSSOProfileImpl();
     }
+
+    @VisibleForTesting
+    protected PreSignedWebSSOProfile createPreSignedWebSSOProfile(int poolSize, int maxAge) {
+        return new PreSignedWebSSOProfile(poolSize, maxAge * 1000L);
+    }
+
+    @VisibleForTesting
+    protected TemplateWebSSOProfile createTemplateWebSSOProfile() {
+        return new TemplateWebSSOProfile();
+    }
+
+    /**
+     * Whether to keep a small pool of AuthnRequests, per IDP, built and signed ahead of time on a background thread,
+     * so they are not signed while handling the request. Only applies to AuthnRequests sent with the HTTP POST binding
+     * that need to be signed. Disabled by default.
+     * <p>
+     * Alternatively use property:
+     * <pre>
+     *      saml.sso.sso-profile.pre-signed-requests.enabled
+     * </pre>
+     * </p>
+     *
+     * @param preSignRequests true to sign AuthnRequests ahead of time.
+     * @return this configurer for further customization
+     */
+    public WebSSOProfileConfigurer preSignRequests(boolean preSignRequests) {
+        this.preSignRequests = preSignRequests;
+        return this;
+    }
+
+    /**
+     * Number of pre-signed AuthnRequests kept per IDP, SSO endpoint and profile options. Default is 4.
+     * <p>
+     * Alternatively use property:
+     * <pre>
+     *      saml.sso.sso-profile.pre-signed-requests.pool-size
+     * </pre>
+     * </p>
+     *
+     * @param poolSize the number of pre-signed requests.
+     * @return this configurer for further customization
+     */
+    public WebSSOProfileConfigurer preSignedPoolSize(int poolSize) {
+        this.preSignedPoolSize = poolSize;
+        return this;
+    }
+
+    /**
+     * Maximum age in seconds of a pre-signed AuthnRequest, older requests are discarded. Default is 30.
+     * <p>
+     * Alternatively use property:
+     * <pre>
+     *      saml.sso.sso-profile.pre-signed-requests.max-age
+     * </pre>
+     * </p>
+     *
+     * @param maxAge the maximum age in seconds.
+     * @return this configurer for further customization
+     */
+    public WebSSOProfileConfigurer preSignedMaxAge(int maxAge) {
+        this.preSignedMaxAge = maxAge;
+        return this;
+    }
+
+    /**
+     * Whether to build and marshal the AuthnRequest of each IDP, SSO endpoint and profile options only once, and send
+     * copies of it with a new ID and IssueInstant. The templates are discarded when the metadata is refreshed. Can't
+     * be enabled along with {@link #preSignRequests(boolean)}. Disabled by default.
+     * <p>
+     * Alternatively use property:
+     * <pre>
+     *      saml.sso.sso-profile.request-templates
+     * </pre>
+     * </p>
+     *
+     * @param requestTemplates true to reuse AuthnRequest templates.
+     * @return this configurer for further customization
+     */
+    public WebSSOProfileConfigurer requestTemplates(boolean requestTemplates) {
+        this.requestTemplates = requestTemplates;
+        return this;
+    }
 }
@@ -1,10 +1,20 @@
 package com.github.ulisesbocchio.spring.boot.security.saml.configurer.builder;
 
 import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderBuilder;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.AssertionReplayCacheProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.SAMLSSOProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.WebSSOProfileConsumerProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.replay.AssertionReplayCache;
+import com.github.ulisesbocchio.spring.boot.security.saml.replay.InMemoryAssertionReplayCache;
+import com.github.ulisesbocchio.spring.boot.security.saml.replay.ReplayCheckingWebSSOProfileConsumer;
+import com.github.ulisesbocchio.spring.boot.security.saml.websso.FailFastWebSSOProfileConsumer;
+import org.assertj.core.util.VisibleForTesting;
 import org.springframework.security.config.annotation.SecurityConfigurerAdapter;
 import org.springframework.security.saml.websso.WebSSOProfileConsumer;
 import org.springframework.security.saml.websso.WebSSOProfileConsumerImpl;
 
+import java.util.Optional;
+
 /**
  * Builder configurer that takes care of configuring/customizing the {@link WebSSOProfileConsumer} bean.
  * <p>
@@ -14,6 +24,29 @@ import org.springframework.security.saml.websso.WebSSOProfileConsumerImpl;
  * explicitly to this configurer through the constructor. And if not provided through the constructor, a default
  * implementation is instantiated.
  * </p>
+ * <p>
+ * The default implementation can reject replayed Assertions across sessions and nodes through an
+ * {@link AssertionReplayCache}. Priority goes to an {@link AssertionReplayCache} bean, then to one provided through
+ * {@link #replayCache(AssertionReplayCache)}, and otherwise an {@link InMemoryAssertionReplayCache} is used, configurable
+ * through the following properties:
+ * <pre>
+ *     saml.sso.profile-consumer.replay-cache.enabled
+ *     saml.sso.profile-consumer.replay-cache.max-entries
+ *     saml.sso.profile-consumer.replay-cache.logins-per-second
+ *     saml.sso.profile-consumer.replay-cache.stripes
+ * </pre>
+ * Unless set, {@code max-entries} is derived from the Assertion validity window of the default consumer,
+ * {@code maxAssertionTime} plus {@code responseSkew}, times {@code logins-per-second}. The Holder of Key consumer
+ * checks replays against the same cache, see {@link WebSSOProfileHoKConsumerConfigurer}.
+ * </p>
+ * <p>
+ * The default implementation can also reject Responses that fail inexpensive checks before verifying signatures or
+ * decrypting Assertions, see {@link FailFastWebSSOProfileConsumer}, through {@link #failFast(boolean)} or the
+ * following property:
+ * <pre>
+ *     saml.sso.profile-consumer.fail-fast
+ * </pre>
+ * </p>
  *
  * @author Ulises Bocchio
  */
@@ -21,6 +54,12 @@ public class WebSSOProfileConsumerConfigurer extends SecurityConfigurerAdapter<V
 
     private WebSSOProfileConsumer webSSOProfileConsumer;
     private WebSSOProfileConsumer webSSOProfileConsumerBean;
+    private AssertionReplayCache replayCache;
+    private AssertionReplayCache replayCacheBean;
+    private Boolean replayDetection;
+    private AssertionReplayCacheProperties replayCacheConfig;
+    private Boolean failFast;
+    private WebSSOProfileConsumerProperties config;
 
     public WebSSOProfileConsumerConfigurer() {
 
@@ -33,13 +72,26 @@ public class WebSSOProfileConsumerConfigurer extends SecurityConfigurerAdapter<V
     @Override
     public void init(ServiceProviderBuilder builder) throws Exception {
         webSSOProfileConsumerBean = builder.getSharedObject(WebSSOProfileConsumer.class);
+        replayCacheBean = builder.getSharedObject(AssertionReplayCache.class);
+        config = builder.getSharedObject(SAMLSSOProperties.class).getProfileConsumer();
+        replayCacheConfig = config.getReplayCache();
     }
 
     @Override
     public void configure(ServiceProviderBuilder builder) throws Exception {
         if (webSSOProfileConsumerBean == null) {
             if (webSSOProfileConsumer == null) {
-                webSSOProfileConsumer = createWebSSOProfileConsumer();
+                boolean replayCacheProvided = replayCacheBean != null || replayCache != null;
+                if (Optional.ofNullable(replayDetection).orElseGet(() -> replayCacheProvided || replayCacheConfig.isEnabled())) {
+                    replayCache = Optional.ofNullable(replayCacheBean)
+                            .orElseGet(() -> Optional.ofNullable(replayCache).orElseGet(this::createDefaultReplayCache));
+                    builder.setSharedObject(AssertionReplayCache.class, replayCache);
+                    webSSOProfileConsumer = createReplayCheckingWebSSOProfileConsumer(replayCache);
+                } else if (Optional.ofNullable(failFast).orElseGet(config::isFailFast)) {
+                    webSSOProfileConsumer = createFailFastWebSSOProfileConsumer();
+                } else {
+                    webSSOProfileConsumer = createWebSSOProfileConsumer();
+                }
             }
             builder.setSharedObject(WebSSOProfileConsumer.class, webSSOProfileConsumer);
         }
@@ -48,4 +100,77 @@ public class WebSSOProfileConsumerConfigurer extends SecurityConfigurerAdapter<V
     protected WebSSOProfileConsumer createWebSSOProfileConsumer() {
         return new WebSSOProfileConsumerImpl();
     }
-}
\ No newline at end of file
+
+    @VisibleForTesting
+    protected WebSSOProfileConsumer createFailFastWebSSOProfileConsumer() {
+        return new FailFastWebSSOProfileConsumer();
+    }
+
+    @VisibleForTesting
+    protected WebSSOProfileConsumer createReplayCheckingWebSSOProfileConsumer(AssertionReplayCache replayCache) {
+        ReplayCheckingWebSSOProfileConsumer consumer = new ReplayCheckingWebSSOProfileConsumer(replayCache);
+        consumer.setFailFast(Optional.ofNullable(failFast).orElseGet(config::isFailFast));
+        return consumer;
+    }
+
+    @VisibleForTesting
+    protected AssertionReplayCache createDefaultReplayCache() {
+        int maxEntries = Optional.ofNullable(replayCacheConfig.getMaxEntries()).orElseGet(() -> {
+            WebSSOProfileConsumerImpl defaults = new WebSSOProfileConsumerImpl();
+            long validitySeconds = defaults.getMaxAssertionTime() + defaults.getResponseSkew();
+            long entries = validitySeconds * replayCacheConfig.getLoginsPerSecond();
+            return (int) Math.max(replayCacheConfig.getStripes(), Math.min(entries, Integer.MAX_VALUE));
+        });
+        return new InMemoryAssertionReplayCache(maxEntries, replayCacheConfig.getStripes());
+    }
+
+    /**
+     * Whether to reject Assertions that were already consumed by any session or node sharing the same
+     * {@link AssertionReplayCache}. Implicitly enabled, unless explicitly disabled, when
+     * {@link #replayCache(AssertionReplayCache)} is used or an {@link AssertionReplayCache} bean is present.
+     * <p>
+     * Alternatively use property:
+     * <pre>
+     *      saml.sso.profile-consumer.replay-cache.enabled
+     * </pre>
+     * </p>
+     *
+     * @param replayDetection true to enable replay detection.
+     * @return this configurer for further customization
+     */
+    public WebSSOProfileConsumerConfigurer replayDetection(boolean replayDetection) {
+        this.replayDetection = replayDetection;
+        return this;
+    }
+
+    /**
+     * Provide a specific {@link AssertionReplayCache}, for instance one backed by a store shared across the cluster.
+     * Enables replay detection unless {@link #replayDetection(boolean)} is set to false.
+     *
+     * @param replayCache the replay cache to use.
+     * @return this configurer for further customization
+     */
+    public WebSSOProfileConsumerConfigurer replayCache(AssertionReplayCache replayCache) {
+        this.replayCache = replayCache;
+        return this;
+    }
+
+    /**
+     * Whether to reject Responses that fail inexpensive checks (issue instant, destination, issuer, InResponseTo,
+     * audience, validity window) before verifying signatures or decrypting Assertions. Applies to the replay checking
+     * consumer as well.
+     * <p>
+     * Alternatively use property:
+     * <pre>
+     *      saml.sso.profile-consumer.fail-fast
+     * </pre>
+     * </p>
+     *
+     * @param failFast true to run the inexpensive checks first.
+     * @return this configurer for further customization
+     */
+    public WebSSOProfileConsumerConfigurer failFast(boolean failFast) {
+        this.failFast = failFast;
+        return this;
+    }
+}
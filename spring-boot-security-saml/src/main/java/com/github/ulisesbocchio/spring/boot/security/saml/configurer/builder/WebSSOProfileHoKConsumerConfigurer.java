@@ -1,8 +1,12 @@
 package com.github.ulisesbocchio.spring.boot.security.saml.configurer.builder;
 
 import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderBuilder;
+import com.github.ulisesbocchio.spring.boot.security.saml.replay.AssertionReplayCache;
+import com.github.ulisesbocchio.spring.boot.security.saml.replay.ReplayCheckingWebSSOProfileConsumer;
+import com.github.ulisesbocchio.spring.boot.security.saml.replay.ReplayCheckingWebSSOProfileConsumerHoK;
 import org.assertj.core.util.VisibleForTesting;
 import org.springframework.security.config.annotation.SecurityConfigurerAdapter;
+import org.springframework.security.saml.websso.WebSSOProfileConsumer;
 import org.springframework.security.saml.websso.WebSSOProfileConsumerHoKImpl;
 
 /**
@@ -14,6 +18,10 @@ import org.springframework.security.saml.websso.WebSSOProfileConsumerHoKImpl;
  * WebSSOProfileConsumerHoKImpl provided explicitly to this configurer through the constructor. And if not provided
  * through the constructor, a default implementation is instantiated.
  * </p>
+ * <p>
+ * When the {@link WebSSOProfileConsumer} checks for replayed Assertions, the default implementation checks them
+ * against the same {@link AssertionReplayCache}, see {@link ReplayCheckingWebSSOProfileConsumerHoK}.
+ * </p>
  *
  * @author Ulises Bocchio
  */
@@ -38,7 +46,13 @@ public class WebSSOProfileHoKConsumerConfigurer extends SecurityConfigurerAdapte
     public void configure(ServiceProviderBuilder builder) throws Exception {
         if (hokProfileConsumerBean == null) {
             if (hokProfileConsumer == null) {
-                hokProfileConsumer = createDefaultWebSSOProfileConsumerHoK();
+                WebSSOProfileConsumer consumer = builder.getSharedObject(WebSSOProfileConsumer.class);
+                if (consumer instanceof ReplayCheckingWebSSOProfileConsumer) {
+                    hokProfileConsumer = createReplayCheckingWebSSOProfileConsumerHoK(
+                            ((ReplayCheckingWebSSOProfileConsumer) consumer).getReplayCache());
+                } else {
+                    hokProfileConsumer = createDefaultWebSSOProfileConsumerHoK();
+                }
             }
             builder.setSharedObject(WebSSOProfileConsumerHoKImpl.class, hokProfileConsumer);
         }
@@ -48,4 +62,10 @@ public class WebSSOProfileHoKConsumerConfigurer extends SecurityConfigurerAdapte
     protected WebSSOProfileConsumerHoKImpl createDefaultWebSSOProfileConsumerHoK() {
         return new WebSSOProfileConsumerHoKImpl();
     }
+
+    @VisibleForTesting
+    protected WebSSOProfileConsumerHoKImpl createReplayCheckingWebSSOProfileConsumerHoK(
+            AssertionReplayCache replayCache) {
+        return new ReplayCheckingWebSSOProfileConsumerHoK(replayCache);
+    }
 }
@@ -0,0 +1,59 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.context;
+
+import com.github.ulisesbocchio.spring.boot.security.saml.trust.SignatureTrustCache;
+import org.opensaml.saml2.metadata.provider.MetadataProviderException;
+import org.springframework.security.saml.context.SAMLContextProviderImpl;
+import org.springframework.security.saml.context.SAMLMessageContext;
+import org.springframework.security.saml.key.KeyManager;
+import org.springframework.security.saml.metadata.MetadataManager;
+
+/**
+ * {@link SAMLContextProviderImpl} that, when a {@link SignatureTrustCache} is set, wraps the trust engine of every
+ * context so that trusted signing certificates are cached, and when a {@link LocalEntityCache} is set, resolves the
+ * local entity of every context from it. Both caches are cleared whenever the metadata is refreshed.
+ *
+ * @author Ulises Bocchio
+ */
+public class CachingSAMLContextProvider extends SAMLContextProviderImpl {
+
+    private final ContextProviderCaches caches = new ContextProviderCaches();
+
+    @Override
+    protected void populateLocalEntity(SAMLMessageContext samlContext) throws MetadataProviderException {
+        caches.populateLocalEntity(samlContext, super::populateLocalEntity);
+    }
+
+    @Override
+    protected void populateTrustEngine(SAMLMessageContext samlContext) {
+        super.populateTrustEngine(samlContext);
+        caches.wrapTrustEngine(samlContext);
+    }
+
+    @Override
+    public void setMetadata(MetadataManager metadata) {
+        super.setMetadata(metadata);
+        caches.setMetadata(metadata);
+    }
+
+    @Override
+    public void setKeyManager(KeyManager keyManager) {
+        super.setKeyManager(keyManager);
+        caches.clearLocalEntities();
+    }
+
+    public void setSignatureTrustCache(SignatureTrustCache signatureTrustCache) {
+        caches.setSignatureTrustCache(signatureTrustCache);
+    }
+
+    public SignatureTrustCache getSignatureTrustCache() {
+        return caches.getSignatureTrustCache();
+    }
+
+    public void setLocalEntityCache(LocalEntityCache localEntityCache) {
+        caches.setLocalEntityCache(localEntityCache);
+    }
+
+    public LocalEntityCache getLocalEntityCache() {
+        return caches.getLocalEntityCache();
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.context;
+
+import com.github.ulisesbocchio.spring.boot.security.saml.trust.SignatureTrustCache;
+import com.github.ulisesbocchio.spring.boot.security.saml.util.FunctionalUtils.CheckedConsumer;
+import org.opensaml.saml2.metadata.provider.MetadataProviderException;
+import org.opensaml.saml2.metadata.provider.ObservableMetadataProvider;
+import org.springframework.security.saml.context.SAMLMessageContext;
+import org.springframework.security.saml.metadata.MetadataManager;
+
+/**
+ * The {@link SignatureTrustCache} and {@link LocalEntityCache} of a context provider, along with the logic shared by
+ * {@link CachingSAMLContextProvider} and {@link CachingSAMLContextProviderLB} to use them and to keep them registered
+ * as observers of the metadata manager.
+ *
+ * @author Ulises Bocchio
+ */
+final class ContextProviderCaches {
+
+    private SignatureTrustCache signatureTrustCache;
+    private LocalEntityCache localEntityCache;
+    private MetadataManager metadataManager;
+
+    /**
+     * Populates the local entity of the given context from the local entity cache, resolving and caching it with the
+     * given resolver on a miss, or just resolving it when there's no cache.
+     */
+    void populateLocalEntity(SAMLMessageContext samlContext,
+                             CheckedConsumer<SAMLMessageContext, MetadataProviderException> resolver)
+            throws MetadataProviderException {
+        if (localEntityCache == null) {
+            resolver.accept(samlContext);
+        } else if (!localEntityCache.populate(samlContext)) {
+            long generation = localEntityCache.generation();
+            resolver.accept(samlContext);
+            localEntityCache.store(samlContext, generation);
+        }
+    }
+
+    /**
+     * Wraps the trust engine of the given context with the signature trust cache, if any.
+     */
+    void wrapTrustEngine(SAMLMessageContext samlContext) {
+        if (signatureTrustCache != null) {
+            samlContext.setLocalTrustEngine(signatureTrustCache.wrap(samlContext.getLocalTrustEngine()));
+        }
+    }
+
+    void setMetadata(MetadataManager metadata) {
+        this.metadataManager = metadata;
+        registerObserver(signatureTrustCache);
+        registerObserver(localEntityCache);
+        clearLocalEntities();
+    }
+
+    void clearLocalEntities() {
+        if (localEntityCache != null) {
+            localEntityCache.clear();
+        }
+    }
+
+    void setSignatureTrustCache(SignatureTrustCache signatureTrustCache) {
+        this.signatureTrustCache = signatureTrustCache;
+        registerObserver(signatureTrustCache);
+    }
+
+    SignatureTrustCache getSignatureTrustCache() {
+        return signatureTrustCache;
+    }
+
+    void setLocalEntityCache(LocalEntityCache localEntityCache) {
+        this.localEntityCache = localEntityCache;
+        registerObserver(localEntityCache);
+    }
+
+    LocalEntityCache getLocalEntityCache() {
+        return localEntityCache;
+    }
+
+    private void registerObserver(ObservableMetadataProvider.Observer observer) {
+        if (metadataManager != null && observer != null && !metadataManager.getObservers().contains(observer)) {
+            metadataManager.getObservers().add(observer);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.context;
+
+import org.opensaml.saml2.metadata.provider.MetadataProviderException;
+import org.springframework.security.saml.context.SAMLContextProviderLB;
+import org.springframework.security.saml.context.SAMLMessageContext;
+import org.springframework.util.StringUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Load balancer aware context provider that, unlike {@link SAMLContextProviderLB}, which pins a single scheme, server
+ * name, port and context path, derives them on every request from the {@code Forwarded} header (RFC 7239), or the
+ * {@code X-Forwarded-Host}, {@code X-Forwarded-Proto}, {@code X-Forwarded-Port} and {@code X-Forwarded-Prefix} headers
+ * when absent, so that a single instance serves many public host names.
+ * <p>
+ * The headers are only trusted when the forwarded host is in the allowed hosts, where {@code *.example.com} matches
+ * any sub-domain of {@code example.com}. Otherwise, or when there are no forwarded headers, the request is used as
+ * is. A forwarded protocol other than {@code http} or {@code https} is ignored, and so is a forwarded prefix that isn't
+ * a plain path or, when {@link #setAllowedPrefixes(Collection)} is set, isn't one of the allowed prefixes. The public
+ * endpoint built for each (scheme, host, port, context path) is cached, up to {@link #setMaxCachedHosts(int)} entries
+ * with the least recently used evicted first, so that request URLs are not built again on every request.
+ * </p>
+ *
+ * @author Ulises Bocchio
+ */
+public class ForwardedHeadersSAMLContextProvider extends CachingSAMLContextProvider {
+
+    private static final Pattern PREFIX = Pattern.compile("(/[A-Za-z0-9._~!$&'()*+,;=:@-]+)*");
+
+    private final Map<List<Object>, PublicEndpoint> endpoints = new LinkedHashMap<List<Object>, PublicEndpoint>(16,
+            0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, PublicEndpoint> eldest) {
+            return size() > maxCachedHosts;
+        }
+    };
+    private Set<String> allowedHosts = Collections.emptySet();
+    private Set<String> allowedPrefixes = Collections.emptySet();
+    private volatile int maxCachedHosts = 256;
+
+    @Override
+    protected void populateGenericContext(HttpServletRequest request, HttpServletResponse response,
+                                          SAMLMessageContext context) throws MetadataProviderException {
+        super.populateGenericContext(wrap(request), response, context);
+    }
+
+    /**
+     * Wraps the request so that it exposes the public scheme, server name, port and context path from the trusted
+     * forwarded headers, if any.
+     */
+    HttpServletRequest wrap(HttpServletRequest request) {
+        Forwarded forwarded = Forwarded.from(request);
+        if (forwarded == null || !isAllowed(forwarded.host)) {
+            return request;
+        }
+        String scheme = forwarded.proto != null ? forwarded.proto : request.getScheme();
+        int port = forwarded.port > 0 ? forwarded.port : ("https".equals(scheme) ? 443 : 80);
+        String contextPath = isAllowedPrefix(forwarded.prefix) ? forwarded.prefix : request.getContextPath();
+        List<Object> key = Arrays.asList(scheme, forwarded.host, port, contextPath);
+        PublicEndpoint endpoint;
+        synchronized (endpoints) {
+            endpoint = endpoints.get(key);
+            if (endpoint == null) {
+                endpoint = new PublicEndpoint(scheme, forwarded.host, port, contextPath);
+                endpoints.put(key, endpoint);
+            }
+        }
+        return new ForwardedRequestWrapper(request, endpoint);
+    }
+
+    private boolean isAllowedPrefix(String prefix) {
+        if (prefix == null || prefix.contains("/./") || prefix.contains("/../") || prefix.endsWith("/.")
+                || prefix.endsWith("/..") || !PREFIX.matcher(prefix).matches()) {
+            return false;
+        }
+        return allowedPrefixes.isEmpty() || allowedPrefixes.contains(prefix);
+    }
+
+    private boolean isAllowed(String host) {
+        if (allowedHosts.contains(host)) {
+            return true;
+        }
+        for (int dot = host.indexOf('.'); dot > 0; dot = host.indexOf('.', dot + 1)) {
+            if (allowedHosts.contains("*" + host.substring(dot))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Host names the forwarded headers are trusted for, either exact or {@code *.domain} patterns.
+     *
+     * @param allowedHosts the allowed hosts.
+     */
+    public void setAllowedHosts(Collection<String> allowedHosts) {
+        this.allowedHosts = allowedHosts == null ? Collections.emptySet() : allowedHosts.stream()
+                .map(host -> host.trim().toLowerCase(Locale.ENGLISH))
+                .collect(Collectors.toSet());
+        clearEndpoints();
+    }
+
+    public Set<String> getAllowedHosts() {
+        return Collections.unmodifiableSet(allowedHosts);
+    }
+
+    /**
+     * Context paths the {@code X-Forwarded-Prefix} header is trusted for, e.g. {@code /public}. When empty, any prefix
+     * made of plain path segments is trusted.
+     *
+     * @param allowedPrefixes the allowed prefixes.
+     */
+    public void setAllowedPrefixes(Collection<String> allowedPrefixes) {
+        this.allowedPrefixes = allowedPrefixes == null ? Collections.emptySet() : allowedPrefixes.stream()
+                .map(prefix -> Forwarded.normalizePrefix(prefix.trim()))
+                .collect(Collectors.toSet());
+        clearEndpoints();
+    }
+
+    public Set<String> getAllowedPrefixes() {
+        return Collections.unmodifiableSet(allowedPrefixes);
+    }
+
+    /**
+     * Maximum number of public endpoints kept in memory. Once reached, the least recently used endpoint is evicted.
+     *
+     * @param maxCachedHosts the maximum number of cached endpoints.
+     */
+    public void setMaxCachedHosts(int maxCachedHosts) {
+        this.maxCachedHosts = maxCachedHosts;
+    }
+
+    /**
+     * Current number of cached public endpoints.
+     *
+     * @return the cache size.
+     */
+    public int getCachedHostCount() {
+        synchronized (endpoints) {
+            return endpoints.size();
+        }
+    }
+
+    private void clearEndpoints() {
+        synchronized (endpoints) {
+            endpoints.clear();
+        }
+    }
+
+    /**
+     * Public scheme, host, port and context path, along with the base URL built from them.
+     */
+    private static final class PublicEndpoint {
+        private final String scheme;
+        private final String serverName;
+        private final int serverPort;
+        private final String contextPath;
+        private final String baseURL;
+
+        PublicEndpoint(String scheme, String serverName, int serverPort, String contextPath) {
+            this.scheme = scheme;
+            this.serverName = serverName;
+            this.serverPort = serverPort;
+            this.contextPath = contextPath;
+            boolean defaultPort = ("https".equals(scheme) && serverPort == 443) || ("http".equals(scheme) && serverPort == 80);
+            String host = serverName.indexOf(':') >= 0 ? "[" + serverName + "]" : serverName;
+            this.baseURL = scheme + "://" + host + (defaultPort ? "" : ":" + serverPort) + contextPath;
+        }
+    }
+
+    /**
+     * Values of the forwarded headers of a request, from the first {@code Forwarded} element or the first value of
+     * each {@code X-Forwarded-*} header.
+     */
+    private static final class Forwarded {
+        private String host;
+        private int port = -1;
+        private String proto;
+        private String prefix;
+
+        static Forwarded from(HttpServletRequest request) {
+            Forwarded forwarded = new Forwarded();
+            String header = request.getHeader("Forwarded");
+            if (StringUtils.hasText(header)) {
+                String element = header.split(",")[0];
+                for (String pair : element.split(";")) {
+                    int equals = pair.indexOf('=');
+                    if (equals > 0) {
+                        String name = pair.substring(0, equals).trim().toLowerCase(Locale.ENGLISH);
+                        String value = unquote(pair.substring(equals + 1).trim());
+                        if ("host".equals(name)) {
+                            forwarded.host(value);
+                        } else if ("proto".equals(name)) {
+                            forwarded.proto(value);
+                        }
+                    }
+                }
+            } else {
+                forwarded.host(first(request.getHeader("X-Forwarded-Host")));
+                forwarded.proto(first(request.getHeader("X-Forwarded-Proto")));
+                String port = first(request.getHeader("X-Forwarded-Port"));
+                if (port != null && forwarded.port < 0) {
+                    forwarded.port = parsePort(port);
+                }
+            }
+            if (forwarded.host == null) {
+                return null;
+            }
+            String prefix = first(request.getHeader("X-Forwarded-Prefix"));
+            if (prefix != null) {
+                forwarded.prefix = normalizePrefix(prefix);
+            }
+            return forwarded;
+        }
+
+        private static String normalizePrefix(String prefix) {
+            prefix = StringUtils.trimTrailingCharacter(prefix, '/');
+            return prefix.isEmpty() || prefix.startsWith("/") ? prefix : "/" + prefix;
+        }
+
+        private void proto(String value) {
+            String proto = value != null ? value.trim().toLowerCase(Locale.ENGLISH) : null;
+            this.proto = "http".equals(proto) || "https".equals(proto) ? proto : null;
+        }
+
+        private void host(String value) {
+            if (!StringUtils.hasText(value)) {
+                return;
+            }
+            String host = value.trim().toLowerCase(Locale.ENGLISH);
+            int portSeparator = host.startsWith("[") ? host.indexOf("]:") + 1 : host.lastIndexOf(':');
+            if (portSeparator > 0) {
+                port = parsePort(host.substring(portSeparator + 1));
+                host = host.substring(0, portSeparator);
+            }
+            if (host.startsWith("[") && host.endsWith("]")) {
+                host = host.substring(1, host.length() - 1);
+            }
+            this.host = host.isEmpty() ? null : host;
+        }
+
+        private static int parsePort(String value) {
+            try {
+                int port = Integer.parseInt(value.trim());
+                return port > 0 && port <= 65535 ? port : -1;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        private static String first(String header) {
+            if (!StringUtils.hasText(header)) {
+                return null;
+            }
+            String value = header.split(",")[0].trim();
+            return value.isEmpty() ? null : value;
+        }
+
+        private static String unquote(String value) {
+            return value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")
+                    ? value.substring(1, value.length() - 1) : value;
+        }
+    }
+
+    private static final class ForwardedRequestWrapper extends HttpServletRequestWrapper {
+        private final PublicEndpoint endpoint;
+
+        ForwardedRequestWrapper(HttpServletRequest request, PublicEndpoint endpoint) {
+            super(request);
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public String getScheme() {
+            return endpoint.scheme;
+        }
+
+        @Override
+        public String getServerName() {
+            return endpoint.serverName;
+        }
+
+        @Override
+        public int getServerPort() {
+            return endpoint.serverPort;
+        }
+
+        @Override
+        public String getContextPath() {
+            return endpoint.contextPath;
+        }
+
+        @Override
+        public boolean isSecure() {
+            return "https".equals(endpoint.scheme);
+        }
+
+        @Override
+        public String getRequestURI() {
+            String pathInfo = getPathInfo();
+            return endpoint.contextPath + getServletPath() + (pathInfo != null ? pathInfo : "");
+        }
+
+        @Override
+        public StringBuffer getRequestURL() {
+            String pathInfo = getPathInfo();
+            StringBuffer url = new StringBuffer(endpoint.baseURL).append(getServletPath());
+            return pathInfo != null ? url.append(pathInfo) : url;
+        }
+    }
+}
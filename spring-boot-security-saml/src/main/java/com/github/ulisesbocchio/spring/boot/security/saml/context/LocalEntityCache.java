@@ -0,0 +1,142 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.context;
+
+import org.opensaml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml2.metadata.RoleDescriptor;
+import org.opensaml.saml2.metadata.provider.MetadataProvider;
+import org.opensaml.saml2.metadata.provider.ObservableMetadataProvider;
+import org.opensaml.xml.security.credential.Credential;
+import org.opensaml.xml.security.x509.X509Credential;
+import org.springframework.security.saml.context.SAMLMessageContext;
+import org.springframework.security.saml.metadata.ExtendedMetadata;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory cache of the local entity part of a {@link SAMLMessageContext}: entity and role descriptors, extended
+ * metadata, and signing, decryption and TLS credentials, keyed by local entity ID and role, i.e. per alias. With it,
+ * the metadata and key manager lookups done for the local entity on every request only happen once per alias.
+ * <p>
+ * Registered as {@link ObservableMetadataProvider.Observer}, the cache is cleared every time the metadata is
+ * refreshed, and the context providers clear it when given a different metadata manager or key manager. Only local
+ * entities found in the metadata are cached, so the cache is bounded by the number of hosted entities.
+ * </p>
+ *
+ * @author Ulises Bocchio
+ */
+public class LocalEntityCache implements ObservableMetadataProvider.Observer {
+
+    private final Map<List<Object>, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Populates the local entity of the given context from the cache, counting a hit or a miss.
+     *
+     * @return whether the local entity was cached.
+     */
+    boolean populate(SAMLMessageContext context) {
+        Entry entry = entries.get(key(context));
+        if (entry == null) {
+            misses.increment();
+            return false;
+        }
+        hits.increment();
+        context.setLocalEntityMetadata(entry.entityDescriptor);
+        context.setLocalEntityRoleMetadata(entry.roleDescriptor);
+        context.setLocalExtendedMetadata(entry.extendedMetadata);
+        context.setLocalSigningCredential(entry.signingCredential);
+        context.setLocalDecryptionCredential(entry.decryptionCredential);
+        context.setLocalSSLCredential(entry.sslCredential);
+        return true;
+    }
+
+    /**
+     * Current generation, to be passed to {@link #store(SAMLMessageContext, long)} once the local entity is resolved.
+     */
+    long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Caches the local entity of the given context, unless the cache was cleared since it started being resolved.
+     */
+    void store(SAMLMessageContext context, long resolvedAt) {
+        if (context.getLocalEntityMetadata() == null || context.getLocalEntityRoleMetadata() == null
+                || context.getLocalExtendedMetadata() == null) {
+            return;
+        }
+        List<Object> key = key(context);
+        entries.put(key, new Entry(context));
+        if (generation.get() != resolvedAt) {
+            entries.remove(key);
+        }
+    }
+
+    @Override
+    public void onEvent(MetadataProvider provider) {
+        clear();
+    }
+
+    /**
+     * Number of local entities populated from the cache.
+     *
+     * @return the hit count.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Number of local entities resolved from the metadata and key managers.
+     *
+     * @return the miss count.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Current number of cached local entities.
+     *
+     * @return the cache size.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Discards all the cached local entities.
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    private static List<Object> key(SAMLMessageContext context) {
+        return Arrays.asList(context.getLocalEntityId(), context.getLocalEntityRole());
+    }
+
+    private static final class Entry {
+        private final EntityDescriptor entityDescriptor;
+        private final RoleDescriptor roleDescriptor;
+        private final ExtendedMetadata extendedMetadata;
+        private final Credential signingCredential;
+        private final Credential decryptionCredential;
+        private final X509Credential sslCredential;
+
+        Entry(SAMLMessageContext context) {
+            this.entityDescriptor = context.getLocalEntityMetadata();
+            this.roleDescriptor = context.getLocalEntityRoleMetadata();
+            this.extendedMetadata = context.getLocalExtendedMetadata();
+            this.signingCredential = context.getLocalSigningCredential();
+            this.decryptionCredential = context.getLocalDecryptionCredential();
+            this.sslCredential = context.getLocalSSLCredential();
+        }
+    }
+}
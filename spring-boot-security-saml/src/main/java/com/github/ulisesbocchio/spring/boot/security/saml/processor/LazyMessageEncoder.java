@@ -0,0 +1,67 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.processor;
+
+import org.opensaml.ws.message.MessageContext;
+import org.opensaml.ws.message.encoder.MessageEncoder;
+import org.opensaml.ws.message.encoder.MessageEncodingException;
+import org.springframework.util.Assert;
+
+import java.util.function.Supplier;
+
+/**
+ * {@link MessageEncoder} that creates its delegate on the first message it encodes, so that the resources the delegate
+ * needs, e.g. the Velocity engine of the stock HTTP POST and HTTP Artifact encoders, are only initialized once a
+ * message is actually sent through the binding.
+ *
+ * @author Ulises Bocchio
+ */
+public class LazyMessageEncoder implements MessageEncoder {
+
+    private final Supplier<MessageEncoder> supplier;
+    private volatile MessageEncoder delegate;
+
+    /**
+     * @param supplier creates the delegate, called at most once.
+     */
+    public LazyMessageEncoder(Supplier<MessageEncoder> supplier) {
+        Assert.notNull(supplier, "'supplier' cannot be null.");
+        this.supplier = supplier;
+    }
+
+    @Override
+    public void encode(MessageContext messageContext) throws MessageEncodingException {
+        getDelegate().encode(messageContext);
+    }
+
+    @Override
+    public boolean providesMessageConfidentiality(MessageContext messageContext) throws MessageEncodingException {
+        return getDelegate().providesMessageConfidentiality(messageContext);
+    }
+
+    @Override
+    public boolean providesMessageIntegrity(MessageContext messageContext) throws MessageEncodingException {
+        return getDelegate().providesMessageIntegrity(messageContext);
+    }
+
+    /**
+     * Whether the delegate was already created.
+     *
+     * @return true once a message was encoded.
+     */
+    public boolean isInitialized() {
+        return delegate != null;
+    }
+
+    private MessageEncoder getDelegate() {
+        MessageEncoder current = delegate;
+        if (current == null) {
+            synchronized (this) {
+                current = delegate;
+                if (current == null) {
+                    current = supplier.get();
+                    delegate = current;
+                }
+            }
+        }
+        return current;
+    }
+}
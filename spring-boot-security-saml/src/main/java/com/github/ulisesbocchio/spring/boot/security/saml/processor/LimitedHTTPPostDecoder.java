@@ -0,0 +1,45 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.processor;
+
+import org.opensaml.saml2.binding.decoding.HTTPPostDecoder;
+import org.opensaml.ws.message.decoder.MessageDecodingException;
+import org.opensaml.ws.transport.http.HTTPInTransport;
+import org.opensaml.xml.parse.ParserPool;
+import org.opensaml.xml.util.DatatypeHelper;
+
+import java.io.InputStream;
+
+/**
+ * {@link HTTPPostDecoder} that rejects messages larger than a maximum size before decoding them, and streams the Base64
+ * decoding of the message into the parser instead of decoding it into an intermediate byte array.
+ *
+ * @author Ulises Bocchio
+ */
+public class LimitedHTTPPostDecoder extends HTTPPostDecoder {
+
+    private final long maxMessageSize;
+
+    /**
+     * @param pool           the parser pool used to parse the messages.
+     * @param maxMessageSize maximum size in bytes of the decoded message, 0 for no limit.
+     */
+    public LimitedHTTPPostDecoder(ParserPool pool, long maxMessageSize) {
+        super(pool);
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    @Override
+    protected InputStream getBase64DecodedMessage(HTTPInTransport transport) throws MessageDecodingException {
+        String encodedMessage = transport.getParameterValue("SAMLRequest");
+        if (DatatypeHelper.isEmpty(encodedMessage)) {
+            encodedMessage = transport.getParameterValue("SAMLResponse");
+        }
+        if (DatatypeHelper.isEmpty(encodedMessage)) {
+            throw new MessageDecodingException("No SAML message present in request");
+        }
+        return SAMLMessageDecoding.base64Decode(encodedMessage, maxMessageSize);
+    }
+
+    public long getMaxMessageSize() {
+        return maxMessageSize;
+    }
+}
@@ -0,0 +1,44 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.processor;
+
+import org.opensaml.saml2.binding.decoding.HTTPRedirectDeflateDecoder;
+import org.opensaml.ws.message.decoder.MessageDecodingException;
+import org.opensaml.xml.parse.ParserPool;
+
+import java.io.InputStream;
+
+/**
+ * {@link HTTPRedirectDeflateDecoder} that rejects messages whose deflated or inflated size exceed a maximum, or that
+ * inflate more than a maximum ratio, before they are parsed. The message is inflated straight from its Base64 decoding,
+ * and inflating stops as soon as a limit is exceeded.
+ *
+ * @author Ulises Bocchio
+ */
+public class LimitedHTTPRedirectDeflateDecoder extends HTTPRedirectDeflateDecoder {
+
+    private final long maxMessageSize;
+    private final int maxInflateRatio;
+
+    /**
+     * @param pool            the parser pool used to parse the messages.
+     * @param maxMessageSize  maximum size in bytes of the deflated and inflated message, 0 for no limit.
+     * @param maxInflateRatio maximum ratio between the inflated and deflated message sizes, 0 for no limit.
+     */
+    public LimitedHTTPRedirectDeflateDecoder(ParserPool pool, long maxMessageSize, int maxInflateRatio) {
+        super(pool);
+        this.maxMessageSize = maxMessageSize;
+        this.maxInflateRatio = maxInflateRatio;
+    }
+
+    @Override
+    protected InputStream decodeMessage(String message) throws MessageDecodingException {
+        return SAMLMessageDecoding.base64DecodeAndInflate(message, maxMessageSize, maxInflateRatio);
+    }
+
+    public long getMaxMessageSize() {
+        return maxMessageSize;
+    }
+
+    public int getMaxInflateRatio() {
+        return maxInflateRatio;
+    }
+}
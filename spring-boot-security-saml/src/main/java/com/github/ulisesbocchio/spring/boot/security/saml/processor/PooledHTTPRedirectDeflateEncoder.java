@@ -0,0 +1,242 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.processor;
+
+import org.opensaml.common.SAMLObject;
+import org.opensaml.saml2.binding.encoding.HTTPRedirectDeflateEncoder;
+import org.opensaml.ws.message.encoder.MessageEncodingException;
+import org.opensaml.xml.util.XMLHelper;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.util.Assert;
+
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+
+/**
+ * {@link HTTPRedirectDeflateEncoder} that reuses the {@link Deflater} and the buffers used to deflate SAML messages,
+ * instead of allocating a new {@link Deflater} (and its native memory, only released on finalization) and several
+ * intermediate copies of the message for every request. The marshalled message is serialized straight into a reusable
+ * character buffer, UTF-8 encoded and deflated into reusable byte buffers, and Base64 encoded into the returned String.
+ * The output is the same as {@link HTTPRedirectDeflateEncoder}'s.
+ * <p>
+ * Buffers are borrowed from a bounded pool of idle ones, so at most {@code maxIdle} {@link Deflater}s outlive the
+ * requests that used them. The {@link Deflater}s that don't fit back in the pool, and the pooled ones on
+ * {@link #destroy()}, are ended, releasing their native memory right away.
+ * </p>
+ *
+ * @author Ulises Bocchio
+ */
+public class PooledHTTPRedirectDeflateEncoder extends HTTPRedirectDeflateEncoder implements DisposableBean {
+
+    private final BlockingQueue<Buffers> idle;
+    private volatile boolean destroyed;
+
+    public PooledHTTPRedirectDeflateEncoder() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param maxIdle maximum number of idle buffers, and their {@link Deflater}, kept for reuse.
+     */
+    public PooledHTTPRedirectDeflateEncoder(int maxIdle) {
+        Assert.isTrue(maxIdle > 0, "'maxIdle' must be greater than 0.");
+        idle = new ArrayBlockingQueue<>(maxIdle);
+    }
+
+    @Override
+    protected String deflateAndBase64Encode(SAMLObject message) throws MessageEncodingException {
+        Buffers buffers = idle.poll();
+        if (buffers == null) {
+            buffers = new Buffers();
+        }
+        try {
+            buffers.chars.reset();
+            XMLHelper.writeNode(marshallMessage(message), buffers.chars);
+            return buffers.deflateAndBase64Encode();
+        } finally {
+            release(buffers);
+        }
+    }
+
+    private void release(Buffers buffers) {
+        if (destroyed || !idle.offer(buffers)) {
+            buffers.end();
+            return;
+        }
+        // destroy() may have drained the pool right before the offer
+        if (destroyed && idle.remove(buffers)) {
+            buffers.end();
+        }
+    }
+
+    /**
+     * Number of idle buffers kept for reuse.
+     *
+     * @return the idle count.
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Ends the {@link Deflater}s of the idle buffers, and of the ones in use once they are released.
+     */
+    @Override
+    public void destroy() {
+        destroyed = true;
+        for (Buffers buffers = idle.poll(); buffers != null; buffers = idle.poll()) {
+            buffers.end();
+        }
+    }
+
+    static final class Buffers {
+        private static final int MAX_RETAINED_SIZE = 64 * 1024;
+
+        final CharArrayBuffer chars = new CharArrayBuffer();
+        private final CharsetEncoder utf8 = StandardCharsets.UTF_8.newEncoder();
+        private final Deflater deflater = new Deflater(Deflater.DEFLATED, true);
+        private ByteBuffer encoded = ByteBuffer.allocate(4096);
+        private byte[] deflated = new byte[2048];
+
+        String deflateAndBase64Encode() {
+            try {
+                int length = encode();
+                int deflatedLength = deflate(length);
+                return base64(deflatedLength);
+            } finally {
+                deflater.reset();
+                trim();
+            }
+        }
+
+        private int encode() {
+            utf8.reset();
+            encoded.clear();
+            CharBuffer in = CharBuffer.wrap(chars.buffer, 0, chars.size);
+            while (true) {
+                CoderResult result = utf8.encode(in, encoded, true);
+                if (result.isOverflow()) {
+                    encoded = grow(encoded);
+                } else if (result.isUnderflow()) {
+                    result = utf8.flush(encoded);
+                    if (result.isOverflow()) {
+                        encoded = grow(encoded);
+                        continue;
+                    }
+                    return encoded.position();
+                } else {
+                    // malformed or unmappable: not possible for UTF-8 of a well formed String, replace like String#getBytes
+                    in.position(in.position() + result.length());
+                    encoded = ensureRemaining(encoded, 1);
+                    encoded.put((byte) '?');
+                }
+            }
+        }
+
+        private int deflate(int length) {
+            deflater.setInput(encoded.array(), 0, length);
+            deflater.finish();
+            int total = 0;
+            while (!deflater.finished()) {
+                if (total == deflated.length) {
+                    deflated = Arrays.copyOf(deflated, deflated.length * 2);
+                }
+                total += deflater.deflate(deflated, total, deflated.length - total);
+            }
+            return total;
+        }
+
+        private String base64(int length) {
+            ByteBuffer base64 = Base64.getEncoder().encode(ByteBuffer.wrap(deflated, 0, length));
+            return new String(base64.array(), 0, base64.limit(), StandardCharsets.ISO_8859_1);
+        }
+
+        void end() {
+            deflater.end();
+        }
+
+        /**
+         * Releases buffers grown by an unusually large message, so that threads don't retain them forever.
+         */
+        private void trim() {
+            if (encoded.capacity() > MAX_RETAINED_SIZE) {
+                encoded = ByteBuffer.allocate(4096);
+            }
+            if (deflated.length > MAX_RETAINED_SIZE) {
+                deflated = new byte[2048];
+            }
+            chars.trim(MAX_RETAINED_SIZE);
+        }
+
+        private static ByteBuffer grow(ByteBuffer buffer) {
+            ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+            buffer.flip();
+            grown.put(buffer);
+            return grown;
+        }
+
+        private static ByteBuffer ensureRemaining(ByteBuffer buffer, int remaining) {
+            return buffer.remaining() < remaining ? grow(buffer) : buffer;
+        }
+    }
+
+    /**
+     * Unsynchronized {@link java.io.CharArrayWriter} exposing its buffer.
+     */
+    static final class CharArrayBuffer extends Writer {
+        private char[] buffer = new char[4096];
+        private int size;
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            ensureCapacity(size + length);
+            System.arraycopy(chars, offset, buffer, size, length);
+            size += length;
+        }
+
+        @Override
+        public void write(String string, int offset, int length) {
+            ensureCapacity(size + length);
+            string.getChars(offset, offset + length, buffer, size);
+            size += length;
+        }
+
+        @Override
+        public void write(int c) {
+            ensureCapacity(size + 1);
+            buffer[size++] = (char) c;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        void reset() {
+            size = 0;
+        }
+
+        void trim(int maxRetainedSize) {
+            if (buffer.length > maxRetainedSize) {
+                buffer = new char[4096];
+                size = 0;
+            }
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, capacity));
+            }
+        }
+    }
+}
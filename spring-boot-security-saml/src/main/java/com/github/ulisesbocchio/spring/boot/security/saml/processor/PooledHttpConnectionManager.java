@@ -0,0 +1,124 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.processor;
+
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link MultiThreadedHttpConnectionManager} that keeps track of pool utilization and optionally closes connections idle
+ * for longer than a given time, so that connections dropped by the IDP or intermediate load balancers aren't reused.
+ * Used by the HTTP client of the Artifact binding to resolve artifacts against the IDP.
+ *
+ * @author Ulises Bocchio
+ */
+public class PooledHttpConnectionManager extends MultiThreadedHttpConnectionManager implements DisposableBean {
+
+    private final Set<HttpConnection> leased = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder poolTimeouts = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private IdleConnectionTimeoutThread idleConnectionEvictor;
+
+    /**
+     * Starts a background thread closing connections idle for longer than {@code idleTimeout}.
+     *
+     * @param idleTimeout   idle time in milliseconds after which connections are closed.
+     * @param checkInterval time in milliseconds between checks.
+     */
+    public synchronized void evictIdleConnections(long idleTimeout, long checkInterval) {
+        if (idleConnectionEvictor == null) {
+            idleConnectionEvictor = new IdleConnectionTimeoutThread();
+            idleConnectionEvictor.setName("saml-http-idle-evictor");
+            idleConnectionEvictor.setConnectionTimeout(idleTimeout);
+            idleConnectionEvictor.setTimeoutInterval(checkInterval);
+            idleConnectionEvictor.addConnectionManager(this);
+            idleConnectionEvictor.start();
+        }
+    }
+
+    @Override
+    public HttpConnection getConnectionWithTimeout(HostConfiguration hostConfiguration, long timeout)
+            throws ConnectionPoolTimeoutException {
+        long start = System.nanoTime();
+        try {
+            HttpConnection connection = super.getConnectionWithTimeout(hostConfiguration, timeout);
+            leased.add(connection);
+            acquired.increment();
+            return connection;
+        } catch (ConnectionPoolTimeoutException e) {
+            poolTimeouts.increment();
+            throw e;
+        } finally {
+            waitNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Number of connections currently leased to requests. Leased connections are tracked weakly and counted only while
+     * still bound to a pooled connection, so that connections the pool reclaims after being garbage collected without
+     * release are not counted.
+     *
+     * @return the leased connections.
+     */
+    public int getLeasedConnections() {
+        synchronized (leased) {
+            return (int) leased.stream().filter(connection -> connection.getHost() != null).count();
+        }
+    }
+
+    /**
+     * Leased connections over the maximum total connections.
+     *
+     * @return the pool utilization, between 0 and 1.
+     */
+    public double getUtilization() {
+        int maxTotal = getParams().getMaxTotalConnections();
+        return maxTotal == 0 ? 0 : (double) getLeasedConnections() / maxTotal;
+    }
+
+    /**
+     * Number of connections successfully leased since startup.
+     *
+     * @return the acquired count.
+     */
+    public long getAcquiredCount() {
+        return acquired.sum();
+    }
+
+    /**
+     * Number of requests that gave up waiting for a free connection.
+     *
+     * @return the pool timeout count.
+     */
+    public long getPoolTimeoutCount() {
+        return poolTimeouts.sum();
+    }
+
+    /**
+     * Average time requests waited for a connection, in milliseconds.
+     *
+     * @return the average wait time.
+     */
+    public double getAverageWaitMillis() {
+        long requests = getAcquiredCount() + getPoolTimeoutCount();
+        return requests == 0 ? 0 : (double) TimeUnit.NANOSECONDS.toMicros(waitNanos.sum()) / requests / 1000;
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (idleConnectionEvictor != null) {
+            idleConnectionEvictor.shutdown();
+            idleConnectionEvictor = null;
+        }
+        shutdown();
+    }
+}
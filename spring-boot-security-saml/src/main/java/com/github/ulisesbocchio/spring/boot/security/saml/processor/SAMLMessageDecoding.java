@@ -0,0 +1,145 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.processor;
+
+import org.opensaml.ws.message.decoder.MessageDecodingException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Base64 decoding and inflating of SAML message parameters that checks size limits before any decoding happens, and
+ * decodes from the parameter String without intermediate copies of the whole message.
+ *
+ * @author Ulises Bocchio
+ */
+final class SAMLMessageDecoding {
+
+    private SAMLMessageDecoding() {
+    }
+
+    /**
+     * Number of bytes the Base64 encoded message decodes to, ignoring line breaks and other characters outside of the
+     * Base64 alphabet, like the decoders do.
+     */
+    static long decodedLength(String encoded) {
+        long characters = 0;
+        for (int i = 0; i < encoded.length(); i++) {
+            if (isBase64(encoded.charAt(i))) {
+                characters++;
+            }
+        }
+        return characters / 4 * 3 + Math.max(0, characters % 4 - 1);
+    }
+
+    /**
+     * Stream of the Base64 decoded message, rejected before decoding if it would exceed {@code maxMessageSize} bytes.
+     *
+     * @param encoded        the Base64 encoded message.
+     * @param maxMessageSize the maximum decoded size in bytes, 0 for no limit.
+     * @return the decoded message.
+     * @throws MessageDecodingException if the decoded message exceeds the maximum size.
+     */
+    static InputStream base64Decode(String encoded, long maxMessageSize) throws MessageDecodingException {
+        checkSize(decodedLength(encoded), maxMessageSize, "SAML message");
+        return Base64.getMimeDecoder().wrap(new Base64InputStream(encoded));
+    }
+
+    /**
+     * Base64 decodes and inflates the message, rejecting it before decoding if the deflated message exceeds
+     * {@code maxMessageSize} bytes, and before it is parsed if the inflated message exceeds {@code maxMessageSize} bytes
+     * or {@code maxInflateRatio} times the size of the deflated message. Memory use is bounded by the limits, however
+     * large the message actually inflates to.
+     *
+     * @param encoded         the Base64 encoded, deflated, message.
+     * @param maxMessageSize  the maximum deflated and inflated size in bytes, 0 for no limit.
+     * @param maxInflateRatio the maximum ratio between the inflated and deflated sizes, 0 for no limit.
+     * @return the inflated message.
+     * @throws MessageDecodingException if the message exceeds the limits or can't be inflated.
+     */
+    static InputStream base64DecodeAndInflate(String encoded, long maxMessageSize, int maxInflateRatio) throws MessageDecodingException {
+        long deflatedLength = decodedLength(encoded);
+        checkSize(deflatedLength, maxMessageSize, "Deflated SAML message");
+        long limit = maxMessageSize > 0 ? maxMessageSize : Long.MAX_VALUE;
+        if (maxInflateRatio > 0) {
+            limit = Math.min(limit, Math.max(deflatedLength, 1) * maxInflateRatio);
+        }
+        Inflater inflater = new Inflater(true);
+        try (InputStream in = new InflaterInputStream(Base64.getMimeDecoder().wrap(new Base64InputStream(encoded)), inflater)) {
+            // one byte over the limit, so that exceeding it can be detected
+            long maxCapacity = Math.min(limit, Integer.MAX_VALUE - 9) + 1;
+            byte[] buffer = new byte[(int) Math.min(Math.max(deflatedLength * 4, 1024), Math.min(maxCapacity, 64 * 1024))];
+            int length = 0;
+            int read;
+            while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+                if (length > limit) {
+                    throw new MessageDecodingException("Inflated SAML message exceeds " + limit + " bytes, "
+                            + deflatedLength + " bytes deflated");
+                }
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, (int) Math.min((long) buffer.length * 2, maxCapacity));
+                }
+            }
+            return new ByteArrayInputStream(buffer, 0, length);
+        } catch (IOException e) {
+            throw new MessageDecodingException("Unable to Base64 decode and inflate SAML message", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void checkSize(long size, long maxMessageSize, String description) throws MessageDecodingException {
+        if (maxMessageSize > 0 && size > maxMessageSize) {
+            throw new MessageDecodingException(description + " of " + size + " bytes exceeds " + maxMessageSize + " bytes");
+        }
+    }
+
+    private static boolean isBase64(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '+' || c == '/';
+    }
+
+    /**
+     * Bytes of the Base64 encoded String, with characters outside of ASCII replaced by a space, ignored by the decoder.
+     */
+    private static final class Base64InputStream extends InputStream {
+        private final String encoded;
+        private int position;
+
+        Base64InputStream(String encoded) {
+            this.encoded = encoded;
+        }
+
+        @Override
+        public int read() {
+            return position < encoded.length() ? toByte(encoded.charAt(position++)) : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (position >= encoded.length()) {
+                return -1;
+            }
+            int count = Math.min(length, encoded.length() - position);
+            for (int i = 0; i < count; i++) {
+                bytes[offset + i] = (byte) toByte(encoded.charAt(position++));
+            }
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return encoded.length() - position;
+        }
+
+        private static int toByte(char c) {
+            return c < 128 ? c : ' ';
+        }
+    }
+}
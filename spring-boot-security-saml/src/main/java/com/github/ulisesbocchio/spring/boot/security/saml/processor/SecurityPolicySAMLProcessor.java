@@ -0,0 +1,44 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.processor;
+
+import org.opensaml.ws.security.SecurityPolicy;
+import org.opensaml.ws.security.SecurityPolicyRule;
+import org.springframework.security.saml.context.SAMLMessageContext;
+import org.springframework.security.saml.processor.SAMLBinding;
+import org.springframework.security.saml.processor.SAMLProcessorImpl;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * {@link SAMLProcessorImpl} that evaluates the given {@link SecurityPolicyRule}s on every received message, before the
+ * ones of the binding, e.g. so that inexpensive checks reject a message before its signature is verified.
+ *
+ * @author Ulises Bocchio
+ */
+public class SecurityPolicySAMLProcessor extends SAMLProcessorImpl {
+
+    private final List<SecurityPolicyRule> rules;
+
+    /**
+     * @param bindings the bindings supported by the processor.
+     * @param rules    rules evaluated before the ones of the binding, in order.
+     */
+    public SecurityPolicySAMLProcessor(Collection<SAMLBinding> bindings, List<SecurityPolicyRule> rules) {
+        super(bindings);
+        Assert.notNull(rules, "'rules' cannot be null.");
+        this.rules = new ArrayList<>(rules);
+    }
+
+    @Override
+    protected SecurityPolicy populateSecurityPolicy(SAMLMessageContext samlContext, SAMLBinding binding) {
+        SecurityPolicy policy = super.populateSecurityPolicy(samlContext, binding);
+        policy.getPolicyRules().addAll(0, rules);
+        return policy;
+    }
+
+    public List<SecurityPolicyRule> getRules() {
+        return rules;
+    }
+}
@@ -0,0 +1,130 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.processor;
+
+import org.opensaml.common.SAMLObject;
+import org.opensaml.common.binding.SAMLMessageContext;
+import org.opensaml.saml2.binding.encoding.HTTPPostEncoder;
+import org.opensaml.saml2.core.RequestAbstractType;
+import org.opensaml.saml2.core.StatusResponseType;
+import org.opensaml.ws.message.encoder.MessageEncodingException;
+import org.opensaml.ws.transport.http.HTTPOutTransport;
+import org.opensaml.ws.transport.http.HTTPTransportUtils;
+import org.opensaml.xml.util.XMLHelper;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * {@link HTTPPostEncoder} that writes the auto-submit form from a precompiled template straight to the response,
+ * instead of rendering a Velocity template. The form is the same as the one of Spring Security SAML's
+ * {@code saml2-post-binding.vm}, and the action URL and relay state are HTML escaped.
+ *
+ * @author Ulises Bocchio
+ */
+public class StaticHTTPPostEncoder extends HTTPPostEncoder {
+
+    private static final String FORM_START = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.1//EN\" \"http://www.w3.org/TR/xhtml11/DTD/xhtml11.dtd\">\n"
+            + "<html xmlns=\"http://www.w3.org/1999/xhtml\" xml:lang=\"en\">\n"
+            + "    <body onload=\"document.forms[0].submit()\">\n"
+            + "        <noscript>\n"
+            + "            <p>\n"
+            + "                <strong>Note:</strong> Since your browser does not support JavaScript,\n"
+            + "                you must press the Continue button once to proceed.\n"
+            + "            </p>\n"
+            + "        </noscript>\n"
+            + "        <form action=\"";
+    private static final String FORM_FIELDS = "\" method=\"post\">\n"
+            + "            <div>\n";
+    private static final String FORM_END = "            </div>\n"
+            + "            <noscript>\n"
+            + "                <div>\n"
+            + "                    <input type=\"submit\" value=\"Continue\"/>\n"
+            + "                </div>\n"
+            + "            </noscript>\n"
+            + "        </form>\n"
+            + "    </body>\n"
+            + "</html>\n";
+
+    public StaticHTTPPostEncoder() {
+        super(null, null);
+    }
+
+    @Override
+    protected void postEncode(SAMLMessageContext messageContext, String endpointURL) throws MessageEncodingException {
+        SAMLObject outboundMessage = messageContext.getOutboundSAMLMessage();
+        String messageParameter;
+        if (outboundMessage instanceof RequestAbstractType) {
+            messageParameter = "SAMLRequest";
+        } else if (outboundMessage instanceof StatusResponseType) {
+            messageParameter = "SAMLResponse";
+        } else {
+            throw new MessageEncodingException("SAML message is neither a SAML RequestAbstractType or StatusResponseType");
+        }
+        String message = Base64.getEncoder().encodeToString(
+                XMLHelper.nodeToString(marshallMessage(outboundMessage)).getBytes(StandardCharsets.UTF_8));
+        String relayState = messageContext.getRelayState();
+
+        HTTPOutTransport outTransport = (HTTPOutTransport) messageContext.getOutboundMessageTransport();
+        HTTPTransportUtils.addNoCacheHeaders(outTransport);
+        HTTPTransportUtils.setUTF8Encoding(outTransport);
+        HTTPTransportUtils.setContentType(outTransport, "text/html");
+        try {
+            Writer out = new OutputStreamWriter(outTransport.getOutgoingStream(), StandardCharsets.UTF_8);
+            out.write(FORM_START);
+            escape(endpointURL, out);
+            out.write(FORM_FIELDS);
+            if (checkRelayState(relayState)) {
+                writeField("RelayState", relayState, out);
+            }
+            writeField(messageParameter, message, out);
+            out.write(FORM_END);
+            out.flush();
+        } catch (IOException e) {
+            throw new MessageEncodingException("Error creating output document", e);
+        }
+    }
+
+    private static void writeField(String name, String value, Writer out) throws IOException {
+        out.write("                <input type=\"hidden\" name=\"");
+        out.write(name);
+        out.write("\" value=\"");
+        escape(value, out);
+        out.write("\"/>\n");
+    }
+
+    /**
+     * Escapes the characters with special meaning in HTML attribute values.
+     */
+    static void escape(String value, Writer out) throws IOException {
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            String replacement;
+            switch (value.charAt(i)) {
+                case '&':
+                    replacement = "&amp;";
+                    break;
+                case '<':
+                    replacement = "&lt;";
+                    break;
+                case '>':
+                    replacement = "&gt;";
+                    break;
+                case '"':
+                    replacement = "&quot;";
+                    break;
+                case '\'':
+                    replacement = "&#x27;";
+                    break;
+                default:
+                    continue;
+            }
+            out.write(value, start, i - start);
+            out.write(replacement);
+            start = i + 1;
+        }
+        out.write(value, start, value.length() - start);
+    }
+}
@@ -0,0 +1,393 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.processor;
+
+import org.opensaml.common.SAMLException;
+import org.opensaml.common.xml.SAMLConstants;
+import org.opensaml.saml2.metadata.IDPSSODescriptor;
+import org.opensaml.saml2.metadata.provider.MetadataProvider;
+import org.opensaml.saml2.metadata.provider.MetadataProviderException;
+import org.opensaml.saml2.metadata.provider.ObservableMetadataProvider;
+import org.opensaml.security.MetadataCriteria;
+import org.opensaml.ws.message.decoder.MessageDecodingException;
+import org.opensaml.ws.message.encoder.MessageEncodingException;
+import org.opensaml.ws.transport.http.HTTPInTransport;
+import org.opensaml.ws.transport.http.HTTPOutTransport;
+import org.opensaml.ws.transport.http.HTTPTransport.HTTP_VERSION;
+import org.opensaml.xml.security.CriteriaSet;
+import org.opensaml.xml.security.SecurityException;
+import org.opensaml.xml.security.credential.Credential;
+import org.opensaml.xml.security.credential.UsageType;
+import org.opensaml.xml.security.criteria.EntityIDCriteria;
+import org.opensaml.xml.security.criteria.UsageCriteria;
+import org.opensaml.xml.security.x509.X509Credential;
+import org.springframework.security.saml.context.SAMLMessageContext;
+import org.springframework.security.saml.metadata.MetadataManager;
+import org.springframework.security.saml.transport.LocationAwareInTransport;
+import org.springframework.security.saml.trust.X509KeyManager;
+import org.springframework.security.saml.trust.X509TrustManager;
+import org.springframework.security.saml.websso.ArtifactResolutionProfileBase;
+import org.springframework.util.StreamUtils;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Artifact Resolution profile that talks to the IDP over the JDK {@link HttpURLConnection} instead of commons-httpclient.
+ * Connections are kept alive and reused by the JDK, and one {@link SSLContext} is kept per IDP so that TLS sessions
+ * are resumed instead of doing a full handshake on every artifact. The IDP certificate is validated against its
+ * metadata, like in {@link org.springframework.security.saml.websso.ArtifactResolutionProfileImpl}, and host names are
+ * verified with the JDK default {@link javax.net.ssl.HostnameVerifier}.
+ * <p>
+ * This only changes how connections are reused: requests are still blocking HTTP/1.1, there is no HTTP/2 or
+ * non-blocking IO. The {@link SSLContext}s are dropped whenever the metadata is refreshed, since they trust the IDP
+ * certificates of the metadata they were created with, and recreated whenever the local TLS certificate changes.
+ * </p>
+ *
+ * @author Ulises Bocchio
+ */
+public class UrlConnectionArtifactResolutionProfile extends ArtifactResolutionProfileBase
+        implements ObservableMetadataProvider.Observer {
+
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final Map<String, CachedSocketFactory> socketFactories = new ConcurrentHashMap<>();
+
+    /**
+     * @param connectTimeout timeout in milliseconds until a connection is established, 0 for no timeout.
+     * @param readTimeout    timeout in milliseconds waiting for data from the IDP, 0 for no timeout.
+     */
+    public UrlConnectionArtifactResolutionProfile(int connectTimeout, int readTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Sets the metadata and observes it, to drop the {@link SSLContext}s on every refresh.
+     */
+    @Override
+    public void setMetadata(MetadataManager metadata) {
+        super.setMetadata(metadata);
+        if (metadata != null && !metadata.getObservers().contains(this)) {
+            metadata.getObservers().add(this);
+        }
+        clearSSLContexts();
+    }
+
+    @Override
+    public void onEvent(MetadataProvider provider) {
+        clearSSLContexts();
+    }
+
+    @Override
+    protected void getArtifactResponse(String endpointURI, SAMLMessageContext context) throws SAMLException, MessageEncodingException, MessageDecodingException {
+        HttpURLConnection connection = null;
+        try {
+            connection = openConnection(endpointURI, context);
+            context.setOutboundMessageTransport(new OutTransport(connection));
+            context.setInboundMessageTransport(new InTransport(connection, endpointURI));
+            boolean signatureRequired = context.getPeerExtendedMetadata() != null
+                    && context.getPeerExtendedMetadata().isRequireArtifactResolveSigned();
+            processor.sendMessage(context, signatureRequired, SAMLConstants.SAML2_SOAP11_BINDING_URI);
+            int responseCode = connection.getResponseCode();
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw new MessageDecodingException("Problem communicating with Artifact Resolution service, received response "
+                        + responseCode + ", body " + readError(connection));
+            }
+            processor.retrieveMessage(context, SAMLConstants.SAML2_SOAP11_BINDING_URI);
+        } catch (IOException | GeneralSecurityException e) {
+            throw new MessageDecodingException("Error when sending request to artifact resolution service.", e);
+        } catch (MetadataProviderException | SecurityException e) {
+            throw new MessageDecodingException("Error processing artifact resolution response.", e);
+        } finally {
+            if (connection != null) {
+                release(connection);
+            }
+        }
+    }
+
+    protected HttpURLConnection openConnection(String endpointURI, SAMLMessageContext context) throws IOException, GeneralSecurityException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(endpointURI).openConnection();
+        if (connection instanceof HttpsURLConnection) {
+            ((HttpsURLConnection) connection).setSSLSocketFactory(getSSLSocketFactory(context));
+        }
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setUseCaches(false);
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        return connection;
+    }
+
+    /**
+     * One socket factory per local and peer entity, since the JDK only reuses kept alive connections, and resumes TLS
+     * sessions, created by the same socket factory. It is recreated when the local TLS certificate changed, e.g.
+     * because the key was replaced.
+     */
+    protected SSLSocketFactory getSSLSocketFactory(SAMLMessageContext context) throws GeneralSecurityException {
+        String key = context.getLocalEntityId() + " " + context.getPeerEntityId();
+        X509Certificate localCertificate = localCertificate(context);
+        CachedSocketFactory cached = socketFactories.get(key);
+        if (cached == null || !Objects.equals(cached.localCertificate, localCertificate)) {
+            cached = new CachedSocketFactory(localCertificate, createSSLContext(context).getSocketFactory());
+            socketFactories.put(key, cached);
+        }
+        return cached.socketFactory;
+    }
+
+    private static X509Certificate localCertificate(SAMLMessageContext context) {
+        Credential localCredential = context.getLocalSSLCredential();
+        return localCredential instanceof X509Credential
+                ? ((X509Credential) localCredential).getEntityCertificate()
+                : null;
+    }
+
+    protected SSLContext createSSLContext(SAMLMessageContext context) throws GeneralSecurityException {
+        CriteriaSet criteriaSet = new CriteriaSet();
+        criteriaSet.add(new EntityIDCriteria(context.getPeerEntityId()));
+        criteriaSet.add(new MetadataCriteria(IDPSSODescriptor.DEFAULT_ELEMENT_NAME, SAMLConstants.SAML20P_NS));
+        criteriaSet.add(new UsageCriteria(UsageType.UNSPECIFIED));
+        TrustManager[] trustManagers = {new X509TrustManager(criteriaSet, context.getLocalSSLTrustEngine())};
+        Credential localCredential = context.getLocalSSLCredential();
+        KeyManager[] keyManagers = localCredential instanceof X509Credential
+                ? new KeyManager[]{new X509KeyManager((X509Credential) localCredential)}
+                : null;
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagers, trustManagers, null);
+        return sslContext;
+    }
+
+    /**
+     * Forgets the TLS contexts of all IDPs. Called on every metadata refresh.
+     */
+    public void clearSSLContexts() {
+        socketFactories.clear();
+    }
+
+    private static String readError(HttpURLConnection connection) throws IOException {
+        InputStream error = connection.getErrorStream();
+        if (error == null) {
+            return "";
+        }
+        try (InputStream in = error) {
+            return StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Drains and closes the response so the JDK can put the connection back into its keep alive cache.
+     */
+    private static void release(HttpURLConnection connection) {
+        try {
+            InputStream in = connection.getErrorStream();
+            if (in == null) {
+                in = connection.getInputStream();
+            }
+            try (InputStream response = in) {
+                StreamUtils.drain(response);
+            }
+        } catch (IOException e) {
+            connection.disconnect();
+        }
+    }
+
+    private static final class CachedSocketFactory {
+        private final X509Certificate localCertificate;
+        private final SSLSocketFactory socketFactory;
+
+        CachedSocketFactory(X509Certificate localCertificate, SSLSocketFactory socketFactory) {
+            this.localCertificate = localCertificate;
+            this.socketFactory = socketFactory;
+        }
+    }
+
+    private abstract static class Transport {
+        final HttpURLConnection connection;
+        private final Map<String, Object> attributes = new HashMap<>();
+        private String characterEncoding = StandardCharsets.UTF_8.name();
+        private boolean authenticated;
+        private boolean confidential;
+        private boolean integrityProtected;
+
+        Transport(HttpURLConnection connection) {
+            this.connection = connection;
+            this.confidential = connection instanceof HttpsURLConnection;
+        }
+
+        public Object getAttribute(String name) {
+            return attributes.get(name);
+        }
+
+        public void setAttribute(String name, Object value) {
+            attributes.put(name, value);
+        }
+
+        public String getCharacterEncoding() {
+            return characterEncoding;
+        }
+
+        public void setCharacterEncoding(String encoding) {
+            this.characterEncoding = encoding;
+        }
+
+        public Credential getLocalCredential() {
+            return null;
+        }
+
+        public Credential getPeerCredential() {
+            return null;
+        }
+
+        public boolean isAuthenticated() {
+            return authenticated;
+        }
+
+        public void setAuthenticated(boolean authenticated) {
+            this.authenticated = authenticated;
+        }
+
+        public boolean isConfidential() {
+            return confidential;
+        }
+
+        public void setConfidential(boolean confidential) {
+            this.confidential = confidential;
+        }
+
+        public boolean isIntegrityProtected() {
+            return integrityProtected;
+        }
+
+        public void setIntegrityProtected(boolean integrityProtected) {
+            this.integrityProtected = integrityProtected;
+        }
+
+        public String getHTTPMethod() {
+            return "POST";
+        }
+
+        public HTTP_VERSION getVersion() {
+            return HTTP_VERSION.HTTP1_1;
+        }
+
+        public String getParameterValue(String name) {
+            return null;
+        }
+
+        public List<String> getParameterValues(String name) {
+            return Collections.emptyList();
+        }
+    }
+
+    private static final class OutTransport extends Transport implements HTTPOutTransport {
+
+        OutTransport(HttpURLConnection connection) {
+            super(connection);
+        }
+
+        @Override
+        public OutputStream getOutgoingStream() {
+            try {
+                return connection.getOutputStream();
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to open connection to artifact resolution service", e);
+            }
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            connection.setRequestProperty(name, value);
+        }
+
+        @Override
+        public String getHeaderValue(String name) {
+            return connection.getRequestProperty(name);
+        }
+
+        @Override
+        public int getStatusCode() {
+            return -1;
+        }
+
+        @Override
+        public void setVersion(HTTP_VERSION version) {
+        }
+
+        @Override
+        public void addParameter(String name, String value) {
+            throw new UnsupportedOperationException("Parameters are not supported by the SOAP binding");
+        }
+
+        @Override
+        public void setStatusCode(int code) {
+            throw new UnsupportedOperationException("Status code can't be set on a client request");
+        }
+
+        @Override
+        public void sendRedirect(String location) {
+            throw new UnsupportedOperationException("Redirects can't be sent from a client request");
+        }
+    }
+
+    private static final class InTransport extends Transport implements HTTPInTransport, LocationAwareInTransport {
+        private final String endpointURI;
+
+        InTransport(HttpURLConnection connection, String endpointURI) {
+            super(connection);
+            this.endpointURI = endpointURI;
+        }
+
+        @Override
+        public InputStream getIncomingStream() {
+            try {
+                return connection.getInputStream();
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to read response from artifact resolution service", e);
+            }
+        }
+
+        @Override
+        public String getHeaderValue(String name) {
+            return connection.getHeaderField(name);
+        }
+
+        @Override
+        public int getStatusCode() {
+            try {
+                return connection.getResponseCode();
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        public String getPeerAddress() {
+            return connection.getURL().getHost();
+        }
+
+        @Override
+        public String getPeerDomainName() {
+            return connection.getURL().getHost();
+        }
+
+        @Override
+        public String getLocalAddress() {
+            return endpointURI;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.properties;
+
+import lombok.Data;
+
+/**
+ * Configuration Properties for the in-memory
+ * {@link com.github.ulisesbocchio.spring.boot.security.saml.replay.AssertionReplayCache}.
+ *
+ * @author Ulises Bocchio
+ */
+@Data
+public class AssertionReplayCacheProperties {
+
+    /**
+     * Whether to reject Assertions that were already consumed. Disabled by default.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Maximum number of Assertion IDs kept in memory. Defaults to the number of logins within the Assertion validity
+     * window (max assertion time plus response skew of the profile consumer) at {@code logins-per-second}. Once full of
+     * unexpired IDs, new Assertions are rejected until older ones expire.
+     */
+    private Integer maxEntries;
+
+    /**
+     * Peak login rate the default {@code max-entries} is sized for.
+     */
+    private int loginsPerSecond = 30;
+
+    /**
+     * Number of independent stripes the cache is split into to reduce contention.
+     */
+    private int stripes = 16;
+}
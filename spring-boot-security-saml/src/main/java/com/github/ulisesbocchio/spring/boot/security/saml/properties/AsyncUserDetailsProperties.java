@@ -0,0 +1,31 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.properties;
+
+import lombok.Data;
+
+/**
+ * Configuration Properties for
+ * {@link com.github.ulisesbocchio.spring.boot.security.saml.async.AsyncSAMLUserDetailsServiceAdapter} and the
+ * {@link com.github.ulisesbocchio.spring.boot.security.saml.async.AsyncSAMLProcessingFilter}. Only used when an
+ * {@link com.github.ulisesbocchio.spring.boot.security.saml.async.AsyncSAMLUserDetailsService} is configured.
+ *
+ * @author Ulises Bocchio
+ */
+@Data
+public class AsyncUserDetailsProperties {
+
+    /**
+     * Maximum time in milliseconds to wait for the user details before falling back to the SAML attributes only.
+     */
+    private long timeout = 5000;
+
+    /**
+     * Maximum number of threads of each of the user details and SSO processing executors.
+     */
+    private int poolSize = 16;
+
+    /**
+     * Maximum number of tasks waiting on each of the user details and SSO processing executors. Once full, user
+     * details fall back to the SAML attributes only and SAML Responses are processed on the container thread.
+     */
+    private int queueCapacity = 200;
+}
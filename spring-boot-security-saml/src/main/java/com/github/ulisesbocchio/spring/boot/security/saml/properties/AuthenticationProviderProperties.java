@@ -1,6 +1,7 @@
 package com.github.ulisesbocchio.spring.boot.security.saml.properties;
 
 import lombok.Data;
+import org.springframework.boot.context.properties.NestedConfigurationProperty;
 
 /**
  * Configuration Properties for {@link org.springframework.security.saml.SAMLAuthenticationProvider}
@@ -24,4 +25,23 @@ public class AuthenticationProviderProperties {
      * String.
      */
     private boolean excludeCredential = false;
+
+    /**
+     * When true the SAMLCredential is reduced after authentication to a compact, immutable and serializable
+     * SAMLPrincipal, held by a lightweight credential that the default SAMLUserDetails is bound to. Single Logout
+     * keeps working unless the credential is excluded. Useful to shrink replicated sessions.
+     */
+    private boolean compactPrincipal = false;
+
+    /**
+     * Caching of the users loaded by the SAMLUserDetailsService, keyed by IDP, NameID and attributes.
+     */
+    @NestedConfigurationProperty
+    private UserDetailsCacheProperties userDetailsCache = new UserDetailsCacheProperties();
+
+    /**
+     * Asynchronous user details loading, used when an AsyncSAMLUserDetailsService is configured.
+     */
+    @NestedConfigurationProperty
+    private AsyncUserDetailsProperties asyncUserDetails = new AsyncUserDetailsProperties();
 }
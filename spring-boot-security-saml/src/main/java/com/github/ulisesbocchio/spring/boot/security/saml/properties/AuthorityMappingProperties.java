@@ -0,0 +1,27 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.properties;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Configuration Properties for the attribute to authority mapping performed by
+ * {@link com.github.ulisesbocchio.spring.boot.security.saml.user.SimpleSAMLUserDetailsService}.
+ *
+ * @author Ulises Bocchio
+ */
+@Data
+public class AuthorityMappingProperties {
+
+    /**
+     * Authorities granted to every authenticated user.
+     */
+    private List<String> defaultAuthorities = new ArrayList<>(Collections.singletonList("ROLE_USER"));
+
+    /**
+     * Rules granting authorities based on the user attributes, evaluated once at authentication time.
+     */
+    private List<AuthorityMappingRuleProperties> rules = new ArrayList<>();
+}
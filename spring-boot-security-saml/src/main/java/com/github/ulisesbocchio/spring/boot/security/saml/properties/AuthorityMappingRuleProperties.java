@@ -0,0 +1,51 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.properties;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Configuration Properties for a single attribute to authority mapping rule. Exactly one of {@code equals},
+ * {@code contains} or {@code regex} must be set, and the rule matches when any value of the attribute matches.
+ *
+ * @author Ulises Bocchio
+ */
+@Data
+public class AuthorityMappingRuleProperties {
+
+    /**
+     * Entity ID of the IDP this rule applies to. Applies to all IDPs if not set.
+     */
+    private String idp;
+
+    /**
+     * Name of the attribute to match.
+     */
+    private String attribute;
+
+    /**
+     * Grant the authorities when a value of the attribute is equal to this one.
+     */
+    private String equals;
+
+    /**
+     * Grant the authorities when a value of the attribute contains this one.
+     */
+    private String contains;
+
+    /**
+     * Grant the authorities when a value of the attribute fully matches this regular expression.
+     */
+    private String regex;
+
+    /**
+     * Whether values are matched ignoring case.
+     */
+    private boolean ignoreCase = false;
+
+    /**
+     * Authorities granted when the rule matches.
+     */
+    private List<String> authorities = new ArrayList<>();
+}
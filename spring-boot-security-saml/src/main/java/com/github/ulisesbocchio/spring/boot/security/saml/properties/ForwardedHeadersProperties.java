@@ -0,0 +1,40 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.properties;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Configuration Properties for the
+ * {@link com.github.ulisesbocchio.spring.boot.security.saml.context.ForwardedHeadersSAMLContextProvider}.
+ *
+ * @author Ulises Bocchio
+ */
+@Data
+public class ForwardedHeadersProperties {
+
+    /**
+     * Whether to derive scheme, server name, port and context path of every request from the Forwarded or
+     * X-Forwarded-* headers instead of the fixed LB values. Implies LB support. Disabled by default.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Host names the forwarded headers are trusted for, e.g. sp.example.com or *.example.com. Headers forwarding any
+     * other host are ignored.
+     */
+    private List<String> allowedHosts = new ArrayList<>();
+
+    /**
+     * Context paths the X-Forwarded-Prefix header is trusted for, e.g. /public. When empty, any prefix made of plain
+     * path segments is trusted.
+     */
+    private List<String> allowedPrefixes = new ArrayList<>();
+
+    /**
+     * Maximum number of public endpoints (scheme, host, port and context path) kept in memory, the least recently used
+     * is evicted when full.
+     */
+    private int maxCachedHosts = 256;
+}
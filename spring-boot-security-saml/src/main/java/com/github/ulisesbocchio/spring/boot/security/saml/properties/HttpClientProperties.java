@@ -0,0 +1,68 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.properties;
+
+import lombok.Data;
+
+/**
+ * Configuration Properties for the HTTP client used by the HTTP Artifact binding to resolve artifacts against the
+ * IDP.
+ *
+ * @author Ulises Bocchio
+ */
+@Data
+public class HttpClientProperties {
+
+    /**
+     * HTTP client implementations available for artifact resolution.
+     */
+    public enum Transport {
+        /**
+         * Pooled commons-httpclient 3, configured by the pool properties.
+         */
+        COMMONS_HTTPCLIENT,
+        /**
+         * JDK {@link java.net.HttpURLConnection} with keep alive connections and TLS session resumption. Pool properties
+         * don't apply, see the {@code http.maxConnections} system property instead.
+         */
+        URL_CONNECTION
+    }
+
+    /**
+     * HTTP client used to resolve artifacts, commons-httpclient or url-connection.
+     */
+    private Transport transport = Transport.COMMONS_HTTPCLIENT;
+
+    /**
+     * Maximum number of connections in the pool.
+     */
+    private int maxTotalConnections = 50;
+
+    /**
+     * Maximum number of connections in the pool per IDP host.
+     */
+    private int maxConnectionsPerHost = 20;
+
+    /**
+     * Timeout in milliseconds until a connection is established. 0 means no timeout.
+     */
+    private int connectTimeout = 60000;
+
+    /**
+     * Timeout in milliseconds waiting for data from the IDP. 0 means no timeout.
+     */
+    private int readTimeout = 60000;
+
+    /**
+     * Timeout in milliseconds waiting for a free connection from the pool. 0 means no timeout.
+     */
+    private long poolTimeout = 10000;
+
+    /**
+     * Time in milliseconds after which idle connections are closed. 0 keeps idle connections open.
+     */
+    private long idleConnectionTimeout = 60000;
+
+    /**
+     * Whether to check pooled connections for staleness before reusing them. Costs up to a millisecond per request.
+     */
+    private boolean staleCheckingEnabled = true;
+}
@@ -17,12 +17,14 @@ import static java.util.stream.Collectors.toMap;
 @Data
 public class KeyManagerProperties {
     /**
-     * Specify a PEM certificate location. Used in conjunction with privateKeyDerLocation.
+     * Specify a PEM certificate location. Used in conjunction with privateKeyDerLocation. Might contain a full
+     * certificate chain, leaf certificate first.
      */
     String publicKeyPemLocation;
 
     /**
-     * Specify a DER private key location. Used in conjunction with publicKeyPemLocation.
+     * Specify a private key location. Used in conjunction with publicKeyPemLocation. Both DER and PEM (PKCS#8 or
+     * PKCS#1) encoded RSA keys are accepted.
      */
     String privateKeyDerLocation;
 
@@ -36,6 +38,12 @@ public class KeyManagerProperties {
      */
     String storePass;
 
+    /**
+     * The KeyStore type, i.e. JKS or PKCS12. If not set, it is inferred from the storeLocation extension: .p12 and
+     * .pfx are treated as PKCS12, anything else as JKS.
+     */
+    String storeType;
+
     /**
      * They KeyStore private key passwords by key name.
      */
@@ -1,6 +1,7 @@
 package com.github.ulisesbocchio.spring.boot.security.saml.properties;
 
 import lombok.Data;
+import org.springframework.boot.context.properties.NestedConfigurationProperty;
 
 /**
  * Configuration Properties for {@link org.springframework.security.saml.metadata.MetadataManager}
@@ -29,4 +30,10 @@ public class MetadataManagerProperties {
      * </p>
      */
     private Long refreshCheckInterval = -1L;
+
+    /**
+     * CRLs fetched ahead of time and refreshed in the background, used to validate metadata signatures.
+     */
+    @NestedConfigurationProperty
+    private RevocationCacheProperties revocationCache = new RevocationCacheProperties();
 }
@@ -0,0 +1,28 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.properties;
+
+import lombok.Data;
+
+/**
+ * Configuration Properties for
+ * {@link com.github.ulisesbocchio.spring.boot.security.saml.websso.PreSignedWebSSOProfile}.
+ *
+ * @author Ulises Bocchio
+ */
+@Data
+public class PreSignedRequestProperties {
+
+    /**
+     * Whether to sign AuthnRequests ahead of time on a background thread. Disabled by default.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Number of signed AuthnRequests kept per IDP, SSO endpoint and profile options.
+     */
+    private int poolSize = 4;
+
+    /**
+     * Maximum age in seconds of a pre-signed AuthnRequest. Older requests are discarded.
+     */
+    private int maxAge = 30;
+}
@@ -0,0 +1,51 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.properties;
+
+import com.github.ulisesbocchio.spring.boot.security.saml.trust.CRLCache;
+import lombok.Data;
+
+/**
+ * Configuration Properties for the {@link CRLCache} used to validate metadata signatures.
+ *
+ * @author Ulises Bocchio
+ */
+@Data
+public class RevocationCacheProperties {
+
+    /**
+     * Whether to validate metadata signatures against CRLs fetched ahead of time and refreshed in the background,
+     * instead of letting revocation checking fetch them during validation. Disabled by default.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Interval in seconds between background refreshes of the known CRLs.
+     */
+    private int refreshInterval = 3600;
+
+    /**
+     * Connect and read timeout in milliseconds when fetching a CRL.
+     */
+    private int timeout = 5000;
+
+    /**
+     * What to do with a CRL past its nextUpdate, because refreshing it failed: KEEP it for up to max-staleness, or DROP
+     * it right away, failing validation of the certificates it covers until it is fetched again.
+     */
+    private CRLCache.StalePolicy stalePolicy = CRLCache.StalePolicy.KEEP;
+
+    /**
+     * How long in seconds past its nextUpdate a CRL is kept with the KEEP stale policy.
+     */
+    private int maxStaleness = 86400;
+
+    /**
+     * Maximum number of CRL Distribution Points watched. Further ones are ignored.
+     */
+    private int maxEntries = 100;
+
+    /**
+     * How long in milliseconds metadata signature validation waits for the first fetch of the CRLs it needs. If a CRL
+     * arrives later, the metadata is refreshed on the next refresh check.
+     */
+    private int initialFetchTimeout = 10000;
+}
@@ -1,6 +1,7 @@
 package com.github.ulisesbocchio.spring.boot.security.saml.properties;
 
 import lombok.Data;
+import org.springframework.boot.context.properties.NestedConfigurationProperty;
 import org.springframework.security.saml.context.SAMLContextProviderLB;
 
 /**
@@ -13,6 +14,12 @@ public class SAMLContextProviderLBProperties {
 
     boolean enabled = false;
 
+    /**
+     * Per request scheme, server name, port and context path from trusted forwarded headers.
+     */
+    @NestedConfigurationProperty
+    private ForwardedHeadersProperties forwardedHeaders = new ForwardedHeadersProperties();
+
     /**
      * Scheme of the LB server - either http or https
      */
@@ -89,4 +96,14 @@ public class SAMLContextProviderLBProperties {
         this.enabled = true;
         this.contextPath = contextPath;
     }
+
+    /**
+     * Whether LB support is enabled, either explicitly, implicitly through one of the LB options, or through forwarded
+     * headers.
+     *
+     * @return true if LB support is enabled.
+     */
+    public boolean isEnabled() {
+        return enabled || forwardedHeaders.isEnabled();
+    }
 }
@@ -18,4 +18,22 @@ public class SAMLContextProviderProperties {
      */
     @NestedConfigurationProperty
     private SAMLContextProviderLBProperties lb = new SAMLContextProviderLBProperties();
+
+    /**
+     * Stateless (encrypted cookie) storage of outgoing SAML messages.
+     */
+    @NestedConfigurationProperty
+    private StatelessMessageStorageProperties statelessStorage = new StatelessMessageStorageProperties();
+
+    /**
+     * Cache of the trust decisions taken for the signing certificates of the IDPs.
+     */
+    @NestedConfigurationProperty
+    private SignatureTrustCacheProperties trustCache = new SignatureTrustCacheProperties();
+
+    /**
+     * Whether to cache the local entity resolved for every request (metadata, extended metadata and credentials) per
+     * alias, cleared on metadata refresh. Disabled by default.
+     */
+    private boolean localEntityCache = false;
 }
@@ -1,6 +1,7 @@
 package com.github.ulisesbocchio.spring.boot.security.saml.properties;
 
 import lombok.Data;
+import org.springframework.boot.context.properties.NestedConfigurationProperty;
 
 /**
  * Configuration Properties for {@link org.springframework.security.saml.processor.SAMLProcessor}
@@ -34,4 +35,28 @@ public class SAMLProcessorProperties {
      * Disable/Enable PAOS Bindings.
      */
     private boolean paos = true;
+
+    /**
+     * When true the HTTP POST binding writes a precompiled auto-submit form straight to the response instead of
+     * rendering a Velocity template.
+     */
+    private boolean staticPostForm = false;
+
+    /**
+     * Maximum size in bytes of inbound HTTP POST and HTTP Redirect messages, after Base64 decoding. Redirect messages are
+     * checked both deflated and inflated. Larger messages are rejected before they are parsed. 0 means no limit.
+     */
+    private long maxMessageSize = 1024 * 1024;
+
+    /**
+     * Maximum ratio between the inflated and deflated sizes of inbound HTTP Redirect messages. Messages that inflate
+     * more are rejected before they are parsed. 0 means no limit.
+     */
+    private int maxInflateRatio = 100;
+
+    /**
+     * Pooled HTTP client used by the HTTP Artifact binding.
+     */
+    @NestedConfigurationProperty
+    private HttpClientProperties httpClient = new HttpClientProperties();
 }
@@ -2,6 +2,7 @@ package com.github.ulisesbocchio.spring.boot.security.saml.properties;
 
 import com.github.ulisesbocchio.spring.boot.security.saml.annotation.EnableSAMLSSO;
 import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderBuilder;
+import com.github.ulisesbocchio.spring.boot.security.saml.reload.ReloadableServiceProvider;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.NestedConfigurationProperty;
@@ -14,6 +15,12 @@ import org.springframework.security.saml.context.SAMLContextProvider;
 import org.springframework.security.saml.context.SAMLContextProviderLB;
 import org.springframework.security.saml.key.KeyManager;
 import org.springframework.security.saml.metadata.MetadataManager;
+import org.springframework.security.saml.userdetails.SAMLUserDetailsService;
+import org.springframework.security.saml.websso.WebSSOProfile;
+import org.springframework.security.saml.websso.WebSSOProfileConsumer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Configuration Properties exposed to allow customization of the Service Provider enabled by {@link EnableSAMLSSO}.
@@ -111,6 +118,30 @@ public class SAMLSSOProperties {
     @NestedConfigurationProperty
     private SAMLContextProviderProperties contextProvider = new SAMLContextProviderProperties();
 
+    /**
+     * Configuration options for the {@link WebSSOProfileConsumer} that processes Authentication Responses.
+     */
+    @NestedConfigurationProperty
+    private WebSSOProfileConsumerProperties profileConsumer = new WebSSOProfileConsumerProperties();
+
+    /**
+     * Configuration options for the {@link WebSSOProfile} that sends Authentication Requests.
+     */
+    @NestedConfigurationProperty
+    private WebSSOProfileProperties ssoProfile = new WebSSOProfileProperties();
+
+    /**
+     * Mapping of user attributes to granted authorities used by the default {@link SAMLUserDetailsService}.
+     */
+    @NestedConfigurationProperty
+    private AuthorityMappingProperties authorityMapping = new AuthorityMappingProperties();
+
+    /**
+     * Tenant Service Providers hosted by this configuration, by alias. Each tenant gets its own entity ID, keys and
+     * alias endpoints, e.g. /saml/SSO/alias/{alias}, while sharing the rest of the configuration.
+     */
+    private Map<String, TenantProperties> tenants = new LinkedHashMap<>();
+
     /**
      * Supplies the default target Url that will be used if no saved request is found in the session, or the
      * alwaysUseDefaultTargetUrl property is set to true. If not set, defaults to /. It will be treated as relative to
@@ -160,4 +191,17 @@ public class SAMLSSOProperties {
      * Enabled the use of {@link ApplicationEventPublisher} for those Beans that support its use (disabled by default)
      */
     private boolean enableEventPublisher = false;
+
+    /**
+     * Whether the Service Provider can be rebuilt at runtime through the {@link ReloadableServiceProvider} bean, e.g.
+     * once these properties are re-bound, without restarting the application.
+     */
+    private boolean reloadable = false;
+
+    /**
+     * Whether the Service Provider configurers that don't depend on each other configure at the same time on startup
+     * (disabled by default). When enabled, configure phases, including DSL callbacks, run on a pool of threads. How
+     * long each one took is logged either way.
+     */
+    private boolean parallelConfiguration = false;
 }
@@ -0,0 +1,30 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.properties;
+
+import lombok.Data;
+
+/**
+ * Configuration Properties for the
+ * {@link com.github.ulisesbocchio.spring.boot.security.saml.trust.SignatureTrustCache}.
+ *
+ * @author Ulises Bocchio
+ */
+@Data
+public class SignatureTrustCacheProperties {
+
+    /**
+     * Whether to cache the signing certificates of the IDPs trusted by the trust engine of the local entity, cleared on
+     * metadata refresh and whenever a new CRL is fetched. Untrusted certificates are never cached. Disabled by default.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Maximum number of trusted (entity ID, certificate fingerprint) entries kept in memory, the least recently used
+     * is evicted when full.
+     */
+    private int maxEntries = 1000;
+
+    /**
+     * Maximum time in seconds a trusted certificate is reused before the trust engine is consulted again.
+     */
+    private int maxAge = 3600;
+}
@@ -0,0 +1,47 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.properties;
+
+import lombok.Data;
+
+/**
+ * Configuration Properties for the stateless, cookie based,
+ * {@link org.springframework.security.saml.storage.SAMLMessageStorageFactory}.
+ *
+ * @author Ulises Bocchio
+ */
+@Data
+public class StatelessMessageStorageProperties {
+
+    /**
+     * Whether to store outgoing SAML requests in encrypted cookies instead of the HTTP Session. Once a session exists,
+     * i.e. after authentication, the session is used regardless.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Base64 encoded AES key (16, 24 or 32 bytes) used to encrypt and authenticate the cookies. Must be the same on
+     * every node of a cluster. Required when stateless storage is enabled.
+     */
+    private String secret;
+
+    /**
+     * Prefix of the cookie names, a short hash of the SAML message ID is appended to it.
+     */
+    private String cookieName = "SAML_REQ";
+
+    /**
+     * Path of the cookies. If not set, the request context path is used.
+     */
+    private String cookiePath;
+
+    /**
+     * Time in seconds a stored request is considered valid.
+     */
+    private int maxAge = 300;
+
+    /**
+     * Whether to flag the cookies as Secure. Secure cookies are also flagged as {@code SameSite=None} so they are
+     * sent along the IDP cross-site POST. Non secure cookies are treated as {@code SameSite=Lax} by browsers, so they
+     * only work when the IDP is on the same site as the application.
+     */
+    private boolean secure = true;
+}
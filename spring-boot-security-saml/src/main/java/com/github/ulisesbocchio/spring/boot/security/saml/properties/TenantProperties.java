@@ -0,0 +1,40 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.properties;
+
+import lombok.Data;
+
+/**
+ * Configuration Properties of a tenant Service Provider hosted, along with others, by the same Service Provider
+ * configuration. See {@link com.github.ulisesbocchio.spring.boot.security.saml.tenant.ServiceProviderTenants}.
+ *
+ * @author Ulises Bocchio
+ */
+@Data
+public class TenantProperties {
+
+    /**
+     * Entity ID of the tenant Service Provider. Required.
+     */
+    private String entityId;
+
+    /**
+     * Base URL of the tenant endpoints in the generated metadata, e.g. https://acme.example.com. Defaults to the
+     * metadata generator entity base URL.
+     */
+    private String entityBaseUrl;
+
+    /**
+     * Location of the PEM encoded certificate of the tenant signing and encryption key. If not set, along with
+     * private-key-der-location, the tenant uses the default key. The tenant key is named tenant:[alias].
+     */
+    private String publicKeyPemLocation;
+
+    /**
+     * Location of the DER encoded private key of the tenant signing and encryption key.
+     */
+    private String privateKeyDerLocation;
+
+    /**
+     * Password of the tenant private key.
+     */
+    private String keyPassword = "";
+}
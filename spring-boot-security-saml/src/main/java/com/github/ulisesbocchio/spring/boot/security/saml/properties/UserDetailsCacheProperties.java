@@ -0,0 +1,28 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.properties;
+
+import lombok.Data;
+
+/**
+ * Configuration Properties for
+ * {@link com.github.ulisesbocchio.spring.boot.security.saml.user.CachingSAMLUserDetailsService}.
+ *
+ * @author Ulises Bocchio
+ */
+@Data
+public class UserDetailsCacheProperties {
+
+    /**
+     * Whether to cache the users loaded by the SAMLUserDetailsService. Disabled by default.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Time to live of cached users in seconds.
+     */
+    private int timeToLive = 300;
+
+    /**
+     * Maximum number of cached users.
+     */
+    private int maxSize = 10000;
+}
@@ -0,0 +1,25 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.NestedConfigurationProperty;
+
+/**
+ * Configuration Properties for {@link org.springframework.security.saml.websso.WebSSOProfileConsumer}.
+ *
+ * @author Ulises Bocchio
+ */
+@Data
+public class WebSSOProfileConsumerProperties {
+
+    /**
+     * Whether to reject Responses that fail inexpensive checks (issue instant, destination, issuer, InResponseTo,
+     * audience, validity window) before verifying signatures or decrypting Assertions.
+     */
+    private boolean failFast = false;
+
+    /**
+     * Assertion replay detection shared across sessions.
+     */
+    @NestedConfigurationProperty
+    private AssertionReplayCacheProperties replayCache = new AssertionReplayCacheProperties();
+}
@@ -0,0 +1,25 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.NestedConfigurationProperty;
+
+/**
+ * Configuration Properties for {@link org.springframework.security.saml.websso.WebSSOProfile}.
+ *
+ * @author Ulises Bocchio
+ */
+@Data
+public class WebSSOProfileProperties {
+
+    /**
+     * Whether to marshal the AuthnRequest of each IDP and profile options once, and send copies of it with a new ID
+     * and IssueInstant. Can't be enabled along with pre-signed-requests. Disabled by default.
+     */
+    private boolean requestTemplates = false;
+
+    /**
+     * AuthnRequests signed ahead of time, for the HTTP POST binding.
+     */
+    @NestedConfigurationProperty
+    private PreSignedRequestProperties preSignedRequests = new PreSignedRequestProperties();
+}
@@ -0,0 +1,384 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.reload;
+
+import com.github.ulisesbocchio.spring.boot.security.saml.async.AsyncSAMLProcessingFilter;
+import com.github.ulisesbocchio.spring.boot.security.saml.async.BoundedExecutors;
+import com.github.ulisesbocchio.spring.boot.security.saml.bean.SAMLConfigurerBean;
+import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderBuilder;
+import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderConfigurer;
+import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderEndpoints;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.SAMLSSOProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.storage.CookieSAMLMessageStorageFactory;
+import org.assertj.core.util.VisibleForTesting;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.saml.metadata.MetadataManager;
+import org.springframework.security.saml.storage.SAMLMessageStorageFactory;
+import org.springframework.security.web.AuthenticationEntryPoint;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.util.Assert;
+import org.springframework.web.filter.GenericFilterBean;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Service Provider that can be rebuilt at runtime, e.g. after a new Identity Provider is added to {@link
+ * SAMLSSOProperties}, without restarting the application.
+ * <p>
+ * {@link ServiceProviderBuilder}s can only be built once, so every reload builds a new one, with the beans and objects
+ * the first one was given, the current properties and the {@link ServiceProviderConfigurer} beans, and only once fully
+ * built replaces the current Service Provider. The {@link SAMLConfigurerBean} registers stable delegates into Spring
+ * Security: a single filter that runs the SAML filters of the current Service Provider, and the entry point,
+ * authentication provider and endpoints matcher. Each request is pinned to the Service Provider current when it
+ * reaches the filter, so that it's processed by a single one even if a reload completes meanwhile, including the SAML
+ * Response processing an {@link AsyncSAMLProcessingFilter} hands off to its executor. A replaced Service
+ * Provider is destroyed once the last request pinned to it completes, shutting down the background threads of its
+ * objects and unregistering its metadata observers, and so is its metadata manager unless it is a bean.
+ * </p>
+ * <p>
+ * Configuration provided through the DSL outside of {@link ServiceProviderConfigurer} beans, e.g. straight into
+ * {@link SAMLConfigurerBean#serviceProvider()}, can't be replayed and is therefore lost on reload. Beans, such as a
+ * {@link org.springframework.security.saml.metadata.MetadataManager} bean, are shared by all the Service Providers.
+ * Switching between session and stateless message storage changes the Spring Security configuration, e.g. the request
+ * cache, so a reload that does so is rejected and requires a restart instead.
+ * </p>
+ *
+ * @author Ulises Bocchio
+ */
+public class ReloadableServiceProvider implements DisposableBean {
+
+    private final SAMLSSOProperties properties;
+    private final List<ServiceProviderConfigurer> serviceProviderConfigurers;
+    private final AtomicReference<ServiceProviderGeneration> current = new AtomicReference<>();
+    private final ThreadLocal<ServiceProviderGeneration> pinned = new ThreadLocal<>();
+    private final Object reloadLock = new Object();
+    private final ThreadPoolExecutor executor = BoundedExecutors.newBoundedExecutor("saml-reload", 1, 1);
+    private final Filter filter = new ServiceProviderFilter();
+    private Map<Class<?>, Object> sharedObjects;
+    private Function<ServiceProviderBuilder, List<Filter>> filters;
+
+    /**
+     * @param properties                 the properties to rebuild the Service Provider from on {@link #reload()}.
+     * @param serviceProviderConfigurers the configurers to apply to every rebuilt Service Provider.
+     */
+    public ReloadableServiceProvider(SAMLSSOProperties properties, List<ServiceProviderConfigurer> serviceProviderConfigurers) {
+        this.properties = properties;
+        this.serviceProviderConfigurers = serviceProviderConfigurers != null ? serviceProviderConfigurers : Collections.emptyList();
+    }
+
+    /**
+     * Sets the first, already built, Service Provider.
+     *
+     * @param serviceProvider the built Service Provider.
+     * @param sharedObjects   the objects the Service Provider was given before being built, given to rebuilt ones too.
+     * @param filters         resolves the SAML filters of a built Service Provider, in order.
+     */
+    public void initialize(ServiceProviderBuilder serviceProvider, Map<Class<?>, Object> sharedObjects,
+                           Function<ServiceProviderBuilder, List<Filter>> filters) {
+        Assert.state(current.get() == null, "Service Provider already initialized.");
+        this.sharedObjects = new HashMap<>(sharedObjects);
+        this.filters = filters;
+        current.set(newGeneration(1, serviceProvider));
+    }
+
+    /**
+     * Rebuilds the Service Provider from the current {@link SAMLSSOProperties}, e.g. once re-bound. On failure the
+     * current Service Provider is kept.
+     *
+     * @throws Exception Any exception building the Service Provider.
+     */
+    public void reload() throws Exception {
+        reload(properties);
+    }
+
+    /**
+     * Rebuilds the Service Provider from the given properties. On failure the current Service Provider is kept.
+     *
+     * @param properties the properties to build the Service Provider from.
+     * @throws Exception Any exception building the Service Provider.
+     */
+    public void reload(SAMLSSOProperties properties) throws Exception {
+        Assert.state(current.get() != null, "Service Provider not initialized yet.");
+        synchronized (reloadLock) {
+            ServiceProviderBuilder serviceProvider = createServiceProviderBuilder();
+            sharedObjects.forEach((type, object) -> share(serviceProvider, type, object));
+            serviceProvider.setSharedObject(ServiceProviderEndpoints.class, new ServiceProviderEndpoints());
+            serviceProvider.setSharedObject(SAMLSSOProperties.class, properties);
+            try {
+                for (ServiceProviderConfigurer configurer : serviceProviderConfigurers) {
+                    configurer.configure(serviceProvider);
+                }
+                serviceProvider.getStartupTimings().record("build", serviceProvider::build);
+                Assert.state(isStatelessMessageStorage(serviceProvider)
+                                == isStatelessMessageStorage(current.get().getServiceProvider()),
+                        "Switching between session and stateless message storage requires a restart.");
+            } catch (Exception e) {
+                //Release whatever the failed build already started, e.g. connection pools.
+                serviceProvider.destroy();
+                throw e;
+            }
+            ServiceProviderGeneration next = newGeneration(current.get().getNumber() + 1, serviceProvider);
+            current.getAndSet(next).retire(next);
+            serviceProvider.reportStartup();
+        }
+    }
+
+    /**
+     * Rebuilds the Service Provider from the current {@link SAMLSSOProperties} on a background thread. Only one reload
+     * runs at a time, and one more can wait, further ones are rejected.
+     *
+     * @return a future completed with the new Service Provider generation number.
+     */
+    public CompletableFuture<Long> reloadAsync() {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                reload();
+                return getGeneration();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    @VisibleForTesting
+    protected ServiceProviderBuilder createServiceProviderBuilder() {
+        return new ServiceProviderBuilder();
+    }
+
+    private ServiceProviderGeneration newGeneration(long number, ServiceProviderBuilder serviceProvider) {
+        List<Filter> generationFilters = filters.apply(serviceProvider);
+        for (Filter filter : generationFilters) {
+            if (filter instanceof AsyncSAMLProcessingFilter) {
+                ((AsyncSAMLProcessingFilter) filter).setTaskDecorator(this::pinToCurrentRequest);
+            }
+        }
+        return new ServiceProviderGeneration(number, serviceProvider, generationFilters);
+    }
+
+    /**
+     * Pins the task to the Service Provider of the request it's created for, for as long as it runs.
+     */
+    private Runnable pinToCurrentRequest(Runnable task) {
+        ServiceProviderGeneration generation = generation();
+        return () -> {
+            ServiceProviderGeneration previous = pinned.get();
+            pinned.set(generation);
+            try {
+                task.run();
+            } finally {
+                if (previous != null) {
+                    pinned.set(previous);
+                } else {
+                    pinned.remove();
+                }
+            }
+        };
+    }
+
+    private static boolean isStatelessMessageStorage(ServiceProviderBuilder serviceProvider) {
+        return serviceProvider.getSharedObject(SAMLMessageStorageFactory.class) instanceof CookieSAMLMessageStorageFactory;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <C> void share(ServiceProviderBuilder serviceProvider, Class<C> type, Object object) {
+        serviceProvider.setSharedObject(type, (C) object);
+    }
+
+    /**
+     * Number of the current Service Provider, 1 for the first one, incremented on every reload.
+     *
+     * @return the generation number.
+     */
+    public long getGeneration() {
+        return generation().getNumber();
+    }
+
+    /**
+     * The Service Provider processing the current request, or the current one outside of a request.
+     *
+     * @return the built Service Provider.
+     */
+    public ServiceProviderBuilder getServiceProvider() {
+        return generation().getServiceProvider();
+    }
+
+    /**
+     * Filter that runs the SAML filters of the current Service Provider.
+     *
+     * @return the filter.
+     */
+    public Filter filter() {
+        return filter;
+    }
+
+    /**
+     * Authentication provider that delegates to the current Service Provider one.
+     *
+     * @return the authentication provider.
+     */
+    public AuthenticationProvider authenticationProvider() {
+        return new AuthenticationProvider() {
+            @Override
+            public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+                return generation().getAuthenticationProvider().authenticate(authentication);
+            }
+
+            @Override
+            public boolean supports(Class<?> authentication) {
+                return generation().getAuthenticationProvider().supports(authentication);
+            }
+        };
+    }
+
+    /**
+     * Entry point that delegates to the current Service Provider one.
+     *
+     * @return the entry point.
+     */
+    public AuthenticationEntryPoint authenticationEntryPoint() {
+        return (request, response, e) -> generation().getEntryPoint().commence(request, response, e);
+    }
+
+    /**
+     * Request matcher of the current Service Provider endpoints.
+     *
+     * @return the request matcher.
+     */
+    public RequestMatcher endpointsMatcher() {
+        return request -> {
+            ServiceProviderGeneration generation = generation();
+            return generation != null && generation.getEndpointsMatcher().matches(request);
+        };
+    }
+
+    private ServiceProviderGeneration generation() {
+        ServiceProviderGeneration generation = pinned.get();
+        return generation != null ? generation : current.get();
+    }
+
+    private ServiceProviderGeneration acquire() {
+        while (true) {
+            ServiceProviderGeneration generation = current.get();
+            generation.acquire();
+            if (current.get() == generation) {
+                return generation;
+            }
+            generation.release();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+        ServiceProviderGeneration generation = current.get();
+        if (generation != null) {
+            generation.close(sharedObjects.get(MetadataManager.class) != null);
+        }
+    }
+
+    private class ServiceProviderFilter extends GenericFilterBean {
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+            ServiceProviderGeneration outer = pinned.get();
+            if (outer != null) {
+                new GenerationFilterChain(outer.getFilters(), chain).doFilter(request, response);
+                return;
+            }
+            ServiceProviderGeneration generation = acquire();
+            boolean async = false;
+            pinned.set(generation);
+            try {
+                new GenerationFilterChain(generation.getFilters(), chain).doFilter(request, response);
+                if (request.isAsyncStarted()) {
+                    request.getAsyncContext().addListener(new ReleaseListener(generation));
+                    async = true;
+                }
+            } finally {
+                pinned.remove();
+                if (!async) {
+                    generation.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the filters of a Service Provider and then continues with the original chain.
+     */
+    private static final class GenerationFilterChain implements FilterChain {
+        private final List<Filter> filters;
+        private final FilterChain chain;
+        private int position;
+
+        GenerationFilterChain(List<Filter> filters, FilterChain chain) {
+            this.filters = filters;
+            this.chain = chain;
+        }
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+            if (position == filters.size()) {
+                chain.doFilter(request, response);
+            } else {
+                filters.get(position++).doFilter(request, response, this);
+            }
+        }
+    }
+
+    /**
+     * Releases the Service Provider of an async request once completed.
+     */
+    private static final class ReleaseListener implements AsyncListener {
+        private final ServiceProviderGeneration generation;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        ReleaseListener(ServiceProviderGeneration generation) {
+            this.generation = generation;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                generation.release();
+            }
+        }
+    }
+}
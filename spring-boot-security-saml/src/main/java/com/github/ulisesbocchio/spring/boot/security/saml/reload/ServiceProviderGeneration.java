@@ -0,0 +1,126 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.reload;
+
+import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderBuilder;
+import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderEndpoints;
+import org.springframework.security.saml.SAMLAuthenticationProvider;
+import org.springframework.security.saml.SAMLEntryPoint;
+import org.springframework.security.saml.metadata.MetadataManager;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+
+import javax.servlet.Filter;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fully built Service Provider, along with the number of requests being processed by it. Once replaced, the
+ * generation is retired, and after the last of those requests completes the Service Provider is destroyed, see
+ * {@link ServiceProviderBuilder#destroy()}, along with its {@link MetadataManager}.
+ *
+ * @author Ulises Bocchio
+ */
+final class ServiceProviderGeneration {
+
+    private final long number;
+    private final ServiceProviderBuilder serviceProvider;
+    private final List<Filter> filters;
+    private final RequestMatcher endpointsMatcher;
+    private final SAMLAuthenticationProvider authenticationProvider;
+    private final SAMLEntryPoint entryPoint;
+    private final MetadataManager metadataManager;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicBoolean destroyed = new AtomicBoolean();
+    private volatile MetadataManager disposableMetadataManager;
+    private volatile boolean retired;
+
+    ServiceProviderGeneration(long number, ServiceProviderBuilder serviceProvider, List<Filter> filters) {
+        this.number = number;
+        this.serviceProvider = serviceProvider;
+        this.filters = Collections.unmodifiableList(filters);
+        ServiceProviderEndpoints endpoints = serviceProvider.getSharedObject(ServiceProviderEndpoints.class);
+        this.endpointsMatcher = endpoints != null ? endpoints.getRequestMatcher() : request -> false;
+        this.authenticationProvider = serviceProvider.getSharedObject(SAMLAuthenticationProvider.class);
+        this.entryPoint = serviceProvider.getSharedObject(SAMLEntryPoint.class);
+        this.metadataManager = serviceProvider.getSharedObject(MetadataManager.class);
+    }
+
+    long getNumber() {
+        return number;
+    }
+
+    ServiceProviderBuilder getServiceProvider() {
+        return serviceProvider;
+    }
+
+    List<Filter> getFilters() {
+        return filters;
+    }
+
+    RequestMatcher getEndpointsMatcher() {
+        return endpointsMatcher;
+    }
+
+    SAMLAuthenticationProvider getAuthenticationProvider() {
+        return authenticationProvider;
+    }
+
+    SAMLEntryPoint getEntryPoint() {
+        return entryPoint;
+    }
+
+    MetadataManager getMetadataManager() {
+        return metadataManager;
+    }
+
+    void acquire() {
+        inFlight.incrementAndGet();
+    }
+
+    void release() {
+        if (inFlight.decrementAndGet() == 0 && retired) {
+            destroy();
+        }
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Marks this generation as replaced by the given one. The Service Provider is destroyed once no requests are
+     * being processed by it, and so is its metadata manager, unless the next generation uses the same one, i.e. when
+     * provided as a bean.
+     */
+    void retire(ServiceProviderGeneration next) {
+        disposableMetadataManager = metadataManager != next.metadataManager ? metadataManager : null;
+        retired = true;
+        if (inFlight.get() == 0) {
+            destroy();
+        }
+    }
+
+    /**
+     * Destroys the Service Provider right away, e.g. on shutdown, along with its metadata manager unless it is shared
+     * with other generations.
+     *
+     * @param sharedMetadataManager whether the metadata manager is a bean shared with other generations.
+     */
+    void close(boolean sharedMetadataManager) {
+        disposableMetadataManager = sharedMetadataManager ? null : metadataManager;
+        destroy();
+    }
+
+    boolean isDestroyed() {
+        return destroyed.get();
+    }
+
+    private void destroy() {
+        if (destroyed.compareAndSet(false, true)) {
+            serviceProvider.destroy();
+            if (disposableMetadataManager != null) {
+                disposableMetadataManager.destroy();
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.replay;
+
+/**
+ * SPI for detecting replayed SAML Assertions across sessions and nodes. The default implementation is the in-memory
+ * {@link InMemoryAssertionReplayCache}, a shared store can be plugged in by providing a Spring Bean of this type or
+ * through {@link com.github.ulisesbocchio.spring.boot.security.saml.configurer.builder.WebSSOProfileConsumerConfigurer#replayCache(AssertionReplayCache)}.
+ *
+ * @author Ulises Bocchio
+ */
+public interface AssertionReplayCache {
+
+    /**
+     * Atomically records an Assertion as used until the given expiration instant.
+     *
+     * @param issuer      the entity ID of the Assertion issuer.
+     * @param assertionId the Assertion ID.
+     * @param expiresAt   epoch millis after which the Assertion would be rejected anyway and can be forgotten.
+     * @return true if the Assertion was not seen before, false if it's a replay.
+     */
+    boolean checkAndStore(String issuer, String assertionId, long expiresAt);
+}
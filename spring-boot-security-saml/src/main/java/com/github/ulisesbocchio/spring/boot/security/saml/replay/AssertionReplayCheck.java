@@ -0,0 +1,61 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.replay;
+
+import org.joda.time.DateTime;
+import org.opensaml.common.SAMLException;
+import org.opensaml.saml2.core.Assertion;
+import org.springframework.security.saml.websso.AbstractProfileBase;
+import org.springframework.util.Assert;
+
+/**
+ * Replay check shared by {@link ReplayCheckingWebSSOProfileConsumer} and
+ * {@link ReplayCheckingWebSSOProfileConsumerHoK}. Assertions are remembered for as long as the given profile would
+ * accept them, reading its {@code maxAssertionTime} and {@code responseSkew} on every check.
+ *
+ * @author Ulises Bocchio
+ */
+final class AssertionReplayCheck {
+
+    private final AssertionReplayCache replayCache;
+    private final AbstractProfileBase profile;
+
+    AssertionReplayCheck(AssertionReplayCache replayCache, AbstractProfileBase profile) {
+        Assert.notNull(replayCache, "'replayCache' cannot be null.");
+        this.replayCache = replayCache;
+        this.profile = profile;
+    }
+
+    /**
+     * Records the given, otherwise valid, Assertion as used.
+     *
+     * @param assertion the Assertion.
+     * @throws SAMLException if the Assertion was already used, or could not be recorded.
+     */
+    void check(Assertion assertion) throws SAMLException {
+        String issuer = assertion.getIssuer() != null ? assertion.getIssuer().getValue() : null;
+        if (!replayCache.checkAndStore(issuer, assertion.getID(), expiresAt(assertion))) {
+            throw new SAMLException("Assertion " + assertion.getID() + " from " + issuer + " has already been used");
+        }
+    }
+
+    /**
+     * @return epoch millis until which the given Assertion would be accepted: {@code maxAssertionTime} plus
+     * {@code responseSkew} from the issue instant, or the Conditions {@code NotOnOrAfter} plus skew if later.
+     */
+    long expiresAt(Assertion assertion) {
+        long maxAssertionTime = profile.getMaxAssertionTime() * 1000L;
+        long skew = profile.getResponseSkew() * 1000L;
+        long expiresAt = Long.MIN_VALUE;
+        DateTime issueInstant = assertion.getIssueInstant();
+        if (issueInstant != null) {
+            expiresAt = issueInstant.getMillis() + maxAssertionTime + skew;
+        }
+        if (assertion.getConditions() != null && assertion.getConditions().getNotOnOrAfter() != null) {
+            expiresAt = Math.max(expiresAt, assertion.getConditions().getNotOnOrAfter().getMillis() + skew);
+        }
+        return expiresAt != Long.MIN_VALUE ? expiresAt : System.currentTimeMillis() + maxAssertionTime + skew;
+    }
+
+    AssertionReplayCache getReplayCache() {
+        return replayCache;
+    }
+}
@@ -0,0 +1,196 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.replay;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded, TTL evicting, in-memory {@link AssertionReplayCache}. Entries are spread over a fixed number of stripes,
+ * each backed by a {@link ConcurrentHashMap} and a {@link ConcurrentSkipListSet} ordering its entries by expiration, so
+ * lookups, inserts and purges are lock-free. When a stripe goes over its share of {@code maxEntries}, its expired
+ * entries are purged, at a logarithmic cost per removed entry instead of a scan of the stripe.
+ * <p>
+ * Entries are never removed before they expire, since that would let the evicted Assertions be replayed. If a stripe is
+ * still full of unexpired entries after the purge, the cache fails closed: the new Assertion is not recorded and is
+ * rejected as if it was a replay, and a warning is logged. Size {@code maxEntries} for the peak login rate.
+ * </p>
+ * <p>
+ * Entries only need to live as long as the Assertion could be accepted, which is what the caller passes as expiration
+ * instant, so the expected size is the Assertion validity window times the login rate.
+ * </p>
+ *
+ * @author Ulises Bocchio
+ */
+public class InMemoryAssertionReplayCache implements AssertionReplayCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryAssertionReplayCache.class);
+
+    private final Stripe[] stripes;
+    private final int maxEntriesPerStripe;
+    private final LongSupplier clock;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    public InMemoryAssertionReplayCache(int maxEntries, int stripes) {
+        this(maxEntries, stripes, System::currentTimeMillis);
+    }
+
+    InMemoryAssertionReplayCache(int maxEntries, int stripes, LongSupplier clock) {
+        Assert.isTrue(stripes > 0, "'stripes' must be greater than 0.");
+        Assert.isTrue(maxEntries >= stripes, "'maxEntries' must be greater or equal than 'stripes'.");
+        this.stripes = new Stripe[stripes];
+        this.maxEntriesPerStripe = maxEntries / stripes;
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe(maxEntriesPerStripe);
+        }
+        this.clock = clock;
+    }
+
+    @Override
+    public boolean checkAndStore(String issuer, String assertionId, long expiresAt) {
+        String key = issuer + '!' + assertionId;
+        Stripe stripe = stripes[(key.hashCode() & 0x7fffffff) % stripes.length];
+        long now = clock.getAsLong();
+        while (true) {
+            Long existing = stripe.entries.putIfAbsent(key, expiresAt);
+            if (existing == null) {
+                Expiry expiry = new Expiry(expiresAt, key);
+                stripe.expirations.add(expiry);
+                if (stripe.size.incrementAndGet() > maxEntriesPerStripe && !stripe.makeRoom(now)) {
+                    stripe.reject(expiry);
+                    return false;
+                }
+                misses.increment();
+                return true;
+            }
+            if (existing > now) {
+                hits.increment();
+                return false;
+            }
+            // expired entry for the same key, replace it atomically and count it as a new one
+            if (stripe.entries.replace(key, existing, expiresAt)) {
+                stripe.expirations.remove(new Expiry(existing, key));
+                stripe.expirations.add(new Expiry(expiresAt, key));
+                misses.increment();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Maximum number of entries, rounded down to a multiple of the number of stripes.
+     *
+     * @return the cache capacity.
+     */
+    public int getMaxEntries() {
+        return maxEntriesPerStripe * stripes.length;
+    }
+
+    /**
+     * Number of replayed Assertions detected.
+     *
+     * @return the hit count.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Number of Assertions recorded for the first time.
+     *
+     * @return the miss count.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Number of Assertions rejected because the cache was full of unexpired entries.
+     *
+     * @return the rejection count.
+     */
+    public long getRejectionCount() {
+        return rejections.sum();
+    }
+
+    /**
+     * Current number of entries, including expired ones not yet purged.
+     *
+     * @return the cache size.
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.entries.size();
+        }
+        return size;
+    }
+
+    private class Stripe {
+        private final ConcurrentHashMap<String, Long> entries;
+        private final ConcurrentSkipListSet<Expiry> expirations = new ConcurrentSkipListSet<>(Expiry.ORDER);
+        private final AtomicInteger size = new AtomicInteger();
+
+        Stripe(int capacity) {
+            entries = new ConcurrentHashMap<>(Math.min(capacity, 1024));
+        }
+
+        /**
+         * Purges the expired entries.
+         *
+         * @return true if the stripe is back to its share of {@code maxEntries}.
+         */
+        boolean makeRoom(long now) {
+            for (Expiry first = first(); first != null && first.expiresAt <= now; first = first()) {
+                if (expirations.remove(first) && entries.remove(first.key, first.expiresAt)) {
+                    size.decrementAndGet();
+                }
+                // otherwise the entry was purged or replaced since, along with its expiration
+            }
+            return size.get() <= maxEntriesPerStripe;
+        }
+
+        /**
+         * Forgets the entry just stored, since no other entry can be evicted before its expiration.
+         */
+        void reject(Expiry expiry) {
+            expirations.remove(expiry);
+            if (entries.remove(expiry.key, expiry.expiresAt)) {
+                size.decrementAndGet();
+            }
+            rejections.increment();
+            logger.warn("Assertion replay cache is full of unexpired entries, rejecting Assertion {}. Increase "
+                    + "'maxEntries' (currently {}) to match the peak login rate.", expiry.key, getMaxEntries());
+        }
+
+        private Expiry first() {
+            try {
+                return expirations.first();
+            } catch (NoSuchElementException e) {
+                return null;
+            }
+        }
+    }
+
+    private static final class Expiry {
+        static final Comparator<Expiry> ORDER = Comparator.<Expiry>comparingLong(expiry -> expiry.expiresAt)
+                .thenComparing(expiry -> expiry.key);
+
+        private final long expiresAt;
+        private final String key;
+
+        Expiry(long expiresAt, String key) {
+            this.expiresAt = expiresAt;
+            this.key = key;
+        }
+    }
+}
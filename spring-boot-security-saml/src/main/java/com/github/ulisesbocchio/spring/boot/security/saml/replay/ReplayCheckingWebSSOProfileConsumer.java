@@ -0,0 +1,50 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.replay;
+
+import com.github.ulisesbocchio.spring.boot.security.saml.websso.FailFastWebSSOProfileConsumer;
+import org.opensaml.common.SAMLException;
+import org.opensaml.saml2.core.Assertion;
+import org.opensaml.saml2.core.AuthnRequest;
+import org.opensaml.xml.encryption.DecryptionException;
+import org.opensaml.xml.validation.ValidationException;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.saml.context.SAMLMessageContext;
+
+/**
+ * {@link org.springframework.security.saml.websso.WebSSOProfileConsumerImpl} that rejects Assertions already consumed,
+ * by any session or node sharing the same {@link AssertionReplayCache}. The replay check is performed after all other
+ * Assertion validations succeed, and Assertions are remembered for as long as this consumer would accept them, i.e.
+ * {@code maxAssertionTime} plus {@code responseSkew} from the issue instant, or the Conditions {@code NotOnOrAfter}
+ * plus skew if later. Holder of Key Assertions are checked against the same cache by
+ * {@link ReplayCheckingWebSSOProfileConsumerHoK}.
+ * <p>
+ * The inexpensive checks of {@link FailFastWebSSOProfileConsumer} are disabled by default, enable them through
+ * {@link #setFailFast(boolean)}.
+ * </p>
+ *
+ * @author Ulises Bocchio
+ */
+public class ReplayCheckingWebSSOProfileConsumer extends FailFastWebSSOProfileConsumer {
+
+    private final AssertionReplayCheck replayCheck;
+
+    public ReplayCheckingWebSSOProfileConsumer(AssertionReplayCache replayCache) {
+        this.replayCheck = new AssertionReplayCheck(replayCache, this);
+        setFailFast(false);
+    }
+
+    @Override
+    protected void verifyAssertion(Assertion assertion, AuthnRequest request, SAMLMessageContext context)
+            throws AuthenticationException, SAMLException, org.opensaml.xml.security.SecurityException,
+            ValidationException, DecryptionException {
+        super.verifyAssertion(assertion, request, context);
+        replayCheck.check(assertion);
+    }
+
+    AssertionReplayCheck getReplayCheck() {
+        return replayCheck;
+    }
+
+    public AssertionReplayCache getReplayCache() {
+        return replayCheck.getReplayCache();
+    }
+}
@@ -0,0 +1,42 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.replay;
+
+import org.opensaml.common.SAMLException;
+import org.opensaml.saml2.core.Assertion;
+import org.opensaml.saml2.core.AuthnRequest;
+import org.opensaml.xml.encryption.DecryptionException;
+import org.opensaml.xml.validation.ValidationException;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.saml.context.SAMLMessageContext;
+import org.springframework.security.saml.websso.WebSSOProfileConsumerHoKImpl;
+
+/**
+ * {@link WebSSOProfileConsumerHoKImpl} that rejects Assertions already consumed, the Holder of Key counterpart of
+ * {@link ReplayCheckingWebSSOProfileConsumer}. Sharing the same {@link AssertionReplayCache} with it, an Assertion is
+ * accepted only once whichever of the two SSO endpoints it is posted to.
+ *
+ * @author Ulises Bocchio
+ */
+public class ReplayCheckingWebSSOProfileConsumerHoK extends WebSSOProfileConsumerHoKImpl {
+
+    private final AssertionReplayCheck replayCheck;
+
+    public ReplayCheckingWebSSOProfileConsumerHoK(AssertionReplayCache replayCache) {
+        this.replayCheck = new AssertionReplayCheck(replayCache, this);
+    }
+
+    @Override
+    protected void verifyAssertion(Assertion assertion, AuthnRequest request, SAMLMessageContext context)
+            throws AuthenticationException, SAMLException, org.opensaml.xml.security.SecurityException,
+            ValidationException, DecryptionException {
+        super.verifyAssertion(assertion, request, context);
+        replayCheck.check(assertion);
+    }
+
+    AssertionReplayCheck getReplayCheck() {
+        return replayCheck;
+    }
+
+    public AssertionReplayCache getReplayCache() {
+        return replayCheck.getReplayCache();
+    }
+}
@@ -4,38 +4,84 @@ import lombok.SneakyThrows;
 import org.springframework.core.io.DefaultResourceLoader;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
+import org.springframework.util.Assert;
 import org.springframework.util.StreamUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.security.KeyFactory;
 import java.security.KeyStore;
+import java.security.MessageDigest;
 import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.security.interfaces.RSAPrivateKey;
+import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Class for internal use of this Spring Boot Plugin. It's used to create {@link KeyStore} objects based on different
- * resources such as JKS keystore files, X509 PEM certificates, and RSA DER private keys.
+ * resources such as JKS or PKCS#12 keystore files, X509 PEM certificates (or certificate chains), and RSA private keys
+ * in DER or PEM (PKCS#8 or PKCS#1) format.
+ * <p>
+ * Certificate chains and private keys parsed by {@link #loadKeystore(String, String, String, String)} are cached by
+ * resource location and a hash of the resource contents, up to a maximum number of entries, least recently used first
+ * out. The cache belongs to the factory instance, so Service Providers share parsed key material only if they share
+ * the factory, e.g. through a {@link KeystoreFactory} bean. Every call still returns a new {@link KeyStore}, so
+ * changes to one keystore are never seen by other callers.
+ * </p>
  *
  * @author Ulises Bocchio
  */
 public class KeystoreFactory {
 
+    private static final String PEM_BEGIN = "-----BEGIN ";
+    private static final String PEM_END = "-----END ";
+    private static final String PKCS8_KEY = "PRIVATE KEY";
+    private static final String PKCS1_RSA_KEY = "RSA PRIVATE KEY";
+
+    private static final int DEFAULT_MAX_CACHED_KEYS = 16;
+
+    private final Map<String, KeyMaterial> keyCache;
     private ResourceLoader resourceLoader;
 
     public KeystoreFactory() {
-        resourceLoader = new DefaultResourceLoader();
+        this(new DefaultResourceLoader());
     }
 
     public KeystoreFactory(ResourceLoader resourceLoader) {
+        this(resourceLoader, DEFAULT_MAX_CACHED_KEYS);
+    }
+
+    /**
+     * @param resourceLoader the loader of key material resources.
+     * @param maxCachedKeys  maximum number of parsed certificate chain and private key pairs kept, {@code 0} to
+     *                       disable caching.
+     */
+    public KeystoreFactory(ResourceLoader resourceLoader, int maxCachedKeys) {
+        Assert.isTrue(maxCachedKeys >= 0, "'maxCachedKeys' can't be negative.");
         this.resourceLoader = resourceLoader;
+        this.keyCache = Collections.synchronizedMap(new LinkedHashMap<String, KeyMaterial>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, KeyMaterial> eldest) {
+                return size() > maxCachedKeys;
+            }
+        });
     }
 
     /**
      * Based on a public certificate, private key, alias and password, this method will load the certificate and
      * private key as an entry into a newly created keystore, and it will set the provided alias and password to the
-     * keystore entry.
+     * keystore entry. The certificate resource may contain a full PEM certificate chain, leaf certificate first.
+     * The parsed chain and key are cached by resource locations and content, a new keystore is returned on every
+     * call.
      *
      * @param certResourceLocation
      * @param privateKeyResourceLocation
@@ -45,13 +91,38 @@ public class KeystoreFactory {
      */
     @SneakyThrows
     public KeyStore loadKeystore(String certResourceLocation, String privateKeyResourceLocation, String alias, String keyPassword) {
+        byte[] certBytes = readResource(certResourceLocation);
+        byte[] keyBytes = readResource(privateKeyResourceLocation);
+        String cacheKey = cacheKey(certResourceLocation + "|" + privateKeyResourceLocation, certBytes, keyBytes);
+        KeyMaterial material = keyCache.get(cacheKey);
+        if (material == null) {
+            material = new KeyMaterial(parseCertChain(certBytes), parsePrivateKey(keyBytes));
+            keyCache.put(cacheKey, material);
+        }
         KeyStore keystore = createEmptyKeystore();
-        X509Certificate cert = loadCert(certResourceLocation);
-        RSAPrivateKey privateKey = loadPrivateKey(privateKeyResourceLocation);
-        addKeyToKeystore(keystore, cert, privateKey, alias, keyPassword);
+        addKeyToKeystore(keystore, material.chain.clone(), material.privateKey, alias, keyPassword);
         return keystore;
     }
 
+    /**
+     * Loads a keystore file such as a JKS or PKCS#12 bundle. If {@code storeType} is null it is inferred from the
+     * resource extension: {@code .p12} and {@code .pfx} are treated as PKCS#12, anything else as JKS. The keystore is
+     * loaded on every call, since its entries can only be read with their passwords.
+     *
+     * @param storeLocation the keystore resource location.
+     * @param storePass     the keystore password.
+     * @param storeType     the keystore type, i.e. {@code JKS} or {@code PKCS12}. Might be null.
+     * @return the loaded keystore.
+     */
+    @SneakyThrows
+    public KeyStore loadKeystore(String storeLocation, String storePass, String storeType) {
+        String type = storeType != null ? storeType : inferStoreType(storeLocation);
+        char[] password = storePass != null ? storePass.toCharArray() : null;
+        KeyStore keyStore = KeyStore.getInstance(type);
+        keyStore.load(new ByteArrayInputStream(readResource(storeLocation)), password);
+        return keyStore;
+    }
+
     /**
      * Based on a public certificate, private key, alias and password, this method will load the certificate and
      * private key as an entry into the keystore, and it will set the provided alias and password to the keystore entry.
@@ -62,10 +133,23 @@ public class KeystoreFactory {
      * @param alias
      * @param password
      */
-    @SneakyThrows
     public void addKeyToKeystore(KeyStore keyStore, X509Certificate cert, RSAPrivateKey privateKey, String alias, String password) {
+        addKeyToKeystore(keyStore, new X509Certificate[]{cert}, privateKey, alias, password);
+    }
+
+    /**
+     * Based on a certificate chain, private key, alias and password, this method will load the chain and private key
+     * as an entry into the keystore, and it will set the provided alias and password to the keystore entry.
+     *
+     * @param keyStore
+     * @param certificateChain the certificate chain, leaf certificate first.
+     * @param privateKey
+     * @param alias
+     * @param password
+     */
+    @SneakyThrows
+    public void addKeyToKeystore(KeyStore keyStore, X509Certificate[] certificateChain, RSAPrivateKey privateKey, String alias, String password) {
         KeyStore.PasswordProtection pass = new KeyStore.PasswordProtection(password.toCharArray());
-        Certificate[] certificateChain = {cert};
         keyStore.setEntry(alias, new KeyStore.PrivateKeyEntry(privateKey, certificateChain), pass);
     }
 
@@ -96,22 +180,150 @@ public class KeystoreFactory {
     }
 
     /**
-     * Given a resource location it loads a DER RSA private Key.
+     * Given a resource location it loads a chain of one or more concatenated PEM X509 certificates, leaf certificate
+     * first.
+     *
+     * @param certLocation
+     * @return
+     */
+    @SneakyThrows
+    public X509Certificate[] loadCertChain(String certLocation) {
+        return parseCertChain(readResource(certLocation));
+    }
+
+    /**
+     * Given a resource location it loads an RSA private Key. Both DER and PEM encodings are supported, the latter
+     * either as PKCS#8 ({@code BEGIN PRIVATE KEY}) or PKCS#1 ({@code BEGIN RSA PRIVATE KEY}).
      *
      * @param privateKeyLocation
      * @return
      */
     @SneakyThrows
     public RSAPrivateKey loadPrivateKey(String privateKeyLocation) {
-        Resource keyRes = resourceLoader.getResource(privateKeyLocation);
-        byte[] keyBytes = StreamUtils.copyToByteArray(keyRes.getInputStream());
-        PKCS8EncodedKeySpec privateKeySpec = new PKCS8EncodedKeySpec(keyBytes);
-        KeyFactory keyFactory = KeyFactory.getInstance("RSA");
-        RSAPrivateKey privateKey = (RSAPrivateKey) keyFactory.generatePrivate(privateKeySpec);
-        return privateKey;
+        return parsePrivateKey(readResource(privateKeyLocation));
     }
 
     public void setResourceLoader(DefaultResourceLoader resourceLoader) {
         this.resourceLoader = resourceLoader;
     }
+
+    /**
+     * Removes the certificate chains and private keys cached by this factory.
+     */
+    public void clearCache() {
+        keyCache.clear();
+    }
+
+    public int getCachedKeys() {
+        return keyCache.size();
+    }
+
+    @SneakyThrows
+    private byte[] readResource(String location) {
+        Resource resource = resourceLoader.getResource(location);
+        return StreamUtils.copyToByteArray(resource.getInputStream());
+    }
+
+    @SneakyThrows
+    private X509Certificate[] parseCertChain(byte[] certBytes) {
+        CertificateFactory cf = CertificateFactory.getInstance("X509");
+        Collection<? extends Certificate> certificates = cf.generateCertificates(new ByteArrayInputStream(certBytes));
+        if (certificates.isEmpty()) {
+            throw new CertificateException("No X509 certificates found");
+        }
+        return certificates.toArray(new X509Certificate[0]);
+    }
+
+    @SneakyThrows
+    private RSAPrivateKey parsePrivateKey(byte[] keyBytes) {
+        byte[] pkcs8Bytes = keyBytes;
+        String text = new String(keyBytes, StandardCharsets.US_ASCII);
+        int begin = text.indexOf(PEM_BEGIN);
+        if (begin >= 0) {
+            int labelEnd = text.indexOf("-----", begin + PEM_BEGIN.length());
+            String label = text.substring(begin + PEM_BEGIN.length(), labelEnd);
+            int end = text.indexOf(PEM_END + label, labelEnd);
+            if (end < 0) {
+                throw new InvalidKeySpecException("Unterminated PEM block: " + label);
+            }
+            byte[] der = Base64.getMimeDecoder().decode(text.substring(labelEnd + 5, end));
+            if (PKCS8_KEY.equals(label)) {
+                pkcs8Bytes = der;
+            } else if (PKCS1_RSA_KEY.equals(label)) {
+                pkcs8Bytes = pkcs1ToPkcs8(der);
+            } else {
+                throw new InvalidKeySpecException("Unsupported PEM private key type: " + label);
+            }
+        }
+        PKCS8EncodedKeySpec privateKeySpec = new PKCS8EncodedKeySpec(pkcs8Bytes);
+        KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+        return (RSAPrivateKey) keyFactory.generatePrivate(privateKeySpec);
+    }
+
+    /**
+     * Wraps a PKCS#1 RSAPrivateKey structure into a PKCS#8 PrivateKeyInfo, which is what the JCA understands.
+     */
+    private static byte[] pkcs1ToPkcs8(byte[] pkcs1) {
+        // version INTEGER 0, AlgorithmIdentifier { rsaEncryption OID, NULL }
+        byte[] header = {0x02, 0x01, 0x00, 0x30, 0x0D, 0x06, 0x09, 0x2A, (byte) 0x86, 0x48, (byte) 0x86, (byte) 0xF7,
+                0x0D, 0x01, 0x01, 0x01, 0x05, 0x00};
+        ByteArrayOutputStream octetString = new ByteArrayOutputStream();
+        octetString.write(0x04);
+        writeDerLength(octetString, pkcs1.length);
+        octetString.write(pkcs1, 0, pkcs1.length);
+
+        ByteArrayOutputStream sequence = new ByteArrayOutputStream();
+        sequence.write(0x30);
+        writeDerLength(sequence, header.length + octetString.size());
+        sequence.write(header, 0, header.length);
+        byte[] octets = octetString.toByteArray();
+        sequence.write(octets, 0, octets.length);
+        return sequence.toByteArray();
+    }
+
+    private static void writeDerLength(ByteArrayOutputStream out, int length) {
+        if (length < 0x80) {
+            out.write(length);
+        } else if (length <= 0xFF) {
+            out.write(0x81);
+            out.write(length);
+        } else if (length <= 0xFFFF) {
+            out.write(0x82);
+            out.write(length >> 8);
+            out.write(length);
+        } else {
+            out.write(0x83);
+            out.write(length >> 16);
+            out.write(length >> 8);
+            out.write(length);
+        }
+    }
+
+    private static String inferStoreType(String storeLocation) {
+        String location = storeLocation.toLowerCase();
+        return location.endsWith(".p12") || location.endsWith(".pfx") ? "PKCS12" : "JKS";
+    }
+
+    @SneakyThrows
+    private static String cacheKey(String locations, byte[]... contents) {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        for (byte[] content : contents) {
+            digest.update(content);
+            digest.update((byte) 0);
+        }
+        return locations + ":" + Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    /**
+     * A parsed certificate chain and private key, both immutable.
+     */
+    private static final class KeyMaterial {
+        private final X509Certificate[] chain;
+        private final RSAPrivateKey privateKey;
+
+        KeyMaterial(X509Certificate[] chain, RSAPrivateKey privateKey) {
+            this.chain = chain;
+            this.privateKey = privateKey;
+        }
+    }
 }
@@ -0,0 +1,29 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.startup;
+
+import org.springframework.context.ApplicationEvent;
+
+import java.util.List;
+
+/**
+ * Published once a Service Provider is built and its SAML filters resolved, on startup and on every reload, with the
+ * phases recorded by its {@link StartupTimings}. The source is the
+ * {@link com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderBuilder}.
+ *
+ * @author Ulises Bocchio
+ */
+public class ServiceProviderStartupEvent extends ApplicationEvent {
+
+    private final List<StartupPhase> phases;
+
+    public ServiceProviderStartupEvent(Object source, List<StartupPhase> phases) {
+        super(source);
+        this.phases = phases;
+    }
+
+    /**
+     * @return the startup phases, in the order they completed.
+     */
+    public List<StartupPhase> getPhases() {
+        return phases;
+    }
+}
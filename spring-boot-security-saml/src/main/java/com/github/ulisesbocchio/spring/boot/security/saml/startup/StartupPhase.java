@@ -0,0 +1,47 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.startup;
+
+import java.util.Locale;
+
+/**
+ * A phase of the Service Provider startup, with the wall time it took and the memory allocated by the thread that ran
+ * it.
+ *
+ * @author Ulises Bocchio
+ */
+public final class StartupPhase {
+
+    private final String name;
+    private final long millis;
+    private final long allocatedBytes;
+
+    public StartupPhase(String name, long millis, long allocatedBytes) {
+        this.name = name;
+        this.millis = millis;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the wall time of the phase, in milliseconds.
+     */
+    public long getMillis() {
+        return millis;
+    }
+
+    /**
+     * @return the bytes allocated by the thread running the phase, or -1 when the JVM doesn't measure them.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return allocatedBytes < 0
+                ? String.format(Locale.ENGLISH, "%s=%d ms", name, millis)
+                : String.format(Locale.ENGLISH, "%s=%d ms/%.1f MB", name, millis, allocatedBytes / (1024.0 * 1024.0));
+    }
+}
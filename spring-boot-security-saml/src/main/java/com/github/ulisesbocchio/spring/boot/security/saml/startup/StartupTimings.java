@@ -0,0 +1,130 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.startup;
+
+import com.github.ulisesbocchio.spring.boot.security.saml.util.FunctionalUtils.CheckedRunnable;
+import com.github.ulisesbocchio.spring.boot.security.saml.util.FunctionalUtils.CheckedSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Records the phases of a Service Provider startup, from the OpenSAML bootstrap to the SAML filters being resolved:
+ * the wall time of each one and, on JVMs that measure it, the memory allocated by the thread that ran it. Phases may
+ * be recorded from several threads, e.g. when configurers are configured in parallel, and may nest, e.g. each metadata
+ * provider initialization is part of the metadata manager one.
+ *
+ * @author Ulises Bocchio
+ */
+public class StartupTimings {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupTimings.class);
+    private static final com.sun.management.ThreadMXBean THREADS = allocationMXBean();
+
+    private final List<StartupPhase> phases = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Adds an already measured phase, e.g. one that ran before the Service Provider builder existed.
+     *
+     * @param phase the phase.
+     */
+    public void add(StartupPhase phase) {
+        phases.add(phase);
+    }
+
+    /**
+     * Runs and records a phase, even if it fails.
+     *
+     * @param name     the phase name.
+     * @param runnable the phase.
+     * @param <E>      the exception the phase may throw.
+     * @return the recorded phase.
+     * @throws E the exception thrown by the phase.
+     */
+    public <E extends Throwable> StartupPhase record(String name, CheckedRunnable<E> runnable) throws E {
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        StartupPhase phase;
+        try {
+            runnable.run();
+        } finally {
+            phase = add(name, start, allocated);
+        }
+        return phase;
+    }
+
+    /**
+     * Runs and records a phase that returns a value, even if it fails.
+     *
+     * @param name     the phase name.
+     * @param supplier the phase.
+     * @param <T>      the type of value returned by the phase.
+     * @param <E>      the exception the phase may throw.
+     * @return the value returned by the phase.
+     * @throws E the exception thrown by the phase.
+     */
+    public <T, E extends Throwable> T measure(String name, CheckedSupplier<T, E> supplier) throws E {
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        try {
+            return supplier.get();
+        } finally {
+            add(name, start, allocated);
+        }
+    }
+
+    private StartupPhase add(String name, long start, long allocated) {
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        StartupPhase phase = new StartupPhase(name, millis, allocated < 0 ? -1 : allocatedBytes() - allocated);
+        phases.add(phase);
+        return phase;
+    }
+
+    /**
+     * @return the phases recorded so far, in the order they completed.
+     */
+    public List<StartupPhase> getPhases() {
+        synchronized (phases) {
+            return Collections.unmodifiableList(new ArrayList<>(phases));
+        }
+    }
+
+    /**
+     * Logs a summary of the phases recorded so far and publishes them as a {@link ServiceProviderStartupEvent}.
+     *
+     * @param source    the event source, the Service Provider builder.
+     * @param publisher the publisher, or null not to publish the event.
+     */
+    public void report(Object source, ApplicationEventPublisher publisher) {
+        List<StartupPhase> recorded = getPhases();
+        logger.info("SAML Service Provider startup phases: {}", recorded.stream()
+                .map(StartupPhase::toString)
+                .collect(Collectors.joining(", ")));
+        if (publisher != null) {
+            publisher.publishEvent(new ServiceProviderStartupEvent(source, recorded));
+        }
+    }
+
+    private static long allocatedBytes() {
+        return THREADS != null ? THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationMXBean() {
+        try {
+            java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+                if (allocation.isThreadAllocatedMemorySupported() && allocation.isThreadAllocatedMemoryEnabled()) {
+                    return allocation;
+                }
+            }
+        } catch (LinkageError e) {
+            logger.debug("Thread allocation not measurable on this JVM", e);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,36 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.startup;
+
+import org.opensaml.saml2.metadata.provider.MetadataProvider;
+import org.opensaml.saml2.metadata.provider.MetadataProviderException;
+import org.springframework.security.saml.metadata.ExtendedMetadata;
+import org.springframework.security.saml.metadata.ExtendedMetadataDelegate;
+
+/**
+ * {@link ExtendedMetadataDelegate} that records its first initialization, which loads the metadata, as a startup
+ * phase.
+ *
+ * @author Ulises Bocchio
+ */
+public class TimedExtendedMetadataDelegate extends ExtendedMetadataDelegate {
+
+    private final StartupTimings timings;
+    private final String name;
+    private volatile boolean recorded;
+
+    public TimedExtendedMetadataDelegate(MetadataProvider delegate, ExtendedMetadata defaultMetadata,
+                                         StartupTimings timings, String name) {
+        super(delegate, defaultMetadata);
+        this.timings = timings;
+        this.name = name;
+    }
+
+    @Override
+    public void initialize() throws MetadataProviderException {
+        if (recorded) {
+            super.initialize();
+            return;
+        }
+        recorded = true;
+        timings.record(name, super::initialize);
+    }
+}
@@ -0,0 +1,29 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.startup;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.security.saml.SAMLBootstrap;
+
+/**
+ * {@link SAMLBootstrap} that records how long the OpenSAML bootstrap takes, since it runs before the Service Provider
+ * builder, and its {@link StartupTimings}, exist.
+ *
+ * @author Ulises Bocchio
+ */
+public class TimedSAMLBootstrap extends SAMLBootstrap {
+
+    private final StartupTimings timings = new StartupTimings();
+    private StartupPhase phase;
+
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+        phase = timings.record(SAMLBootstrap.class.getSimpleName(), () -> super.postProcessBeanFactory(beanFactory));
+    }
+
+    /**
+     * @return the bootstrap phase, or null if the bootstrap didn't run yet.
+     */
+    public StartupPhase getPhase() {
+        return phase;
+    }
+}
@@ -0,0 +1,144 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.storage;
+
+import org.joda.time.DateTime;
+import org.opensaml.common.SAMLObject;
+import org.opensaml.saml2.core.AuthnRequest;
+import org.opensaml.saml2.core.LogoutRequest;
+import org.opensaml.saml2.core.RequestAbstractType;
+import org.opensaml.saml2.core.impl.AuthnRequestBuilder;
+import org.opensaml.saml2.core.impl.LogoutRequestBuilder;
+import org.opensaml.xml.XMLObject;
+import org.springframework.security.saml.storage.HttpSessionStorage;
+import org.springframework.security.saml.storage.SAMLMessageStorage;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Request scoped {@link SAMLMessageStorage} created by {@link CookieSAMLMessageStorageFactory}. Outgoing
+ * {@link AuthnRequest} and {@link LogoutRequest} messages are kept as pending cookies until
+ * {@link #writeCookies(HttpServletResponse)} is invoked. On retrieval a lightweight message carrying only the original
+ * ID and issue instant is rebuilt, which is all the SAML consumers need to validate the {@code InResponseTo} of the
+ * response, and the cookie is expired so that it is used once. If the request already has a session, the session is
+ * used instead, just like {@link HttpSessionStorage}.
+ *
+ * @author Ulises Bocchio
+ */
+public class CookieSAMLMessageStorage implements SAMLMessageStorage {
+
+    private static final char AUTHN_REQUEST = 'A';
+    private static final char LOGOUT_REQUEST = 'L';
+
+    private final HttpServletRequest request;
+    private final CookieSAMLMessageStorageFactory factory;
+    private final List<String> pendingCookies = new ArrayList<>();
+
+    CookieSAMLMessageStorage(HttpServletRequest request, CookieSAMLMessageStorageFactory factory) {
+        this.request = request;
+        this.factory = factory;
+    }
+
+    @Override
+    public void storeMessage(String messageId, XMLObject message) {
+        HttpSession session = request.getSession(false);
+        if (session != null) {
+            new HttpSessionStorage(session).storeMessage(messageId, message);
+            return;
+        }
+        char type;
+        if (message instanceof AuthnRequest) {
+            type = AUTHN_REQUEST;
+        } else if (message instanceof LogoutRequest) {
+            type = LOGOUT_REQUEST;
+        } else {
+            return;
+        }
+        DateTime issueInstant = ((RequestAbstractType) message).getIssueInstant();
+        long instant = issueInstant != null ? issueInstant.getMillis() : System.currentTimeMillis();
+        pendingCookies.add(setCookieHeader(factory.cookieName(messageId), factory.encode(messageId, type, instant), factory.getMaxAge()));
+    }
+
+    @Override
+    public XMLObject retrieveMessage(String messageID) {
+        XMLObject message = retrieveFromCookie(messageID);
+        if (message == null) {
+            HttpSession session = request.getSession(false);
+            if (session != null) {
+                message = new HttpSessionStorage(session).retrieveMessage(messageID);
+            }
+        }
+        return message;
+    }
+
+    /**
+     * Adds the {@code Set-Cookie} headers for the messages stored, and the cookies consumed, during this request. Must
+     * be called before the response is committed.
+     *
+     * @param response the response to add the cookies to.
+     */
+    public void writeCookies(HttpServletResponse response) {
+        pendingCookies.forEach(cookie -> response.addHeader("Set-Cookie", cookie));
+        pendingCookies.clear();
+    }
+
+    /**
+     * Whether there are stored or consumed messages not yet written to a response.
+     *
+     * @return true if there are pending cookies.
+     */
+    public boolean hasPendingCookies() {
+        return !pendingCookies.isEmpty();
+    }
+
+    private XMLObject retrieveFromCookie(String messageID) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return null;
+        }
+        String name = factory.cookieName(messageID);
+        for (Cookie cookie : cookies) {
+            if (name.equals(cookie.getName())) {
+                pendingCookies.add(setCookieHeader(name, "", 0));
+                ByteBuffer decoded = factory.decode(messageID, cookie.getValue());
+                if (decoded != null) {
+                    char type = (char) decoded.get();
+                    long issueInstant = decoded.getLong();
+                    if (System.currentTimeMillis() - issueInstant <= factory.getMaxAge() * 1000L) {
+                        return rebuild(type, messageID, issueInstant);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private SAMLObject rebuild(char type, String messageID, long issueInstant) {
+        RequestAbstractType message;
+        if (type == AUTHN_REQUEST) {
+            message = new AuthnRequestBuilder().buildObject();
+        } else if (type == LOGOUT_REQUEST) {
+            message = new LogoutRequestBuilder().buildObject();
+        } else {
+            return null;
+        }
+        message.setID(messageID);
+        message.setIssueInstant(new DateTime(issueInstant));
+        return message;
+    }
+
+    private String setCookieHeader(String name, String value, int maxAge) {
+        StringBuilder header = new StringBuilder(name).append('=').append(value)
+                .append("; Max-Age=").append(maxAge)
+                .append("; Path=").append(factory.cookiePath(request))
+                .append("; HttpOnly");
+        if (factory.isSecure()) {
+            header.append("; Secure; SameSite=None");
+        }
+        return header.toString();
+    }
+}
@@ -0,0 +1,164 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.storage;
+
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.StatelessMessageStorageProperties;
+import lombok.SneakyThrows;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.saml.storage.SAMLMessageStorage;
+import org.springframework.security.saml.storage.SAMLMessageStorageFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.http.HttpServletRequest;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Optional;
+
+/**
+ * {@link SAMLMessageStorageFactory} that keeps outgoing SAML requests in short lived cookies instead of the HTTP
+ * Session, so that no session is created until authentication succeeds. Each stored request produces one cookie named
+ * after a hash of the message ID, holding the message type and issue instant, encrypted and authenticated with
+ * AES/GCM and bound to the message ID.
+ * <p>
+ * Since SAML bindings commit the response before the message is stored, cookies are only written when the response
+ * commit is deferred, see {@link StatelessSAMLEntryPoint}. Consumed cookies are expired on the response that
+ * processes the SAML message, see {@link CookieSAMLMessageStorageFilter}. Once a session exists, messages are stored
+ * in the session as usual.
+ * </p>
+ * <p>
+ * The secret is required so that every node of a cluster can read the cookies issued by the others. Cookies should be
+ * Secure: only Secure cookies can be flagged {@code SameSite=None}, and browsers treat cookies without a SameSite
+ * attribute as {@code Lax}, dropping them on the cross-site POST of the IDP. Non secure cookies only work when the IDP
+ * is on the same site as the application.
+ * </p>
+ *
+ * @author Ulises Bocchio
+ */
+public class CookieSAMLMessageStorageFactory implements SAMLMessageStorageFactory {
+
+    /**
+     * Request attribute under which the storage for the current request is kept.
+     */
+    public static final String STORAGE_ATTRIBUTE = CookieSAMLMessageStorageFactory.class.getName() + ".STORAGE";
+
+    private static final String CIPHER = "AES/GCM/NoPadding";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH = 128;
+    private static final Logger logger = LoggerFactory.getLogger(CookieSAMLMessageStorageFactory.class);
+
+    private final SecretKey key;
+    private final String cookieName;
+    private final String cookiePath;
+    private final int maxAge;
+    private final boolean secure;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * @param secret     AES key, 16, 24 or 32 bytes, the same on every node.
+     * @param cookieName the cookie name prefix.
+     * @param cookiePath the cookie path, request context path if null.
+     * @param maxAge     validity of stored messages in seconds.
+     * @param secure     whether cookies are flagged Secure and SameSite=None.
+     */
+    public CookieSAMLMessageStorageFactory(byte[] secret, String cookieName, String cookiePath, int maxAge, boolean secure) {
+        Assert.notNull(secret, "'secret' is required and must be the same on every node, "
+                + "see saml.sso.context-provider.stateless-storage.secret.");
+        Assert.isTrue(secret.length == 16 || secret.length == 24 || secret.length == 32, "'secret' must be 16, 24 or 32 bytes long.");
+        Assert.hasText(cookieName, "'cookieName' cannot be null or empty.");
+        Assert.isTrue(maxAge > 0, "'maxAge' must be greater than 0.");
+        if (!secure) {
+            logger.warn("Stateless SAML message storage cookies are not Secure, so they cannot be flagged SameSite=None and "
+                    + "browsers drop them on the cross-site POST of the IDP. Only use this with an IDP on the same site.");
+        }
+        this.key = new SecretKeySpec(secret, "AES");
+        this.cookieName = cookieName;
+        this.cookiePath = cookiePath;
+        this.maxAge = maxAge;
+        this.secure = secure;
+    }
+
+    /**
+     * @param config the stateless message storage properties.
+     */
+    public CookieSAMLMessageStorageFactory(StatelessMessageStorageProperties config) {
+        this(Optional.ofNullable(config.getSecret()).map(Base64.getDecoder()::decode).orElse(null),
+                config.getCookieName(), config.getCookiePath(), config.getMaxAge(), config.isSecure());
+    }
+
+    @Override
+    public SAMLMessageStorage getMessageStorage(HttpServletRequest request) {
+        CookieSAMLMessageStorage storage = (CookieSAMLMessageStorage) request.getAttribute(STORAGE_ATTRIBUTE);
+        if (storage == null) {
+            storage = new CookieSAMLMessageStorage(request, this);
+            request.setAttribute(STORAGE_ATTRIBUTE, storage);
+        }
+        return storage;
+    }
+
+    String cookieName(String messageId) {
+        byte[] hash = sha256(messageId.getBytes(StandardCharsets.UTF_8));
+        return cookieName + "_" + Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(hash, 9));
+    }
+
+    String cookiePath(HttpServletRequest request) {
+        if (StringUtils.hasText(cookiePath)) {
+            return cookiePath;
+        }
+        return StringUtils.hasText(request.getContextPath()) ? request.getContextPath() : "/";
+    }
+
+    int getMaxAge() {
+        return maxAge;
+    }
+
+    boolean isSecure() {
+        return secure;
+    }
+
+    @SneakyThrows
+    String encode(String messageId, char type, long issueInstant) {
+        byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+        Cipher cipher = Cipher.getInstance(CIPHER);
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, iv));
+        cipher.updateAAD(messageId.getBytes(StandardCharsets.UTF_8));
+        byte[] encrypted = cipher.doFinal(ByteBuffer.allocate(9).put((byte) type).putLong(issueInstant).array());
+        byte[] value = ByteBuffer.allocate(iv.length + encrypted.length).put(iv).put(encrypted).array();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value);
+    }
+
+    /**
+     * Decodes and authenticates a cookie value for the given message ID.
+     *
+     * @return a buffer positioned at the message type followed by the issue instant, or null if the value is invalid.
+     */
+    ByteBuffer decode(String messageId, String value) {
+        try {
+            byte[] bytes = Base64.getUrlDecoder().decode(value);
+            if (bytes.length <= IV_LENGTH) {
+                return null;
+            }
+            Cipher cipher = Cipher.getInstance(CIPHER);
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, bytes, 0, IV_LENGTH));
+            cipher.updateAAD(messageId.getBytes(StandardCharsets.UTF_8));
+            byte[] plain = cipher.doFinal(bytes, IV_LENGTH, bytes.length - IV_LENGTH);
+            return plain.length == 9 ? ByteBuffer.wrap(plain) : null;
+        } catch (IllegalArgumentException | GeneralSecurityException e) {
+            return null;
+        }
+    }
+
+    @SneakyThrows
+    private static byte[] sha256(byte[] value) {
+        return MessageDigest.getInstance("SHA-256").digest(value);
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.storage;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Filter to be used in conjunction with {@link CookieSAMLMessageStorageFactory}. It writes the cookies pending on the
+ * {@link CookieSAMLMessageStorage} of the request right before the response is committed, so that the cookies consumed
+ * while processing a SAML Response or Logout Response are expired on the redirect sent by the success or failure
+ * handlers.
+ *
+ * @author Ulises Bocchio
+ */
+public class CookieSAMLMessageStorageFilter extends OncePerRequestFilter {
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+        chain.doFilter(request, new PendingCookiesResponseWrapper(request, response));
+    }
+
+    private static class PendingCookiesResponseWrapper extends HttpServletResponseWrapper {
+
+        private final HttpServletRequest request;
+
+        PendingCookiesResponseWrapper(HttpServletRequest request, HttpServletResponse response) {
+            super(response);
+            this.request = request;
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            writePendingCookies();
+            super.sendRedirect(location);
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            writePendingCookies();
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            writePendingCookies();
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            writePendingCookies();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            writePendingCookies();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            writePendingCookies();
+            super.flushBuffer();
+        }
+
+        private void writePendingCookies() {
+            Object storage = request.getAttribute(CookieSAMLMessageStorageFactory.STORAGE_ATTRIBUTE);
+            if (storage instanceof CookieSAMLMessageStorage && !isCommitted()) {
+                ((CookieSAMLMessageStorage) storage).writeCookies((HttpServletResponse) getResponse());
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.storage;
+
+import lombok.SneakyThrows;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+/**
+ * {@link HttpServletResponseWrapper} that buffers the body, redirects and errors so that headers can still be added
+ * to the wrapped response after the SAML bindings are done writing to it. {@link #commit()} sends everything to the
+ * wrapped response.
+ *
+ * @author Ulises Bocchio
+ */
+class DeferredCommitResponseWrapper extends HttpServletResponseWrapper {
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private ServletOutputStream outputStream;
+    private PrintWriter writer;
+    private String redirectLocation;
+    private Integer errorStatus;
+    private String errorMessage;
+
+    DeferredCommitResponseWrapper(HttpServletResponse response) {
+        super(response);
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+        if (outputStream == null) {
+            outputStream = new ServletOutputStream() {
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                @SneakyThrows
+                public void setWriteListener(WriteListener writeListener) {
+                    getResponse().getOutputStream().setWriteListener(writeListener);
+                }
+
+                @Override
+                public void write(int b) {
+                    buffer.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    buffer.write(b, off, len);
+                }
+            };
+        }
+        return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            writer = new PrintWriter(new OutputStreamWriter(buffer, getCharacterEncoding()));
+        }
+        return writer;
+    }
+
+    @Override
+    public void sendRedirect(String location) {
+        redirectLocation = location;
+    }
+
+    @Override
+    public void sendError(int sc) {
+        errorStatus = sc;
+    }
+
+    @Override
+    public void sendError(int sc, String msg) {
+        errorStatus = sc;
+        errorMessage = msg;
+    }
+
+    @Override
+    public void flushBuffer() {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    @Override
+    public void resetBuffer() {
+        buffer.reset();
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        buffer.reset();
+        redirectLocation = null;
+        errorStatus = null;
+        errorMessage = null;
+    }
+
+    @Override
+    public boolean isCommitted() {
+        return redirectLocation != null || errorStatus != null || super.isCommitted();
+    }
+
+    /**
+     * Sends the buffered error, redirect or body to the wrapped response.
+     *
+     * @throws IOException if the wrapped response fails to be written.
+     */
+    void commit() throws IOException {
+        HttpServletResponse response = (HttpServletResponse) getResponse();
+        flushBuffer();
+        if (errorStatus != null) {
+            if (errorMessage != null) {
+                response.sendError(errorStatus, errorMessage);
+            } else {
+                response.sendError(errorStatus);
+            }
+        } else if (redirectLocation != null) {
+            response.sendRedirect(redirectLocation);
+        } else if (buffer.size() > 0) {
+            buffer.writeTo(response.getOutputStream());
+            response.flushBuffer();
+        }
+    }
+}
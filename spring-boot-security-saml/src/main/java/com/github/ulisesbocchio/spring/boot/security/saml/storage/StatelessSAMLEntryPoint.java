@@ -0,0 +1,33 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.storage;
+
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.saml.SAMLEntryPoint;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * {@link SAMLEntryPoint} to be used in conjunction with {@link CookieSAMLMessageStorageFactory}. It defers the
+ * response commit until the outgoing request has been stored, so that the storage cookie can be added to the response
+ * that carries the SAML request to the IDP.
+ *
+ * @author Ulises Bocchio
+ */
+public class StatelessSAMLEntryPoint extends SAMLEntryPoint {
+
+    @Override
+    public void commence(HttpServletRequest request, HttpServletResponse response, AuthenticationException e) throws IOException, ServletException {
+        DeferredCommitResponseWrapper deferredResponse = new DeferredCommitResponseWrapper(response);
+        try {
+            super.commence(request, deferredResponse, e);
+            Object storage = request.getAttribute(CookieSAMLMessageStorageFactory.STORAGE_ATTRIBUTE);
+            if (storage instanceof CookieSAMLMessageStorage) {
+                ((CookieSAMLMessageStorage) storage).writeCookies(response);
+            }
+        } finally {
+            deferredResponse.commit();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.tenant;
+
+import org.opensaml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml2.metadata.provider.MetadataProviderException;
+import org.springframework.security.saml.metadata.ExtendedMetadata;
+import org.springframework.security.saml.metadata.ExtendedMetadataDelegate;
+import org.springframework.security.saml.metadata.MetadataGenerator;
+import org.springframework.security.saml.metadata.MetadataManager;
+import org.springframework.security.saml.metadata.MetadataMemoryProvider;
+import org.springframework.util.Assert;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tenant Service Providers hosted by a single Service Provider configuration. Spring Security SAML already selects the
+ * local entity of every request by the alias in its URL, e.g. {@code /saml/SSO/alias/acme}, so tenants are hosted as
+ * additional local entities of the one {@link MetadataManager}: they share the parser pool, the metadata refresh
+ * timer, the HTTP client and the Identity Provider metadata, loaded once, and each one keeps its entity ID, keys,
+ * see {@link TenantKeyManager}, and alias endpoints.
+ *
+ * @author Ulises Bocchio
+ */
+public class ServiceProviderTenants {
+
+    private final List<Tenant> tenants;
+
+    public ServiceProviderTenants(List<Tenant> tenants) {
+        this.tenants = Collections.unmodifiableList(tenants);
+    }
+
+    public List<Tenant> getTenants() {
+        return tenants;
+    }
+
+    /**
+     * Generates the metadata of every tenant, as the {@link MetadataGenerator} would for the default Service Provider
+     * but with the tenant entity ID, base URL, alias and keys, and adds it to the metadata manager as local metadata.
+     * Since the {@link org.springframework.security.saml.metadata.MetadataGeneratorFilter} is not used once local
+     * metadata is present, the default Service Provider is generated here too and becomes the hosted one, used for
+     * requests without alias, unless a hosted Service Provider is set.
+     *
+     * @param metadataManager   the metadata manager.
+     * @param metadataGenerator the fully configured metadata generator of the default Service Provider, restored
+     *                          once done.
+     * @throws MetadataProviderException if the metadata of a tenant can't be added.
+     * @throws IllegalStateException     if a tenant has no base URL, or the default Service Provider has no entity ID
+     *                                   or base URL and no hosted Service Provider is set, since it couldn't be
+     *                                   generated later on.
+     */
+    public void register(MetadataManager metadataManager, MetadataGenerator metadataGenerator) throws MetadataProviderException {
+        String entityId = metadataGenerator.getEntityId();
+        String entityBaseURL = metadataGenerator.getEntityBaseURL();
+        ExtendedMetadata extendedMetadata = metadataGenerator.getExtendedMetadata();
+        boolean registerDefault = metadataManager.getHostedSPName() == null;
+        Assert.state(!registerDefault || (entityId != null && entityBaseURL != null), "No entity ID or entity base URL"
+                + " for the default Service Provider, set both for the metadata generator or set a hosted Service Provider.");
+        try {
+            for (Tenant tenant : tenants) {
+                ExtendedMetadata tenantMetadata = localCopy(extendedMetadata);
+                tenantMetadata.setAlias(tenant.getAlias());
+                if (tenant.getKeyName() != null) {
+                    tenantMetadata.setSigningKey(tenant.getKeyName());
+                    tenantMetadata.setEncryptionKey(tenant.getKeyName());
+                }
+                String tenantBaseURL = tenant.getEntityBaseURL() != null ? tenant.getEntityBaseURL() : entityBaseURL;
+                Assert.state(tenantBaseURL != null, "No entity base URL for tenant '" + tenant.getAlias()
+                        + "', set one for the tenant or for the metadata generator.");
+                addLocalMetadata(metadataManager, metadataGenerator, tenant.getEntityId(), tenantBaseURL, tenantMetadata);
+            }
+            if (registerDefault) {
+                addLocalMetadata(metadataManager, metadataGenerator, entityId, entityBaseURL, localCopy(extendedMetadata));
+                metadataManager.setHostedSPName(entityId);
+            }
+        } finally {
+            metadataGenerator.setEntityId(entityId);
+            metadataGenerator.setEntityBaseURL(entityBaseURL);
+            metadataGenerator.setExtendedMetadata(extendedMetadata);
+        }
+        metadataManager.refreshMetadata();
+    }
+
+    private static ExtendedMetadata localCopy(ExtendedMetadata extendedMetadata) {
+        ExtendedMetadata copy = extendedMetadata != null ? extendedMetadata.clone() : new ExtendedMetadata();
+        copy.setLocal(true);
+        return copy;
+    }
+
+    private static void addLocalMetadata(MetadataManager metadataManager, MetadataGenerator metadataGenerator, String entityId,
+                                         String entityBaseURL, ExtendedMetadata extendedMetadata) throws MetadataProviderException {
+        metadataGenerator.setEntityId(entityId);
+        metadataGenerator.setEntityBaseURL(entityBaseURL);
+        metadataGenerator.setExtendedMetadata(extendedMetadata);
+        EntityDescriptor descriptor = metadataGenerator.generateMetadata();
+        MetadataMemoryProvider provider = new MetadataMemoryProvider(descriptor);
+        provider.initialize();
+        metadataManager.addMetadataProvider(new ExtendedMetadataDelegate(provider, metadataGenerator.generateExtendedMetadata()));
+    }
+
+    /**
+     * A tenant Service Provider.
+     */
+    public static final class Tenant {
+        private final String alias;
+        private final String entityId;
+        private final String entityBaseURL;
+        private final String keyName;
+
+        /**
+         * @param alias         alias of the tenant in the endpoint URLs.
+         * @param entityId      entity ID of the tenant.
+         * @param entityBaseURL base URL of the tenant endpoints, or null for the one of the metadata generator.
+         * @param keyName       name of the tenant key in the {@link TenantKeyManager}, or null for the default key.
+         */
+        public Tenant(String alias, String entityId, String entityBaseURL, String keyName) {
+            Assert.hasText(alias, "'alias' cannot be null or empty.");
+            Assert.hasText(entityId, "'entityId' cannot be null or empty.");
+            this.alias = alias;
+            this.entityId = entityId;
+            this.entityBaseURL = entityBaseURL;
+            this.keyName = keyName;
+        }
+
+        public String getAlias() {
+            return alias;
+        }
+
+        public String getEntityId() {
+            return entityId;
+        }
+
+        public String getEntityBaseURL() {
+            return entityBaseURL;
+        }
+
+        public String getKeyName() {
+            return keyName;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.tenant;
+
+import org.opensaml.xml.security.CriteriaSet;
+import org.opensaml.xml.security.SecurityException;
+import org.opensaml.xml.security.credential.Credential;
+import org.opensaml.xml.security.criteria.EntityIDCriteria;
+import org.springframework.security.saml.key.KeyManager;
+import org.springframework.util.Assert;
+
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link KeyManager} that keeps the keys of every tenant in its own {@link KeyManager}, named after the tenant alias
+ * within the {@value #TENANT_KEY_PREFIX} namespace, see {@link #keyName(String)}, and delegates everything else,
+ * including the default credential, to the default {@link KeyManager}. Keys are looked up by name, and credentials
+ * resolved by the {@link EntityIDCriteria} of the criteria set, which is how {@link KeyManager}s name keys. A tenant
+ * key can't shadow a key of the default {@link KeyManager}.
+ *
+ * @author Ulises Bocchio
+ */
+public class TenantKeyManager implements KeyManager {
+
+    /**
+     * Prefix of the tenant key names.
+     */
+    public static final String TENANT_KEY_PREFIX = "tenant:";
+
+    private final KeyManager defaultKeyManager;
+    private final Map<String, KeyManager> tenantKeyManagers;
+
+    /**
+     * @param defaultKeyManager the key manager of the default keys.
+     * @param tenantKeyManagers the key manager of each tenant, by key name.
+     * @throws IllegalArgumentException if a tenant key name is also a key of the default key manager.
+     */
+    public TenantKeyManager(KeyManager defaultKeyManager, Map<String, KeyManager> tenantKeyManagers) {
+        Assert.notNull(defaultKeyManager, "'defaultKeyManager' cannot be null.");
+        Set<String> defaultKeys = defaultKeyManager.getAvailableCredentials();
+        tenantKeyManagers.keySet().forEach(keyName -> Assert.isTrue(defaultKeys == null || !defaultKeys.contains(keyName),
+                "Tenant key '" + keyName + "' shadows a key of the default key manager."));
+        this.defaultKeyManager = defaultKeyManager;
+        this.tenantKeyManagers = Collections.unmodifiableMap(new LinkedHashMap<>(tenantKeyManagers));
+    }
+
+    /**
+     * Name of the key of the tenant with the given alias.
+     *
+     * @param alias the tenant alias.
+     * @return the key name.
+     */
+    public static String keyName(String alias) {
+        return TENANT_KEY_PREFIX + alias;
+    }
+
+    @Override
+    public Iterable<Credential> resolve(CriteriaSet criteria) throws SecurityException {
+        return keyManager(criteria).resolve(criteria);
+    }
+
+    @Override
+    public Credential resolveSingle(CriteriaSet criteria) throws SecurityException {
+        return keyManager(criteria).resolveSingle(criteria);
+    }
+
+    @Override
+    public Credential getCredential(String keyName) {
+        return keyManager(keyName).getCredential(keyName);
+    }
+
+    @Override
+    public Credential getDefaultCredential() {
+        return defaultKeyManager.getDefaultCredential();
+    }
+
+    @Override
+    public String getDefaultCredentialName() {
+        return defaultKeyManager.getDefaultCredentialName();
+    }
+
+    @Override
+    public Set<String> getAvailableCredentials() {
+        Set<String> credentials = new LinkedHashSet<>(defaultKeyManager.getAvailableCredentials());
+        tenantKeyManagers.values().forEach(keyManager -> credentials.addAll(keyManager.getAvailableCredentials()));
+        return credentials;
+    }
+
+    @Override
+    public X509Certificate getCertificate(String alias) {
+        return keyManager(alias).getCertificate(alias);
+    }
+
+    public KeyManager getDefaultKeyManager() {
+        return defaultKeyManager;
+    }
+
+    public Map<String, KeyManager> getTenantKeyManagers() {
+        return tenantKeyManagers;
+    }
+
+    private KeyManager keyManager(CriteriaSet criteria) {
+        EntityIDCriteria entityId = criteria != null ? criteria.get(EntityIDCriteria.class) : null;
+        return keyManager(entityId != null ? entityId.getEntityID() : null);
+    }
+
+    private KeyManager keyManager(String keyName) {
+        KeyManager keyManager = keyName != null ? tenantKeyManagers.get(keyName) : null;
+        return keyManager != null ? keyManager : defaultKeyManager;
+    }
+}
@@ -0,0 +1,543 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.trust;
+
+import com.github.ulisesbocchio.spring.boot.security.saml.async.BoundedExecutors;
+import org.opensaml.xml.security.CriteriaSet;
+import org.opensaml.xml.security.SecurityException;
+import org.opensaml.xml.security.x509.BasicPKIXValidationInformation;
+import org.opensaml.xml.security.x509.PKIXValidationInformation;
+import org.opensaml.xml.security.x509.PKIXValidationInformationResolver;
+import org.opensaml.xml.signature.SignatureTrustEngine;
+import org.opensaml.xml.signature.impl.PKIXSignatureTrustEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.util.Assert;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * In-memory set of the CRLs referenced, through their CRL Distribution Points extension, by the trusted certificates
+ * used to validate metadata signatures: the trust anchors of the resolved PKIX validation information and, through
+ * {@link #wrap(PKIXSignatureTrustEngine)}, the certificates carried by a signature that are issued by one of them,
+ * directly or through other such certificates. Certificates that don't chain to a trust anchor are never watched, so
+ * untrusted input can't make the cache fetch arbitrary URLs. The CRL of a distribution point is fetched on a background
+ * thread right after a certificate referencing it is first seen, and refreshed on that thread afterwards, so that PKIX
+ * validation with forced revocation checking only consults the CRLs held in memory.
+ * <p>
+ * Validation waits up to {@code initialFetchTimeout} for the first fetch of the CRLs it needs, so that the metadata
+ * loaded on startup isn't rejected for lack of a CRL that is on its way. If the CRL arrives later, the listeners are
+ * notified, see {@link RevocationCachingMetadataManager}, which refreshes the metadata then.
+ * </p>
+ * <p>
+ * Up to {@code maxEntries} distribution points are watched, further ones are ignored. When the first fetch of a CRL
+ * fails, it is retried with exponential backoff, from one second up to the refresh interval, instead of waiting for
+ * the next refresh.
+ * </p>
+ * <p>
+ * A CRL becomes stale once past its {@code nextUpdate}, for instance because refreshing it keeps failing. What happens
+ * then is decided by the {@link StalePolicy}: either it keeps being used for up to {@code maxStaleness}, or it is
+ * dropped right away, in which case validation of certificates it covers fails until it is fetched again. Only
+ * {@code http} and {@code https} distribution points are supported.
+ * </p>
+ * <p>
+ * Listeners registered through {@link #addListener(Runnable)} are notified on the fetching thread every time a new or
+ * different CRL is stored, so that trust decisions taken before it, e.g. the ones of a {@link SignatureTrustCache},
+ * can be discarded.
+ * </p>
+ *
+ * @author Ulises Bocchio
+ */
+public class CRLCache implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(CRLCache.class);
+    private static final String CRL_DISTRIBUTION_POINTS_OID = "2.5.29.31";
+    private static final long INITIAL_RETRY_DELAY = 1000;
+
+    /**
+     * What to do with a CRL once past its {@code nextUpdate}.
+     */
+    public enum StalePolicy {
+        /**
+         * Keep using the last fetched CRL for up to {@code maxStaleness} past its {@code nextUpdate}.
+         */
+        KEEP,
+        /**
+         * Stop using the CRL as soon as it's past its {@code nextUpdate}.
+         */
+        DROP
+    }
+
+    /**
+     * Fetches the CRL published at a distribution point.
+     */
+    public interface Fetcher {
+        X509CRL fetch(String url) throws Exception;
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final long refreshInterval;
+    private final StalePolicy stalePolicy;
+    private final long maxStaleness;
+    private final int maxEntries;
+    private final long initialFetchTimeout;
+    private final Fetcher fetcher;
+    private final LongSupplier clock;
+    private final ScheduledExecutorService executor;
+    private final LongAdder fetches = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param refreshInterval interval in milliseconds between background refreshes of all the known CRLs.
+     * @param timeout         connect and read timeout in milliseconds when fetching a CRL.
+     * @param stalePolicy     what to do with a CRL past its {@code nextUpdate}.
+     * @param maxStaleness    how long in milliseconds past its {@code nextUpdate} a CRL is kept with
+     *                        {@link StalePolicy#KEEP}.
+     * @param maxEntries      maximum number of distribution points watched.
+     * @param initialFetchTimeout how long in milliseconds validation waits for the first fetch of the CRLs it needs.
+     */
+    public CRLCache(long refreshInterval, int timeout, StalePolicy stalePolicy, long maxStaleness, int maxEntries,
+                    long initialFetchTimeout) {
+        this(refreshInterval, stalePolicy, maxStaleness, maxEntries, initialFetchTimeout, url -> fetch(url, timeout),
+                System::currentTimeMillis, BoundedExecutors.newBackgroundExecutor("saml-crl-cache"));
+    }
+
+    /**
+     * @param executor single threaded executor all the fetches run on, owned by this cache.
+     */
+    CRLCache(long refreshInterval, StalePolicy stalePolicy, long maxStaleness, int maxEntries, long initialFetchTimeout,
+             Fetcher fetcher, LongSupplier clock, ScheduledExecutorService executor) {
+        Assert.isTrue(refreshInterval > 0, "'refreshInterval' must be greater than 0.");
+        Assert.notNull(stalePolicy, "'stalePolicy' cannot be null.");
+        Assert.isTrue(maxEntries > 0, "'maxEntries' must be greater than 0.");
+        this.refreshInterval = refreshInterval;
+        this.stalePolicy = stalePolicy;
+        this.maxStaleness = maxStaleness;
+        this.maxEntries = maxEntries;
+        this.initialFetchTimeout = initialFetchTimeout;
+        this.fetcher = fetcher;
+        this.clock = clock;
+        this.executor = executor;
+        executor.scheduleWithFixedDelay(this::refresh, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Registers the distribution points of the given trusted certificates. The CRLs of the ones not seen before are
+     * fetched in the background, right away. Once {@code maxEntries} distribution points are watched, new ones are
+     * ignored.
+     *
+     * @param certificates the trusted certificates.
+     */
+    public void watch(Collection<X509Certificate> certificates) {
+        register(certificates);
+    }
+
+    /**
+     * Registers the distribution points of the given trusted certificates, and waits up to
+     * {@code initialFetchTimeout} for the first fetch of the ones not fetched yet.
+     *
+     * @param certificates the trusted certificates.
+     */
+    void watchAndAwait(Collection<X509Certificate> certificates) {
+        Set<String> urls = register(certificates);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(initialFetchTimeout);
+        for (String url : urls) {
+            Entry entry = entries.get(url);
+            if (entry == null || entry.firstAttempt.getCount() == 0) {
+                continue;
+            }
+            try {
+                if (!entry.firstAttempt.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    logger.warn("CRL from {} not fetched within {} ms, validating without it", url, initialFetchTimeout);
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Watches, and waits for, the distribution points of the given certificates, typically carried by a signature,
+     * that are issued by one of the given trust anchors, directly or through other certificates among the given ones.
+     *
+     * @param anchors      the trust anchors.
+     * @param certificates the untrusted certificates.
+     */
+    void watchChained(Collection<X509Certificate> anchors, Collection<X509Certificate> certificates) {
+        List<X509Certificate> chained = chained(anchors, certificates);
+        if (!chained.isEmpty()) {
+            watchAndAwait(chained);
+        }
+    }
+
+    /**
+     * @return the distribution points of the given certificates that are being watched.
+     */
+    private Set<String> register(Collection<X509Certificate> certificates) {
+        Set<String> watched = new LinkedHashSet<>();
+        for (X509Certificate certificate : certificates) {
+            for (String url : distributionPoints(certificate)) {
+                if (entries.containsKey(url)) {
+                    watched.add(url);
+                    continue;
+                }
+                if (entries.size() >= maxEntries) {
+                    logger.warn("Already watching {} CRL Distribution Points, ignoring {}", maxEntries, url);
+                    continue;
+                }
+                Entry entry = new Entry();
+                watched.add(url);
+                if (entries.putIfAbsent(url, entry) == null) {
+                    execute(() -> update(url, entry));
+                }
+            }
+        }
+        return watched;
+    }
+
+    /**
+     * The CRLs usable right now according to the {@link StalePolicy}.
+     *
+     * @return the usable CRLs.
+     */
+    public Collection<X509CRL> getCRLs() {
+        long now = clock.getAsLong();
+        List<X509CRL> crls = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            X509CRL crl = entry.crl;
+            if (crl != null && isUsable(crl, now)) {
+                crls.add(crl);
+            }
+        }
+        return crls;
+    }
+
+    /**
+     * Registers a callback run every time a new or different CRL is stored.
+     *
+     * @param listener the callback.
+     */
+    public void addListener(Runnable listener) {
+        Assert.notNull(listener, "'listener' cannot be null.");
+        listeners.add(listener);
+    }
+
+    /**
+     * Wraps a PKIX validation information resolver so that the resolved information carries the usable CRLs, and the
+     * distribution points of its trust anchors are watched.
+     *
+     * @param resolver the resolver to wrap.
+     * @return the wrapping resolver.
+     */
+    public PKIXValidationInformationResolver wrap(PKIXValidationInformationResolver resolver) {
+        return new CRLResolver(resolver);
+    }
+
+    /**
+     * Wraps a PKIX signature trust engine so that the distribution points of the signature certificates issued by its
+     * trust anchors are watched before validating. The PKIX resolver of the trust engine is expected to be wrapped
+     * through {@link #wrap(PKIXValidationInformationResolver)}.
+     *
+     * @param trustEngine the trust engine to wrap.
+     * @return the wrapping trust engine.
+     */
+    public SignatureTrustEngine wrap(PKIXSignatureTrustEngine trustEngine) {
+        return new CRLWatchingSignatureTrustEngine(trustEngine, this);
+    }
+
+    /**
+     * Number of CRL fetch attempts.
+     *
+     * @return the fetch count.
+     */
+    public long getFetchCount() {
+        return fetches.sum();
+    }
+
+    /**
+     * Number of failed CRL fetch attempts.
+     *
+     * @return the failure count.
+     */
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    /**
+     * Number of known distribution points.
+     *
+     * @return the cache size.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    void refresh() {
+        entries.forEach((url, entry) -> {
+            if (!entry.retryScheduled) {
+                update(url, entry);
+            }
+        });
+    }
+
+    /**
+     * Fetches the CRL of the given entry. Only ever runs on the executor thread, or on the calling thread of
+     * {@link #refresh()} in tests, so entries are never updated concurrently.
+     */
+    private void update(String url, Entry entry) {
+        fetches.increment();
+        X509CRL crl;
+        try {
+            crl = fetcher.fetch(url);
+        } catch (Exception e) {
+            entry.firstAttempt.countDown();
+            failures.increment();
+            entry.failedAttempts++;
+            if (entry.crl == null) {
+                long delay = retryDelay(entry.failedAttempts);
+                logger.warn("Unable to fetch CRL from {}, retrying in {} ms", url, delay, e);
+                entry.retryScheduled = true;
+                schedule(() -> {
+                    entry.retryScheduled = false;
+                    update(url, entry);
+                }, delay);
+            } else {
+                logger.warn("Unable to fetch CRL from {}, keeping the previous one", url, e);
+            }
+            return;
+        }
+        X509CRL previous = entry.crl;
+        entry.crl = crl;
+        entry.failedAttempts = 0;
+        // released before the listeners run, they may wait on validation threads waiting for this CRL
+        entry.firstAttempt.countDown();
+        if (crl != null && !crl.equals(previous)) {
+            notifyListeners(url);
+        }
+    }
+
+    private void notifyListeners(String url) {
+        for (Runnable listener : listeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                logger.warn("CRL listener failed after fetching {}", url, e);
+            }
+        }
+    }
+
+    /**
+     * Doubles from {@link #INITIAL_RETRY_DELAY} with every failed attempt, up to the refresh interval.
+     */
+    long retryDelay(int failedAttempts) {
+        int doublings = Math.min(failedAttempts - 1, 30);
+        return Math.min(INITIAL_RETRY_DELAY << doublings, Math.max(refreshInterval, INITIAL_RETRY_DELAY));
+    }
+
+    private void execute(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            logger.debug("CRL cache destroyed, not fetching", e);
+        }
+    }
+
+    private void schedule(Runnable task, long delay) {
+        try {
+            executor.schedule(task, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            logger.debug("CRL cache destroyed, not retrying", e);
+        }
+    }
+
+    private boolean isUsable(X509CRL crl, long now) {
+        if (crl.getNextUpdate() == null) {
+            return true;
+        }
+        long nextUpdate = crl.getNextUpdate().getTime();
+        return now <= nextUpdate || (stalePolicy == StalePolicy.KEEP && now <= nextUpdate + maxStaleness);
+    }
+
+    private static X509CRL fetch(String url, int timeout) throws Exception {
+        URLConnection connection = new URL(url).openConnection();
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+        try (InputStream in = connection.getInputStream()) {
+            return (X509CRL) CertificateFactory.getInstance("X.509").generateCRL(in);
+        }
+    }
+
+    /**
+     * HTTP(S) URIs of the CRL Distribution Points extension, i.e. the {@code uniformResourceIdentifier} general
+     * names found in it.
+     */
+    static Set<String> distributionPoints(X509Certificate certificate) {
+        byte[] extension = certificate.getExtensionValue(CRL_DISTRIBUTION_POINTS_OID);
+        if (extension == null) {
+            return Collections.emptySet();
+        }
+        Set<String> urls = new LinkedHashSet<>();
+        try {
+            // the extension value is an OCTET STRING wrapping the DER encoded CRLDistributionPoints
+            int[] header = header(extension, 0);
+            collectURIs(extension, header[0], header[0] + header[1], urls);
+        } catch (RuntimeException e) {
+            logger.warn("Unable to parse CRL Distribution Points of {}", certificate.getSubjectX500Principal(), e);
+        }
+        urls.removeIf(url -> !url.startsWith("http://") && !url.startsWith("https://"));
+        return urls;
+    }
+
+    /**
+     * The given certificates issued by one of the anchors, directly or through other certificates among the given ones.
+     * Only issuer names and signatures are checked, validity and revocation are left to the PKIX validation.
+     */
+    static List<X509Certificate> chained(Collection<X509Certificate> anchors, Collection<X509Certificate> certificates) {
+        List<X509Certificate> trusted = new ArrayList<>(anchors);
+        List<X509Certificate> pending = new ArrayList<>(certificates);
+        pending.removeAll(trusted);
+        List<X509Certificate> chained = new ArrayList<>();
+        boolean found = true;
+        while (found) {
+            found = false;
+            for (Iterator<X509Certificate> iterator = pending.iterator(); iterator.hasNext(); ) {
+                X509Certificate certificate = iterator.next();
+                if (trusted.stream().anyMatch(issuer -> isIssuedBy(certificate, issuer))) {
+                    iterator.remove();
+                    trusted.add(certificate);
+                    chained.add(certificate);
+                    found = true;
+                }
+            }
+        }
+        return chained;
+    }
+
+    private static boolean isIssuedBy(X509Certificate certificate, X509Certificate issuer) {
+        if (!certificate.getIssuerX500Principal().equals(issuer.getSubjectX500Principal())) {
+            return false;
+        }
+        try {
+            certificate.verify(issuer.getPublicKey());
+            return true;
+        } catch (GeneralSecurityException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static void collectURIs(byte[] der, int offset, int end, Set<String> urls) {
+        while (offset < end) {
+            int tag = der[offset] & 0xff;
+            int[] header = header(der, offset);
+            int contentStart = header[0];
+            int contentEnd = contentStart + header[1];
+            if (tag == 0x86) {
+                urls.add(new String(der, contentStart, header[1], StandardCharsets.US_ASCII));
+            } else if ((tag & 0x20) != 0) {
+                collectURIs(der, contentStart, contentEnd, urls);
+            }
+            offset = contentEnd;
+        }
+    }
+
+    /**
+     * @return start offset and length of the content of the DER element at the given offset.
+     */
+    private static int[] header(byte[] der, int offset) {
+        int length = der[offset + 1] & 0xff;
+        int contentStart = offset + 2;
+        if (length > 0x7f) {
+            int bytes = length & 0x7f;
+            length = 0;
+            for (int i = 0; i < bytes; i++) {
+                length = (length << 8) | (der[contentStart + i] & 0xff);
+            }
+            contentStart += bytes;
+        }
+        if (length < 0 || contentStart + length > der.length) {
+            throw new IllegalArgumentException("Malformed DER element at " + offset);
+        }
+        return new int[]{contentStart, length};
+    }
+
+    private static final class Entry {
+        private final CountDownLatch firstAttempt = new CountDownLatch(1);
+        private volatile X509CRL crl;
+        private volatile boolean retryScheduled;
+        private int failedAttempts;
+    }
+
+    private final class CRLResolver implements PKIXValidationInformationResolver {
+        private final PKIXValidationInformationResolver delegate;
+
+        CRLResolver(PKIXValidationInformationResolver delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Iterable<PKIXValidationInformation> resolve(CriteriaSet criteria) throws SecurityException {
+            List<PKIXValidationInformation> resolved = new ArrayList<>();
+            for (PKIXValidationInformation information : delegate.resolve(criteria)) {
+                resolved.add(withCRLs(information));
+            }
+            return resolved;
+        }
+
+        @Override
+        public PKIXValidationInformation resolveSingle(CriteriaSet criteria) throws SecurityException {
+            PKIXValidationInformation information = delegate.resolveSingle(criteria);
+            return information != null ? withCRLs(information) : null;
+        }
+
+        @Override
+        public Set<String> resolveTrustedNames(CriteriaSet criteria) throws SecurityException {
+            return delegate.resolveTrustedNames(criteria);
+        }
+
+        @Override
+        public boolean supportsTrustedNameResolution() {
+            return delegate.supportsTrustedNameResolution();
+        }
+
+        private PKIXValidationInformation withCRLs(PKIXValidationInformation information) {
+            if (information.getCertificates() != null) {
+                watchAndAwait(information.getCertificates());
+            }
+            List<X509CRL> crls = new ArrayList<>(getCRLs());
+            if (information.getCRLs() != null) {
+                crls.addAll(information.getCRLs());
+            }
+            return new BasicPKIXValidationInformation(information.getCertificates(), crls, information.getVerificationDepth());
+        }
+    }
+}
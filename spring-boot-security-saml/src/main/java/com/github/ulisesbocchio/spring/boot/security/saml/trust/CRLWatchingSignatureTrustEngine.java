@@ -0,0 +1,80 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.trust;
+
+import org.opensaml.xml.security.CriteriaSet;
+import org.opensaml.xml.security.SecurityException;
+import org.opensaml.xml.security.credential.Credential;
+import org.opensaml.xml.security.keyinfo.KeyInfoCredentialResolver;
+import org.opensaml.xml.security.keyinfo.KeyInfoHelper;
+import org.opensaml.xml.security.x509.PKIXValidationInformation;
+import org.opensaml.xml.security.x509.X509Credential;
+import org.opensaml.xml.signature.Signature;
+import org.opensaml.xml.signature.SignatureTrustEngine;
+import org.opensaml.xml.signature.impl.PKIXSignatureTrustEngine;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link SignatureTrustEngine} that, before delegating to a {@link PKIXSignatureTrustEngine}, has a {@link CRLCache}
+ * watch the CRL Distribution Points of the certificates carried by the signature that chain to one of the trust
+ * anchors of the delegate, so that the CRLs needed to check them for revocation are held in memory by the time the
+ * delegate validates the certificate path.
+ *
+ * @author Ulises Bocchio
+ */
+class CRLWatchingSignatureTrustEngine implements SignatureTrustEngine {
+
+    private final PKIXSignatureTrustEngine delegate;
+    private final CRLCache cache;
+
+    CRLWatchingSignatureTrustEngine(PKIXSignatureTrustEngine delegate, CRLCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public KeyInfoCredentialResolver getKeyInfoResolver() {
+        return delegate.getKeyInfoResolver();
+    }
+
+    @Override
+    public boolean validate(Signature signature, CriteriaSet criteria) throws SecurityException {
+        if (signature.getKeyInfo() != null) {
+            try {
+                watchChained(KeyInfoHelper.getCertificates(signature.getKeyInfo()), criteria);
+            } catch (CertificateException e) {
+                // left to the delegate to reject
+            }
+        }
+        return delegate.validate(signature, criteria);
+    }
+
+    @Override
+    public boolean validate(byte[] signature, byte[] content, String algorithmURI, CriteriaSet criteria,
+                            Credential candidateCredential) throws SecurityException {
+        if (candidateCredential instanceof X509Credential) {
+            X509Credential credential = (X509Credential) candidateCredential;
+            watchChained(credential.getEntityCertificateChain() != null
+                    ? credential.getEntityCertificateChain()
+                    : Collections.singletonList(credential.getEntityCertificate()), criteria);
+        }
+        return delegate.validate(signature, content, algorithmURI, criteria, candidateCredential);
+    }
+
+    private void watchChained(Collection<X509Certificate> certificates, CriteriaSet criteria) throws SecurityException {
+        if (certificates.isEmpty() || certificates.contains(null)) {
+            return;
+        }
+        List<X509Certificate> anchors = new ArrayList<>();
+        for (PKIXValidationInformation information : delegate.getPKIXResolver().resolve(criteria)) {
+            if (information.getCertificates() != null) {
+                anchors.addAll(information.getCertificates());
+            }
+        }
+        cache.watchChained(anchors, certificates);
+    }
+}
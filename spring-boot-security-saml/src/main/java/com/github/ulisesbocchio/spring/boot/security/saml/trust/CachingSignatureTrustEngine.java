@@ -0,0 +1,169 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.trust;
+
+import org.opensaml.security.MetadataCriteria;
+import org.opensaml.xml.security.CriteriaSet;
+import org.opensaml.xml.security.SecurityException;
+import org.opensaml.xml.security.SigningUtil;
+import org.opensaml.xml.security.credential.Credential;
+import org.opensaml.xml.security.criteria.EntityIDCriteria;
+import org.opensaml.xml.security.criteria.UsageCriteria;
+import org.opensaml.xml.security.keyinfo.KeyInfoCredentialResolver;
+import org.opensaml.xml.security.keyinfo.KeyInfoCriteria;
+import org.opensaml.xml.security.x509.X509Credential;
+import org.opensaml.xml.signature.KeyInfo;
+import org.opensaml.xml.signature.Signature;
+import org.opensaml.xml.signature.SignatureTrustEngine;
+import org.opensaml.xml.signature.SignatureValidator;
+import org.opensaml.xml.signature.X509Certificate;
+import org.opensaml.xml.signature.X509Data;
+import org.opensaml.xml.validation.ValidationException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * {@link SignatureTrustEngine} that consults a {@link SignatureTrustCache} before delegating to the actual trust
+ * engine. A certificate is only cached once the delegate trusted it and the candidate credential found in the signature
+ * is known to verify it, so the cached entry is about the certificate and not about a particular signature. Untrusted
+ * certificates always go to the delegate, as do signatures without an X.509 certificate or validated without an entity
+ * ID.
+ *
+ * @author Ulises Bocchio
+ */
+class CachingSignatureTrustEngine implements SignatureTrustEngine {
+
+    private final SignatureTrustEngine delegate;
+    private final SignatureTrustCache cache;
+
+    CachingSignatureTrustEngine(SignatureTrustEngine delegate, SignatureTrustCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public KeyInfoCredentialResolver getKeyInfoResolver() {
+        return delegate.getKeyInfoResolver();
+    }
+
+    @Override
+    public boolean validate(Signature signature, CriteriaSet criteria) throws SecurityException {
+        List<Object> key = key(criteria, fingerprint(signature.getKeyInfo()));
+        if (key == null) {
+            return delegate.validate(signature, criteria);
+        }
+        Credential cached = cache.get(key);
+        if (cached != null && verify(signature, cached)) {
+            return true;
+        }
+        boolean trusted = delegate.validate(signature, criteria);
+        if (trusted) {
+            Credential candidate = resolve(signature.getKeyInfo());
+            if (candidate != null && verify(signature, candidate)) {
+                cache.put(key, candidate);
+            }
+        }
+        return trusted;
+    }
+
+    @Override
+    public boolean validate(byte[] signature, byte[] content, String algorithmURI, CriteriaSet criteria,
+                            Credential candidateCredential) throws SecurityException {
+        List<Object> key = key(criteria, fingerprint(candidateCredential));
+        if (key == null) {
+            return delegate.validate(signature, content, algorithmURI, criteria, candidateCredential);
+        }
+        if (cache.get(key) != null
+                && SigningUtil.verifyWithURI(candidateCredential, algorithmURI, signature, content)) {
+            return true;
+        }
+        boolean trusted = delegate.validate(signature, content, algorithmURI, criteria, candidateCredential);
+        if (trusted && SigningUtil.verifyWithURI(candidateCredential, algorithmURI, signature, content)) {
+            cache.put(key, candidateCredential);
+        }
+        return trusted;
+    }
+
+    private static List<Object> key(CriteriaSet criteria, String fingerprint) {
+        EntityIDCriteria entityId = criteria != null ? criteria.get(EntityIDCriteria.class) : null;
+        if (fingerprint == null || entityId == null || entityId.getEntityID() == null) {
+            return null;
+        }
+        MetadataCriteria metadata = criteria.get(MetadataCriteria.class);
+        UsageCriteria usage = criteria.get(UsageCriteria.class);
+        return Arrays.asList(entityId.getEntityID(),
+                metadata != null ? metadata.getRole() : null,
+                metadata != null ? metadata.getProtocol() : null,
+                usage != null ? usage.getUsage() : null,
+                fingerprint);
+    }
+
+    /**
+     * Fingerprint of all the certificates in the KeyInfo, computed over their encoded form, without parsing them.
+     */
+    private static String fingerprint(KeyInfo keyInfo) {
+        if (keyInfo == null) {
+            return null;
+        }
+        MessageDigest digest = sha256();
+        boolean found = false;
+        for (X509Data data : keyInfo.getX509Datas()) {
+            for (X509Certificate certificate : data.getX509Certificates()) {
+                if (certificate.getValue() != null) {
+                    digest.update(certificate.getValue().replaceAll("\\s", "").getBytes(StandardCharsets.US_ASCII));
+                    digest.update((byte) 0);
+                    found = true;
+                }
+            }
+        }
+        return found ? Base64.getEncoder().encodeToString(digest.digest()) : null;
+    }
+
+    private static String fingerprint(Credential credential) {
+        if (!(credential instanceof X509Credential) || ((X509Credential) credential).getEntityCertificate() == null) {
+            return null;
+        }
+        try {
+            byte[] encoded = ((X509Credential) credential).getEntityCertificate().getEncoded();
+            return Base64.getEncoder().encodeToString(sha256().digest(encoded));
+        } catch (CertificateEncodingException e) {
+            return null;
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not supported", e);
+        }
+    }
+
+    private Credential resolve(KeyInfo keyInfo) throws SecurityException {
+        KeyInfoCredentialResolver resolver = delegate.getKeyInfoResolver();
+        if (resolver == null) {
+            return null;
+        }
+        Credential first = null;
+        for (Credential credential : resolver.resolve(new CriteriaSet(new KeyInfoCriteria(keyInfo)))) {
+            if (credential instanceof X509Credential && ((X509Credential) credential).getEntityCertificate() != null) {
+                return credential;
+            }
+            first = first != null ? first : credential;
+        }
+        return first;
+    }
+
+    private static boolean verify(Signature signature, Credential credential) {
+        try {
+            new SignatureValidator(credential).validate(signature);
+            return true;
+        } catch (ValidationException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.trust;
+
+import org.opensaml.saml2.metadata.provider.MetadataProvider;
+import org.opensaml.saml2.metadata.provider.MetadataProviderException;
+import org.opensaml.xml.security.x509.PKIXValidationInformationResolver;
+import org.opensaml.xml.signature.SignatureTrustEngine;
+import org.opensaml.xml.signature.impl.PKIXSignatureTrustEngine;
+import org.springframework.security.saml.metadata.CachingMetadataManager;
+import org.springframework.util.Assert;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@link CachingMetadataManager} that validates metadata signatures against the CRLs held by a {@link CRLCache}, so
+ * that revocation checking, forced through {@code forceMetadataRevocationCheck} or not, never fetches CRLs while
+ * validating. The CRLs of the trust anchors and of the signature certificates issued by them are watched, and the
+ * metadata is marked for refresh every time a new CRL is fetched, so that metadata rejected for lack of a CRL, or
+ * signed with a certificate revoked since, is validated again against it on the next refresh check.
+ *
+ * @author Ulises Bocchio
+ */
+public class RevocationCachingMetadataManager extends CachingMetadataManager {
+
+    private final CRLCache crlCache;
+
+    public RevocationCachingMetadataManager(List<MetadataProvider> providers, CRLCache crlCache) throws MetadataProviderException {
+        super(providers);
+        Assert.notNull(crlCache, "'crlCache' cannot be null.");
+        this.crlCache = crlCache;
+        crlCache.addListener(() -> setRefreshRequired(true));
+    }
+
+    @Override
+    protected SignatureTrustEngine getTrustEngine(MetadataProvider provider) {
+        SignatureTrustEngine trustEngine = super.getTrustEngine(provider);
+        return trustEngine instanceof PKIXSignatureTrustEngine
+                ? crlCache.wrap((PKIXSignatureTrustEngine) trustEngine)
+                : trustEngine;
+    }
+
+    @Override
+    protected PKIXValidationInformationResolver getPKIXResolver(MetadataProvider provider, Set<String> trustedKeys, Set<String> trustedNames) {
+        return crlCache.wrap(super.getPKIXResolver(provider, trustedKeys, trustedNames));
+    }
+
+    public CRLCache getCrlCache() {
+        return crlCache;
+    }
+}
@@ -0,0 +1,165 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.trust;
+
+import org.opensaml.saml2.metadata.provider.MetadataProvider;
+import org.opensaml.saml2.metadata.provider.ObservableMetadataProvider;
+import org.opensaml.xml.security.credential.Credential;
+import org.opensaml.xml.signature.SignatureTrustEngine;
+import org.springframework.util.Assert;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded, TTL evicting, in-memory cache of the certificates of peer entities trusted by a
+ * {@link SignatureTrustEngine}, along with the {@link Credential} resolved from them, keyed by entity ID, metadata
+ * role, usage and certificate fingerprint. With it, only the first signature of each IDP certificate goes through
+ * metadata credential resolution and, with the PKIX security profile, certificate path building. Later signatures with
+ * the same certificate are only cryptographically verified. Untrusted certificates are never cached, so a transient
+ * failure, e.g. metadata not loaded yet, doesn't keep rejecting an IDP until the entry expires.
+ * <p>
+ * Registered as {@link ObservableMetadataProvider.Observer}, the cache is cleared every time the metadata is
+ * refreshed, and, when a {@link CRLCache} is in use, every time it fetches a new CRL, so that a revoked certificate
+ * isn't trusted from a decision taken before. When full, the least recently used certificate is evicted.
+ * </p>
+ *
+ * @author Ulises Bocchio
+ */
+public class SignatureTrustCache implements ObservableMetadataProvider.Observer {
+
+    private final Map<List<Object>, Entry> entries;
+    private final long maxAge;
+    private final LongSupplier clock;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxEntries maximum number of cached decisions.
+     * @param maxAge     maximum age in milliseconds of a cached decision.
+     */
+    public SignatureTrustCache(int maxEntries, long maxAge) {
+        this(maxEntries, maxAge, System::currentTimeMillis);
+    }
+
+    SignatureTrustCache(int maxEntries, long maxAge, LongSupplier clock) {
+        Assert.isTrue(maxEntries > 0, "'maxEntries' must be greater than 0.");
+        Assert.isTrue(maxAge > 0, "'maxAge' must be greater than 0.");
+        this.maxAge = maxAge;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<List<Object>, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Wraps the given trust engine so that its decisions go through this cache.
+     *
+     * @param trustEngine the trust engine to wrap.
+     * @return the caching trust engine, or the given one if null or already caching.
+     */
+    public SignatureTrustEngine wrap(SignatureTrustEngine trustEngine) {
+        if (trustEngine == null || trustEngine instanceof CachingSignatureTrustEngine) {
+            return trustEngine;
+        }
+        return new CachingSignatureTrustEngine(trustEngine, this);
+    }
+
+    /**
+     * Looks up the credential of a trusted certificate, counting a hit or a miss.
+     */
+    Credential get(List<Object> key) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && entry.expiresAt <= clock.getAsLong()) {
+                entries.remove(key);
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.credential;
+    }
+
+    /**
+     * Caches the credential of a certificate the trust engine trusted.
+     */
+    void put(List<Object> key, Credential credential) {
+        Entry entry = new Entry(credential, clock.getAsLong() + maxAge);
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    @Override
+    public void onEvent(MetadataProvider provider) {
+        clear();
+    }
+
+    /**
+     * Number of signatures validated from a cached decision.
+     *
+     * @return the hit count.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Number of signatures that went through the wrapped trust engine.
+     *
+     * @return the miss count.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Ratio of hits over lookups, 0 when there were no lookups.
+     *
+     * @return the hit rate.
+     */
+    public double getHitRate() {
+        long hitCount = getHitCount();
+        long total = hitCount + getMissCount();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * Current number of cached decisions, including expired ones not yet purged.
+     *
+     * @return the cache size.
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Discards all the cached decisions.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    private static final class Entry {
+        private final Credential credential;
+        private final long expiresAt;
+
+        Entry(Credential credential, long expiresAt) {
+            this.credential = credential;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.user;
+
+import lombok.SneakyThrows;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.saml.SAMLCredential;
+import org.springframework.security.saml.userdetails.SAMLUserDetailsService;
+import org.springframework.util.Assert;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * {@link SAMLUserDetailsService} decorator that caches the loaded user details for a limited time. Entries are keyed by
+ * IDP entity ID, NameID and a digest of the user attributes, so a user whose attributes changed at the IDP is loaded
+ * again. Concurrent logins of the same user wait for a single load of the delegate. Failed loads are not cached.
+ * <p>
+ * {@link SAMLUserDetails} hold the {@link SAMLCredential} of a single login, i.e. its Assertion, session index and
+ * relay state, so only their authorities and attribute values are cached, and every login gets its own
+ * {@link SAMLUserDetails} built with its own credential. Any other object is shared by all the logins of the user
+ * within the time to live, so the delegate should not return objects that depend on data of a single login other than
+ * the key, like the credential itself.
+ * </p>
+ *
+ * @author Ulises Bocchio
+ */
+public class CachingSAMLUserDetailsService implements SAMLUserDetailsService {
+
+    private final SAMLUserDetailsService delegate;
+    private final long timeToLive;
+    private final int maxSize;
+    private final LongSupplier clock;
+    private final ConcurrentHashMap<CacheKey, CacheEntry> entries = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param delegate   the user details service to cache.
+     * @param timeToLive time to live of the entries in milliseconds.
+     * @param maxSize    maximum number of cached users.
+     */
+    public CachingSAMLUserDetailsService(SAMLUserDetailsService delegate, long timeToLive, int maxSize) {
+        this(delegate, timeToLive, maxSize, System::currentTimeMillis);
+    }
+
+    CachingSAMLUserDetailsService(SAMLUserDetailsService delegate, long timeToLive, int maxSize, LongSupplier clock) {
+        Assert.notNull(delegate, "'delegate' cannot be null.");
+        Assert.isTrue(timeToLive > 0, "'timeToLive' must be greater than 0.");
+        Assert.isTrue(maxSize > 0, "'maxSize' must be greater than 0.");
+        this.delegate = delegate;
+        this.timeToLive = timeToLive;
+        this.maxSize = maxSize;
+        this.clock = clock;
+    }
+
+    @Override
+    public Object loadUserBySAML(SAMLCredential credential) throws UsernameNotFoundException {
+        CacheKey key = CacheKey.of(credential);
+        long now = clock.getAsLong();
+        CacheEntry[] created = new CacheEntry[1];
+        CacheEntry entry = entries.compute(key, (k, current) -> {
+            if (current != null && current.expiresAt > now) {
+                return current;
+            }
+            created[0] = new CacheEntry(now + timeToLive);
+            return created[0];
+        });
+        if (entry != created[0]) {
+            hits.increment();
+            return attach(await(entry), credential);
+        }
+        misses.increment();
+        if (entries.size() > maxSize) {
+            makeRoom(now, key);
+        }
+        try {
+            Object user = delegate.loadUserBySAML(credential);
+            entry.value.complete(detach(user));
+            return user;
+        } catch (RuntimeException | Error e) {
+            entries.remove(key, entry);
+            entry.value.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Number of logins served from the cache, including the ones that waited for a concurrent load.
+     *
+     * @return the hit count.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Number of logins that loaded the user from the delegate.
+     *
+     * @return the miss count.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Number of entries evicted before their expiration because the cache was full.
+     *
+     * @return the eviction count.
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Ratio of logins served from the cache, 0 if there were no logins yet.
+     *
+     * @return the hit ratio.
+     */
+    public double getHitRatio() {
+        long hitCount = getHitCount();
+        long total = hitCount + getMissCount();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * Current number of entries, including expired ones not yet purged.
+     *
+     * @return the cache size.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes all the cached users.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    public SAMLUserDetailsService getDelegate() {
+        return delegate;
+    }
+
+    private synchronized void makeRoom(long now, CacheKey keep) {
+        entries.entrySet().removeIf(entry -> entry.getValue().expiresAt <= now);
+        while (entries.size() > maxSize) {
+            Map.Entry<CacheKey, CacheEntry> oldest = null;
+            for (Map.Entry<CacheKey, CacheEntry> entry : entries.entrySet()) {
+                if (!entry.getKey().equals(keep) && (oldest == null || entry.getValue().expiresAt < oldest.getValue().expiresAt)) {
+                    oldest = entry;
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            if (entries.remove(oldest.getKey(), oldest.getValue())) {
+                evictions.increment();
+            }
+        }
+    }
+
+    private static Object detach(Object user) {
+        if (user != null && user.getClass() == SAMLUserDetails.class) {
+            SAMLUserDetails details = (SAMLUserDetails) user;
+            return new CachedUserDetails(details.getAuthorities(), details.getAttributeValues());
+        }
+        return user;
+    }
+
+    private static Object attach(Object user, SAMLCredential credential) {
+        if (user instanceof CachedUserDetails) {
+            CachedUserDetails details = (CachedUserDetails) user;
+            return new SAMLUserDetails(credential, details.authorities, details.attributes);
+        }
+        return user;
+    }
+
+    @SneakyThrows
+    private static Object await(CacheEntry entry) {
+        try {
+            return entry.value.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AuthenticationServiceException("Interrupted while waiting for user details", e);
+        }
+    }
+
+    /**
+     * The login independent data of a {@link SAMLUserDetails}.
+     */
+    private static final class CachedUserDetails {
+        private final Collection<? extends GrantedAuthority> authorities;
+        private final Map<String, List<String>> attributes;
+
+        CachedUserDetails(Collection<? extends GrantedAuthority> authorities, Map<String, List<String>> attributes) {
+            this.authorities = authorities;
+            this.attributes = attributes;
+        }
+    }
+
+    private static final class CacheEntry {
+        private final long expiresAt;
+        private final CompletableFuture<Object> value = new CompletableFuture<>();
+
+        CacheEntry(long expiresAt) {
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class CacheKey {
+        private final String issuer;
+        private final String nameId;
+        private final String nameIdFormat;
+        private final byte[] attributesDigest;
+        private final int hashCode;
+
+        private CacheKey(String issuer, String nameId, String nameIdFormat, byte[] attributesDigest) {
+            this.issuer = issuer;
+            this.nameId = nameId;
+            this.nameIdFormat = nameIdFormat;
+            this.attributesDigest = attributesDigest;
+            this.hashCode = Objects.hash(issuer, nameId, nameIdFormat) * 31 + Arrays.hashCode(attributesDigest);
+        }
+
+        static CacheKey of(SAMLCredential credential) {
+            String nameId = credential.getNameID() != null ? credential.getNameID().getValue() : null;
+            String nameIdFormat = credential.getNameID() != null ? credential.getNameID().getFormat() : null;
+            return new CacheKey(credential.getRemoteEntityID(), nameId, nameIdFormat,
+                    digest(SAMLAttributes.index(credential.getAttributes())));
+        }
+
+        /**
+         * SHA-256 of the attributes sorted by name, with sorted values, so the digest doesn't depend on ordering.
+         */
+        @SneakyThrows
+        private static byte[] digest(Map<String, List<String>> attributes) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Map.Entry<String, List<String>> attribute : new TreeMap<>(attributes).entrySet()) {
+                update(digest, attribute.getKey());
+                List<String> values = new ArrayList<>(attribute.getValue());
+                values.sort(Comparator.nullsFirst(Comparator.naturalOrder()));
+                digest.update(ByteBuffer.allocate(4).putInt(values.size()).array());
+                values.forEach(value -> update(digest, value));
+            }
+            return digest.digest();
+        }
+
+        private static void update(MessageDigest digest, String value) {
+            if (value == null) {
+                digest.update(ByteBuffer.allocate(4).putInt(-1).array());
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+            digest.update(bytes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey that = (CacheKey) o;
+            return Objects.equals(issuer, that.issuer)
+                    && Objects.equals(nameId, that.nameId)
+                    && Objects.equals(nameIdFormat, that.nameIdFormat)
+                    && Arrays.equals(attributesDigest, that.attributesDigest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.user;
+
+import org.opensaml.saml2.core.NameID;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.providers.ExpiringUsernameAuthenticationToken;
+import org.springframework.security.saml.SAMLAuthenticationProvider;
+import org.springframework.security.saml.SAMLCredential;
+
+/**
+ * {@link SAMLAuthenticationProvider} that keeps the resulting Authentication small. After authentication the
+ * {@link SAMLCredential} is reduced to a {@link SAMLPrincipal} and replaced by a {@link CompactSAMLCredential}, so
+ * that Single Logout keeps working. The principal keeps the type the application sees: the default
+ * {@link SAMLUserDetails} is re-bound to the compact credential with the same authorities, and a NameID principal is
+ * replaced by the detached NameID of the compact credential. Principals returned by a custom
+ * {@link org.springframework.security.saml.userdetails.SAMLUserDetailsService} and String principals are kept as is.
+ *
+ * @author Ulises Bocchio
+ */
+public class CompactSAMLAuthenticationProvider extends SAMLAuthenticationProvider {
+
+    private boolean excludeCredential = false;
+
+    public CompactSAMLAuthenticationProvider() {
+        super.setExcludeCredential(false);
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+        Authentication result = super.authenticate(authentication);
+        if (!(result instanceof ExpiringUsernameAuthenticationToken) || !(result.getCredentials() instanceof SAMLCredential)) {
+            return result;
+        }
+        SAMLCredential credential = (SAMLCredential) result.getCredentials();
+        CompactSAMLCredential compactCredential = new CompactSAMLCredential(SAMLPrincipal.from(credential),
+                credential.getRelayState());
+        Object principal = compact(result.getPrincipal(), compactCredential);
+        ExpiringUsernameAuthenticationToken compact = new ExpiringUsernameAuthenticationToken(
+                ((ExpiringUsernameAuthenticationToken) result).getTokenExpiration(),
+                principal,
+                excludeCredential ? null : compactCredential,
+                result.getAuthorities());
+        compact.setDetails(result.getDetails() == result.getPrincipal()
+                ? principal
+                : compact(result.getDetails(), compactCredential));
+        return compact;
+    }
+
+    private Object compact(Object value, CompactSAMLCredential credential) {
+        if (value instanceof NameID) {
+            return credential.getNameID();
+        }
+        if (value != null && value.getClass() == SAMLUserDetails.class) {
+            return ((SAMLUserDetails) value).withCredential(credential);
+        }
+        return value;
+    }
+
+    /**
+     * When true the Authentication doesn't include the {@link CompactSAMLCredential}, which disables Single Logout.
+     *
+     * @param excludeCredential true to exclude the credential.
+     */
+    @Override
+    public void setExcludeCredential(boolean excludeCredential) {
+        this.excludeCredential = excludeCredential;
+    }
+
+    @Override
+    public boolean isExcludeCredential() {
+        return excludeCredential;
+    }
+}
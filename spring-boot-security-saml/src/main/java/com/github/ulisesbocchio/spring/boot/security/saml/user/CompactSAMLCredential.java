@@ -0,0 +1,145 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.user;
+
+import org.opensaml.saml2.core.Assertion;
+import org.opensaml.saml2.core.Attribute;
+import org.opensaml.saml2.core.AttributeValue;
+import org.opensaml.saml2.core.AuthnStatement;
+import org.opensaml.saml2.core.Issuer;
+import org.opensaml.saml2.core.NameID;
+import org.opensaml.saml2.core.impl.AssertionBuilder;
+import org.opensaml.saml2.core.impl.AttributeBuilder;
+import org.opensaml.saml2.core.impl.AuthnStatementBuilder;
+import org.opensaml.saml2.core.impl.IssuerBuilder;
+import org.opensaml.saml2.core.impl.NameIDBuilder;
+import org.opensaml.xml.schema.XSString;
+import org.opensaml.xml.schema.impl.XSStringBuilder;
+import org.springframework.security.saml.SAMLCredential;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link SAMLCredential} backed by a {@link SAMLPrincipal}. The NameID and a minimal Assertion holding only the
+ * Issuer and the session indexes are rebuilt from the principal, which is what Single Logout needs to issue and
+ * validate Logout Requests. Attributes are rebuilt lazily, and String lookups are served from the principal directly.
+ * Serializes as a reference to its principal, so a session holding both only stores the principal once.
+ *
+ * @author Ulises Bocchio
+ * @see CompactSAMLAuthenticationProvider
+ */
+public class CompactSAMLCredential extends SAMLCredential {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient SAMLPrincipal principal;
+    private transient volatile List<Attribute> attributes;
+
+    public CompactSAMLCredential(SAMLPrincipal principal, String relayState) {
+        super(nameID(principal), assertion(principal), principal.getRemoteEntityId(), relayState,
+                Collections.emptyList(), principal.getLocalEntityId(), null);
+        this.principal = principal;
+    }
+
+    public SAMLPrincipal getPrincipal() {
+        return principal;
+    }
+
+    @Override
+    public List<Attribute> getAttributes() {
+        List<Attribute> result = attributes;
+        if (result == null) {
+            result = new ArrayList<>(principal.getAttributes().size());
+            XSStringBuilder valueBuilder = new XSStringBuilder();
+            AttributeBuilder attributeBuilder = new AttributeBuilder();
+            for (String name : principal.getAttributes().keySet()) {
+                Attribute attribute = attributeBuilder.buildObject();
+                attribute.setName(name);
+                for (String value : principal.getAttributes().get(name)) {
+                    XSString attributeValue = valueBuilder.buildObject(AttributeValue.DEFAULT_ELEMENT_NAME, XSString.TYPE_NAME);
+                    attributeValue.setValue(value);
+                    attribute.getAttributeValues().add(attributeValue);
+                }
+                result.add(attribute);
+            }
+            result = Collections.unmodifiableList(result);
+            attributes = result;
+        }
+        return result;
+    }
+
+    @Override
+    public Attribute getAttribute(String name) {
+        if (!principal.getAttributes().containsKey(name)) {
+            return null;
+        }
+        return getAttributes().stream()
+                .filter(attribute -> name.equals(attribute.getName()))
+                .findFirst()
+                .orElse(null);
+    }
+
+    @Override
+    public String getAttributeAsString(String name) {
+        return principal.getAttribute(name);
+    }
+
+    @Override
+    public String[] getAttributeAsStringArray(String name) {
+        return principal.getAttributeArray(name);
+    }
+
+    private static NameID nameID(SAMLPrincipal principal) {
+        NameID nameID = new NameIDBuilder().buildObject();
+        nameID.setValue(principal.getNameId());
+        nameID.setFormat(principal.getNameIdFormat());
+        nameID.setNameQualifier(principal.getNameIdNameQualifier());
+        nameID.setSPNameQualifier(principal.getNameIdSPNameQualifier());
+        return nameID;
+    }
+
+    private static Assertion assertion(SAMLPrincipal principal) {
+        Assertion assertion = new AssertionBuilder().buildObject();
+        Issuer issuer = new IssuerBuilder().buildObject();
+        issuer.setValue(principal.getRemoteEntityId());
+        assertion.setIssuer(issuer);
+        AuthnStatementBuilder statementBuilder = new AuthnStatementBuilder();
+        for (String sessionIndex : principal.getSessionIndexes()) {
+            AuthnStatement statement = statementBuilder.buildObject();
+            statement.setSessionIndex(sessionIndex);
+            assertion.getAuthnStatements().add(statement);
+        }
+        return assertion;
+    }
+
+    private Object writeReplace() {
+        return new SerializedForm(principal, getRelayState());
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("SerializedForm required");
+    }
+
+    /**
+     * Serialization proxy, holds the principal so that it is shared with other references in the same stream.
+     */
+    private static final class SerializedForm implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final SAMLPrincipal principal;
+        private final String relayState;
+
+        SerializedForm(SAMLPrincipal principal, String relayState) {
+            this.principal = principal;
+            this.relayState = relayState;
+        }
+
+        private Object readResolve() {
+            return new CompactSAMLCredential(principal, relayState);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.user;
+
+import org.opensaml.saml2.core.Attribute;
+import org.opensaml.xml.XMLObject;
+import org.opensaml.xml.schema.XSAny;
+import org.opensaml.xml.schema.XSString;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds name indexed String views of SAML {@link Attribute}s.
+ *
+ * @author Ulises Bocchio
+ */
+final class SAMLAttributes {
+
+    private SAMLAttributes() {
+    }
+
+    /**
+     * Indexes the given attributes by name in a single pass. Values of attributes with the same name are merged in
+     * order. Values that are neither {@link XSString} nor {@link XSAny} are kept as null, same as
+     * {@link org.springframework.security.saml.SAMLCredential#getAttributeAsStringArray(String)}.
+     *
+     * @param attributes the attributes to index.
+     * @return an immutable, insertion ordered, map of attribute name to values.
+     */
+    static Map<String, List<String>> index(Collection<Attribute> attributes) {
+        Map<String, List<String>> index = new LinkedHashMap<>();
+        if (attributes == null) {
+            return Collections.emptyMap();
+        }
+        for (Attribute attribute : attributes) {
+            List<String> values = index.computeIfAbsent(attribute.getName(), name -> new ArrayList<>());
+            for (XMLObject value : attribute.getAttributeValues()) {
+                values.add(stringValue(value));
+            }
+        }
+        index.replaceAll((name, values) -> Collections.unmodifiableList(values));
+        return Collections.unmodifiableMap(index);
+    }
+
+    private static String stringValue(XMLObject value) {
+        if (value instanceof XSString) {
+            return ((XSString) value).getValue();
+        } else if (value instanceof XSAny) {
+            return ((XSAny) value).getTextContent();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,166 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.user;
+
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.AuthorityMappingProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.AuthorityMappingRuleProperties;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Maps user attributes to granted authorities based on {@link AuthorityMappingProperties}. Rules are compiled once:
+ * grouped by IDP and attribute name, with {@code equals} rules indexed by value and regular expressions precompiled,
+ * so that mapping a user costs one lookup per configured attribute and value.
+ *
+ * @author Ulises Bocchio
+ */
+public class SAMLAuthorityMapper {
+
+    private final List<GrantedAuthority> defaultAuthorities;
+    private final RuleSet globalRules = new RuleSet();
+    private final Map<String, RuleSet> idpRules = new HashMap<>();
+
+    public SAMLAuthorityMapper(AuthorityMappingProperties properties) {
+        this.defaultAuthorities = Collections.unmodifiableList(toAuthorities(properties.getDefaultAuthorities()));
+        List<AuthorityMappingRuleProperties> rules = properties.getRules() != null ? properties.getRules() : Collections.emptyList();
+        for (int i = 0; i < rules.size(); i++) {
+            compile(rules.get(i), i);
+        }
+    }
+
+    /**
+     * @param idp        the entity ID of the IDP that authenticated the user.
+     * @param attributes the user attributes, by name.
+     * @return the default authorities followed by the authorities of all matching rules, without duplicates.
+     */
+    public Set<GrantedAuthority> map(String idp, Map<String, List<String>> attributes) {
+        Set<GrantedAuthority> authorities = new LinkedHashSet<>(defaultAuthorities);
+        globalRules.apply(attributes, authorities);
+        RuleSet rules = idp != null ? idpRules.get(idp) : null;
+        if (rules != null) {
+            rules.apply(attributes, authorities);
+        }
+        return Collections.unmodifiableSet(authorities);
+    }
+
+    private void compile(AuthorityMappingRuleProperties rule, int index) {
+        String name = "saml.sso.authority-mapping.rules[" + index + "]";
+        Assert.hasText(rule.getAttribute(), name + ".attribute is required.");
+        Assert.notEmpty(rule.getAuthorities(), name + ".authorities is required.");
+        int matchers = (rule.getEquals() != null ? 1 : 0) + (rule.getContains() != null ? 1 : 0) + (rule.getRegex() != null ? 1 : 0);
+        Assert.isTrue(matchers == 1, name + " requires exactly one of equals, contains or regex.");
+        RuleSet ruleSet = StringUtils.hasText(rule.getIdp()) ? idpRules.computeIfAbsent(rule.getIdp(), idp -> new RuleSet()) : globalRules;
+        AttributeRules attributeRules = ruleSet.attributeRules.computeIfAbsent(rule.getAttribute(), attribute -> new AttributeRules());
+        List<GrantedAuthority> authorities = toAuthorities(rule.getAuthorities());
+        if (rule.getEquals() != null) {
+            if (rule.isIgnoreCase()) {
+                attributeRules.equalsIgnoreCase.computeIfAbsent(lowerCase(rule.getEquals()), value -> new ArrayList<>()).addAll(authorities);
+            } else {
+                attributeRules.equals.computeIfAbsent(rule.getEquals(), value -> new ArrayList<>()).addAll(authorities);
+            }
+        } else if (rule.getContains() != null) {
+            attributeRules.contains.add(new ContainsRule(rule.getContains(), rule.isIgnoreCase(), authorities));
+        } else {
+            Pattern pattern = Pattern.compile(rule.getRegex(), rule.isIgnoreCase() ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0);
+            attributeRules.patterns.add(new PatternRule(pattern, authorities));
+        }
+    }
+
+    private static List<GrantedAuthority> toAuthorities(Collection<String> authorities) {
+        List<GrantedAuthority> result = new ArrayList<>();
+        if (authorities != null) {
+            authorities.stream()
+                    .filter(StringUtils::hasText)
+                    .map(String::trim)
+                    .map(SimpleGrantedAuthority::new)
+                    .forEach(result::add);
+        }
+        return result;
+    }
+
+    private static String lowerCase(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    private static final class RuleSet {
+        private final Map<String, AttributeRules> attributeRules = new LinkedHashMap<>();
+
+        void apply(Map<String, List<String>> attributes, Set<GrantedAuthority> authorities) {
+            attributeRules.forEach((name, rules) -> {
+                List<String> values = attributes.get(name);
+                if (values != null) {
+                    for (String value : values) {
+                        if (value != null) {
+                            rules.apply(value, authorities);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private static final class AttributeRules {
+        private final Map<String, List<GrantedAuthority>> equals = new HashMap<>();
+        private final Map<String, List<GrantedAuthority>> equalsIgnoreCase = new HashMap<>();
+        private final List<ContainsRule> contains = new ArrayList<>();
+        private final List<PatternRule> patterns = new ArrayList<>();
+
+        void apply(String value, Set<GrantedAuthority> authorities) {
+            List<GrantedAuthority> granted = equals.get(value);
+            if (granted != null) {
+                authorities.addAll(granted);
+            }
+            String lowerCaseValue = equalsIgnoreCase.isEmpty() && contains.isEmpty() ? null : lowerCase(value);
+            if (!equalsIgnoreCase.isEmpty()) {
+                granted = equalsIgnoreCase.get(lowerCaseValue);
+                if (granted != null) {
+                    authorities.addAll(granted);
+                }
+            }
+            for (ContainsRule rule : contains) {
+                if ((rule.ignoreCase ? lowerCaseValue : value).contains(rule.value)) {
+                    authorities.addAll(rule.authorities);
+                }
+            }
+            for (PatternRule rule : patterns) {
+                if (rule.pattern.matcher(value).matches()) {
+                    authorities.addAll(rule.authorities);
+                }
+            }
+        }
+    }
+
+    private static final class ContainsRule {
+        private final String value;
+        private final boolean ignoreCase;
+        private final List<GrantedAuthority> authorities;
+
+        ContainsRule(String value, boolean ignoreCase, List<GrantedAuthority> authorities) {
+            this.value = ignoreCase ? lowerCase(value) : value;
+            this.ignoreCase = ignoreCase;
+            this.authorities = authorities;
+        }
+    }
+
+    private static final class PatternRule {
+        private final Pattern pattern;
+        private final List<GrantedAuthority> authorities;
+
+        PatternRule(Pattern pattern, List<GrantedAuthority> authorities) {
+            this.pattern = pattern;
+            this.authorities = authorities;
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.user;
+
+import org.opensaml.saml2.core.AuthnStatement;
+import org.opensaml.saml2.core.NameID;
+import org.opensaml.xml.schema.XSAny;
+import org.opensaml.xml.schema.XSString;
+import org.springframework.security.saml.SAMLCredential;
+import org.springframework.util.Assert;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Compact and immutable view of an authenticated {@link SAMLCredential}. It keeps the NameID, session indexes, entity
+ * IDs and the attribute values as plain Strings, which is all the application and Single Logout need after
+ * authentication. It serializes to a small binary form instead of the OpenSAML object graph held by the credential.
+ *
+ * @author Ulises Bocchio
+ * @see CompactSAMLAuthenticationProvider
+ */
+public final class SAMLPrincipal implements Principal, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String nameId;
+    private final String nameIdFormat;
+    private final String nameIdNameQualifier;
+    private final String nameIdSPNameQualifier;
+    private final List<String> sessionIndexes;
+    private final String remoteEntityId;
+    private final String localEntityId;
+    private final Map<String, List<String>> attributes;
+
+    public SAMLPrincipal(String nameId, String nameIdFormat, String nameIdNameQualifier, String nameIdSPNameQualifier,
+                         List<String> sessionIndexes, String remoteEntityId, String localEntityId,
+                         Map<String, List<String>> attributes) {
+        Assert.notNull(nameId, "'nameId' cannot be null.");
+        Assert.notNull(remoteEntityId, "'remoteEntityId' cannot be null.");
+        Assert.notNull(localEntityId, "'localEntityId' cannot be null.");
+        this.nameId = nameId;
+        this.nameIdFormat = nameIdFormat;
+        this.nameIdNameQualifier = nameIdNameQualifier;
+        this.nameIdSPNameQualifier = nameIdSPNameQualifier;
+        this.sessionIndexes = sessionIndexes == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(sessionIndexes));
+        this.remoteEntityId = remoteEntityId;
+        this.localEntityId = localEntityId;
+        Map<String, List<String>> copy = new LinkedHashMap<>();
+        if (attributes != null) {
+            attributes.forEach((name, values) -> copy.put(name, Collections.unmodifiableList(new ArrayList<>(values))));
+        }
+        this.attributes = Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * Extracts a principal from a full {@link SAMLCredential}. Attributes with the same name are merged, and values
+     * other than {@link XSString} or {@link XSAny} are kept as null, same as
+     * {@link SAMLCredential#getAttributeAsStringArray(String)}.
+     *
+     * @param credential the credential to extract the principal from.
+     * @return the principal.
+     */
+    public static SAMLPrincipal from(SAMLCredential credential) {
+        NameID nameID = credential.getNameID();
+        List<String> sessionIndexes = new ArrayList<>();
+        if (credential.getAuthenticationAssertion() != null) {
+            for (AuthnStatement statement : credential.getAuthenticationAssertion().getAuthnStatements()) {
+                if (statement.getSessionIndex() != null) {
+                    sessionIndexes.add(statement.getSessionIndex());
+                }
+            }
+        }
+        return new SAMLPrincipal(nameID.getValue(), nameID.getFormat(), nameID.getNameQualifier(),
+                nameID.getSPNameQualifier(), sessionIndexes, credential.getRemoteEntityID(),
+                credential.getLocalEntityID(), SAMLAttributes.index(credential.getAttributes()));
+    }
+
+    /**
+     * @return the NameID value.
+     */
+    @Override
+    public String getName() {
+        return nameId;
+    }
+
+    public String getNameId() {
+        return nameId;
+    }
+
+    public String getNameIdFormat() {
+        return nameIdFormat;
+    }
+
+    public String getNameIdNameQualifier() {
+        return nameIdNameQualifier;
+    }
+
+    public String getNameIdSPNameQualifier() {
+        return nameIdSPNameQualifier;
+    }
+
+    public List<String> getSessionIndexes() {
+        return sessionIndexes;
+    }
+
+    /**
+     * @return the IDP entity ID.
+     */
+    public String getRemoteEntityId() {
+        return remoteEntityId;
+    }
+
+    /**
+     * @return the SP entity ID.
+     */
+    public String getLocalEntityId() {
+        return localEntityId;
+    }
+
+    public Map<String, List<String>> getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * @param name the attribute name.
+     * @return the first value of the attribute, or null if not present.
+     */
+    public String getAttribute(String name) {
+        List<String> values = attributes.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * @param name the attribute name.
+     * @return the values of the attribute, or null if not present.
+     */
+    public String[] getAttributeArray(String name) {
+        List<String> values = attributes.get(name);
+        return values == null ? null : values.toArray(new String[0]);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SAMLPrincipal)) {
+            return false;
+        }
+        SAMLPrincipal that = (SAMLPrincipal) o;
+        return nameId.equals(that.nameId)
+                && Objects.equals(nameIdFormat, that.nameIdFormat)
+                && Objects.equals(nameIdNameQualifier, that.nameIdNameQualifier)
+                && Objects.equals(nameIdSPNameQualifier, that.nameIdSPNameQualifier)
+                && sessionIndexes.equals(that.sessionIndexes)
+                && remoteEntityId.equals(that.remoteEntityId)
+                && localEntityId.equals(that.localEntityId)
+                && attributes.equals(that.attributes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(nameId, nameIdFormat, remoteEntityId, localEntityId, sessionIndexes);
+    }
+
+    @Override
+    public String toString() {
+        return "SAMLPrincipal(nameId=" + nameId + ", remoteEntityId=" + remoteEntityId + ", sessionIndexes="
+                + sessionIndexes + ", attributes=" + attributes.keySet() + ")";
+    }
+
+    private Object writeReplace() {
+        return new SerializedForm(this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("SerializedForm required");
+    }
+
+    /**
+     * Serialization proxy, writes the principal as length prefixed UTF-8 Strings.
+     */
+    private static final class SerializedForm implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+        private static final int VERSION = 1;
+        private static final int MAX_STRING_LENGTH = 1 << 20;
+        private static final int MAX_VALUES = 1 << 16;
+
+        private transient SAMLPrincipal principal;
+
+        SerializedForm(SAMLPrincipal principal) {
+            this.principal = principal;
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+            out.writeByte(VERSION);
+            writeString(out, principal.nameId);
+            writeString(out, principal.nameIdFormat);
+            writeString(out, principal.nameIdNameQualifier);
+            writeString(out, principal.nameIdSPNameQualifier);
+            writeString(out, principal.remoteEntityId);
+            writeString(out, principal.localEntityId);
+            writeStrings(out, principal.sessionIndexes);
+            out.writeInt(principal.attributes.size());
+            for (Map.Entry<String, List<String>> attribute : principal.attributes.entrySet()) {
+                writeString(out, attribute.getKey());
+                writeStrings(out, attribute.getValue());
+            }
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            int version = in.readByte();
+            if (version != VERSION) {
+                throw new InvalidObjectException("Unsupported SAMLPrincipal version " + version);
+            }
+            String nameId = readString(in);
+            String nameIdFormat = readString(in);
+            String nameIdNameQualifier = readString(in);
+            String nameIdSPNameQualifier = readString(in);
+            String remoteEntityId = readString(in);
+            String localEntityId = readString(in);
+            List<String> sessionIndexes = readStrings(in);
+            int attributeCount = readSize(in);
+            Map<String, List<String>> attributes = new LinkedHashMap<>();
+            for (int i = 0; i < attributeCount; i++) {
+                attributes.put(readString(in), readStrings(in));
+            }
+            try {
+                principal = new SAMLPrincipal(nameId, nameIdFormat, nameIdNameQualifier, nameIdSPNameQualifier,
+                        sessionIndexes, remoteEntityId, localEntityId, attributes);
+            } catch (IllegalArgumentException e) {
+                throw new InvalidObjectException(e.getMessage());
+            }
+        }
+
+        private Object readResolve() {
+            return principal;
+        }
+
+        private static void writeString(DataOutput out, String value) throws IOException {
+            if (value == null) {
+                out.writeInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private static String readString(DataInput in) throws IOException {
+            int length = in.readInt();
+            if (length < 0) {
+                return null;
+            }
+            if (length > MAX_STRING_LENGTH) {
+                throw new InvalidObjectException("String length " + length + " exceeds " + MAX_STRING_LENGTH);
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private static void writeStrings(DataOutput out, List<String> values) throws IOException {
+            out.writeInt(values.size());
+            for (String value : values) {
+                writeString(out, value);
+            }
+        }
+
+        private static List<String> readStrings(DataInput in) throws IOException {
+            int size = readSize(in);
+            List<String> values = new ArrayList<>(Math.min(size, 64));
+            for (int i = 0; i < size; i++) {
+                values.add(readString(in));
+            }
+            return values;
+        }
+
+        private static int readSize(DataInput in) throws IOException {
+            int size = in.readInt();
+            if (size < 0 || size > MAX_VALUES) {
+                throw new InvalidObjectException("Invalid size " + size);
+            }
+            return size;
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package com.github.ulisesbocchio.spring.boot.security.saml.user;
 
-import org.opensaml.saml2.core.Attribute;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -9,28 +8,51 @@ import org.springframework.security.saml.userdetails.SAMLUserDetailsService;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * Default Implementation of {@link UserDetails} for Spring Boot Security SAML. This simple implementation hardly
  * covers all security aspects since it's mostly hardcoded. I.E. accounts are never locked, expired, or disabled, and
- * always eturn the same granted authority "ROLE_USER".
+ * granted authorities are "ROLE_USER" unless mapped from the user attributes by {@link SAMLAuthorityMapper}.
  * Consider implementing your own {@link UserDetails} and {@link SAMLUserDetailsService}.
  *
  * @author Ulises Bocchio
  */
 public class SAMLUserDetails implements UserDetails {
 
+    private static final Collection<? extends GrantedAuthority> DEFAULT_AUTHORITIES =
+            Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER"));
+
     private SAMLCredential samlCredential;
+    private Collection<? extends GrantedAuthority> authorities;
+    private transient volatile Map<String, List<String>> attributeIndex;
+    private transient volatile Map<String, String> firstValues;
+    private transient volatile Map<String, String[]> allValues;
 
     public SAMLUserDetails(SAMLCredential samlCredential) {
+        this(samlCredential, DEFAULT_AUTHORITIES);
+    }
+
+    /**
+     * @param samlCredential the authenticated credential.
+     * @param authorities    the authorities granted to the user, usually mapped by {@link SAMLAuthorityMapper}.
+     */
+    public SAMLUserDetails(SAMLCredential samlCredential, Collection<? extends GrantedAuthority> authorities) {
+        this(samlCredential, authorities, null);
+    }
+
+    SAMLUserDetails(SAMLCredential samlCredential, Collection<? extends GrantedAuthority> authorities,
+                    Map<String, List<String>> attributeIndex) {
         this.samlCredential = samlCredential;
+        this.authorities = Collections.unmodifiableCollection(authorities);
+        this.attributeIndex = attributeIndex;
     }
 
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
-        return Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER"));
+        return authorities;
     }
 
     @Override
@@ -63,29 +85,82 @@ public class SAMLUserDetails implements UserDetails {
         return true;
     }
 
+    /**
+     * @param name the attribute name.
+     * @return the first value of the attribute, or null if not present.
+     */
     public String getAttribute(String name) {
-        return samlCredential.getAttributeAsString(name);
+        List<String> values = getAttributeIndex().get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
     }
 
+    /**
+     * @param name the attribute name.
+     * @return all the values of the attribute, including values of repeated attributes, or null if not present.
+     */
     public String[] getAttributeArray(String name) {
-        return samlCredential.getAttributeAsStringArray(name);
+        List<String> values = getAttributeIndex().get(name);
+        return values == null ? null : values.toArray(new String[0]);
     }
 
+    /**
+     * @return immutable map of attribute name to first value.
+     */
     public Map<String, String> getAttributes() {
-        return samlCredential.getAttributes().stream()
-                .collect(Collectors.toMap(Attribute::getName, this::getValue));
+        Map<String, String> result = firstValues;
+        if (result == null) {
+            Map<String, String> map = new LinkedHashMap<>();
+            getAttributeIndex().forEach((name, values) -> map.put(name, values.isEmpty() ? null : values.get(0)));
+            result = Collections.unmodifiableMap(map);
+            firstValues = result;
+        }
+        return result;
     }
 
+    /**
+     * @return immutable map of attribute name to all values.
+     */
     public Map<String, String[]> getAttributesArrays() {
-        return samlCredential.getAttributes().stream()
-                .collect(Collectors.toMap(Attribute::getName, this::getValueArray));
+        Map<String, String[]> result = allValues;
+        if (result == null) {
+            Map<String, String[]> map = new LinkedHashMap<>();
+            getAttributeIndex().forEach((name, values) -> map.put(name, values.toArray(new String[0])));
+            result = Collections.unmodifiableMap(map);
+            allValues = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return immutable map of attribute name to all values, built once from the credential attributes.
+     */
+    public Map<String, List<String>> getAttributeValues() {
+        return getAttributeIndex();
+    }
+
+    /**
+     * @return the credential of the login these details were loaded for.
+     */
+    SAMLCredential getSamlCredential() {
+        return samlCredential;
     }
 
-    private String getValue(Attribute attribute) {
-        return getAttribute(attribute.getName());
+    /**
+     * @param credential the credential to bind.
+     * @return details with the same authorities and attributes bound to the given credential.
+     */
+    SAMLUserDetails withCredential(SAMLCredential credential) {
+        return new SAMLUserDetails(credential, authorities, getAttributeIndex());
     }
 
-    private String[] getValueArray(Attribute attribute) {
-        return getAttributeArray(attribute.getName());
+    private Map<String, List<String>> getAttributeIndex() {
+        Map<String, List<String>> result = attributeIndex;
+        if (result == null) {
+            result = samlCredential instanceof CompactSAMLCredential
+                    ? ((CompactSAMLCredential) samlCredential).getPrincipal().getAttributes()
+                    : SAMLAttributes.index(samlCredential.getAttributes());
+            attributeIndex = result;
+        }
+        return result;
     }
 }
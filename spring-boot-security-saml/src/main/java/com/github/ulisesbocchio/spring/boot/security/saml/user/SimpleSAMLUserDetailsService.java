@@ -6,16 +6,43 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.saml.SAMLCredential;
 import org.springframework.security.saml.userdetails.SAMLUserDetailsService;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  * Simple pass through User Details Service.
  * Consider implementing your own {@link UserDetailsService} to check user permissions against a persistent storage and
  * load your own {@link UserDetails} implementation.
+ * When a {@link SAMLAuthorityMapper} is provided, the user authorities are mapped from the user attributes once, at
+ * authentication time, and kept in the resulting {@link SAMLUserDetails}.
  *
  * @author Ulises Bocchio
  */
 public class SimpleSAMLUserDetailsService implements SAMLUserDetailsService {
+
+    private final SAMLAuthorityMapper authorityMapper;
+
+    public SimpleSAMLUserDetailsService() {
+        this(null);
+    }
+
+    /**
+     * @param authorityMapper the mapper of user attributes to authorities, or null to grant "ROLE_USER" only.
+     */
+    public SimpleSAMLUserDetailsService(SAMLAuthorityMapper authorityMapper) {
+        this.authorityMapper = authorityMapper;
+    }
+
     @Override
     public Object loadUserBySAML(SAMLCredential credential) throws UsernameNotFoundException {
-        return new SAMLUserDetails(credential);
+        if (authorityMapper == null) {
+            return new SAMLUserDetails(credential);
+        }
+        Map<String, List<String>> attributes = SAMLAttributes.index(credential.getAttributes());
+        return new SAMLUserDetails(credential, authorityMapper.map(credential.getRemoteEntityID(), attributes), attributes);
+    }
+
+    public SAMLAuthorityMapper getAuthorityMapper() {
+        return authorityMapper;
     }
 }
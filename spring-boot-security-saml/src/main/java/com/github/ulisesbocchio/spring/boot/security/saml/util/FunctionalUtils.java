@@ -50,4 +50,14 @@ public class FunctionalUtils {
     public interface CheckedFunction<T, R, E extends Throwable> {
         R apply(T t) throws E;
     }
+
+    @FunctionalInterface
+    public interface CheckedRunnable<E extends Throwable> {
+        void run() throws E;
+    }
+
+    @FunctionalInterface
+    public interface CheckedSupplier<T, E extends Throwable> {
+        T get() throws E;
+    }
 }
@@ -0,0 +1,73 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.websso;
+
+import org.opensaml.saml2.metadata.AssertionConsumerService;
+import org.opensaml.saml2.metadata.SingleSignOnService;
+import org.springframework.security.saml.context.SAMLMessageContext;
+import org.springframework.security.saml.websso.WebSSOProfileOptions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Identifies the AuthnRequests that only differ in ID and IssueInstant: the ones sent by the same local SP to the same
+ * IDP endpoint, for the same assertion consumer service and the same {@link WebSSOProfileOptions} that end up in the
+ * request. The relay state is not part of the request, so it is not part of the key either.
+ *
+ * @author Ulises Bocchio
+ */
+final class AuthnRequestKey {
+
+    private final List<Object> values;
+
+    private AuthnRequestKey(List<Object> values) {
+        this.values = values;
+    }
+
+    static AuthnRequestKey of(SAMLMessageContext context, WebSSOProfileOptions options,
+                              AssertionConsumerService assertionConsumer, SingleSignOnService bindingService) {
+        return new AuthnRequestKey(Arrays.asList(
+                context.getLocalEntityId(),
+                context.getPeerEntityId(),
+                bindingService.getLocation(),
+                bindingService.getBinding(),
+                assertionConsumer != null ? assertionConsumer.getLocation() : null,
+                assertionConsumer != null ? assertionConsumer.getBinding() : null,
+                assertionConsumer != null ? assertionConsumer.getIndex() : null,
+                options.getPassive(),
+                options.getForceAuthN(),
+                options.getProviderName(),
+                options.isIncludeScoping(),
+                options.getAllowedIDPs(),
+                options.getProxyCount(),
+                options.getNameID(),
+                options.isAllowCreate(),
+                options.getAuthnContexts() != null ? new ArrayList<>(options.getAuthnContexts()) : null,
+                options.getAuthnContextComparison()));
+    }
+
+    /**
+     * This key with one more value, for requests that also differ in something that is not part of the request itself,
+     * e.g. the key they are signed with.
+     */
+    AuthnRequestKey with(Object value) {
+        List<Object> extended = new ArrayList<>(values);
+        extended.add(value);
+        return new AuthnRequestKey(extended);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof AuthnRequestKey && values.equals(((AuthnRequestKey) o).values));
+    }
+
+    @Override
+    public int hashCode() {
+        return values.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return values.toString();
+    }
+}
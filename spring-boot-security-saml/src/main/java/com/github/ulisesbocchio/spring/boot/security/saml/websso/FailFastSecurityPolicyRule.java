@@ -0,0 +1,39 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.websso;
+
+import org.opensaml.common.SAMLException;
+import org.opensaml.saml2.core.Response;
+import org.opensaml.ws.message.MessageContext;
+import org.opensaml.ws.security.SecurityPolicyException;
+import org.opensaml.ws.security.SecurityPolicyRule;
+import org.springframework.security.saml.context.SAMLMessageContext;
+
+/**
+ * {@link SecurityPolicyRule} running the inexpensive checks of a {@link FailFastWebSSOProfileConsumer} on the decoded
+ * Response, so that it can be rejected before the signature rules of the binding are evaluated.
+ *
+ * @author Ulises Bocchio
+ */
+final class FailFastSecurityPolicyRule implements SecurityPolicyRule {
+
+    private final FailFastWebSSOProfileConsumer consumer;
+
+    FailFastSecurityPolicyRule(FailFastWebSSOProfileConsumer consumer) {
+        this.consumer = consumer;
+    }
+
+    @Override
+    public void evaluate(MessageContext messageContext) throws SecurityPolicyException {
+        if (!consumer.isFailFast() || !(messageContext instanceof SAMLMessageContext)) {
+            return;
+        }
+        SAMLMessageContext context = (SAMLMessageContext) messageContext;
+        if (!(context.getInboundSAMLMessage() instanceof Response)) {
+            return;
+        }
+        try {
+            consumer.verify((Response) context.getInboundSAMLMessage(), context);
+        } catch (SAMLException e) {
+            throw new SecurityPolicyException(e.getMessage(), e);
+        }
+    }
+}
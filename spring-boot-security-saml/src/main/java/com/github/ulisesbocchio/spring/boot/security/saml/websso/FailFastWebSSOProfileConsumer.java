@@ -0,0 +1,267 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.websso;
+
+import org.joda.time.DateTime;
+import org.opensaml.common.SAMLException;
+import org.opensaml.common.SAMLObject;
+import org.opensaml.saml2.core.Assertion;
+import org.opensaml.saml2.core.Audience;
+import org.opensaml.saml2.core.AudienceRestriction;
+import org.opensaml.saml2.core.Conditions;
+import org.opensaml.saml2.core.Response;
+import org.opensaml.saml2.core.SubjectConfirmation;
+import org.opensaml.saml2.core.SubjectConfirmationData;
+import org.opensaml.ws.security.SecurityPolicyRule;
+import org.opensaml.xml.XMLObject;
+import org.opensaml.xml.encryption.DecryptionException;
+import org.opensaml.xml.security.SecurityException;
+import org.opensaml.xml.validation.ValidationException;
+import org.springframework.security.saml.SAMLCredential;
+import org.springframework.security.saml.context.SAMLMessageContext;
+import org.springframework.security.saml.storage.SAMLMessageStorage;
+import org.springframework.security.saml.websso.WebSSOProfileConsumerImpl;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@link WebSSOProfileConsumerImpl} that, before any signature verification or decryption, rejects Responses that
+ * would fail the inexpensive checks anyway: Response issue instant, Destination, Issuer and InResponseTo, and, for
+ * plaintext Assertions, issue instant, Issuer, Conditions validity window, Audience and bearer or holder of key
+ * SubjectConfirmation Recipient and NotOnOrAfter. Expired, misrouted or unsolicited Responses are then rejected without
+ * paying for an RSA operation.
+ * <p>
+ * The checks are meant to run as the {@link SecurityPolicyRule} returned by {@link #getSecurityPolicyRule()}, evaluated
+ * by the {@link org.springframework.security.saml.processor.SAMLProcessor} before the signature rules of the binding.
+ * Once the rule is obtained the consumer relies on it, otherwise it runs the checks itself before the default
+ * processing. While decoding, the local endpoint and the peer extended metadata may not be known yet, and the checks
+ * that need them are left to the default processing.
+ * </p>
+ * <p>
+ * These checks are a subset of the ones performed by {@link WebSSOProfileConsumerImpl}, which still runs all of them
+ * once they pass, so no Response accepted by the default consumer is rejected by this one. Encrypted Assertions can
+ * only be validated after decryption and are left to the default processing.
+ * </p>
+ *
+ * @author Ulises Bocchio
+ */
+public class FailFastWebSSOProfileConsumer extends WebSSOProfileConsumerImpl {
+
+    private static final List<String> CONFIRMATION_METHODS = Arrays.asList(SubjectConfirmation.METHOD_BEARER,
+            SubjectConfirmation.METHOD_HOLDER_OF_KEY);
+
+    private boolean failFast = true;
+    private SecurityPolicyRule securityPolicyRule;
+
+    @Override
+    public SAMLCredential processAuthenticationResponse(SAMLMessageContext context) throws SAMLException, SecurityException, ValidationException, DecryptionException {
+        SAMLObject message = context.getInboundSAMLMessage();
+        if (!failFast || getInstalledSecurityPolicyRule() != null || !(message instanceof Response)) {
+            return super.processAuthenticationResponse(context);
+        }
+        SAMLMessageStorage messageStorage = context.getMessageStorage();
+        try {
+            verify((Response) message, context);
+            return super.processAuthenticationResponse(context);
+        } finally {
+            context.setMessageStorage(messageStorage);
+        }
+    }
+
+    /**
+     * Runs the inexpensive checks. Retrieving a message may remove it from the storage, so the request retrieved to
+     * check InResponseTo is handed to the default processing through the message storage of the context.
+     *
+     * @param response the received Response.
+     * @param context  the message context.
+     * @throws SAMLException if the Response would be rejected anyway.
+     */
+    void verify(Response response, SAMLMessageContext context) throws SAMLException {
+        verifyResponseConditions(response, context);
+        SAMLMessageStorage messageStorage = context.getMessageStorage();
+        String inResponseTo = response.getInResponseTo();
+        if (messageStorage != null && inResponseTo != null) {
+            XMLObject request = messageStorage.retrieveMessage(inResponseTo);
+            if (request == null) {
+                throw new SAMLException("InResponseToField of the Response doesn't correspond to sent message "
+                        + inResponseTo);
+            }
+            context.setMessageStorage(new RetrievedMessageStorage(messageStorage, inResponseTo, request));
+        }
+        verifyAssertionConditions(response, context);
+    }
+
+    /**
+     * Rule running the inexpensive checks while the Response is decoded, to be evaluated before the signature rules.
+     * Once obtained, the checks are no longer run by {@link #processAuthenticationResponse(SAMLMessageContext)}.
+     *
+     * @return the rule, the same one on every call.
+     */
+    public synchronized SecurityPolicyRule getSecurityPolicyRule() {
+        if (securityPolicyRule == null) {
+            securityPolicyRule = new FailFastSecurityPolicyRule(this);
+        }
+        return securityPolicyRule;
+    }
+
+    private synchronized SecurityPolicyRule getInstalledSecurityPolicyRule() {
+        return securityPolicyRule;
+    }
+
+    /**
+     * Checks on the Response itself that don't require its signature to be verified.
+     *
+     * @param response the received Response.
+     * @param context  the message context.
+     * @throws SAMLException if the Response would be rejected anyway.
+     */
+    protected void verifyResponseConditions(Response response, SAMLMessageContext context) throws SAMLException {
+        if (!isDateTimeSkewValid(getResponseSkew(), response.getIssueInstant())) {
+            throw new SAMLException("Response issue time is either too old or with date in the future, skew "
+                    + getResponseSkew() + ", time " + response.getIssueInstant());
+        }
+        if (response.getInResponseTo() == null && context.getPeerExtendedMetadata() != null
+                && !context.getPeerExtendedMetadata().isSupportUnsolicitedResponse()) {
+            throw new SAMLException("Reception of Unsolicited Response messages (without InResponseToField) is disabled");
+        }
+        if (context.getLocalEntityEndpoint() != null) {
+            verifyEndpoint(context.getLocalEntityEndpoint(), response.getDestination());
+        }
+        if (response.getIssuer() != null && context.getPeerEntityMetadata() != null) {
+            verifyIssuer(response.getIssuer(), context);
+        }
+    }
+
+    /**
+     * Makes sure at least one plaintext Assertion with an authentication statement passes the checks that don't
+     * require its signature to be verified. Skipped when the Response carries encrypted Assertions.
+     *
+     * @param response the received Response.
+     * @param context  the message context.
+     * @throws SAMLException if the Response would be rejected anyway.
+     */
+    protected void verifyAssertionConditions(Response response, SAMLMessageContext context) throws SAMLException {
+        if (!response.getEncryptedAssertions().isEmpty()) {
+            return;
+        }
+        SAMLException failure = null;
+        for (Assertion assertion : response.getAssertions()) {
+            if (assertion.getAuthnStatements().isEmpty()) {
+                continue;
+            }
+            try {
+                verifyAssertionConditions(assertion, context);
+                return;
+            } catch (SAMLException e) {
+                failure = e;
+            }
+        }
+        throw new SAMLException("Response doesn't have any valid assertion which would pass subject validation", failure);
+    }
+
+    /**
+     * Checks on a plaintext Assertion that don't require its signature to be verified.
+     *
+     * @param assertion the Assertion.
+     * @param context   the message context.
+     * @throws SAMLException if the Assertion would be rejected anyway.
+     */
+    protected void verifyAssertionConditions(Assertion assertion, SAMLMessageContext context) throws SAMLException {
+        if (!isDateTimeSkewValid(getResponseSkew(), getMaxAssertionTime(), assertion.getIssueInstant())) {
+            throw new SAMLException("Assertion is too old to be used, value can be customized by setting maxAssertionTime value "
+                    + assertion.getIssueInstant());
+        }
+        if (assertion.getIssuer() != null && context.getPeerEntityMetadata() != null) {
+            verifyIssuer(assertion.getIssuer(), context);
+        }
+        Conditions conditions = assertion.getConditions();
+        if (conditions != null) {
+            if (conditions.getNotBefore() != null && conditions.getNotBefore().minusSeconds(getResponseSkew()).isAfterNow()) {
+                throw new SAMLException("Assertion is not yet valid, invalidated by condition notBefore " + conditions.getNotBefore());
+            }
+            if (conditions.getNotOnOrAfter() != null && conditions.getNotOnOrAfter().plusSeconds(getResponseSkew()).isBeforeNow()) {
+                throw new SAMLException("Assertion is no longer valid, invalidated by condition notOnOrAfter " + conditions.getNotOnOrAfter());
+            }
+            verifyAudience(conditions, context);
+        }
+        if (assertion.getSubject() != null && !hasConfirmation(assertion, context)) {
+            throw new SAMLException("Assertion invalidated by subject confirmation - can't be confirmed by the bearer "
+                    + "or holder of key method");
+        }
+    }
+
+    private void verifyAudience(Conditions conditions, SAMLMessageContext context) throws SAMLException {
+        // multiple AudienceRestrictions form a logical "AND", multiple Audiences within one a logical "OR"
+        restrictions:
+        for (AudienceRestriction restriction : conditions.getAudienceRestrictions()) {
+            for (Audience audience : restriction.getAudiences()) {
+                if (context.getLocalEntityId().equals(audience.getAudienceURI())) {
+                    continue restrictions;
+                }
+            }
+            throw new SAMLException("Local entity is not the intended audience of the assertion in at least one AudienceRestriction");
+        }
+    }
+
+    // the rule also sees the Responses meant for the holder of key consumer
+    private boolean hasConfirmation(Assertion assertion, SAMLMessageContext context) {
+        for (SubjectConfirmation confirmation : assertion.getSubject().getSubjectConfirmations()) {
+            SubjectConfirmationData data = confirmation.getSubjectConfirmationData();
+            if (!CONFIRMATION_METHODS.contains(confirmation.getMethod()) || data == null
+                    || data.getNotBefore() != null || isExpired(data.getNotOnOrAfter())) {
+                continue;
+            }
+            try {
+                if (data.getRecipient() != null && context.getLocalEntityEndpoint() != null) {
+                    verifyEndpoint(context.getLocalEntityEndpoint(), data.getRecipient());
+                }
+                return true;
+            } catch (SAMLException e) {
+                // not confirmed by this SubjectConfirmation, try the next one
+            }
+        }
+        return false;
+    }
+
+    private boolean isExpired(DateTime notOnOrAfter) {
+        return notOnOrAfter != null && notOnOrAfter.plusSeconds(getResponseSkew()).isBeforeNow();
+    }
+
+    /**
+     * Whether the inexpensive checks run before the default processing, either through the rule or by this consumer.
+     * Defaults to true.
+     *
+     * @param failFast false to rely on the default processing only.
+     */
+    public void setFailFast(boolean failFast) {
+        this.failFast = failFast;
+    }
+
+    public boolean isFailFast() {
+        return failFast;
+    }
+
+    /**
+     * Hands the already retrieved request to the default processing, which retrieves it again.
+     */
+    private static final class RetrievedMessageStorage implements SAMLMessageStorage {
+        private final SAMLMessageStorage delegate;
+        private final String messageId;
+        private final XMLObject message;
+
+        RetrievedMessageStorage(SAMLMessageStorage delegate, String messageId, XMLObject message) {
+            this.delegate = delegate;
+            this.messageId = messageId;
+            this.message = message;
+        }
+
+        @Override
+        public void storeMessage(String messageId, XMLObject message) {
+            delegate.storeMessage(messageId, message);
+        }
+
+        @Override
+        public XMLObject retrieveMessage(String messageId) {
+            return this.messageId.equals(messageId) ? message : delegate.retrieveMessage(messageId);
+        }
+    }
+}
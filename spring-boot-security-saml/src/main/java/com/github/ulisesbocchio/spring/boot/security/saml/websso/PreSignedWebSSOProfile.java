@@ -0,0 +1,318 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.websso;
+
+import com.github.ulisesbocchio.spring.boot.security.saml.async.BoundedExecutors;
+import org.opensaml.common.SAMLException;
+import org.opensaml.common.SAMLObject;
+import org.opensaml.common.SignableSAMLObject;
+import org.opensaml.common.xml.SAMLConstants;
+import org.opensaml.saml2.core.AuthnRequest;
+import org.opensaml.saml2.metadata.AssertionConsumerService;
+import org.opensaml.saml2.metadata.IDPSSODescriptor;
+import org.opensaml.saml2.metadata.SPSSODescriptor;
+import org.opensaml.saml2.metadata.SingleSignOnService;
+import org.opensaml.saml2.metadata.provider.MetadataProvider;
+import org.opensaml.saml2.metadata.provider.MetadataProviderException;
+import org.opensaml.saml2.metadata.provider.ObservableMetadataProvider;
+import org.opensaml.ws.message.encoder.MessageEncodingException;
+import org.opensaml.xml.Configuration;
+import org.opensaml.xml.io.MarshallingException;
+import org.opensaml.xml.security.SecurityException;
+import org.opensaml.xml.security.SecurityHelper;
+import org.opensaml.xml.security.credential.Credential;
+import org.opensaml.xml.signature.Signature;
+import org.opensaml.xml.signature.SignatureException;
+import org.opensaml.xml.signature.Signer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.security.saml.context.SAMLMessageContext;
+import org.springframework.security.saml.metadata.MetadataManager;
+import org.springframework.security.saml.websso.WebSSOProfileImpl;
+import org.springframework.security.saml.websso.WebSSOProfileOptions;
+import org.springframework.util.Assert;
+
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * {@link WebSSOProfileImpl} that keeps, per IDP, SSO endpoint and profile options, a small pool of AuthnRequests that
+ * were built and signed ahead of time on a background thread, so that the {@link
+ * org.springframework.security.saml.SAMLEntryPoint} doesn't pay for an RSA signature on every unauthenticated request.
+ * Each pooled request has its own ID, is used only once and is discarded once older than the maximum age, so its
+ * IssueInstant stays fresh.
+ * <p>
+ * Only requests sent with the HTTP POST binding are pooled, since their signature is part of the message. HTTP Redirect
+ * signatures cover the query string, relay state included, and are computed when the message is sent. The pool of an
+ * IDP is created on its first request, which is signed inline like any request that finds the pool empty.
+ * </p>
+ * <p>
+ * Pools are kept per signing key too, so a request is never served signed with a replaced key, and are all discarded
+ * when the {@link MetadataManager} set through {@link #setMetadata(MetadataManager)} refreshes its metadata.
+ * </p>
+ *
+ * @author Ulises Bocchio
+ */
+public class PreSignedWebSSOProfile extends WebSSOProfileImpl implements DisposableBean,
+        ObservableMetadataProvider.Observer {
+
+    private static final Logger logger = LoggerFactory.getLogger(PreSignedWebSSOProfile.class);
+
+    private final int poolSize;
+    private final long maxAge;
+    private final LongSupplier clock;
+    private final Map<AuthnRequestKey, Pool> pools = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param poolSize number of signed requests kept per IDP, SSO endpoint and profile options.
+     * @param maxAge   maximum age in milliseconds of a pooled request.
+     */
+    public PreSignedWebSSOProfile(int poolSize, long maxAge) {
+        this(poolSize, maxAge, System::currentTimeMillis,
+                BoundedExecutors.newBackgroundExecutor("saml-presigned-requests"));
+    }
+
+    /**
+     * @param executor single threaded executor the requests are signed on, owned by this profile.
+     */
+    PreSignedWebSSOProfile(int poolSize, long maxAge, LongSupplier clock, ScheduledExecutorService executor) {
+        Assert.isTrue(poolSize > 0, "'poolSize' must be greater than 0.");
+        Assert.isTrue(maxAge > 0, "'maxAge' must be greater than 0.");
+        this.poolSize = poolSize;
+        this.maxAge = maxAge;
+        this.clock = clock;
+        this.executor = executor;
+        long sweepInterval = Math.max(maxAge / 2, 1000);
+        executor.scheduleWithFixedDelay(this::sweep, sweepInterval, sweepInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected AuthnRequest getAuthnRequest(SAMLMessageContext context, WebSSOProfileOptions options,
+                                           AssertionConsumerService assertionConsumer,
+                                           SingleSignOnService bindingService) throws SAMLException, MetadataProviderException {
+        if (!isPreSignable(context, bindingService)) {
+            return super.getAuthnRequest(context, options, assertionConsumer, bindingService);
+        }
+        AuthnRequestKey key = AuthnRequestKey.of(context, options, assertionConsumer, bindingService)
+                .with(context.getLocalSigningCredential().getPublicKey());
+        Pool pool = pools.computeIfAbsent(key, k -> new Pool(new Template(context.getLocalEntityId(),
+                context.getLocalSigningCredential(), options.clone(), assertionConsumer, bindingService)));
+        AuthnRequest request = pool.poll(clock.getAsLong());
+        refill(pool);
+        if (request != null) {
+            hits.increment();
+            return request;
+        }
+        misses.increment();
+        return super.getAuthnRequest(context, options, assertionConsumer, bindingService);
+    }
+
+    /**
+     * Pooled requests are already signed, signing them again while sending would only replace the signature.
+     */
+    @Override
+    protected void sendMessage(SAMLMessageContext context, boolean sign) throws SAMLException, MetadataProviderException, MessageEncodingException {
+        SAMLObject message = context.getOutboundSAMLMessage();
+        boolean preSigned = message instanceof SignableSAMLObject && ((SignableSAMLObject) message).isSigned();
+        super.sendMessage(context, sign && !preSigned);
+    }
+
+    /**
+     * Number of requests served from a pool.
+     *
+     * @return the hit count.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Number of pre-signable requests that found their pool empty and were signed inline.
+     *
+     * @return the miss count.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Current number of pooled requests, across all the pools.
+     *
+     * @return the number of pooled requests.
+     */
+    public int size() {
+        return pools.values().stream().mapToInt(pool -> pool.requests.size()).sum();
+    }
+
+    /**
+     * Discards all the pooled requests. Called on every metadata refresh.
+     */
+    public void clear() {
+        pools.clear();
+    }
+
+    /**
+     * Also registers this profile, only once, to discard the pooled requests when the metadata is refreshed.
+     */
+    @Override
+    public void setMetadata(MetadataManager metadata) {
+        super.setMetadata(metadata);
+        if (metadata != null && !metadata.getObservers().contains(this)) {
+            metadata.getObservers().add(this);
+        }
+        clear();
+    }
+
+    @Override
+    public void onEvent(MetadataProvider provider) {
+        clear();
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+        pools.clear();
+    }
+
+    /**
+     * Signs the request the same way the HTTP POST encoder would, and caches its DOM, which the encoder reuses.
+     *
+     * @param request    the request to sign.
+     * @param credential the signing credential.
+     * @throws SecurityException    if the signature can't be prepared with the credential.
+     * @throws MarshallingException if the request can't be marshalled.
+     * @throws SignatureException   if the request can't be signed.
+     */
+    protected void sign(AuthnRequest request, Credential credential) throws SecurityException, MarshallingException, SignatureException {
+        Signature signature = (Signature) Configuration.getBuilderFactory().getBuilder(Signature.DEFAULT_ELEMENT_NAME)
+                .buildObject(Signature.DEFAULT_ELEMENT_NAME);
+        signature.setSigningCredential(credential);
+        SecurityHelper.prepareSignatureParams(signature, credential, null, null);
+        request.setSignature(signature);
+        Configuration.getMarshallerFactory().getMarshaller(request).marshall(request);
+        Signer.signObject(signature);
+    }
+
+    private boolean isPreSignable(SAMLMessageContext context, SingleSignOnService bindingService) {
+        if (!SAMLConstants.SAML2_POST_BINDING_URI.equals(bindingService.getBinding())
+                || context.getLocalSigningCredential() == null) {
+            return false;
+        }
+        SPSSODescriptor spDescriptor = (SPSSODescriptor) context.getLocalEntityRoleMetadata();
+        IDPSSODescriptor idpDescriptor = (IDPSSODescriptor) context.getPeerEntityRoleMetadata();
+        return Boolean.TRUE.equals(spDescriptor.isAuthnRequestsSigned())
+                || Boolean.TRUE.equals(idpDescriptor.getWantAuthnRequestsSigned());
+    }
+
+    private void refill(Pool pool) {
+        if (pool.requests.size() >= poolSize || !pool.refilling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> fill(pool));
+        } catch (RejectedExecutionException e) {
+            pool.refilling.set(false);
+        }
+    }
+
+    private void fill(Pool pool) {
+        try {
+            while (pool.requests.size() < poolSize && pools.containsValue(pool)) {
+                pool.requests.addFirst(new PooledRequest(createSignedRequest(pool.template), clock.getAsLong()));
+            }
+        } catch (Exception e) {
+            logger.warn("Unable to pre-sign AuthnRequest, requests will be signed inline", e);
+        } finally {
+            pool.refilling.set(false);
+        }
+    }
+
+    private AuthnRequest createSignedRequest(Template template) throws Exception {
+        SAMLMessageContext context = new SAMLMessageContext();
+        context.setLocalEntityId(template.localEntityId);
+        AuthnRequest request = super.getAuthnRequest(context, template.options, template.assertionConsumer, template.bindingService);
+        sign(request, template.credential);
+        return request;
+    }
+
+    /**
+     * Drops expired requests, forgets pools not used for a while, and tops up the rest.
+     */
+    private void sweep() {
+        long now = clock.getAsLong();
+        pools.forEach((key, pool) -> {
+            pool.expire(now);
+            if (now - pool.lastUsed > maxAge * 10) {
+                pools.remove(key, pool);
+            } else {
+                refill(pool);
+            }
+        });
+    }
+
+    private final class Pool {
+        private final Template template;
+        private final Deque<PooledRequest> requests = new ConcurrentLinkedDeque<>();
+        private final AtomicBoolean refilling = new AtomicBoolean();
+        private volatile long lastUsed = clock.getAsLong();
+
+        Pool(Template template) {
+            this.template = template;
+        }
+
+        /**
+         * Newest request not older than the maximum age, older ones are discarded.
+         */
+        AuthnRequest poll(long now) {
+            lastUsed = now;
+            PooledRequest request;
+            while ((request = requests.pollFirst()) != null) {
+                if (now - request.createdAt < maxAge) {
+                    return request.request;
+                }
+            }
+            return null;
+        }
+
+        void expire(long now) {
+            requests.removeIf(request -> now - request.createdAt >= maxAge);
+        }
+    }
+
+    private static final class Template {
+        private final String localEntityId;
+        private final Credential credential;
+        private final WebSSOProfileOptions options;
+        private final AssertionConsumerService assertionConsumer;
+        private final SingleSignOnService bindingService;
+
+        Template(String localEntityId, Credential credential, WebSSOProfileOptions options,
+                 AssertionConsumerService assertionConsumer, SingleSignOnService bindingService) {
+            this.localEntityId = localEntityId;
+            this.credential = credential;
+            this.options = options;
+            this.assertionConsumer = assertionConsumer;
+            this.bindingService = bindingService;
+        }
+    }
+
+    private static final class PooledRequest {
+        private final AuthnRequest request;
+        private final long createdAt;
+
+        PooledRequest(AuthnRequest request, long createdAt) {
+            this.request = request;
+            this.createdAt = createdAt;
+        }
+    }
+}
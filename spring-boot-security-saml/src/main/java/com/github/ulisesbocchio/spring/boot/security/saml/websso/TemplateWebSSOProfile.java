@@ -0,0 +1,132 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.websso;
+
+import org.opensaml.Configuration;
+import org.opensaml.common.SAMLException;
+import org.opensaml.saml2.core.AuthnRequest;
+import org.opensaml.saml2.metadata.AssertionConsumerService;
+import org.opensaml.saml2.metadata.SingleSignOnService;
+import org.opensaml.saml2.metadata.provider.MetadataProvider;
+import org.opensaml.saml2.metadata.provider.MetadataProviderException;
+import org.opensaml.saml2.metadata.provider.ObservableMetadataProvider;
+import org.opensaml.xml.io.MarshallingException;
+import org.springframework.security.saml.context.SAMLMessageContext;
+import org.springframework.security.saml.metadata.MetadataManager;
+import org.springframework.security.saml.websso.WebSSOProfileImpl;
+import org.springframework.security.saml.websso.WebSSOProfileOptions;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * {@link WebSSOProfileImpl} that marshals the AuthnRequest of each IDP, SSO endpoint and profile options combination
+ * only once, and keeps its DOM as a template. Further AuthnRequests are still built as usual, which is cheap, but get
+ * a copy of the template DOM, with their own ID and IssueInstant, so the encoder doesn't marshal them again. Any
+ * change to a request drops its DOM, which is then marshalled as usual. The relay state is not part of the
+ * AuthnRequest and is sent as usual.
+ * <p>
+ * Since DOM implementations don't guarantee concurrent reads are safe, each template keeps copies of its DOM that are
+ * only read by one request at a time, so requests don't wait on each other; there are at most as many copies as
+ * concurrent requests for the same template. The templates are discarded when the {@link MetadataManager} set through
+ * {@link #setMetadata(MetadataManager)} refreshes its metadata.
+ * </p>
+ *
+ * @author Ulises Bocchio
+ */
+public class TemplateWebSSOProfile extends WebSSOProfileImpl implements ObservableMetadataProvider.Observer {
+
+    private static final int MAX_TEMPLATES = 256;
+
+    private final Map<AuthnRequestKey, Template> templates = new ConcurrentHashMap<>();
+
+    @Override
+    protected AuthnRequest getAuthnRequest(SAMLMessageContext context, WebSSOProfileOptions options,
+                                           AssertionConsumerService assertionConsumer,
+                                           SingleSignOnService bindingService) throws SAMLException, MetadataProviderException {
+        AuthnRequest request = super.getAuthnRequest(context, options, assertionConsumer, bindingService);
+        AuthnRequestKey key = AuthnRequestKey.of(context, options, assertionConsumer, bindingService);
+        Template template = templates.get(key);
+        if (template != null) {
+            request.setDOM(template.newElement(request));
+            return request;
+        }
+        if (templates.size() < MAX_TEMPLATES) {
+            try {
+                Element element = Configuration.getMarshallerFactory().getMarshaller(request).marshall(request);
+                templates.putIfAbsent(key, new Template((Document) element.getOwnerDocument().cloneNode(true)));
+            } catch (MarshallingException e) {
+                throw new SAMLException("Unable to create AuthnRequest template", e);
+            }
+        }
+        return request;
+    }
+
+    /**
+     * Also registers this profile, only once, to discard its templates when the metadata is refreshed.
+     */
+    @Override
+    public void setMetadata(MetadataManager metadata) {
+        super.setMetadata(metadata);
+        if (metadata != null && !metadata.getObservers().contains(this)) {
+            metadata.getObservers().add(this);
+        }
+        clear();
+    }
+
+    @Override
+    public void onEvent(MetadataProvider provider) {
+        clear();
+    }
+
+    /**
+     * Number of cached templates.
+     *
+     * @return the template count.
+     */
+    public int size() {
+        return templates.size();
+    }
+
+    /**
+     * Discards all the templates.
+     */
+    public void clear() {
+        templates.clear();
+    }
+
+    private static final class Template {
+        private final Document master;
+        private final Queue<Document> copies = new ConcurrentLinkedQueue<>();
+
+        Template(Document master) {
+            this.master = master;
+        }
+
+        /**
+         * A copy of the template DOM with the ID and IssueInstant of the given request, cloned from a copy no other
+         * request reads meanwhile. The master is only read, under its lock, to make a new copy when all of them are
+         * taken.
+         */
+        Element newElement(AuthnRequest request) {
+            Document copy = copies.poll();
+            if (copy == null) {
+                synchronized (master) {
+                    copy = (Document) master.cloneNode(true);
+                }
+            }
+            Element element;
+            try {
+                element = ((Document) copy.cloneNode(true)).getDocumentElement();
+            } finally {
+                copies.offer(copy);
+            }
+            element.setAttributeNS(null, AuthnRequest.ID_ATTRIB_NAME, request.getID());
+            element.setAttributeNS(null, AuthnRequest.ISSUE_INSTANT_ATTRIB_NAME,
+                    Configuration.getSAMLDateFormatter().print(request.getIssueInstant()));
+            return element;
+        }
+    }
+}
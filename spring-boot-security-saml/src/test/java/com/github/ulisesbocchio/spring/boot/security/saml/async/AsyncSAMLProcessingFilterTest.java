@@ -0,0 +1,177 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.async;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.authentication.AuthenticationFailureHandler;
+import org.springframework.security.web.authentication.AuthenticationSuccessHandler;
+import org.springframework.security.web.context.SecurityContextRepository;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+/**
+ * @author Ulises Bocchio
+ */
+public class AsyncSAMLProcessingFilterTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch processed = new CountDownLatch(1);
+    private final AtomicInteger completions = new AtomicInteger();
+    private ThreadPoolExecutor executor;
+    private AuthenticationSuccessHandler successHandler;
+    private AuthenticationFailureHandler failureHandler;
+    private SecurityContextRepository securityContextRepository;
+    private AsyncSAMLProcessingFilter filter;
+
+    @Before
+    public void setup() {
+        executor = BoundedExecutors.newBoundedExecutor("test", 1, 1);
+        successHandler = mock(AuthenticationSuccessHandler.class);
+        failureHandler = mock(AuthenticationFailureHandler.class);
+        securityContextRepository = mock(SecurityContextRepository.class);
+        filter = new AsyncSAMLProcessingFilter(executor, 1000) {
+            @Override
+            public Authentication attemptAuthentication(HttpServletRequest request, HttpServletResponse response) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                    return new TestingAuthenticationToken("user", "credentials", "ROLE_USER");
+                } catch (InterruptedException e) {
+                    throw new AuthenticationServiceException("Interrupted", e);
+                } finally {
+                    processed.countDown();
+                }
+            }
+        };
+        filter.setAuthenticationManager(mock(AuthenticationManager.class));
+        filter.setAuthenticationSuccessHandler(successHandler);
+        filter.setAuthenticationFailureHandler(failureHandler);
+        filter.setSecurityContextRepository(securityContextRepository);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        filter.destroy();
+    }
+
+    @Test
+    public void authenticated() throws Exception {
+        MockHttpServletRequest request = request();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        assertThat(request.isAsyncStarted()).isTrue();
+        listen(request);
+
+        release.countDown();
+        verify(successHandler, timeout(5000)).onAuthenticationSuccess(any(), any(), any(Authentication.class));
+        verify(securityContextRepository).saveContext(any(), any(), any());
+        waitForCompletion(request);
+        assertThat(completions.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void timeout_completesOnceAndDiscardsProcessing() throws Exception {
+        MockHttpServletRequest request = request();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        listen(request);
+
+        MockAsyncContext asyncContext = (MockAsyncContext) request.getAsyncContext();
+        for (AsyncListener listener : asyncContext.getListeners().toArray(new AsyncListener[0])) {
+            listener.onTimeout(new AsyncEvent(asyncContext, request, response));
+        }
+        assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        assertThat(request.isAsyncStarted()).isFalse();
+
+        assertThat(processed.await(5, TimeUnit.SECONDS)).isTrue();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        verifyZeroInteractions(successHandler, failureHandler, securityContextRepository);
+        assertThat(completions.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void rejected_processedSynchronously() throws Exception {
+        filter.destroy();
+        release.countDown();
+        MockHttpServletRequest request = request();
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        verify(successHandler).onAuthenticationSuccess(any(), any(), any(Authentication.class));
+        assertThat(request.isAsyncStarted()).isFalse();
+    }
+
+    @Test
+    public void notSsoRequest() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/other");
+        request.setAsyncSupported(true);
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+        assertThat(request.isAsyncStarted()).isFalse();
+        assertThat(chain.getRequest()).isSameAs(request);
+        verify(successHandler, never()).onAuthenticationSuccess(any(), any(), any(Authentication.class));
+    }
+
+    @Test
+    public void destroy_shutsDownExecutor() {
+        filter.destroy();
+        assertThat(executor.isShutdown()).isTrue();
+    }
+
+    private void listen(MockHttpServletRequest request) {
+        request.getAsyncContext().addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                completions.incrementAndGet();
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+    }
+
+    private void waitForCompletion(MockHttpServletRequest request) throws InterruptedException {
+        for (int i = 0; i < 500 && request.isAsyncStarted(); i++) {
+            Thread.sleep(10);
+        }
+        assertThat(request.isAsyncStarted()).isFalse();
+    }
+
+    private static MockHttpServletRequest request() {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/saml/SSO");
+        request.setServletPath("/saml/SSO");
+        request.setAsyncSupported(true);
+        return request;
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.async;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.saml.SAMLCredential;
+import org.springframework.security.saml.userdetails.SAMLUserDetailsService;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author Ulises Bocchio
+ */
+public class AsyncSAMLUserDetailsServiceAdapterTest {
+
+    private final SAMLCredential credential = mock(SAMLCredential.class);
+    private final SAMLUserDetailsService fallback = credential -> "fallback";
+    private ThreadPoolExecutor executor;
+
+    @Before
+    public void setup() {
+        executor = BoundedExecutors.newBoundedExecutor("test", 2, 2);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void loaded() {
+        AsyncSAMLUserDetailsServiceAdapter adapter = new AsyncSAMLUserDetailsServiceAdapter(
+                (credential, executor) -> CompletableFuture.supplyAsync(() -> "user", executor), executor, 1000, fallback);
+        assertThat(adapter.loadUserBySAML(credential)).isEqualTo("user");
+    }
+
+    @Test
+    public void timeout() {
+        CountDownLatch release = new CountDownLatch(1);
+        AsyncSAMLUserDetailsServiceAdapter adapter = new AsyncSAMLUserDetailsServiceAdapter(
+                (credential, executor) -> CompletableFuture.supplyAsync(() -> {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return "user";
+                }, executor), executor, 50, fallback);
+        try {
+            assertThat(adapter.loadUserBySAML(credential)).isEqualTo("fallback");
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void failed() {
+        AsyncSAMLUserDetailsServiceAdapter adapter = new AsyncSAMLUserDetailsServiceAdapter(
+                (credential, executor) -> CompletableFuture.supplyAsync(() -> {
+                    throw new IllegalStateException("user store down");
+                }, executor), executor, 1000, fallback);
+        assertThat(adapter.loadUserBySAML(credential)).isEqualTo("fallback");
+    }
+
+    @Test
+    public void userNotFound() {
+        AsyncSAMLUserDetailsServiceAdapter adapter = new AsyncSAMLUserDetailsServiceAdapter(
+                (credential, executor) -> CompletableFuture.supplyAsync(() -> {
+                    throw new UsernameNotFoundException("jdoe");
+                }, executor), executor, 1000, fallback);
+        try {
+            adapter.loadUserBySAML(credential);
+            fail("Expected UsernameNotFoundException");
+        } catch (UsernameNotFoundException e) {
+            assertThat(e).hasMessage("jdoe");
+        }
+    }
+
+    @Test
+    public void rejected() {
+        AsyncSAMLUserDetailsServiceAdapter adapter = new AsyncSAMLUserDetailsServiceAdapter(
+                (credential, executor) -> {
+                    throw new RejectedExecutionException("saturated");
+                }, executor, 1000, fallback);
+        assertThat(adapter.loadUserBySAML(credential)).isEqualTo("fallback");
+    }
+}
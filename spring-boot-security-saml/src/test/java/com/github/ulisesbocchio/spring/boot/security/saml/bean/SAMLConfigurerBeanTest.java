@@ -0,0 +1,94 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.bean;
+
+import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderBuilder;
+import com.github.ulisesbocchio.spring.boot.security.saml.startup.StartupTimings;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.saml.metadata.ExtendedMetadata;
+import org.springframework.security.saml.metadata.ExtendedMetadataDelegate;
+import org.springframework.security.saml.metadata.MetadataDisplayFilter;
+import org.springframework.security.saml.metadata.MetadataGeneratorFilter;
+import org.springframework.security.saml.metadata.MetadataManager;
+
+import javax.servlet.Filter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Ulises Bocchio
+ */
+public class SAMLConfigurerBeanTest {
+
+    private ServiceProviderBuilder builder;
+    private MetadataManager metadataManager;
+    private ExtendedMetadataDelegate provider;
+    private MetadataGeneratorFilter metadataGeneratorFilter;
+    private MetadataDisplayFilter metadataDisplayFilter;
+    private SAMLConfigurerBean configurerBean;
+
+    @Before
+    public void setup() throws Exception {
+        builder = mock(ServiceProviderBuilder.class);
+        metadataManager = mock(MetadataManager.class);
+        provider = mock(ExtendedMetadataDelegate.class);
+        metadataGeneratorFilter = mock(MetadataGeneratorFilter.class);
+        metadataDisplayFilter = mock(MetadataDisplayFilter.class);
+        when(builder.getSharedObject(MetadataManager.class)).thenReturn(metadataManager);
+        when(builder.getSharedObject(MetadataGeneratorFilter.class)).thenReturn(metadataGeneratorFilter);
+        when(builder.getSharedObject(MetadataDisplayFilter.class)).thenReturn(metadataDisplayFilter);
+        when(builder.getStartupTimings()).thenReturn(new StartupTimings());
+        when(metadataManager.getAvailableProviders()).thenReturn(Collections.singletonList(provider));
+        when(metadataManager.getSPEntityNames()).thenReturn(Collections.emptySet());
+        when(metadataManager.getIDPEntityNames()).thenReturn(Collections.emptySet());
+        configurerBean = new SAMLConfigurerBean(builder, mock(AuthenticationManager.class));
+    }
+
+    @Test
+    public void serviceProviderFilters_localServiceProvider() throws Exception {
+        when(metadataManager.getSPEntityNames()).thenReturn(new HashSet<>(Arrays.asList("remote-sp", "local-sp")));
+        when(metadataManager.getExtendedMetadata("remote-sp")).thenReturn(extendedMetadata(false));
+        when(metadataManager.getExtendedMetadata("local-sp")).thenReturn(extendedMetadata(true));
+
+        List<Filter> filters = configurerBean.serviceProviderFilters(builder);
+
+        assertThat(filters).containsExactly(metadataDisplayFilter);
+        verify(provider, never()).initialize();
+    }
+
+    @Test
+    public void serviceProviderFilters_noLocalServiceProvider() throws Exception {
+        when(metadataManager.getSPEntityNames()).thenReturn(Collections.singleton("remote-sp"));
+        when(metadataManager.getExtendedMetadata("remote-sp")).thenReturn(extendedMetadata(false));
+
+        List<Filter> filters = configurerBean.serviceProviderFilters(builder);
+
+        assertThat(filters).containsExactly(metadataGeneratorFilter, metadataDisplayFilter);
+        verify(provider, never()).initialize();
+    }
+
+    @Test
+    public void serviceProviderFilters_localIdentityProviderOnly() throws Exception {
+        when(metadataManager.getIDPEntityNames()).thenReturn(Collections.singleton("local-idp"));
+        when(metadataManager.getExtendedMetadata("local-idp")).thenReturn(extendedMetadata(true));
+
+        List<Filter> filters = configurerBean.serviceProviderFilters(builder);
+
+        assertThat(filters).containsExactly(metadataGeneratorFilter, metadataDisplayFilter);
+        verify(provider, never()).initialize();
+    }
+
+    private static ExtendedMetadata extendedMetadata(boolean local) {
+        ExtendedMetadata extendedMetadata = new ExtendedMetadata();
+        extendedMetadata.setLocal(local);
+        return extendedMetadata;
+    }
+}
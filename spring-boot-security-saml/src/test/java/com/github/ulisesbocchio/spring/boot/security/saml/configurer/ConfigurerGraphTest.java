@@ -0,0 +1,159 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.configurer;
+
+import com.github.ulisesbocchio.spring.boot.security.saml.configurer.builder.ExtendedMetadataConfigurer;
+import com.github.ulisesbocchio.spring.boot.security.saml.configurer.builder.KeyManagerConfigurer;
+import com.github.ulisesbocchio.spring.boot.security.saml.configurer.builder.LocalExtendedMetadataConfigurer;
+import com.github.ulisesbocchio.spring.boot.security.saml.configurer.builder.SAMLProcessorConfigurer;
+import com.github.ulisesbocchio.spring.boot.security.saml.configurer.builder.TLSConfigurer;
+import com.github.ulisesbocchio.spring.boot.security.saml.configurer.builder.TenantsConfigurer;
+import com.github.ulisesbocchio.spring.boot.security.saml.configurer.builder.WebSSOProfileConsumerConfigurer;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.SAMLSSOProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.TenantProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.startup.StartupTimings;
+import com.github.ulisesbocchio.spring.boot.security.saml.tenant.ServiceProviderTenants;
+import com.github.ulisesbocchio.spring.boot.security.saml.tenant.TenantKeyManager;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opensaml.DefaultBootstrap;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.security.config.annotation.SecurityConfigurerAdapter;
+import org.springframework.security.saml.key.JKSKeyManager;
+import org.springframework.security.saml.key.KeyManager;
+import org.springframework.security.saml.trust.httpclient.TLSProtocolConfigurer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author Ulises Bocchio
+ */
+public class ConfigurerGraphTest {
+
+    private final List<String> configured = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeClass
+    public static void bootstrap() throws Exception {
+        DefaultBootstrap.bootstrap();
+    }
+
+    @Test
+    public void dependencies() {
+        assertThat(ConfigurerGraph.dependencies(TLSConfigurer.class))
+                .containsExactly(KeyManagerConfigurer.class, TenantsConfigurer.class);
+        assertThat(ConfigurerGraph.dependencies(mock(TenantsConfigurer.class).getClass()))
+                .containsExactly(KeyManagerConfigurer.class);
+        assertThat(ConfigurerGraph.dependencies(SAMLProcessorConfigurer.class))
+                .containsExactly(WebSSOProfileConsumerConfigurer.class);
+        assertThat(ConfigurerGraph.dependencies(KeyManagerConfigurer.class)).isEmpty();
+    }
+
+    @Test
+    public void configure_sequential() throws Exception {
+        List<SecurityConfigurerAdapter<Void, ServiceProviderBuilder>> configurers = Arrays.asList(
+                configurer(SAMLProcessorConfigurer.class, "processor", 0),
+                configurer(KeyManagerConfigurer.class, "keyManager", 0),
+                configurer(TLSConfigurer.class, "tls", 0));
+        Map<String, Long> timings = ConfigurerGraph.configure(new ServiceProviderBuilder(), configurers, false, new StartupTimings());
+        assertThat(configured).containsExactly("processor", "keyManager", "tls");
+        assertThat(timings).hasSize(3);
+    }
+
+    @Test
+    public void configure_parallel_respectsDependencies() throws Exception {
+        List<SecurityConfigurerAdapter<Void, ServiceProviderBuilder>> configurers = Arrays.asList(
+                configurer(KeyManagerConfigurer.class, "keyManager", 100),
+                configurer(TenantsConfigurer.class, "tenants", 50),
+                configurer(SAMLProcessorConfigurer.class, "processor", 0),
+                configurer(TLSConfigurer.class, "tls", 0));
+        Map<String, Long> timings = ConfigurerGraph.configure(new ServiceProviderBuilder(), configurers, true, new StartupTimings());
+        assertThat(configured).containsExactlyInAnyOrder("keyManager", "tenants", "processor", "tls");
+        assertThat(configured.indexOf("keyManager")).isLessThan(configured.indexOf("tenants"));
+        assertThat(configured.indexOf("tenants")).isLessThan(configured.indexOf("tls"));
+        assertThat(timings.keySet()).containsExactly(configurers.stream()
+                .map(configurer -> configurer.getClass().getSimpleName())
+                .toArray(String[]::new));
+        assertThat(timings.get(configurers.get(0).getClass().getSimpleName())).isGreaterThanOrEqualTo(100L);
+    }
+
+    @Test
+    public void configure_parallel_propagatesException() throws Exception {
+        KeyManagerConfigurer failing = mock(KeyManagerConfigurer.class);
+        doThrow(new IllegalStateException("boom")).when(failing).configure(any());
+        List<SecurityConfigurerAdapter<Void, ServiceProviderBuilder>> configurers = Arrays.asList(
+                failing, configurer(SAMLProcessorConfigurer.class, "processor", 0));
+        assertThatThrownBy(() -> ConfigurerGraph.configure(new ServiceProviderBuilder(), configurers, true, new StartupTimings()))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("boom");
+    }
+
+    @Test
+    public void configure_parallel_sameSharedObjectsAsSequential() throws Exception {
+        ServiceProviderBuilder sequential = configuredBuilder(false);
+        ServiceProviderBuilder parallel = configuredBuilder(true);
+        assertThat(sharedObjectTypes(parallel)).isEqualTo(sharedObjectTypes(sequential));
+        for (ServiceProviderBuilder builder : Arrays.asList(sequential, parallel)) {
+            KeyManager keyManager = builder.getSharedObject(KeyManager.class);
+            assertThat(keyManager).isInstanceOf(TenantKeyManager.class);
+            assertThat(((TenantKeyManager) keyManager).getDefaultKeyManager()).isInstanceOf(JKSKeyManager.class);
+            assertThat(((TenantKeyManager) keyManager).getTenantKeyManagers()).hasSize(1);
+            assertThat(builder.getSharedObject(TLSProtocolConfigurer.class)).isNotNull();
+            assertThat(builder.getSharedObject(ServiceProviderTenants.class).getTenants()).hasSize(1);
+        }
+    }
+
+    private ServiceProviderBuilder configuredBuilder(boolean parallel) throws Exception {
+        SAMLSSOProperties properties = new SAMLSSOProperties();
+        properties.getKeyManager().setPrivateKeyDerLocation("classpath:/localhost.key.der");
+        properties.getKeyManager().setPublicKeyPemLocation("classpath:/localhost.cert");
+        TenantProperties acme = new TenantProperties();
+        acme.setEntityId("urn:acme");
+        acme.setEntityBaseUrl("https://acme.example.com");
+        acme.setPrivateKeyDerLocation("classpath:/localhost.key.der");
+        acme.setPublicKeyPemLocation("classpath:/localhost.cert");
+        properties.getTenants().put("acme", acme);
+        ServiceProviderBuilder builder = new ServiceProviderBuilder();
+        builder.setSharedObject(SAMLSSOProperties.class, properties);
+        builder.setSharedObject(ResourceLoader.class, new DefaultResourceLoader());
+        builder.setSharedObject(ServiceProviderEndpoints.class, new ServiceProviderEndpoints());
+        //Listed in builder order, the tenants and TLS configurers read the key manager set by the ones before them.
+        List<SecurityConfigurerAdapter<Void, ServiceProviderBuilder>> configurers = Arrays.asList(
+                new KeyManagerConfigurer(),
+                new TenantsConfigurer(),
+                new TLSConfigurer(),
+                new ExtendedMetadataConfigurer(),
+                new LocalExtendedMetadataConfigurer());
+        for (SecurityConfigurerAdapter<Void, ServiceProviderBuilder> configurer : configurers) {
+            configurer.init(builder);
+        }
+        ConfigurerGraph.configure(builder, configurers, parallel, new StartupTimings());
+        return builder;
+    }
+
+    private static Map<Class<?>, Class<?>> sharedObjectTypes(ServiceProviderBuilder builder) {
+        return builder.getSharedObjects().entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().getClass()));
+    }
+
+    private <C extends SecurityConfigurerAdapter<Void, ServiceProviderBuilder>> C configurer(Class<C> type, String name,
+                                                                                            long millis) throws Exception {
+        C configurer = mock(type);
+        doAnswer(invocation -> {
+            Thread.sleep(millis);
+            configured.add(name);
+            return null;
+        }).when(configurer).configure(any());
+        return configurer;
+    }
+}
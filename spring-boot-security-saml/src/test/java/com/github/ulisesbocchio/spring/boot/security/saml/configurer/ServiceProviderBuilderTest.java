@@ -9,6 +9,11 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
 /**
  * @author Ulises Bocchio
  */
@@ -59,4 +64,19 @@ public class ServiceProviderBuilderTest {
 
     }
 
+    @Test
+    public void destroy_registeredDisposables() throws Exception {
+        ServiceProviderBuilder builder = new ServiceProviderBuilder();
+        List<String> destroyed = new ArrayList<>();
+        builder.registerDisposable(() -> destroyed.add("first"));
+        builder.registerDisposable(() -> {
+            destroyed.add("second");
+            throw new IllegalStateException("failed");
+        });
+        builder.registerDisposable(() -> destroyed.add("third"));
+        builder.destroy();
+        builder.destroy();
+        assertThat(destroyed).containsExactly("third", "second", "first");
+    }
+
 }
\ No newline at end of file
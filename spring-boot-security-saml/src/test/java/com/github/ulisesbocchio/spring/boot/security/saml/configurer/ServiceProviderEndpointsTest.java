@@ -42,6 +42,23 @@ public class ServiceProviderEndpointsTest {
         assertThat(matcher.matches(mockRequest("/sanity-check"))).isFalse();
     }
 
+    @Test
+    public void aliasMatchers() throws Exception {
+        ServiceProviderEndpoints endpoints = new ServiceProviderEndpoints();
+        endpoints.setDefaultTargetURL("/default");
+        endpoints.setMetadataURL("/metadata");
+        endpoints.setSsoProcessingURL("/sso");
+        endpoints.getAliases().add("acme");
+
+        RequestMatcher matcher = endpoints.getRequestMatcher();
+        assertThat(matcher.matches(mockRequest("/sso"))).isTrue();
+        assertThat(matcher.matches(mockRequest("/sso/alias/acme"))).isTrue();
+        assertThat(matcher.matches(mockRequest("/metadata/alias/acme"))).isTrue();
+
+        assertThat(matcher.matches(mockRequest("/sso/alias/other"))).isFalse();
+        assertThat(matcher.matches(mockRequest("/default/alias/acme"))).isFalse();
+    }
+
     protected HttpServletRequest mockRequest(String path) {
         HttpServletRequest failureRequest = mock(HttpServletRequest.class);
         when(failureRequest.getMethod()).thenReturn("GET");
@@ -1,8 +1,17 @@
 package com.github.ulisesbocchio.spring.boot.security.saml.configurer.builder;
 
+import com.github.ulisesbocchio.spring.boot.security.saml.async.AsyncSAMLUserDetailsService;
+import com.github.ulisesbocchio.spring.boot.security.saml.async.AsyncSAMLUserDetailsServiceAdapter;
 import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderBuilder;
 import com.github.ulisesbocchio.spring.boot.security.saml.properties.SAMLSSOProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.AsyncUserDetailsProperties;
 import com.github.ulisesbocchio.spring.boot.security.saml.properties.AuthenticationProviderProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.AuthorityMappingProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.AuthorityMappingRuleProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.UserDetailsCacheProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.user.CachingSAMLUserDetailsService;
+import com.github.ulisesbocchio.spring.boot.security.saml.user.CompactSAMLAuthenticationProvider;
+import com.github.ulisesbocchio.spring.boot.security.saml.user.SAMLAuthorityMapper;
 import com.github.ulisesbocchio.spring.boot.security.saml.user.SimpleSAMLUserDetailsService;
 import org.junit.Before;
 import org.junit.Test;
@@ -11,6 +20,9 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.security.saml.SAMLAuthenticationProvider;
 
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
@@ -24,14 +36,17 @@ public class AuthenticationProviderConfigurerTest {
 
     private ServiceProviderBuilder builder;
     private AuthenticationProviderProperties authProviderProperties;
+    private SAMLSSOProperties properties;
 
     @Before
     public void setup() {
-        SAMLSSOProperties properties = mock(SAMLSSOProperties.class);
+        properties = mock(SAMLSSOProperties.class);
         authProviderProperties = mock(AuthenticationProviderProperties.class);
         when(properties.getAuthenticationProvider()).thenReturn(authProviderProperties);
         when(authProviderProperties.isExcludeCredential()).thenReturn(false);
         when(authProviderProperties.isForcePrincipalAsString()).thenReturn(false);
+        when(authProviderProperties.isCompactPrincipal()).thenReturn(false);
+        when(authProviderProperties.getUserDetailsCache()).thenReturn(new UserDetailsCacheProperties());
         builder = mock(ServiceProviderBuilder.class);
         when(builder.getSharedObject(SAMLAuthenticationProvider.class)).thenReturn(null);
         when(builder.getSharedObject(SAMLSSOProperties.class)).thenReturn(properties);
@@ -79,7 +94,9 @@ public class AuthenticationProviderConfigurerTest {
         AuthenticationProviderConfigurer configurer = new AuthenticationProviderConfigurer();
         configurer
                 .excludeCredential(true)
-                .forcePrincipalAsString(false);
+                .forcePrincipalAsString(false)
+                .compactPrincipal(false)
+                .cacheUserDetails(false);
         configurer.init(builder);
         configurer.configure(builder);
         ArgumentCaptor<SAMLAuthenticationProvider> providerCaptor = ArgumentCaptor.forClass(SAMLAuthenticationProvider.class);
@@ -101,10 +118,114 @@ public class AuthenticationProviderConfigurerTest {
         verify(builder).setSharedObject(eq(SAMLAuthenticationProvider.class), providerCaptor.capture());
         verify(authProviderProperties).isExcludeCredential();
         verify(authProviderProperties).isForcePrincipalAsString();
+        verify(authProviderProperties).isCompactPrincipal();
         assertThat(providerCaptor.getValue()).isNotNull();
         SAMLAuthenticationProvider authenticationProvider = providerCaptor.getValue();
         assertThat(authenticationProvider.isExcludeCredential()).isFalse();
         assertThat(authenticationProvider.isForcePrincipalAsString()).isFalse();
         assertThat(authenticationProvider.getUserDetails()).isExactlyInstanceOf(SimpleSAMLUserDetailsService.class);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testArguments_compactPrincipal() throws Exception {
+        AuthenticationProviderConfigurer configurer = new AuthenticationProviderConfigurer();
+        configurer
+                .excludeCredential(false)
+                .forcePrincipalAsString(false)
+                .compactPrincipal(true)
+                .cacheUserDetails(false);
+        configurer.init(builder);
+        configurer.configure(builder);
+        ArgumentCaptor<SAMLAuthenticationProvider> providerCaptor = ArgumentCaptor.forClass(SAMLAuthenticationProvider.class);
+        verify(builder).setSharedObject(eq(SAMLAuthenticationProvider.class), providerCaptor.capture());
+        verifyZeroInteractions(authProviderProperties);
+        SAMLAuthenticationProvider authenticationProvider = providerCaptor.getValue();
+        assertThat(authenticationProvider).isExactlyInstanceOf(CompactSAMLAuthenticationProvider.class);
+        assertThat(authenticationProvider.isExcludeCredential()).isFalse();
+        assertThat(authenticationProvider.getUserDetails()).isExactlyInstanceOf(SimpleSAMLUserDetailsService.class);
+    }
+
+    @Test
+    public void testProperties_compactPrincipal() throws Exception {
+        when(authProviderProperties.isCompactPrincipal()).thenReturn(true);
+        when(authProviderProperties.isExcludeCredential()).thenReturn(true);
+        AuthenticationProviderConfigurer configurer = new AuthenticationProviderConfigurer();
+        configurer.init(builder);
+        configurer.configure(builder);
+        ArgumentCaptor<SAMLAuthenticationProvider> providerCaptor = ArgumentCaptor.forClass(SAMLAuthenticationProvider.class);
+        verify(builder).setSharedObject(eq(SAMLAuthenticationProvider.class), providerCaptor.capture());
+        verify(authProviderProperties).isCompactPrincipal();
+        SAMLAuthenticationProvider authenticationProvider = providerCaptor.getValue();
+        assertThat(authenticationProvider).isExactlyInstanceOf(CompactSAMLAuthenticationProvider.class);
+        assertThat(authenticationProvider.isExcludeCredential()).isTrue();
+    }
+
+    @Test
+    public void testProperties_authorityMapping() throws Exception {
+        AuthorityMappingRuleProperties rule = new AuthorityMappingRuleProperties();
+        rule.setAttribute("groups");
+        rule.setEquals("admin");
+        rule.setAuthorities(Collections.singletonList("ROLE_ADMIN"));
+        AuthorityMappingProperties authorityMapping = new AuthorityMappingProperties();
+        authorityMapping.getRules().add(rule);
+        when(properties.getAuthorityMapping()).thenReturn(authorityMapping);
+        AuthenticationProviderConfigurer configurer = new AuthenticationProviderConfigurer();
+        configurer.init(builder);
+        configurer.configure(builder);
+        ArgumentCaptor<SAMLAuthenticationProvider> providerCaptor = ArgumentCaptor.forClass(SAMLAuthenticationProvider.class);
+        verify(builder).setSharedObject(eq(SAMLAuthenticationProvider.class), providerCaptor.capture());
+        SAMLAuthenticationProvider authenticationProvider = providerCaptor.getValue();
+        assertThat(authenticationProvider.getUserDetails()).isExactlyInstanceOf(SimpleSAMLUserDetailsService.class);
+        assertThat(((SimpleSAMLUserDetailsService) authenticationProvider.getUserDetails()).getAuthorityMapper()).isNotNull();
+    }
+
+    @Test
+    public void testArguments_authorityMapper() throws Exception {
+        SAMLAuthorityMapper authorityMapper = new SAMLAuthorityMapper(new AuthorityMappingProperties());
+        AuthenticationProviderConfigurer configurer = new AuthenticationProviderConfigurer();
+        configurer.authorityMapper(authorityMapper);
+        configurer.init(builder);
+        configurer.configure(builder);
+        ArgumentCaptor<SAMLAuthenticationProvider> providerCaptor = ArgumentCaptor.forClass(SAMLAuthenticationProvider.class);
+        verify(builder).setSharedObject(eq(SAMLAuthenticationProvider.class), providerCaptor.capture());
+        SimpleSAMLUserDetailsService userDetailsService = (SimpleSAMLUserDetailsService) providerCaptor.getValue().getUserDetails();
+        assertThat(userDetailsService.getAuthorityMapper()).isSameAs(authorityMapper);
+    }
+
+    @Test
+    public void testProperties_userDetailsCache() throws Exception {
+        UserDetailsCacheProperties cacheProperties = new UserDetailsCacheProperties();
+        cacheProperties.setEnabled(true);
+        when(authProviderProperties.getUserDetailsCache()).thenReturn(cacheProperties);
+        AuthenticationProviderConfigurer configurer = new AuthenticationProviderConfigurer();
+        configurer.init(builder);
+        configurer.configure(builder);
+        ArgumentCaptor<SAMLAuthenticationProvider> providerCaptor = ArgumentCaptor.forClass(SAMLAuthenticationProvider.class);
+        verify(builder).setSharedObject(eq(SAMLAuthenticationProvider.class), providerCaptor.capture());
+        assertThat(providerCaptor.getValue().getUserDetails()).isExactlyInstanceOf(CachingSAMLUserDetailsService.class);
+        CachingSAMLUserDetailsService userDetailsService = (CachingSAMLUserDetailsService) providerCaptor.getValue().getUserDetails();
+        assertThat(userDetailsService.getDelegate()).isExactlyInstanceOf(SimpleSAMLUserDetailsService.class);
+    }
+
+    @Test
+    public void testArguments_asyncUserDetailsService() throws Exception {
+        AsyncUserDetailsProperties asyncProperties = new AsyncUserDetailsProperties();
+        asyncProperties.setTimeout(1000);
+        when(authProviderProperties.getAsyncUserDetails()).thenReturn(asyncProperties);
+        AsyncSAMLUserDetailsService asyncUserDetailsService = (credential, executor) -> CompletableFuture.completedFuture("user");
+        AuthenticationProviderConfigurer configurer = new AuthenticationProviderConfigurer();
+        configurer.asyncUserDetailsService(asyncUserDetailsService);
+        configurer.init(builder);
+        configurer.configure(builder);
+        ArgumentCaptor<AsyncSAMLUserDetailsServiceAdapter> adapterCaptor = ArgumentCaptor.forClass(AsyncSAMLUserDetailsServiceAdapter.class);
+        verify(builder).setSharedObject(eq(AsyncSAMLUserDetailsServiceAdapter.class), adapterCaptor.capture());
+        AsyncSAMLUserDetailsServiceAdapter adapter = adapterCaptor.getValue();
+        assertThat(adapter.getDelegate()).isSameAs(asyncUserDetailsService);
+        assertThat(adapter.getTimeout()).isEqualTo(1000);
+        assertThat(adapter.getFallback()).isExactlyInstanceOf(SimpleSAMLUserDetailsService.class);
+        ArgumentCaptor<SAMLAuthenticationProvider> providerCaptor = ArgumentCaptor.forClass(SAMLAuthenticationProvider.class);
+        verify(builder).setSharedObject(eq(SAMLAuthenticationProvider.class), providerCaptor.capture());
+        assertThat(providerCaptor.getValue().getUserDetails()).isSameAs(adapter);
+        verify(builder).registerDisposable(adapter);
+    }
+}
@@ -123,6 +123,24 @@ public class KeyManagerConfigurerTest {
         assertThat(keyManager.getDefaultCredentialName()).isEqualTo("default");
     }
 
+    @Test
+    public void testArguments_keystore_location_pkcs12() throws Exception {
+        KeyManagerConfigurer configurer = new KeyManagerConfigurer();
+        configurer
+                .storeLocation("classpath:localhost.p12")
+                .storePass("password")
+                .defaultKey("localhost")
+                .keyPassword("localhost", "password");
+        configurer.init(builder);
+        configurer.configure(builder);
+        ArgumentCaptor<KeyManager> providerCaptor = ArgumentCaptor.forClass(KeyManager.class);
+        verify(builder).setSharedObject(eq(KeyManager.class), providerCaptor.capture());
+        verify(keyManagerProperties).getStoreType();
+        KeyManager keyManager = providerCaptor.getValue();
+        assertThat(keyManager.getAvailableCredentials()).containsExactly("localhost");
+        assertThat(keyManager.getDefaultCredentialName()).isEqualTo("localhost");
+    }
+
     @Test
     public void testArguments_der_and_pem() throws Exception {
         KeyManagerConfigurer configurer = new KeyManagerConfigurer();
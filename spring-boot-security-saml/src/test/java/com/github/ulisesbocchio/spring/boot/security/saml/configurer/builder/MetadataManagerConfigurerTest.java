@@ -5,6 +5,7 @@ import com.github.ulisesbocchio.spring.boot.security.saml.properties.ExtendedMet
 import com.github.ulisesbocchio.spring.boot.security.saml.properties.IdentityProvidersProperties;
 import com.github.ulisesbocchio.spring.boot.security.saml.properties.MetadataManagerProperties;
 import com.github.ulisesbocchio.spring.boot.security.saml.properties.SAMLSSOProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.trust.CRLCache;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
@@ -287,4 +288,41 @@ public class MetadataManagerConfigurerTest {
         verify(delegate).setMetadataFilter(eq(metadataFilter));
     }
 
-}
\ No newline at end of file
+
+    @Test
+    public void configure_revocationCache() throws Exception {
+        metadataManagerProperties.getRevocationCache().setEnabled(true);
+        MetadataManagerConfigurer configurer = spy(new MetadataManagerConfigurer());
+        CRLCache crlCache = mock(CRLCache.class);
+        doReturn(crlCache).when(configurer).createDefaultCRLCache(any());
+        CachingMetadataManager metadataManager = mock(CachingMetadataManager.class);
+        doReturn(metadataManager).when(configurer).createRevocationCachingMetadataManager(any());
+        configurer.setBuilder(builder);
+        configurer.init(builder);
+        configurer.configure(builder);
+        verify(configurer, never()).createDefaultMetadataManager();
+        verify(configurer).createDefaultCRLCache(eq(metadataManagerProperties.getRevocationCache()));
+        verify(configurer).createRevocationCachingMetadataManager(eq(crlCache));
+        verify(builder).setSharedObject(eq(CRLCache.class), eq(crlCache));
+        verify(builder).registerDisposable(eq(crlCache));
+        verify(builder).setSharedObject(eq(MetadataManager.class), eq(metadataManager));
+        verify(metadataManager).setDefaultIDP(eq(metadataManagerProperties.getDefaultIdp()));
+        verify(metadataManager).setRefreshCheckInterval(eq(metadataManagerProperties.getRefreshCheckInterval()));
+    }
+
+    @Test
+    public void configure_revocationCache_dsl() throws Exception {
+        metadataManagerProperties.getRevocationCache().setEnabled(true);
+        MetadataManagerConfigurer configurer = spy(new MetadataManagerConfigurer());
+        CachingMetadataManager metadataManager = mock(CachingMetadataManager.class);
+        when(configurer.createDefaultMetadataManager()).thenReturn(metadataManager);
+        configurer.revocationCache(false);
+        configurer.setBuilder(builder);
+        configurer.init(builder);
+        configurer.configure(builder);
+        verify(configurer, never()).createDefaultCRLCache(any());
+        verify(configurer, never()).createRevocationCachingMetadataManager(any());
+        verify(builder, never()).setSharedObject(eq(CRLCache.class), any());
+        verify(builder).setSharedObject(eq(MetadataManager.class), eq(metadataManager));
+    }
+}
@@ -1,16 +1,25 @@
 package com.github.ulisesbocchio.spring.boot.security.saml.configurer.builder;
 
 import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderBuilder;
+import com.github.ulisesbocchio.spring.boot.security.saml.context.CachingSAMLContextProvider;
+import com.github.ulisesbocchio.spring.boot.security.saml.context.LocalEntityCache;
 import com.github.ulisesbocchio.spring.boot.security.saml.properties.*;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.opensaml.xml.parse.ParserPool;
 import org.springframework.core.io.DefaultResourceLoader;
 import org.springframework.core.io.ResourceLoader;
+import com.github.ulisesbocchio.spring.boot.security.saml.storage.CookieSAMLMessageStorageFactory;
+import com.github.ulisesbocchio.spring.boot.security.saml.trust.SignatureTrustCache;
 import org.springframework.security.saml.context.SAMLContextProvider;
+import org.springframework.security.saml.context.SAMLContextProviderImpl;
+import org.springframework.security.saml.storage.SAMLMessageStorageFactory;
 import org.springframework.security.saml.metadata.ExtendedMetadata;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -76,4 +85,101 @@ public class SAMLContextProviderConfigurerTest {
         verifyZeroInteractions( provider);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void configure_statelessStorage() throws Exception {
+        contextProviderProperties.getStatelessStorage().setEnabled(true);
+        contextProviderProperties.getStatelessStorage().setSecret("MDEyMzQ1Njc4OWFiY2RlZg==");
+        SAMLContextProviderConfigurer configurer = spy(new SAMLContextProviderConfigurer());
+        SAMLContextProviderImpl provider = spy(new SAMLContextProviderImpl());
+        when(configurer.createDefaultSamlContextProvider()).thenReturn(provider);
+        configurer.init(builder);
+        configurer.configure(builder);
+        verify(provider).setStorageFactory(isA(CookieSAMLMessageStorageFactory.class));
+        verify(builder).setSharedObject(eq(SAMLMessageStorageFactory.class), isA(CookieSAMLMessageStorageFactory.class));
+        verify(builder).setSharedObject(SAMLContextProvider.class, provider);
+    }
+
+    @Test
+    public void configure_customStorageFactory() throws Exception {
+        SAMLMessageStorageFactory storageFactory = mock(SAMLMessageStorageFactory.class);
+        SAMLContextProviderConfigurer configurer = spy(new SAMLContextProviderConfigurer());
+        SAMLContextProviderImpl provider = spy(new SAMLContextProviderImpl());
+        when(configurer.createDefaultSamlContextProvider()).thenReturn(provider);
+        configurer.messageStorageFactory(storageFactory)
+                .statelessMessageStorage(true);
+        configurer.init(builder);
+        configurer.configure(builder);
+        verify(configurer, never()).createDefaultStatelessStorageFactory(any());
+        verify(provider).setStorageFactory(storageFactory);
+        verify(builder).setSharedObject(SAMLMessageStorageFactory.class, storageFactory);
+    }
+
+    @Test
+    public void configure_noStatelessStorage() throws Exception {
+        SAMLContextProviderConfigurer configurer = spy(new SAMLContextProviderConfigurer());
+        configurer.init(builder);
+        configurer.configure(builder);
+        verify(configurer, never()).createDefaultStatelessStorageFactory(any());
+        verify(builder, never()).setSharedObject(eq(SAMLMessageStorageFactory.class), any());
+        assertThat(contextProviderProperties.getStatelessStorage().isEnabled()).isFalse();
+    }
+
+    @Test
+    public void configure_signatureTrustCache() throws Exception {
+        contextProviderProperties.getTrustCache().setEnabled(true);
+        SAMLContextProviderConfigurer configurer = spy(new SAMLContextProviderConfigurer());
+        configurer.init(builder);
+        configurer.configure(builder);
+        verify(configurer, never()).createDefaultSamlContextProvider();
+        verify(configurer).createCachingSamlContextProvider();
+        verify(configurer).createDefaultSignatureTrustCache(contextProviderProperties.getTrustCache());
+        ArgumentCaptor<SAMLContextProvider> providerCaptor = ArgumentCaptor.forClass(SAMLContextProvider.class);
+        verify(builder).setSharedObject(eq(SAMLContextProvider.class), providerCaptor.capture());
+        assertThat(providerCaptor.getValue()).isInstanceOf(CachingSAMLContextProvider.class);
+        SignatureTrustCache trustCache = ((CachingSAMLContextProvider) providerCaptor.getValue()).getSignatureTrustCache();
+        assertThat(trustCache).isNotNull();
+        verify(builder).setSharedObject(SignatureTrustCache.class, trustCache);
+    }
+
+    @Test
+    public void configure_signatureTrustCache_dsl() throws Exception {
+        contextProviderProperties.getTrustCache().setEnabled(true);
+        SAMLContextProviderConfigurer configurer = spy(new SAMLContextProviderConfigurer());
+        configurer.signatureTrustCache(false);
+        configurer.init(builder);
+        configurer.configure(builder);
+        verify(configurer, never()).createCachingSamlContextProvider();
+        verify(configurer).createDefaultSamlContextProvider();
+        verify(builder, never()).setSharedObject(eq(SignatureTrustCache.class), any());
+    }
+
+    @Test
+    public void configure_localEntityCache() throws Exception {
+        contextProviderProperties.setLocalEntityCache(true);
+        SAMLContextProviderConfigurer configurer = spy(new SAMLContextProviderConfigurer());
+        configurer.init(builder);
+        configurer.configure(builder);
+        verify(configurer, never()).createDefaultSamlContextProvider();
+        verify(configurer, never()).createDefaultSignatureTrustCache(any());
+        verify(configurer).createDefaultLocalEntityCache();
+        ArgumentCaptor<SAMLContextProvider> providerCaptor = ArgumentCaptor.forClass(SAMLContextProvider.class);
+        verify(builder).setSharedObject(eq(SAMLContextProvider.class), providerCaptor.capture());
+        assertThat(providerCaptor.getValue()).isInstanceOf(CachingSAMLContextProvider.class);
+        CachingSAMLContextProvider provider = (CachingSAMLContextProvider) providerCaptor.getValue();
+        assertThat(provider.getSignatureTrustCache()).isNull();
+        assertThat(provider.getLocalEntityCache()).isNotNull();
+        verify(builder).setSharedObject(LocalEntityCache.class, provider.getLocalEntityCache());
+    }
+
+    @Test
+    public void configure_localEntityCache_dsl() throws Exception {
+        contextProviderProperties.setLocalEntityCache(true);
+        SAMLContextProviderConfigurer configurer = spy(new SAMLContextProviderConfigurer());
+        configurer.localEntityCache(false);
+        configurer.init(builder);
+        configurer.configure(builder);
+        verify(configurer, never()).createCachingSamlContextProvider();
+        verify(configurer).createDefaultSamlContextProvider();
+        verify(builder, never()).setSharedObject(eq(LocalEntityCache.class), any());
+    }
+}
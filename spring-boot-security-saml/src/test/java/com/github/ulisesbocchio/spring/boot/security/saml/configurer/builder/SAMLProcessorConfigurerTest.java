@@ -1,14 +1,28 @@
 package com.github.ulisesbocchio.spring.boot.security.saml.configurer.builder;
 
 import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderBuilder;
+import com.github.ulisesbocchio.spring.boot.security.saml.processor.LazyMessageEncoder;
+import com.github.ulisesbocchio.spring.boot.security.saml.processor.LimitedHTTPPostDecoder;
+import com.github.ulisesbocchio.spring.boot.security.saml.processor.LimitedHTTPRedirectDeflateDecoder;
+import com.github.ulisesbocchio.spring.boot.security.saml.processor.PooledHTTPRedirectDeflateEncoder;
+import com.github.ulisesbocchio.spring.boot.security.saml.processor.PooledHttpConnectionManager;
+import com.github.ulisesbocchio.spring.boot.security.saml.processor.SecurityPolicySAMLProcessor;
+import com.github.ulisesbocchio.spring.boot.security.saml.processor.StaticHTTPPostEncoder;
+import com.github.ulisesbocchio.spring.boot.security.saml.processor.UrlConnectionArtifactResolutionProfile;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.HttpClientProperties;
 import com.github.ulisesbocchio.spring.boot.security.saml.properties.SAMLSSOProperties;
 import com.github.ulisesbocchio.spring.boot.security.saml.properties.SAMLProcessorProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.websso.FailFastWebSSOProfileConsumer;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import org.assertj.core.api.Assertions;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.opensaml.xml.parse.ParserPool;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.security.saml.processor.*;
+import org.springframework.security.saml.websso.ArtifactResolutionProfile;
+import org.springframework.security.saml.websso.WebSSOProfileConsumer;
 
 import java.util.List;
 
@@ -96,6 +110,20 @@ public class SAMLProcessorConfigurerTest {
         Assertions.assertThat(bindings).contains(artifactBinding, paosBinding, postBinding, redirectBinding, soapBinding);
     }
 
+    @Test
+    public void configure_redirectEncoderDisposable() throws Exception {
+        samlProcessorConfig.setPost(false);
+        samlProcessorConfig.setArtifact(false);
+        samlProcessorConfig.setSoap(false);
+        samlProcessorConfig.setPaos(false);
+        SAMLProcessorConfigurer configurer = new SAMLProcessorConfigurer();
+        configurer.init(builder);
+        configurer.configure(builder);
+        ArgumentCaptor<DisposableBean> disposableCaptor = ArgumentCaptor.forClass(DisposableBean.class);
+        verify(builder).registerDisposable(disposableCaptor.capture());
+        Assertions.assertThat(disposableCaptor.getValue()).isInstanceOf(PooledHTTPRedirectDeflateEncoder.class);
+    }
+
     @Test
     public void configure_custom_bindings() throws Exception {
         SAMLProcessorConfigurer configurer = spy(new SAMLProcessorConfigurer());
@@ -150,4 +178,155 @@ public class SAMLProcessorConfigurerTest {
         List<SAMLBinding> bindings = bindingsCaptor.getValue();
         Assertions.assertThat(bindings).isEmpty();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void configure_failFastConsumer() throws Exception {
+        FailFastWebSSOProfileConsumer consumer = new FailFastWebSSOProfileConsumer();
+        when(builder.getSharedObject(WebSSOProfileConsumer.class)).thenReturn(consumer);
+        SAMLProcessorConfigurer configurer = spy(new SAMLProcessorConfigurer());
+        configurer
+                .disableRedirectBinding()
+                .disableArtifactBinding()
+                .disablePaosBinding()
+                .disablePostBinding()
+                .disableSoapBinding();
+        configurer.init(builder);
+        configurer.configure(builder);
+        ArgumentCaptor<SAMLProcessor> processorCaptor = ArgumentCaptor.forClass(SAMLProcessor.class);
+        verify(builder).setSharedObject(eq(SAMLProcessor.class), processorCaptor.capture());
+        Assertions.assertThat(processorCaptor.getValue()).isInstanceOf(SecurityPolicySAMLProcessor.class);
+        Assertions.assertThat(((SecurityPolicySAMLProcessor) processorCaptor.getValue()).getRules())
+                .containsExactly(consumer.getSecurityPolicyRule());
+        verify(configurer, never()).createDefaultSamlProcessor(anyList());
+    }
+
+    @Test
+    public void configure_failFastDisabled() throws Exception {
+        FailFastWebSSOProfileConsumer consumer = new FailFastWebSSOProfileConsumer();
+        consumer.setFailFast(false);
+        when(builder.getSharedObject(WebSSOProfileConsumer.class)).thenReturn(consumer);
+        SAMLProcessorConfigurer configurer = spy(new SAMLProcessorConfigurer());
+        SAMLProcessorImpl profile = mock(SAMLProcessorImpl.class);
+        when(configurer.createDefaultSamlProcessor(anyList())).thenReturn(profile);
+        configurer
+                .disableRedirectBinding()
+                .disableArtifactBinding()
+                .disablePaosBinding()
+                .disablePostBinding()
+                .disableSoapBinding();
+        configurer.init(builder);
+        configurer.configure(builder);
+        verify(builder).setSharedObject(eq(SAMLProcessor.class), eq(profile));
+        verify(configurer, never()).createSecurityPolicySamlProcessor(anyList(), anyList());
+    }
+
+    @Test
+    public void configure_artifactHttpClient() throws Exception {
+        HttpClientProperties httpClientConfig = samlProcessorConfig.getHttpClient();
+        httpClientConfig.setMaxTotalConnections(100);
+        httpClientConfig.setMaxConnectionsPerHost(40);
+        httpClientConfig.setConnectTimeout(5000);
+        httpClientConfig.setReadTimeout(15000);
+        httpClientConfig.setStaleCheckingEnabled(false);
+        httpClientConfig.setIdleConnectionTimeout(0);
+        SAMLProcessorConfigurer configurer = spy(new SAMLProcessorConfigurer());
+        configurer
+                .disableRedirectBinding()
+                .disablePaosBinding()
+                .disablePostBinding()
+                .disableSoapBinding();
+        configurer.init(builder);
+        configurer.configure(builder);
+        verify(configurer).createDefaultArtifactBinding(builder);
+        ArgumentCaptor<PooledHttpConnectionManager> managerCaptor = ArgumentCaptor.forClass(PooledHttpConnectionManager.class);
+        verify(builder).setSharedObject(eq(PooledHttpConnectionManager.class), managerCaptor.capture());
+        verify(builder).registerDisposable(eq(managerCaptor.getValue()));
+        HttpConnectionManagerParams params = managerCaptor.getValue().getParams();
+        Assertions.assertThat(params.getMaxTotalConnections()).isEqualTo(100);
+        Assertions.assertThat(params.getDefaultMaxConnectionsPerHost()).isEqualTo(40);
+        Assertions.assertThat(params.getConnectionTimeout()).isEqualTo(5000);
+        Assertions.assertThat(params.getSoTimeout()).isEqualTo(15000);
+        Assertions.assertThat(params.isStaleCheckingEnabled()).isFalse();
+        Assertions.assertThat(managerCaptor.getValue().getUtilization()).isZero();
+    }
+
+    @Test
+    public void configure_artifactUrlConnection() throws Exception {
+        samlProcessorConfig.getHttpClient().setTransport(HttpClientProperties.Transport.URL_CONNECTION);
+        SAMLProcessorConfigurer configurer = spy(new SAMLProcessorConfigurer());
+        configurer
+                .disableRedirectBinding()
+                .disablePaosBinding()
+                .disablePostBinding()
+                .disableSoapBinding();
+        configurer.init(builder);
+        configurer.configure(builder);
+        verify(configurer).createUrlConnectionArtifactResolutionProfile(samlProcessorConfig.getHttpClient());
+        verify(configurer, never()).createDefaultHttpConnectionManager(any());
+        verify(builder).setSharedObject(eq(ArtifactResolutionProfile.class), any(UrlConnectionArtifactResolutionProfile.class));
+        verify(builder, never()).setSharedObject(eq(PooledHttpConnectionManager.class), any());
+    }
+
+    @Test
+    public void configure_staticPostForm() throws Exception {
+        samlProcessorConfig.setStaticPostForm(true);
+        SAMLProcessorConfigurer configurer = spy(new SAMLProcessorConfigurer());
+        configurer.init(builder);
+        HTTPPostBinding binding = configurer.createDefaultPostBinding();
+        Assertions.assertThat(binding.getMessageEncoder()).isInstanceOf(StaticHTTPPostEncoder.class);
+        verify(samlProcessorConfig).isStaticPostForm();
+    }
+
+    @Test
+    public void configure_staticPostForm_dsl() throws Exception {
+        samlProcessorConfig.setStaticPostForm(true);
+        SAMLProcessorConfigurer configurer = spy(new SAMLProcessorConfigurer());
+        configurer.staticPostForm(false);
+        configurer.init(builder);
+        HTTPPostBinding binding = configurer.createDefaultPostBinding();
+        Assertions.assertThat(binding.getMessageEncoder()).isInstanceOf(LazyMessageEncoder.class);
+        Assertions.assertThat(((LazyMessageEncoder) binding.getMessageEncoder()).isInitialized()).isFalse();
+        verify(samlProcessorConfig, never()).isStaticPostForm();
+    }
+
+    @Test
+    public void configure_artifactEncoderLazy() throws Exception {
+        samlProcessorConfig.getHttpClient().setTransport(HttpClientProperties.Transport.URL_CONNECTION);
+        SAMLProcessorConfigurer configurer = spy(new SAMLProcessorConfigurer());
+        configurer.init(builder);
+        HTTPArtifactBinding binding = configurer.createDefaultArtifactBinding(builder);
+        Assertions.assertThat(binding.getMessageDecoder()).isNotNull();
+        Assertions.assertThat(binding.getMessageEncoder()).isInstanceOf(LazyMessageEncoder.class);
+        Assertions.assertThat(((LazyMessageEncoder) binding.getMessageEncoder()).isInitialized()).isFalse();
+    }
+
+    @Test
+    public void configure_messageLimits() throws Exception {
+        samlProcessorConfig.setMaxMessageSize(2048);
+        samlProcessorConfig.setMaxInflateRatio(20);
+        SAMLProcessorConfigurer configurer = spy(new SAMLProcessorConfigurer());
+        configurer.init(builder);
+        HTTPPostBinding postBinding = configurer.createDefaultPostBinding();
+        Assertions.assertThat(postBinding.getMessageDecoder()).isInstanceOf(LimitedHTTPPostDecoder.class);
+        Assertions.assertThat(((LimitedHTTPPostDecoder) postBinding.getMessageDecoder()).getMaxMessageSize()).isEqualTo(2048);
+        HTTPRedirectDeflateBinding redirectBinding = configurer.createDefaultRedirectBinding();
+        LimitedHTTPRedirectDeflateDecoder redirectDecoder = (LimitedHTTPRedirectDeflateDecoder) redirectBinding.getMessageDecoder();
+        Assertions.assertThat(redirectDecoder.getMaxMessageSize()).isEqualTo(2048);
+        Assertions.assertThat(redirectDecoder.getMaxInflateRatio()).isEqualTo(20);
+    }
+
+    @Test
+    public void configure_messageLimits_dsl() throws Exception {
+        SAMLProcessorConfigurer configurer = spy(new SAMLProcessorConfigurer());
+        configurer
+                .maxMessageSize(0)
+                .maxInflateRatio(50);
+        configurer.init(builder);
+        LimitedHTTPRedirectDeflateDecoder redirectDecoder =
+                (LimitedHTTPRedirectDeflateDecoder) configurer.createDefaultRedirectBinding().getMessageDecoder();
+        Assertions.assertThat(redirectDecoder.getMaxMessageSize()).isZero();
+        Assertions.assertThat(redirectDecoder.getMaxInflateRatio()).isEqualTo(50);
+        verify(samlProcessorConfig, never()).getMaxMessageSize();
+        verify(samlProcessorConfig, never()).getMaxInflateRatio();
+    }
+}
@@ -1,8 +1,12 @@
 package com.github.ulisesbocchio.spring.boot.security.saml.configurer.builder;
 
+import com.github.ulisesbocchio.spring.boot.security.saml.async.AsyncSAMLProcessingFilter;
+import com.github.ulisesbocchio.spring.boot.security.saml.async.AsyncSAMLUserDetailsServiceAdapter;
 import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderEndpoints;
 import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderBuilder;
 import com.github.ulisesbocchio.spring.boot.security.saml.properties.SAMLSSOProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.storage.CookieSAMLMessageStorageFactory;
+import com.github.ulisesbocchio.spring.boot.security.saml.storage.StatelessSAMLEntryPoint;
 import org.assertj.core.api.Assertions;
 import org.junit.Before;
 import org.junit.Test;
@@ -13,12 +17,14 @@ import org.springframework.security.saml.SAMLDiscovery;
 import org.springframework.security.saml.SAMLEntryPoint;
 import org.springframework.security.saml.SAMLProcessingFilter;
 import org.springframework.security.saml.SAMLWebSSOHoKProcessingFilter;
+import org.springframework.security.saml.storage.SAMLMessageStorageFactory;
 import org.springframework.security.saml.websso.WebSSOProfileOptions;
 import org.springframework.security.web.authentication.SavedRequestAwareAuthenticationSuccessHandler;
 import org.springframework.security.web.authentication.SimpleUrlAuthenticationFailureHandler;
 import org.springframework.security.web.authentication.session.SessionAuthenticationStrategy;
 
 import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
 
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
@@ -406,4 +412,34 @@ public class SSOConfigurerTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    public void configure_statelessStorage() throws Exception {
+        when(builder.getSharedObject(SAMLMessageStorageFactory.class))
+                .thenReturn(new CookieSAMLMessageStorageFactory(null, "SAML_REQ", null, 300, true));
+        SSOConfigurer configurer = spy(new SSOConfigurer());
+        configurer.init(builder);
+        configurer.configure(builder);
+        verify(configurer, never()).createDefaultSamlEntryPoint();
+        verify(configurer).createStatelessSamlEntryPoint();
+        ArgumentCaptor<SAMLEntryPoint> entryPointCaptor = ArgumentCaptor.forClass(SAMLEntryPoint.class);
+        verify(builder).setSharedObject(eq(SAMLEntryPoint.class), entryPointCaptor.capture());
+        Assertions.assertThat(entryPointCaptor.getValue()).isInstanceOf(StatelessSAMLEntryPoint.class);
+    }
+
+    @Test
+    public void configure_asyncUserDetails() throws Exception {
+        AsyncSAMLUserDetailsServiceAdapter asyncUserDetails = new AsyncSAMLUserDetailsServiceAdapter(
+                (credential, executor) -> CompletableFuture.completedFuture("user"), Runnable::run, 1000, credential -> "fallback");
+        when(builder.getSharedObject(AsyncSAMLUserDetailsServiceAdapter.class)).thenReturn(asyncUserDetails);
+        SSOConfigurer configurer = spy(new SSOConfigurer());
+        configurer.init(builder);
+        configurer.configure(builder);
+        verify(configurer, never()).createDefaultSamlProcessingFilter();
+        verify(configurer).createAsyncSamlProcessingFilter(eq(1000L), eq(properties.getAuthenticationProvider().getAsyncUserDetails()));
+        ArgumentCaptor<SAMLProcessingFilter> filterCaptor = ArgumentCaptor.forClass(SAMLProcessingFilter.class);
+        verify(builder).setSharedObject(eq(SAMLProcessingFilter.class), filterCaptor.capture());
+        Assertions.assertThat(filterCaptor.getValue()).isInstanceOf(AsyncSAMLProcessingFilter.class);
+        Assertions.assertThat(((AsyncSAMLProcessingFilter) filterCaptor.getValue()).getExecutor()).isNotNull();
+        verify(builder).registerDisposable(filterCaptor.getValue());
+    }
+}
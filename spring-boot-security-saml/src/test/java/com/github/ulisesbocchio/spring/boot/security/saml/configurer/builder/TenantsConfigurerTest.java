@@ -0,0 +1,116 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.configurer.builder;
+
+import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderBuilder;
+import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderEndpoints;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.SAMLSSOProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.TenantProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.tenant.ServiceProviderTenants;
+import com.github.ulisesbocchio.spring.boot.security.saml.tenant.TenantKeyManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.security.saml.key.KeyManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Ulises Bocchio
+ */
+public class TenantsConfigurerTest {
+    private ServiceProviderBuilder builder;
+    private Map<String, TenantProperties> tenantProperties;
+    private ServiceProviderEndpoints endpoints;
+    private KeyManager keyManager;
+
+    @Before
+    public void setup() {
+        SAMLSSOProperties properties = mock(SAMLSSOProperties.class);
+        tenantProperties = new LinkedHashMap<>();
+        when(properties.getTenants()).thenReturn(tenantProperties);
+        endpoints = new ServiceProviderEndpoints();
+        keyManager = mock(KeyManager.class);
+        builder = mock(ServiceProviderBuilder.class);
+        when(builder.getSharedObject(SAMLSSOProperties.class)).thenReturn(properties);
+        when(builder.getSharedObject(ResourceLoader.class)).thenReturn(new DefaultResourceLoader());
+        when(builder.getSharedObject(ServiceProviderEndpoints.class)).thenReturn(endpoints);
+        when(builder.getSharedObject(KeyManager.class)).thenReturn(keyManager);
+    }
+
+    @Test
+    public void configure_noTenants() throws Exception {
+        TenantsConfigurer configurer = new TenantsConfigurer();
+        configurer.init(builder);
+        configurer.configure(builder);
+        verify(builder, never()).setSharedObject(any(), any());
+        assertThat(endpoints.getAliases()).isEmpty();
+    }
+
+    @Test
+    public void configure_properties() throws Exception {
+        TenantProperties acme = new TenantProperties();
+        acme.setEntityId("urn:acme");
+        acme.setEntityBaseUrl("https://acme.example.com");
+        tenantProperties.put("acme", acme);
+        TenantsConfigurer configurer = new TenantsConfigurer();
+        configurer.init(builder);
+        configurer.configure(builder);
+        ArgumentCaptor<ServiceProviderTenants> tenantsCaptor = ArgumentCaptor.forClass(ServiceProviderTenants.class);
+        verify(builder).setSharedObject(eq(ServiceProviderTenants.class), tenantsCaptor.capture());
+        verify(builder, never()).setSharedObject(eq(KeyManager.class), any());
+        ServiceProviderTenants.Tenant tenant = tenantsCaptor.getValue().getTenants().get(0);
+        assertThat(tenant.getAlias()).isEqualTo("acme");
+        assertThat(tenant.getEntityId()).isEqualTo("urn:acme");
+        assertThat(tenant.getEntityBaseURL()).isEqualTo("https://acme.example.com");
+        assertThat(tenant.getKeyName()).isNull();
+        assertThat(endpoints.getAliases()).containsExactly("acme");
+    }
+
+    @Test
+    public void configure_dsl() throws Exception {
+        TenantProperties acme = new TenantProperties();
+        acme.setEntityId("urn:acme:properties");
+        tenantProperties.put("acme", acme);
+        TenantsConfigurer configurer = new TenantsConfigurer();
+        configurer.tenant("acme", "urn:acme", null, "classpath:localhost.cert", "classpath:localhost.key.der")
+                .tenant("globex", "urn:globex", "https://globex.example.com");
+        configurer.init(builder);
+        configurer.configure(builder);
+        ArgumentCaptor<ServiceProviderTenants> tenantsCaptor = ArgumentCaptor.forClass(ServiceProviderTenants.class);
+        verify(builder).setSharedObject(eq(ServiceProviderTenants.class), tenantsCaptor.capture());
+        assertThat(tenantsCaptor.getValue().getTenants())
+                .extracting(ServiceProviderTenants.Tenant::getEntityId)
+                .containsExactly("urn:acme", "urn:globex");
+        assertThat(tenantsCaptor.getValue().getTenants().get(0).getKeyName()).isEqualTo("tenant:acme");
+        ArgumentCaptor<KeyManager> keyManagerCaptor = ArgumentCaptor.forClass(KeyManager.class);
+        verify(builder).setSharedObject(eq(KeyManager.class), keyManagerCaptor.capture());
+        TenantKeyManager tenantKeyManager = (TenantKeyManager) keyManagerCaptor.getValue();
+        assertThat(tenantKeyManager.getDefaultKeyManager()).isSameAs(keyManager);
+        assertThat(tenantKeyManager.getCertificate("tenant:acme")).isNotNull();
+        assertThat(endpoints.getAliases()).containsExactly("acme", "globex");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void configure_duplicateEntityId() throws Exception {
+        TenantsConfigurer configurer = new TenantsConfigurer();
+        configurer.tenant("acme", "urn:acme", null)
+                .tenant("other", "urn:acme", null);
+        configurer.init(builder);
+        configurer.configure(builder);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void configure_noEntityId() throws Exception {
+        TenantsConfigurer configurer = new TenantsConfigurer();
+        configurer.tenant("acme", null, null);
+        configurer.init(builder);
+        configurer.configure(builder);
+    }
+}
@@ -1,6 +1,10 @@
 package com.github.ulisesbocchio.spring.boot.security.saml.configurer.builder;
 
 import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderBuilder;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.PreSignedRequestProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.SAMLSSOProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.websso.PreSignedWebSSOProfile;
+import com.github.ulisesbocchio.spring.boot.security.saml.websso.TemplateWebSSOProfile;
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.security.saml.websso.WebSSOProfile;
@@ -14,10 +18,15 @@ import static org.mockito.Mockito.*;
  */
 public class WebSSOProfileConfigurerTest {
     private ServiceProviderBuilder builder;
+    private SAMLSSOProperties properties;
+    private PreSignedRequestProperties preSignedConfig;
 
     @Before
     public void setup() {
+        properties = new SAMLSSOProperties();
+        preSignedConfig = properties.getSsoProfile().getPreSignedRequests();
         builder = mock(ServiceProviderBuilder.class);
+        when(builder.getSharedObject(SAMLSSOProperties.class)).thenReturn(properties);
     }
 
     @Test
@@ -59,4 +68,64 @@ public class WebSSOProfileConfigurerTest {
         verify(builder).setSharedObject(WebSSOProfile.class, profile);
         verifyZeroInteractions(profile);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void configure_preSigned() throws Exception {
+        preSignedConfig.setEnabled(true);
+        preSignedConfig.setPoolSize(8);
+        preSignedConfig.setMaxAge(20);
+        WebSSOProfileConfigurer configurer = spy(new WebSSOProfileConfigurer());
+        PreSignedWebSSOProfile profile = mock(PreSignedWebSSOProfile.class);
+        doReturn(profile).when(configurer).createPreSignedWebSSOProfile(8, 20);
+        configurer.init(builder);
+        configurer.configure(builder);
+        verify(configurer, never()).createDefaultWebSSOProfile();
+        verify(builder).setSharedObject(eq(WebSSOProfile.class), eq(profile));
+        verify(builder).registerDisposable(eq(profile));
+    }
+
+    @Test
+    public void configure_preSigned_dsl() throws Exception {
+        WebSSOProfileConfigurer configurer = spy(new WebSSOProfileConfigurer());
+        PreSignedWebSSOProfile profile = mock(PreSignedWebSSOProfile.class);
+        doReturn(profile).when(configurer).createPreSignedWebSSOProfile(2, 10);
+        configurer
+                .preSignRequests(true)
+                .preSignedPoolSize(2)
+                .preSignedMaxAge(10);
+        configurer.init(builder);
+        configurer.configure(builder);
+        verify(builder).setSharedObject(eq(WebSSOProfile.class), eq(profile));
+    }
+
+    @Test
+    public void configure_requestTemplates() throws Exception {
+        properties.getSsoProfile().setRequestTemplates(true);
+        WebSSOProfileConfigurer configurer = spy(new WebSSOProfileConfigurer());
+        configurer.init(builder);
+        configurer.configure(builder);
+        verify(configurer).createTemplateWebSSOProfile();
+        verify(configurer, never()).createDefaultWebSSOProfile();
+        verify(builder).setSharedObject(eq(WebSSOProfile.class), any(TemplateWebSSOProfile.class));
+    }
+
+    @Test
+    public void configure_requestTemplates_dsl() throws Exception {
+        properties.getSsoProfile().setRequestTemplates(true);
+        WebSSOProfileConfigurer configurer = spy(new WebSSOProfileConfigurer());
+        configurer.requestTemplates(false);
+        configurer.init(builder);
+        configurer.configure(builder);
+        verify(configurer, never()).createTemplateWebSSOProfile();
+        verify(configurer).createDefaultWebSSOProfile();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void configure_preSignedAndRequestTemplates() throws Exception {
+        properties.getSsoProfile().setRequestTemplates(true);
+        WebSSOProfileConfigurer configurer = spy(new WebSSOProfileConfigurer());
+        configurer.preSignRequests(true);
+        configurer.init(builder);
+        configurer.configure(builder);
+    }
+}
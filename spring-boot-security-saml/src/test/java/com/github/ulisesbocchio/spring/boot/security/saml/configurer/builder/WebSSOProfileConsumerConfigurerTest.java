@@ -1,10 +1,18 @@
 package com.github.ulisesbocchio.spring.boot.security.saml.configurer.builder;
 
 import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderBuilder;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.SAMLSSOProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.replay.AssertionReplayCache;
+import com.github.ulisesbocchio.spring.boot.security.saml.replay.InMemoryAssertionReplayCache;
+import com.github.ulisesbocchio.spring.boot.security.saml.replay.ReplayCheckingWebSSOProfileConsumer;
+import com.github.ulisesbocchio.spring.boot.security.saml.websso.FailFastWebSSOProfileConsumer;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.security.saml.websso.WebSSOProfileConsumer;
+import org.springframework.security.saml.websso.WebSSOProfileConsumerImpl;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
@@ -15,10 +23,13 @@ import static org.mockito.Mockito.*;
 public class WebSSOProfileConsumerConfigurerTest {
 
     private ServiceProviderBuilder builder;
+    private SAMLSSOProperties properties;
 
     @Before
     public void setup() {
         builder = mock(ServiceProviderBuilder.class);
+        properties = spy(new SAMLSSOProperties());
+        when(builder.getSharedObject(SAMLSSOProperties.class)).thenReturn(properties);
     }
 
     @Test
@@ -60,4 +71,99 @@ public class WebSSOProfileConsumerConfigurerTest {
         verify(builder).setSharedObject(WebSSOProfileConsumer.class, profile);
         verifyZeroInteractions(profile);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void configure_replayDetection() throws Exception {
+        properties.getProfileConsumer().getReplayCache().setEnabled(true);
+        properties.getProfileConsumer().getReplayCache().setMaxEntries(1000);
+        WebSSOProfileConsumerConfigurer configurer = spy(new WebSSOProfileConsumerConfigurer());
+        configurer.init(builder);
+        configurer.configure(builder);
+        verify(configurer, never()).createWebSSOProfileConsumer();
+        verify(configurer).createDefaultReplayCache();
+        ArgumentCaptor<WebSSOProfileConsumer> consumerCaptor = ArgumentCaptor.forClass(WebSSOProfileConsumer.class);
+        verify(builder).setSharedObject(eq(WebSSOProfileConsumer.class), consumerCaptor.capture());
+        assertThat(consumerCaptor.getValue()).isInstanceOf(ReplayCheckingWebSSOProfileConsumer.class);
+        AssertionReplayCache replayCache = ((ReplayCheckingWebSSOProfileConsumer) consumerCaptor.getValue()).getReplayCache();
+        assertThat(replayCache).isInstanceOf(InMemoryAssertionReplayCache.class);
+        verify(builder).setSharedObject(AssertionReplayCache.class, replayCache);
+    }
+
+    @Test
+    public void configure_replayDetection_defaultMaxEntries() throws Exception {
+        properties.getProfileConsumer().getReplayCache().setEnabled(true);
+        properties.getProfileConsumer().getReplayCache().setLoginsPerSecond(10);
+        properties.getProfileConsumer().getReplayCache().setStripes(1);
+        WebSSOProfileConsumerConfigurer configurer = new WebSSOProfileConsumerConfigurer();
+        configurer.init(builder);
+        configurer.configure(builder);
+        ArgumentCaptor<AssertionReplayCache> cacheCaptor = ArgumentCaptor.forClass(AssertionReplayCache.class);
+        verify(builder).setSharedObject(eq(AssertionReplayCache.class), cacheCaptor.capture());
+        WebSSOProfileConsumerImpl defaults = new WebSSOProfileConsumerImpl();
+        assertThat(((InMemoryAssertionReplayCache) cacheCaptor.getValue()).getMaxEntries())
+                .isEqualTo((int) (defaults.getMaxAssertionTime() + defaults.getResponseSkew()) * 10);
+    }
+
+    @Test
+    public void configure_replayCacheBean() throws Exception {
+        AssertionReplayCache replayCache = mock(AssertionReplayCache.class);
+        when(builder.getSharedObject(AssertionReplayCache.class)).thenReturn(replayCache);
+        WebSSOProfileConsumerConfigurer configurer = spy(new WebSSOProfileConsumerConfigurer());
+        configurer.replayCache(mock(AssertionReplayCache.class));
+        configurer.init(builder);
+        configurer.configure(builder);
+        verify(configurer, never()).createDefaultReplayCache();
+        verify(configurer).createReplayCheckingWebSSOProfileConsumer(replayCache);
+        verifyZeroInteractions(replayCache);
+    }
+
+    @Test
+    public void configure_replayCacheDisabled() throws Exception {
+        WebSSOProfileConsumerConfigurer configurer = spy(new WebSSOProfileConsumerConfigurer());
+        configurer.replayCache(mock(AssertionReplayCache.class))
+                .replayDetection(false);
+        configurer.init(builder);
+        configurer.configure(builder);
+        verify(configurer, never()).createReplayCheckingWebSSOProfileConsumer(any());
+        verify(configurer).createWebSSOProfileConsumer();
+    }
+
+    @Test
+    public void configure_failFast() throws Exception {
+        properties.getProfileConsumer().setFailFast(true);
+        WebSSOProfileConsumerConfigurer configurer = spy(new WebSSOProfileConsumerConfigurer());
+        configurer.init(builder);
+        configurer.configure(builder);
+        verify(configurer, never()).createWebSSOProfileConsumer();
+        verify(configurer).createFailFastWebSSOProfileConsumer();
+        ArgumentCaptor<WebSSOProfileConsumer> consumerCaptor = ArgumentCaptor.forClass(WebSSOProfileConsumer.class);
+        verify(builder).setSharedObject(eq(WebSSOProfileConsumer.class), consumerCaptor.capture());
+        assertThat(consumerCaptor.getValue()).isInstanceOf(FailFastWebSSOProfileConsumer.class);
+        assertThat(((FailFastWebSSOProfileConsumer) consumerCaptor.getValue()).isFailFast()).isTrue();
+    }
+
+    @Test
+    public void configure_failFast_dsl() throws Exception {
+        WebSSOProfileConsumerConfigurer configurer = spy(new WebSSOProfileConsumerConfigurer());
+        configurer.failFast(true)
+                .replayCache(mock(AssertionReplayCache.class));
+        configurer.init(builder);
+        configurer.configure(builder);
+        verify(configurer, never()).createFailFastWebSSOProfileConsumer();
+        ArgumentCaptor<WebSSOProfileConsumer> consumerCaptor = ArgumentCaptor.forClass(WebSSOProfileConsumer.class);
+        verify(builder).setSharedObject(eq(WebSSOProfileConsumer.class), consumerCaptor.capture());
+        assertThat(consumerCaptor.getValue()).isInstanceOf(ReplayCheckingWebSSOProfileConsumer.class);
+        assertThat(((FailFastWebSSOProfileConsumer) consumerCaptor.getValue()).isFailFast()).isTrue();
+    }
+
+    @Test
+    public void configure_replayDetection_notFailFast() throws Exception {
+        WebSSOProfileConsumerConfigurer configurer = new WebSSOProfileConsumerConfigurer();
+        configurer.replayCache(mock(AssertionReplayCache.class));
+        configurer.init(builder);
+        configurer.configure(builder);
+        ArgumentCaptor<WebSSOProfileConsumer> consumerCaptor = ArgumentCaptor.forClass(WebSSOProfileConsumer.class);
+        verify(builder).setSharedObject(eq(WebSSOProfileConsumer.class), consumerCaptor.capture());
+        assertThat(((FailFastWebSSOProfileConsumer) consumerCaptor.getValue()).isFailFast()).isFalse();
+    }
+}
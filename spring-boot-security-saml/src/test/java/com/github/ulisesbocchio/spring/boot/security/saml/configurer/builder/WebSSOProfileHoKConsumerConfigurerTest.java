@@ -1,10 +1,16 @@
 package com.github.ulisesbocchio.spring.boot.security.saml.configurer.builder;
 
 import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderBuilder;
+import com.github.ulisesbocchio.spring.boot.security.saml.replay.AssertionReplayCache;
+import com.github.ulisesbocchio.spring.boot.security.saml.replay.ReplayCheckingWebSSOProfileConsumer;
+import com.github.ulisesbocchio.spring.boot.security.saml.replay.ReplayCheckingWebSSOProfileConsumerHoK;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.security.saml.websso.WebSSOProfileConsumer;
 import org.springframework.security.saml.websso.WebSSOProfileConsumerHoKImpl;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
@@ -37,6 +43,23 @@ public class WebSSOProfileHoKConsumerConfigurerTest {
         verify(builder).setSharedObject(eq(WebSSOProfileConsumerHoKImpl.class), eq(profile));
     }
 
+    @Test
+    public void configure_replayChecking() throws Exception {
+        AssertionReplayCache replayCache = mock(AssertionReplayCache.class);
+        when(builder.getSharedObject(WebSSOProfileConsumer.class))
+                .thenReturn(new ReplayCheckingWebSSOProfileConsumer(replayCache));
+        WebSSOProfileHoKConsumerConfigurer configurer = spy(new WebSSOProfileHoKConsumerConfigurer());
+        configurer.init(builder);
+        configurer.configure(builder);
+        verify(configurer, never()).createDefaultWebSSOProfileConsumerHoK();
+        verify(configurer).createReplayCheckingWebSSOProfileConsumerHoK(replayCache);
+        ArgumentCaptor<WebSSOProfileConsumerHoKImpl> consumerCaptor =
+                ArgumentCaptor.forClass(WebSSOProfileConsumerHoKImpl.class);
+        verify(builder).setSharedObject(eq(WebSSOProfileConsumerHoKImpl.class), consumerCaptor.capture());
+        assertThat(((ReplayCheckingWebSSOProfileConsumerHoK) consumerCaptor.getValue()).getReplayCache())
+                .isSameAs(replayCache);
+    }
+
     @Test
     public void configure_forBean() throws Exception {
         WebSSOProfileHoKConsumerConfigurer configurer = spy(new WebSSOProfileHoKConsumerConfigurer());
@@ -0,0 +1,102 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.context;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opensaml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml2.metadata.SPSSODescriptor;
+import org.opensaml.xml.security.credential.Credential;
+import org.springframework.security.saml.context.SAMLMessageContext;
+import org.springframework.security.saml.key.KeyManager;
+import org.springframework.security.saml.metadata.ExtendedMetadata;
+import org.springframework.security.saml.metadata.MetadataManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Ulises Bocchio
+ */
+public class CachingSAMLContextProviderTest {
+
+    private final CachingSAMLContextProvider provider = new CachingSAMLContextProvider();
+    private final LocalEntityCache cache = new LocalEntityCache();
+    private MetadataManager metadataManager;
+    private KeyManager keyManager;
+    private Credential credential;
+
+    @Before
+    public void setup() throws Exception {
+        metadataManager = mock(MetadataManager.class);
+        when(metadataManager.getEntityDescriptor(anyString())).thenReturn(mock(EntityDescriptor.class));
+        when(metadataManager.getRole(anyString(), any(), any())).thenReturn(mock(SPSSODescriptor.class));
+        when(metadataManager.getExtendedMetadata(anyString())).thenReturn(new ExtendedMetadata());
+        keyManager = mock(KeyManager.class);
+        credential = mock(Credential.class);
+        when(keyManager.getDefaultCredential()).thenReturn(credential);
+        provider.setLocalEntityCache(cache);
+        provider.setMetadata(metadataManager);
+        provider.setKeyManager(keyManager);
+    }
+
+    @Test
+    public void cachedPerLocalEntity() throws Exception {
+        SAMLMessageContext first = populate("sp");
+        SAMLMessageContext second = populate("sp");
+        populate("other-sp");
+        verify(metadataManager, times(1)).getEntityDescriptor("sp");
+        verify(metadataManager, times(1)).getEntityDescriptor("other-sp");
+        assertThat(second.getLocalEntityMetadata()).isSameAs(first.getLocalEntityMetadata());
+        assertThat(second.getLocalEntityRoleMetadata()).isSameAs(first.getLocalEntityRoleMetadata());
+        assertThat(second.getLocalExtendedMetadata()).isSameAs(first.getLocalExtendedMetadata());
+        assertThat(second.getLocalSigningCredential()).isSameAs(credential);
+        assertThat(second.getLocalDecryptionCredential()).isSameAs(credential);
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(2);
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void clearedOnMetadataRefresh() throws Exception {
+        populate("sp");
+        cache.onEvent(metadataManager);
+        populate("sp");
+        verify(metadataManager, times(2)).getEntityDescriptor("sp");
+    }
+
+    @Test
+    public void clearedOnKeyManagerChange() throws Exception {
+        populate("sp");
+        provider.setKeyManager(keyManager);
+        assertThat(cache.size()).isZero();
+        populate("sp");
+        verify(metadataManager, times(2)).getEntityDescriptor("sp");
+    }
+
+    @Test
+    public void notCachedIfClearedWhileResolving() throws Exception {
+        SAMLMessageContext context = context("sp");
+        long generation = cache.generation();
+        provider.populateLocalEntity(context);
+        cache.clear();
+        cache.store(context, generation);
+        assertThat(cache.size()).isZero();
+    }
+
+    private SAMLMessageContext populate(String entityId) throws Exception {
+        SAMLMessageContext context = context(entityId);
+        provider.populateLocalEntity(context);
+        return context;
+    }
+
+    private static SAMLMessageContext context(String entityId) {
+        SAMLMessageContext context = new SAMLMessageContext();
+        context.setLocalEntityId(entityId);
+        context.setLocalEntityRole(SPSSODescriptor.DEFAULT_ELEMENT_NAME);
+        return context;
+    }
+}
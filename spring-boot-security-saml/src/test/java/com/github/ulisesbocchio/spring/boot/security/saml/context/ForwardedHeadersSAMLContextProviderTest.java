@@ -0,0 +1,145 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.context;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Ulises Bocchio
+ */
+public class ForwardedHeadersSAMLContextProviderTest {
+
+    private final ForwardedHeadersSAMLContextProvider provider = new ForwardedHeadersSAMLContextProvider();
+
+    @Before
+    public void setup() {
+        provider.setAllowedHosts(Arrays.asList("sp.example.com", "*.tenants.example.com"));
+    }
+
+    @Test
+    public void xForwardedHeaders() {
+        MockHttpServletRequest request = request();
+        request.addHeader("X-Forwarded-Host", "SP.example.com, proxy.internal");
+        request.addHeader("X-Forwarded-Proto", "https");
+        request.addHeader("X-Forwarded-Prefix", "/public/");
+        HttpServletRequest wrapped = provider.wrap(request);
+        assertThat(wrapped.getScheme()).isEqualTo("https");
+        assertThat(wrapped.isSecure()).isTrue();
+        assertThat(wrapped.getServerName()).isEqualTo("sp.example.com");
+        assertThat(wrapped.getServerPort()).isEqualTo(443);
+        assertThat(wrapped.getContextPath()).isEqualTo("/public");
+        assertThat(wrapped.getRequestURI()).isEqualTo("/public/saml/SSO");
+        assertThat(wrapped.getRequestURL().toString()).isEqualTo("https://sp.example.com/public/saml/SSO");
+    }
+
+    @Test
+    public void forwardedHeader() {
+        MockHttpServletRequest request = request();
+        request.addHeader("Forwarded", "for=192.0.2.60;proto=https;host=\"a.tenants.example.com:8443\", for=10.0.0.1");
+        HttpServletRequest wrapped = provider.wrap(request);
+        assertThat(wrapped.getServerName()).isEqualTo("a.tenants.example.com");
+        assertThat(wrapped.getServerPort()).isEqualTo(8443);
+        assertThat(wrapped.getContextPath()).isEqualTo("/app");
+        assertThat(wrapped.getRequestURL().toString()).isEqualTo("https://a.tenants.example.com:8443/app/saml/SSO");
+    }
+
+    @Test
+    public void notAllowedHost() {
+        MockHttpServletRequest request = request();
+        request.addHeader("X-Forwarded-Host", "evil.example.com");
+        request.addHeader("X-Forwarded-Proto", "https");
+        assertThat(provider.wrap(request)).isSameAs(request);
+        request = request();
+        request.addHeader("X-Forwarded-Host", "tenants.example.com");
+        assertThat(provider.wrap(request)).isSameAs(request);
+    }
+
+    @Test
+    public void noHeaders() {
+        MockHttpServletRequest request = request();
+        assertThat(provider.wrap(request)).isSameAs(request);
+        assertThat(provider.getCachedHostCount()).isZero();
+    }
+
+    @Test
+    public void endpointsCachedPerHost() {
+        for (String host : Arrays.asList("sp.example.com", "sp.example.com", "a.tenants.example.com", "b.tenants.example.com")) {
+            MockHttpServletRequest request = request();
+            request.addHeader("X-Forwarded-Host", host);
+            provider.wrap(request);
+        }
+        assertThat(provider.getCachedHostCount()).isEqualTo(3);
+        provider.setMaxCachedHosts(3);
+        MockHttpServletRequest request = request();
+        request.addHeader("X-Forwarded-Host", "c.tenants.example.com");
+        assertThat(provider.wrap(request).getRequestURL().toString()).isEqualTo("http://c.tenants.example.com/app/saml/SSO");
+        assertThat(provider.getCachedHostCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void leastRecentlyUsedEndpointEvicted() {
+        provider.setMaxCachedHosts(2);
+        HttpServletRequest first = provider.wrap(forwarded("a.tenants.example.com"));
+        provider.wrap(forwarded("b.tenants.example.com"));
+        provider.wrap(forwarded("a.tenants.example.com"));
+        provider.wrap(forwarded("c.tenants.example.com"));
+        assertThat(provider.getCachedHostCount()).isEqualTo(2);
+        HttpServletRequest again = provider.wrap(forwarded("a.tenants.example.com"));
+        assertThat(again.getRequestURL().toString()).isEqualTo(first.getRequestURL().toString());
+        assertThat(provider.getCachedHostCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void unsupportedProtoIgnored() {
+        MockHttpServletRequest request = forwarded("sp.example.com");
+        request.addHeader("X-Forwarded-Proto", "javascript");
+        assertThat(provider.wrap(request).getRequestURL().toString()).isEqualTo("http://sp.example.com/app/saml/SSO");
+        request = request();
+        request.addHeader("Forwarded", "proto=ftp;host=sp.example.com");
+        assertThat(provider.wrap(request).getScheme()).isEqualTo("http");
+    }
+
+    @Test
+    public void invalidPrefixIgnored() {
+        for (String prefix : Arrays.asList("/a/../b", "//evil.example.com", "/a b", "/a?b", "/a#b", "/..")) {
+            MockHttpServletRequest request = forwarded("sp.example.com");
+            request.addHeader("X-Forwarded-Prefix", prefix);
+            assertThat(provider.wrap(request).getContextPath()).as(prefix).isEqualTo("/app");
+        }
+    }
+
+    @Test
+    public void allowedPrefixes() {
+        provider.setAllowedPrefixes(Arrays.asList("/public/", "other"));
+        MockHttpServletRequest request = forwarded("sp.example.com");
+        request.addHeader("X-Forwarded-Prefix", "/other");
+        assertThat(provider.wrap(request).getContextPath()).isEqualTo("/other");
+        request = forwarded("sp.example.com");
+        request.addHeader("X-Forwarded-Prefix", "/public");
+        assertThat(provider.wrap(request).getContextPath()).isEqualTo("/public");
+        request = forwarded("sp.example.com");
+        request.addHeader("X-Forwarded-Prefix", "/private");
+        assertThat(provider.wrap(request).getContextPath()).isEqualTo("/app");
+    }
+
+    private static MockHttpServletRequest forwarded(String host) {
+        MockHttpServletRequest request = request();
+        request.addHeader("X-Forwarded-Host", host);
+        return request;
+    }
+
+    private static MockHttpServletRequest request() {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/app/saml/SSO");
+        request.setScheme("http");
+        request.setServerName("10.0.0.5");
+        request.setServerPort(8080);
+        request.setContextPath("/app");
+        request.setServletPath("/saml/SSO");
+        return request;
+    }
+}
@@ -0,0 +1,42 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.processor;
+
+import org.junit.Test;
+import org.opensaml.ws.message.MessageContext;
+import org.opensaml.ws.message.encoder.MessageEncoder;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Ulises Bocchio
+ */
+public class LazyMessageEncoderTest {
+
+    @Test
+    public void delegateCreatedOnFirstUse() throws Exception {
+        MessageEncoder delegate = mock(MessageEncoder.class);
+        MessageContext context = mock(MessageContext.class);
+        when(delegate.providesMessageIntegrity(context)).thenReturn(true);
+        AtomicInteger created = new AtomicInteger();
+        LazyMessageEncoder encoder = new LazyMessageEncoder(() -> {
+            created.incrementAndGet();
+            return delegate;
+        });
+        assertThat(encoder.isInitialized()).isFalse();
+        assertThat(created.get()).isZero();
+
+        encoder.encode(context);
+        encoder.encode(context);
+        assertThat(encoder.providesMessageIntegrity(context)).isTrue();
+        assertThat(encoder.providesMessageConfidentiality(context)).isFalse();
+
+        assertThat(encoder.isInitialized()).isTrue();
+        assertThat(created.get()).isEqualTo(1);
+        verify(delegate, times(2)).encode(context);
+    }
+}
@@ -0,0 +1,98 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.processor;
+
+import org.joda.time.DateTime;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opensaml.DefaultBootstrap;
+import org.opensaml.common.SAMLObject;
+import org.opensaml.saml2.binding.encoding.HTTPRedirectDeflateEncoder;
+import org.opensaml.saml2.core.AuthnRequest;
+import org.opensaml.saml2.core.Issuer;
+import org.opensaml.saml2.core.impl.AuthnRequestBuilder;
+import org.opensaml.saml2.core.impl.IssuerBuilder;
+import org.opensaml.ws.message.encoder.MessageEncodingException;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Base64;
+import java.util.zip.Inflater;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Ulises Bocchio
+ */
+public class PooledHTTPRedirectDeflateEncoderTest {
+
+    @BeforeClass
+    public static void bootstrap() throws Exception {
+        DefaultBootstrap.bootstrap();
+    }
+
+    @Test
+    public void deflateAndBase64Encode() throws Exception {
+        PooledEncoder pooled = new PooledEncoder();
+        StockEncoder stock = new StockEncoder();
+        for (int i = 0; i < 3; i++) {
+            AuthnRequest request = authnRequest("id-" + i, "https://sp.example.com/\u00f1and\u00fa/" + i);
+            String encoded = pooled.encode(request);
+            assertThat(encoded).isEqualTo(stock.encode(authnRequest("id-" + i, "https://sp.example.com/\u00f1and\u00fa/" + i)));
+            assertThat(inflate(encoded)).contains("ID=\"id-" + i + "\"").contains("\u00f1and\u00fa/" + i);
+        }
+    }
+
+    @Test
+    public void deflateAndBase64Encode_largeMessage() throws Exception {
+        StringBuilder issuer = new StringBuilder("https://sp.example.com/");
+        for (int i = 0; i < 20000; i++) {
+            issuer.append((char) ('a' + i % 26));
+        }
+        String encoded = new PooledEncoder().encode(authnRequest("large", issuer.toString()));
+        assertThat(encoded).isEqualTo(new StockEncoder().encode(authnRequest("large", issuer.toString())));
+        assertThat(inflate(encoded)).contains(issuer);
+    }
+
+    @Test
+    public void destroy() throws Exception {
+        PooledEncoder pooled = new PooledEncoder();
+        pooled.encode(authnRequest("id", "https://sp.example.com"));
+        assertThat(pooled.getIdleCount()).isEqualTo(1);
+        pooled.destroy();
+        assertThat(pooled.getIdleCount()).isZero();
+        String encoded = pooled.encode(authnRequest("id", "https://sp.example.com"));
+        assertThat(inflate(encoded)).contains("ID=\"id\"");
+        assertThat(pooled.getIdleCount()).isZero();
+    }
+
+    private static AuthnRequest authnRequest(String id, String issuerValue) {
+        Issuer issuer = new IssuerBuilder().buildObject();
+        issuer.setValue(issuerValue);
+        AuthnRequest request = new AuthnRequestBuilder().buildObject();
+        request.setID(id);
+        request.setIssueInstant(new DateTime(0));
+        request.setIssuer(issuer);
+        return request;
+    }
+
+    private static String inflate(String encoded) throws Exception {
+        Inflater inflater = new Inflater(true);
+        inflater.setInput(Base64.getDecoder().decode(encoded));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        while (!inflater.finished()) {
+            out.write(buffer, 0, inflater.inflate(buffer));
+        }
+        return out.toString("UTF-8");
+    }
+
+    private static class PooledEncoder extends PooledHTTPRedirectDeflateEncoder {
+        String encode(SAMLObject message) throws MessageEncodingException {
+            return deflateAndBase64Encode(message);
+        }
+    }
+
+    private static class StockEncoder extends HTTPRedirectDeflateEncoder {
+        String encode(SAMLObject message) throws MessageEncodingException {
+            return deflateAndBase64Encode(message);
+        }
+    }
+}
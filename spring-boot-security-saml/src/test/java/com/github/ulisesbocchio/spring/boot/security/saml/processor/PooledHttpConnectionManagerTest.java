@@ -0,0 +1,46 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.processor;
+
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpConnection;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Ulises Bocchio
+ */
+public class PooledHttpConnectionManagerTest {
+
+    private final PooledHttpConnectionManager connectionManager = new PooledHttpConnectionManager();
+
+    @After
+    public void teardown() {
+        connectionManager.destroy();
+    }
+
+    @Test
+    public void leasedConnections() throws Exception {
+        HostConfiguration hostConfiguration = new HostConfiguration();
+        hostConfiguration.setHost("idp.example.com", 443, "https");
+        HttpConnection first = connectionManager.getConnectionWithTimeout(hostConfiguration, 1000);
+        HttpConnection second = connectionManager.getConnectionWithTimeout(hostConfiguration, 1000);
+        assertThat(connectionManager.getLeasedConnections()).isEqualTo(2);
+        assertThat(connectionManager.getAcquiredCount()).isEqualTo(2);
+
+        first.releaseConnection();
+        first.releaseConnection();
+        assertThat(connectionManager.getLeasedConnections()).isEqualTo(1);
+
+        second.releaseConnection();
+        assertThat(connectionManager.getLeasedConnections()).isEqualTo(0);
+    }
+
+    @Test
+    public void destroy_stopsIdleConnectionEvictor() {
+        connectionManager.evictIdleConnections(1000, 100);
+        assertThat(Thread.getAllStackTraces().keySet()).anyMatch(thread -> "saml-http-idle-evictor".equals(thread.getName()));
+        connectionManager.destroy();
+        connectionManager.destroy();
+    }
+}
@@ -0,0 +1,142 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.processor;
+
+import org.junit.Test;
+import org.opensaml.ws.message.decoder.MessageDecodingException;
+import org.opensaml.ws.transport.http.HTTPInTransport;
+import org.opensaml.ws.transport.http.HttpServletRequestAdapter;
+import org.opensaml.xml.parse.ParserPool;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.util.StreamUtils;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.Deflater;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author Ulises Bocchio
+ */
+public class SAMLMessageDecodingTest {
+
+    private static final String MESSAGE = "<samlp:Response xmlns:samlp=\"urn:oasis:names:tc:SAML:2.0:protocol\" ID=\"id-1\"/>";
+
+    @Test
+    public void decodedLength() {
+        for (int length = 0; length < 10; length++) {
+            byte[] bytes = new byte[length];
+            assertThat(SAMLMessageDecoding.decodedLength(Base64.getEncoder().encodeToString(bytes))).isEqualTo(length);
+            assertThat(SAMLMessageDecoding.decodedLength(Base64.getMimeEncoder(4, new byte[]{'\r', '\n'}).encodeToString(bytes)))
+                    .isEqualTo(length);
+        }
+    }
+
+    @Test
+    public void postDecoder() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/saml/SSO");
+        request.setParameter("SAMLResponse", Base64.getMimeEncoder().encodeToString(MESSAGE.getBytes(StandardCharsets.UTF_8)));
+        PostDecoder decoder = new PostDecoder(MESSAGE.length());
+        assertThat(read(decoder.decode(new HttpServletRequestAdapter(request)))).isEqualTo(MESSAGE);
+    }
+
+    @Test
+    public void postDecoder_tooLarge() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/saml/SSO");
+        request.setParameter("SAMLResponse", Base64.getEncoder().encodeToString(MESSAGE.getBytes(StandardCharsets.UTF_8)));
+        try {
+            new PostDecoder(MESSAGE.length() - 1).decode(new HttpServletRequestAdapter(request));
+            fail("Expected MessageDecodingException");
+        } catch (MessageDecodingException e) {
+            assertThat(e).hasMessageContaining("exceeds " + (MESSAGE.length() - 1) + " bytes");
+        }
+    }
+
+    @Test
+    public void postDecoder_noMessage() throws Exception {
+        try {
+            new PostDecoder(0).decode(new HttpServletRequestAdapter(new MockHttpServletRequest("POST", "/saml/SSO")));
+            fail("Expected MessageDecodingException");
+        } catch (MessageDecodingException e) {
+            assertThat(e).hasMessage("No SAML message present in request");
+        }
+    }
+
+    @Test
+    public void redirectDecoder() throws Exception {
+        RedirectDecoder decoder = new RedirectDecoder(1024, 10);
+        assertThat(read(decoder.decode(deflate(MESSAGE.getBytes(StandardCharsets.UTF_8))))).isEqualTo(MESSAGE);
+    }
+
+    @Test
+    public void redirectDecoder_tooLarge() throws Exception {
+        try {
+            new RedirectDecoder(MESSAGE.length() - 1, 0).decode(deflate(MESSAGE.getBytes(StandardCharsets.UTF_8)));
+            fail("Expected MessageDecodingException");
+        } catch (MessageDecodingException e) {
+            assertThat(e).hasMessageContaining("exceeds " + (MESSAGE.length() - 1) + " bytes");
+        }
+    }
+
+    @Test
+    public void redirectDecoder_inflateRatio() throws Exception {
+        byte[] bomb = new byte[10 * 1024 * 1024];
+        Arrays.fill(bomb, (byte) ' ');
+        String encoded = deflate(bomb);
+        try {
+            new RedirectDecoder(0, 100).decode(encoded);
+            fail("Expected MessageDecodingException");
+        } catch (MessageDecodingException e) {
+            long deflated = SAMLMessageDecoding.decodedLength(encoded);
+            assertThat(e).hasMessage("Inflated SAML message exceeds " + deflated * 100 + " bytes, " + deflated + " bytes deflated");
+        }
+        assertThat(StreamUtils.copyToByteArray(new RedirectDecoder(0, 0).decode(encoded))).hasSize(bomb.length);
+    }
+
+    @Test
+    public void redirectDecoder_corrupted() throws Exception {
+        try {
+            new RedirectDecoder(0, 0).decode("AAAA");
+            fail("Expected MessageDecodingException");
+        } catch (MessageDecodingException e) {
+            assertThat(e).hasMessage("Unable to Base64 decode and inflate SAML message");
+        }
+    }
+
+    private static String deflate(byte[] message) {
+        Deflater deflater = new Deflater(Deflater.DEFLATED, true);
+        deflater.setInput(message);
+        deflater.finish();
+        byte[] buffer = new byte[message.length + 1024];
+        int length = deflater.deflate(buffer);
+        deflater.end();
+        return Base64.getEncoder().encodeToString(Arrays.copyOf(buffer, length));
+    }
+
+    private static String read(InputStream in) throws Exception {
+        return StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+    }
+
+    private static class PostDecoder extends LimitedHTTPPostDecoder {
+        PostDecoder(long maxMessageSize) {
+            super(mock(ParserPool.class), maxMessageSize);
+        }
+
+        InputStream decode(HTTPInTransport transport) throws MessageDecodingException {
+            return getBase64DecodedMessage(transport);
+        }
+    }
+
+    private static class RedirectDecoder extends LimitedHTTPRedirectDeflateDecoder {
+        RedirectDecoder(long maxMessageSize, int maxInflateRatio) {
+            super(mock(ParserPool.class), maxMessageSize, maxInflateRatio);
+        }
+
+        InputStream decode(String message) throws MessageDecodingException {
+            return decodeMessage(message);
+        }
+    }
+}
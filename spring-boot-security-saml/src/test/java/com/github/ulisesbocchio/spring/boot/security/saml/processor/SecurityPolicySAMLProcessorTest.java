@@ -0,0 +1,38 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.processor;
+
+import org.junit.Test;
+import org.opensaml.ws.security.SecurityPolicy;
+import org.opensaml.ws.security.SecurityPolicyRule;
+import org.springframework.security.saml.context.SAMLMessageContext;
+import org.springframework.security.saml.processor.SAMLBinding;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author Ulises Bocchio
+ */
+@SuppressWarnings("unchecked")
+public class SecurityPolicySAMLProcessorTest {
+
+    @Test
+    public void rulesBeforeBindingRules() {
+        SecurityPolicyRule rule = mock(SecurityPolicyRule.class);
+        SecurityPolicyRule bindingRule = mock(SecurityPolicyRule.class);
+        SAMLBinding binding = mock(SAMLBinding.class);
+        doAnswer(invocation -> ((List<SecurityPolicyRule>) invocation.getArgument(0)).add(bindingRule))
+                .when(binding).getSecurityPolicy(anyList(), any());
+        SecurityPolicySAMLProcessor processor = new SecurityPolicySAMLProcessor(Collections.singletonList(binding),
+                Collections.singletonList(rule));
+
+        SecurityPolicy policy = processor.populateSecurityPolicy(new SAMLMessageContext(), binding);
+
+        assertThat(policy.getPolicyRules()).containsExactly(rule, bindingRule);
+    }
+}
@@ -0,0 +1,91 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.processor;
+
+import org.joda.time.DateTime;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opensaml.DefaultBootstrap;
+import org.opensaml.common.binding.BasicSAMLMessageContext;
+import org.opensaml.common.binding.SAMLMessageContext;
+import org.opensaml.saml2.core.AuthnRequest;
+import org.opensaml.saml2.core.Issuer;
+import org.opensaml.saml2.core.impl.AuthnRequestBuilder;
+import org.opensaml.saml2.core.impl.IssuerBuilder;
+import org.opensaml.ws.message.encoder.MessageEncodingException;
+import org.opensaml.ws.transport.http.HttpServletResponseAdapter;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Ulises Bocchio
+ */
+public class StaticHTTPPostEncoderTest {
+
+    @BeforeClass
+    public static void bootstrap() throws Exception {
+        DefaultBootstrap.bootstrap();
+    }
+
+    @Test
+    public void postEncode() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        SAMLMessageContext context = new BasicSAMLMessageContext();
+        context.setOutboundSAMLMessage(authnRequest("id-1", "https://sp.example.com/\u00f1and\u00fa"));
+        context.setOutboundMessageTransport(new HttpServletResponseAdapter(response, true));
+        context.setRelayState("/home?a=1&b=\"2\"");
+        new Encoder().encode(context, "https://idp.example.com/sso?x=1&y=2");
+
+        assertThat(response.getContentType()).startsWith("text/html");
+        assertThat(response.getCharacterEncoding()).isEqualTo("UTF-8");
+        assertThat(response.getHeader("Cache-control")).contains("no-cache");
+        String form = response.getContentAsString();
+        assertThat(form)
+                .contains("<body onload=\"document.forms[0].submit()\">")
+                .contains("<form action=\"https://idp.example.com/sso?x=1&amp;y=2\" method=\"post\">")
+                .contains("<input type=\"hidden\" name=\"RelayState\" value=\"/home?a=1&amp;b=&quot;2&quot;\"/>")
+                .doesNotContain("SAMLResponse");
+        Matcher message = Pattern.compile("name=\"SAMLRequest\" value=\"([^\"]+)\"").matcher(form);
+        assertThat(message.find()).isTrue();
+        String xml = new String(Base64.getDecoder().decode(message.group(1)), StandardCharsets.UTF_8);
+        assertThat(xml).contains("ID=\"id-1\"").contains("https://sp.example.com/\u00f1and\u00fa");
+    }
+
+    @Test
+    public void postEncode_noRelayState() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        SAMLMessageContext context = new BasicSAMLMessageContext();
+        context.setOutboundSAMLMessage(authnRequest("id-2", "https://sp.example.com"));
+        context.setOutboundMessageTransport(new HttpServletResponseAdapter(response, true));
+        new Encoder().encode(context, "https://idp.example.com/sso");
+        assertThat(response.getContentAsString()).doesNotContain("RelayState").contains("name=\"SAMLRequest\"");
+    }
+
+    @Test
+    public void escape() throws Exception {
+        StringWriter out = new StringWriter();
+        StaticHTTPPostEncoder.escape("<a href='x'>\"&\"</a> plain", out);
+        assertThat(out.toString()).isEqualTo("&lt;a href=&#x27;x&#x27;&gt;&quot;&amp;&quot;&lt;/a&gt; plain");
+    }
+
+    private static AuthnRequest authnRequest(String id, String issuerValue) {
+        Issuer issuer = new IssuerBuilder().buildObject();
+        issuer.setValue(issuerValue);
+        AuthnRequest request = new AuthnRequestBuilder().buildObject();
+        request.setID(id);
+        request.setIssueInstant(new DateTime(0));
+        request.setIssuer(issuer);
+        return request;
+    }
+
+    private static class Encoder extends StaticHTTPPostEncoder {
+        void encode(SAMLMessageContext context, String endpointURL) throws MessageEncodingException {
+            postEncode(context, endpointURL);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.processor;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opensaml.common.xml.SAMLConstants;
+import org.opensaml.saml2.metadata.provider.ObservableMetadataProvider;
+import org.opensaml.ws.message.decoder.MessageDecodingException;
+import org.opensaml.ws.transport.http.HTTPInTransport;
+import org.opensaml.ws.transport.http.HTTPOutTransport;
+import org.opensaml.xml.security.x509.X509Credential;
+import org.springframework.security.saml.context.SAMLMessageContext;
+import org.springframework.security.saml.metadata.MetadataManager;
+import org.springframework.security.saml.processor.SAMLProcessor;
+import org.springframework.util.StreamUtils;
+
+import javax.net.ssl.SSLSocketFactory;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Ulises Bocchio
+ */
+public class UrlConnectionArtifactResolutionProfileTest {
+
+    private HttpServer server;
+    private String endpoint;
+    private final AtomicReference<String> received = new AtomicReference<>();
+    private final AtomicReference<String> soapAction = new AtomicReference<>();
+    private volatile int status = 200;
+
+    @Before
+    public void setup() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/artifact", exchange -> {
+            received.set(StreamUtils.copyToString(exchange.getRequestBody(), StandardCharsets.UTF_8));
+            soapAction.set(exchange.getRequestHeaders().getFirst("SOAPAction"));
+            byte[] body = (status == 200 ? "<response/>" : "boom").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/xml");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        endpoint = "http://localhost:" + server.getAddress().getPort() + "/artifact";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void getArtifactResponse() throws Exception {
+        SAMLProcessor processor = mock(SAMLProcessor.class);
+        AtomicReference<String> response = new AtomicReference<>();
+        doAnswer(invocation -> {
+            SAMLMessageContext context = invocation.getArgument(0);
+            HTTPOutTransport out = (HTTPOutTransport) context.getOutboundMessageTransport();
+            out.setHeader("SOAPAction", "http://www.oasis-open.org/committees/security");
+            out.getOutgoingStream().write("<request/>".getBytes(StandardCharsets.UTF_8));
+            return context;
+        }).when(processor).sendMessage(any(SAMLMessageContext.class), anyBoolean(), eq(SAMLConstants.SAML2_SOAP11_BINDING_URI));
+        doAnswer(invocation -> {
+            SAMLMessageContext context = invocation.getArgument(0);
+            HTTPInTransport in = (HTTPInTransport) context.getInboundMessageTransport();
+            assertThat(in.getStatusCode()).isEqualTo(200);
+            assertThat(in.getHTTPMethod()).isEqualTo("POST");
+            assertThat(in.getHeaderValue("Content-Type")).isEqualTo("text/xml");
+            response.set(StreamUtils.copyToString(in.getIncomingStream(), StandardCharsets.UTF_8));
+            return context;
+        }).when(processor).retrieveMessage(any(SAMLMessageContext.class), eq(SAMLConstants.SAML2_SOAP11_BINDING_URI));
+        UrlConnectionArtifactResolutionProfile profile = new UrlConnectionArtifactResolutionProfile(1000, 1000);
+        profile.setProcessor(processor);
+
+        profile.getArtifactResponse(endpoint, new SAMLMessageContext());
+
+        assertThat(received.get()).isEqualTo("<request/>");
+        assertThat(soapAction.get()).isEqualTo("http://www.oasis-open.org/committees/security");
+        assertThat(response.get()).isEqualTo("<response/>");
+    }
+
+    @Test
+    public void getArtifactResponse_error() throws Exception {
+        status = 500;
+        SAMLProcessor processor = mock(SAMLProcessor.class);
+        UrlConnectionArtifactResolutionProfile profile = new UrlConnectionArtifactResolutionProfile(1000, 1000);
+        profile.setProcessor(processor);
+        try {
+            profile.getArtifactResponse(endpoint, new SAMLMessageContext());
+            fail("Expected MessageDecodingException");
+        } catch (MessageDecodingException e) {
+            assertThat(e.getMessage()).contains("500").contains("boom");
+        }
+        verify(processor, never()).retrieveMessage(any(SAMLMessageContext.class), any(String.class));
+    }
+
+    @Test
+    public void sslContexts_clearedOnMetadataRefresh() throws Exception {
+        List<ObservableMetadataProvider.Observer> observers = new ArrayList<>();
+        MetadataManager metadata = mock(MetadataManager.class);
+        when(metadata.getObservers()).thenReturn(observers);
+        UrlConnectionArtifactResolutionProfile profile = new UrlConnectionArtifactResolutionProfile(1000, 1000);
+        profile.setMetadata(metadata);
+        profile.setMetadata(metadata);
+        assertThat(observers).containsExactly(profile);
+
+        SAMLMessageContext context = context(mock(X509Certificate.class));
+        SSLSocketFactory socketFactory = profile.getSSLSocketFactory(context);
+        assertThat(profile.getSSLSocketFactory(context)).isSameAs(socketFactory);
+        profile.onEvent(metadata);
+        assertThat(profile.getSSLSocketFactory(context)).isNotSameAs(socketFactory);
+    }
+
+    @Test
+    public void sslContexts_recreatedOnLocalCertificateChange() throws Exception {
+        UrlConnectionArtifactResolutionProfile profile = new UrlConnectionArtifactResolutionProfile(1000, 1000);
+        SSLSocketFactory socketFactory = profile.getSSLSocketFactory(context(mock(X509Certificate.class)));
+        assertThat(profile.getSSLSocketFactory(context(mock(X509Certificate.class)))).isNotSameAs(socketFactory);
+    }
+
+    private static SAMLMessageContext context(X509Certificate localCertificate) {
+        X509Credential localCredential = mock(X509Credential.class);
+        when(localCredential.getEntityCertificate()).thenReturn(localCertificate);
+        SAMLMessageContext context = new SAMLMessageContext();
+        context.setLocalEntityId("urn:sp");
+        context.setPeerEntityId("urn:idp");
+        context.setLocalSSLCredential(localCredential);
+        return context;
+    }
+}
@@ -0,0 +1,281 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.reload;
+
+import com.github.ulisesbocchio.spring.boot.security.saml.async.AsyncSAMLProcessingFilter;
+import com.github.ulisesbocchio.spring.boot.security.saml.async.BoundedExecutors;
+import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderBuilder;
+import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderConfigurer;
+import com.github.ulisesbocchio.spring.boot.security.saml.configurer.ServiceProviderEndpoints;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.SAMLSSOProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.storage.CookieSAMLMessageStorageFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.opensaml.saml2.metadata.provider.ObservableMetadataProvider;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.saml.metadata.MetadataManager;
+import org.springframework.security.saml.storage.SAMLMessageStorageFactory;
+import org.springframework.security.web.authentication.AuthenticationSuccessHandler;
+import org.springframework.security.web.context.SecurityContextRepository;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Ulises Bocchio
+ */
+public class ReloadableServiceProviderTest {
+
+    private final List<String> invoked = new ArrayList<>();
+    private ServiceProviderConfigurer configurer;
+    private SAMLSSOProperties properties;
+    private ResourceLoader resourceLoader;
+    private ReloadableServiceProvider reloadable;
+
+    @Before
+    public void setup() throws Exception {
+        configurer = mock(ServiceProviderConfigurer.class);
+        properties = new SAMLSSOProperties();
+        resourceLoader = mock(ResourceLoader.class);
+        reloadable = new ReloadableServiceProvider(properties, Collections.singletonList(configurer)) {
+            @Override
+            protected ServiceProviderBuilder createServiceProviderBuilder() {
+                return builder("reloaded");
+            }
+        };
+        ServiceProviderBuilder initial = builder("initial");
+        initial.build();
+        reloadable.initialize(initial, Collections.singletonMap(ResourceLoader.class, resourceLoader),
+                sp -> Collections.singletonList(sp.getSharedObject(Filter.class)));
+    }
+
+    @Test
+    public void filter() throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+        reloadable.filter().doFilter(new MockHttpServletRequest(), new MockHttpServletResponse(), chain);
+        assertThat(invoked).containsExactly("initial");
+        assertThat(chain.getRequest()).isNotNull();
+        assertThat(reloadable.getGeneration()).isEqualTo(1);
+    }
+
+    @Test
+    public void reload() throws Exception {
+        MetadataManager initialManager = reloadable.getServiceProvider().getSharedObject(MetadataManager.class);
+        reloadable.reload();
+        verify(configurer).configure(any(ServiceProviderBuilder.class));
+        ServiceProviderBuilder serviceProvider = reloadable.getServiceProvider();
+        assertThat(serviceProvider.getSharedObject(ResourceLoader.class)).isSameAs(resourceLoader);
+        assertThat(serviceProvider.getSharedObject(SAMLSSOProperties.class)).isSameAs(properties);
+        assertThat(reloadable.getGeneration()).isEqualTo(2);
+        verify(initialManager).destroy();
+
+        reloadable.filter().doFilter(new MockHttpServletRequest(), new MockHttpServletResponse(), new MockFilterChain());
+        assertThat(invoked).containsExactly("reloaded");
+    }
+
+    @Test
+    public void reload_inFlight() throws Exception {
+        MetadataManager initialManager = reloadable.getServiceProvider().getSharedObject(MetadataManager.class);
+        FilterChain chain = (request, response) -> {
+            try {
+                reloadable.reload();
+            } catch (Exception e) {
+                throw new ServletException(e);
+            }
+            assertThat(reloadable.getGeneration()).isEqualTo(1);
+            verify(initialManager, never()).destroy();
+        };
+        reloadable.filter().doFilter(new MockHttpServletRequest(), new MockHttpServletResponse(), chain);
+        verify(initialManager).destroy();
+        assertThat(reloadable.getGeneration()).isEqualTo(2);
+    }
+
+    @Test
+    public void reload_failure() throws Exception {
+        doThrow(new IllegalArgumentException("bad configuration")).when(configurer).configure(any(ServiceProviderBuilder.class));
+        assertThatThrownBy(reloadable::reload).isInstanceOf(IllegalArgumentException.class);
+        assertThat(reloadable.getGeneration()).isEqualTo(1);
+        reloadable.filter().doFilter(new MockHttpServletRequest(), new MockHttpServletResponse(), new MockFilterChain());
+        assertThat(invoked).containsExactly("initial");
+    }
+
+    @Test
+    public void reload_storageModeSwitchRejected() throws Exception {
+        ServiceProviderBuilder initial = builder("initial");
+        initial.build();
+        reloadable = reloadable(initial, () -> {
+            ServiceProviderBuilder builder = builder("stateless");
+            builder.setSharedObject(SAMLMessageStorageFactory.class, mock(CookieSAMLMessageStorageFactory.class));
+            return builder;
+        });
+        assertThatThrownBy(reloadable::reload).isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("stateless message storage");
+        assertThat(reloadable.getGeneration()).isEqualTo(1);
+    }
+
+    @Test
+    public void asyncProcessing_pinnedToRequestServiceProvider() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingQueue<Long> processedBy = new ArrayBlockingQueue<>(1);
+        AsyncSAMLProcessingFilter asyncFilter = new AsyncSAMLProcessingFilter(
+                BoundedExecutors.newBoundedExecutor("test", 1, 1), 5000) {
+            @Override
+            public Authentication attemptAuthentication(HttpServletRequest request, HttpServletResponse response) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                processedBy.add(reloadable.getGeneration());
+                return new TestingAuthenticationToken("user", "credentials", "ROLE_USER");
+            }
+        };
+        asyncFilter.setAuthenticationManager(mock(AuthenticationManager.class));
+        asyncFilter.setAuthenticationSuccessHandler(mock(AuthenticationSuccessHandler.class));
+        asyncFilter.setSecurityContextRepository(mock(SecurityContextRepository.class));
+        ServiceProviderBuilder initial = builder("initial");
+        initial.setSharedObject(Filter.class, asyncFilter);
+        initial.build();
+        reloadable = reloadable(initial, () -> builder("reloaded"));
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/saml/SSO");
+        request.setServletPath("/saml/SSO");
+        request.setAsyncSupported(true);
+        try {
+            reloadable.filter().doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+            assertThat(request.isAsyncStarted()).isTrue();
+            reloadable.reload();
+            assertThat(reloadable.getGeneration()).isEqualTo(2);
+
+            release.countDown();
+            assertThat(processedBy.poll(5, TimeUnit.SECONDS)).isEqualTo(1L);
+        } finally {
+            release.countDown();
+            asyncFilter.destroy();
+        }
+    }
+
+    @Test
+    public void endpointsMatcher() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/saml/SSO");
+        request.setServletPath("/saml/SSO");
+        assertThat(reloadable.endpointsMatcher().matches(request)).isTrue();
+        properties.setSsoProcessingUrl("/saml/other");
+        reloadable.reload();
+        assertThat(reloadable.endpointsMatcher().matches(request)).isFalse();
+    }
+
+    @Test
+    public void reload_releasesRetiredServiceProvider() throws Exception {
+        MetadataManager sharedManager = mock(MetadataManager.class);
+        List<ObservableMetadataProvider.Observer> observers = new CopyOnWriteArrayList<>();
+        ObservableMetadataProvider.Observer beanObserver = mock(ObservableMetadataProvider.Observer.class);
+        observers.add(beanObserver);
+        when(sharedManager.getObservers()).thenReturn(observers);
+        List<ExecutorService> executors = new ArrayList<>();
+        ReloadableServiceProvider reloadable = new ReloadableServiceProvider(properties, Collections.singletonList(configurer)) {
+            @Override
+            protected ServiceProviderBuilder createServiceProviderBuilder() {
+                return observingBuilder(executors);
+            }
+        };
+        ServiceProviderBuilder initial = observingBuilder(executors);
+        initial.setSharedObject(MetadataManager.class, sharedManager);
+        initial.build();
+        reloadable.initialize(initial, Collections.singletonMap(MetadataManager.class, sharedManager),
+                sp -> Collections.emptyList());
+        assertThat(observers).hasSize(2);
+
+        reloadable.reload();
+        assertThat(executors).hasSize(2);
+        assertThat(executors.get(0).isShutdown()).isTrue();
+        assertThat(executors.get(1).isShutdown()).isFalse();
+        assertThat(observers).hasSize(2).contains(beanObserver);
+        verify(sharedManager, never()).destroy();
+
+        reloadable.destroy();
+        assertThat(executors.get(1).isShutdown()).isTrue();
+        assertThat(observers).containsExactly(beanObserver);
+        verify(sharedManager, never()).destroy();
+    }
+
+    private ReloadableServiceProvider reloadable(ServiceProviderBuilder initial, Supplier<ServiceProviderBuilder> reloaded) {
+        ReloadableServiceProvider reloadable = new ReloadableServiceProvider(properties, Collections.singletonList(configurer)) {
+            @Override
+            protected ServiceProviderBuilder createServiceProviderBuilder() {
+                return reloaded.get();
+            }
+        };
+        reloadable.initialize(initial, Collections.singletonMap(ResourceLoader.class, resourceLoader),
+                sp -> Collections.singletonList(sp.getSharedObject(Filter.class)));
+        return reloadable;
+    }
+
+    private ServiceProviderBuilder observingBuilder(List<ExecutorService> executors) {
+        ServiceProviderBuilder builder = new ServiceProviderBuilder() {
+            @Override
+            protected void beforeInit() {
+            }
+
+            @Override
+            protected Void performBuild() {
+                MetadataManager metadataManager = getSharedObject(MetadataManager.class);
+                List<ObservableMetadataProvider.Observer> existingObservers = new ArrayList<>(metadataManager.getObservers());
+                metadataManager.getObservers().add(mock(ObservableMetadataProvider.Observer.class));
+                ExecutorService executor = Executors.newSingleThreadExecutor();
+                executors.add(executor);
+                registerDisposable(executor::shutdownNow);
+                unregisterObserversOnDestroy(metadataManager, existingObservers);
+                return null;
+            }
+        };
+        builder.setSharedObject(ServiceProviderEndpoints.class, new ServiceProviderEndpoints());
+        builder.setSharedObject(SAMLSSOProperties.class, properties);
+        return builder;
+    }
+
+    private ServiceProviderBuilder builder(String name) {
+        ServiceProviderBuilder builder = new ServiceProviderBuilder() {
+            @Override
+            protected void beforeInit() {
+            }
+
+            @Override
+            protected Void performBuild() {
+                ServiceProviderEndpoints endpoints = getSharedObject(ServiceProviderEndpoints.class);
+                endpoints.setSsoProcessingURL(getSharedObject(SAMLSSOProperties.class).getSsoProcessingUrl());
+                return null;
+            }
+        };
+        builder.setSharedObject(ServiceProviderEndpoints.class, new ServiceProviderEndpoints());
+        builder.setSharedObject(SAMLSSOProperties.class, properties);
+        builder.setSharedObject(MetadataManager.class, mock(MetadataManager.class));
+        builder.setSharedObject(Filter.class, (request, response, chain) -> {
+            invoked.add(name);
+            chain.doFilter(request, response);
+        });
+        return builder;
+    }
+}
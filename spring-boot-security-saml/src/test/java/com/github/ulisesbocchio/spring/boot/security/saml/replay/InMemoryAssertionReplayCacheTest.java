@@ -0,0 +1,110 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.replay;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Ulises Bocchio
+ */
+public class InMemoryAssertionReplayCacheTest {
+
+    @Test
+    public void checkAndStore() throws Exception {
+        AtomicLong now = new AtomicLong(1000);
+        InMemoryAssertionReplayCache cache = new InMemoryAssertionReplayCache(100, 4, now::get);
+        assertThat(cache.checkAndStore("idp", "id1", 2000)).isTrue();
+        assertThat(cache.checkAndStore("idp", "id1", 2000)).isFalse();
+        assertThat(cache.checkAndStore("other-idp", "id1", 2000)).isTrue();
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(2);
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void checkAndStore_expired() throws Exception {
+        AtomicLong now = new AtomicLong(1000);
+        InMemoryAssertionReplayCache cache = new InMemoryAssertionReplayCache(100, 4, now::get);
+        assertThat(cache.checkAndStore("idp", "id1", 2000)).isTrue();
+        now.set(2000);
+        assertThat(cache.checkAndStore("idp", "id1", 3000)).isTrue();
+        assertThat(cache.checkAndStore("idp", "id1", 3000)).isFalse();
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void checkAndStore_bounded() throws Exception {
+        AtomicLong now = new AtomicLong(1000);
+        InMemoryAssertionReplayCache cache = new InMemoryAssertionReplayCache(10, 1, now::get);
+        for (int i = 0; i < 10; i++) {
+            assertThat(cache.checkAndStore("idp", "id" + i, 2000 + i)).isTrue();
+        }
+        now.set(2005);
+        assertThat(cache.checkAndStore("idp", "new", 9000)).isTrue();
+        assertThat(cache.size()).isEqualTo(5);
+        assertThat(cache.getRejectionCount()).isEqualTo(0);
+        for (int i = 0; i < 5; i++) {
+            assertThat(cache.checkAndStore("idp", "more" + i, 5000 + i)).isTrue();
+        }
+        for (int i = 5; i < 10; i++) {
+            assertThat(cache.checkAndStore("idp", "more" + i, 5000 + i)).isFalse();
+        }
+        assertThat(cache.size()).isEqualTo(10);
+        assertThat(cache.getRejectionCount()).isEqualTo(5);
+        assertThat(cache.checkAndStore("idp", "new", 9000)).isFalse();
+        assertThat(cache.checkAndStore("idp", "more0", 9000)).isFalse();
+        now.set(2009);
+        assertThat(cache.checkAndStore("idp", "more5", 5005)).isTrue();
+        assertThat(cache.size()).isEqualTo(7);
+    }
+
+    @Test
+    public void checkAndStore_fullRejectsNewEntry() throws Exception {
+        AtomicLong now = new AtomicLong(1000);
+        InMemoryAssertionReplayCache cache = new InMemoryAssertionReplayCache(2, 1, now::get);
+        assertThat(cache.checkAndStore("idp", "id1", 5000)).isTrue();
+        assertThat(cache.checkAndStore("idp", "id2", 6000)).isTrue();
+        assertThat(cache.checkAndStore("idp", "id3", 3000)).isFalse();
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.getRejectionCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(2);
+        assertThat(cache.checkAndStore("idp", "id1", 5000)).isFalse();
+        assertThat(cache.checkAndStore("idp", "id2", 6000)).isFalse();
+        assertThat(cache.getHitCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void checkAndStore_concurrent() throws Exception {
+        InMemoryAssertionReplayCache cache = new InMemoryAssertionReplayCache(10000, 8);
+        long expiresAt = System.currentTimeMillis() + 60000;
+        AtomicInteger accepted = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    if (cache.checkAndStore("idp", "id" + i, expiresAt)) {
+                        accepted.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        assertThat(accepted.get()).isEqualTo(1000);
+        assertThat(cache.getHitCount()).isEqualTo(7000);
+        assertThat(cache.size()).isEqualTo(1000);
+    }
+}
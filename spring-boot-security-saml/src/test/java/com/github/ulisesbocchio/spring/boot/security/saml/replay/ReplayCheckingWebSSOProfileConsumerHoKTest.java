@@ -0,0 +1,53 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.replay;
+
+import org.joda.time.DateTime;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opensaml.DefaultBootstrap;
+import org.opensaml.common.SAMLException;
+import org.opensaml.saml2.core.Assertion;
+
+import static com.github.ulisesbocchio.spring.boot.security.saml.replay.ReplayCheckingWebSSOProfileConsumerTest.assertion;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * @author Ulises Bocchio
+ */
+public class ReplayCheckingWebSSOProfileConsumerHoKTest {
+
+    @BeforeClass
+    public static void bootstrap() throws Exception {
+        DefaultBootstrap.bootstrap();
+    }
+
+    @Test
+    public void checkReplay() throws Exception {
+        ReplayCheckingWebSSOProfileConsumerHoK consumer =
+                new ReplayCheckingWebSSOProfileConsumerHoK(new InMemoryAssertionReplayCache(100, 1));
+        consumer.getReplayCheck().check(assertion("idp", "id1", new DateTime()));
+        assertThat(catchThrowable(() -> consumer.getReplayCheck().check(assertion("idp", "id1", new DateTime()))))
+                .isInstanceOf(SAMLException.class);
+    }
+
+    @Test
+    public void checkReplay_sharedWithBearerConsumer() throws Exception {
+        AssertionReplayCache replayCache = new InMemoryAssertionReplayCache(100, 1);
+        new ReplayCheckingWebSSOProfileConsumer(replayCache).getReplayCheck()
+                .check(assertion("idp", "id1", new DateTime()));
+        ReplayCheckingWebSSOProfileConsumerHoK consumer = new ReplayCheckingWebSSOProfileConsumerHoK(replayCache);
+        assertThat(catchThrowable(() -> consumer.getReplayCheck().check(assertion("idp", "id1", new DateTime()))))
+                .isInstanceOf(SAMLException.class)
+                .hasMessage("Assertion id1 from idp has already been used");
+    }
+
+    @Test
+    public void expiresAt() {
+        ReplayCheckingWebSSOProfileConsumerHoK consumer =
+                new ReplayCheckingWebSSOProfileConsumerHoK(new InMemoryAssertionReplayCache(100, 1));
+        consumer.setMaxAssertionTime(100);
+        consumer.setResponseSkew(10);
+        Assertion assertion = assertion("idp", "id1", new DateTime(1000000L));
+        assertThat(consumer.getReplayCheck().expiresAt(assertion)).isEqualTo(1110000L);
+    }
+}
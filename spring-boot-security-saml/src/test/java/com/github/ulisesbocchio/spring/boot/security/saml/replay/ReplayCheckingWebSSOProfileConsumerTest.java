@@ -0,0 +1,78 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.replay;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opensaml.DefaultBootstrap;
+import org.opensaml.common.SAMLException;
+import org.opensaml.saml2.core.Assertion;
+import org.opensaml.saml2.core.Conditions;
+import org.opensaml.saml2.core.Issuer;
+import org.opensaml.saml2.core.impl.AssertionBuilder;
+import org.opensaml.saml2.core.impl.ConditionsBuilder;
+import org.opensaml.saml2.core.impl.IssuerBuilder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * @author Ulises Bocchio
+ */
+public class ReplayCheckingWebSSOProfileConsumerTest {
+
+    private ReplayCheckingWebSSOProfileConsumer consumer;
+
+    @BeforeClass
+    public static void bootstrap() throws Exception {
+        DefaultBootstrap.bootstrap();
+    }
+
+    @Before
+    public void setup() {
+        consumer = new ReplayCheckingWebSSOProfileConsumer(new InMemoryAssertionReplayCache(100, 1));
+        consumer.setMaxAssertionTime(100);
+        consumer.setResponseSkew(10);
+    }
+
+    @Test
+    public void checkReplay() throws Exception {
+        consumer.getReplayCheck().check(assertion("idp", "id1", new DateTime()));
+        consumer.getReplayCheck().check(assertion("other-idp", "id1", new DateTime()));
+        assertThat(catchThrowable(() -> consumer.getReplayCheck().check(assertion("idp", "id1", new DateTime()))))
+                .isInstanceOf(SAMLException.class)
+                .hasMessage("Assertion id1 from idp has already been used");
+    }
+
+    @Test
+    public void expiresAt_issueInstant() {
+        Assertion assertion = assertion("idp", "id1", new DateTime(1000000L));
+        assertThat(consumer.getReplayCheck().expiresAt(assertion)).isEqualTo(1000000L + 110000L);
+    }
+
+    @Test
+    public void expiresAt_laterNotOnOrAfter() {
+        Assertion assertion = assertion("idp", "id1", new DateTime(1000000L));
+        Conditions conditions = new ConditionsBuilder().buildObject();
+        conditions.setNotOnOrAfter(new DateTime(1500000L));
+        assertion.setConditions(conditions);
+        assertThat(consumer.getReplayCheck().expiresAt(assertion)).isEqualTo(1500000L + 10000L);
+    }
+
+    @Test
+    public void expiresAt_noInstants() {
+        long before = System.currentTimeMillis();
+        long expiresAt = consumer.getReplayCheck().expiresAt(assertion("idp", "id1", null));
+        assertThat(expiresAt).isBetween(before + 110000L, System.currentTimeMillis() + 110000L);
+    }
+
+    static Assertion assertion(String issuerValue, String id, DateTime issueInstant) {
+        Issuer issuer = new IssuerBuilder().buildObject();
+        issuer.setValue(issuerValue);
+        Assertion assertion = new AssertionBuilder().buildObject();
+        assertion.setID(id);
+        assertion.setIssuer(issuer);
+        assertion.setIssueInstant(issueInstant);
+        return assertion;
+    }
+}
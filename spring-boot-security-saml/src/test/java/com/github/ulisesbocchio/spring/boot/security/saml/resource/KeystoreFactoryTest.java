@@ -10,6 +10,7 @@ import java.security.Key;
 import java.security.KeyStore;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateParsingException;
+import java.security.cert.X509Certificate;
 import java.security.interfaces.RSAPrivateKey;
 import java.security.spec.InvalidKeySpecException;
 
@@ -72,6 +73,92 @@ public class KeystoreFactoryTest {
         RSAPrivateKey key = keystoreFactory.loadPrivateKey("classpath:/localhost.cert");
     }
 
+    @Test
+    public void loadKeystore_cached() throws Exception {
+        KeystoreFactory keystoreFactory = new KeystoreFactory(new DefaultResourceLoader());
+        KeyStore keyStore = keystoreFactory.loadKeystore("classpath:/localhost.cert", "classpath:/localhost.key.der", "cached", "password");
+        KeyStore other = keystoreFactory.loadKeystore("classpath:/localhost.cert", "classpath:/localhost.key.der", "cached2", "password");
+        assertThat(keystoreFactory.getCachedKeys()).isEqualTo(1);
+        assertThat(other).isNotSameAs(keyStore);
+        assertThat(other.getKey("cached2", "password".toCharArray())).isEqualTo(keyStore.getKey("cached", "password".toCharArray()));
+        // keystores are never shared, changes to one are not seen by other callers
+        keyStore.deleteEntry("cached");
+        assertThat(keystoreFactory.loadKeystore("classpath:/localhost.cert", "classpath:/localhost.key.der", "cached", "password")
+                .containsAlias("cached")).isTrue();
+        keystoreFactory.clearCache();
+        assertThat(keystoreFactory.getCachedKeys()).isZero();
+    }
+
+    @Test
+    public void loadKeystore_cachePerFactory() throws Exception {
+        KeystoreFactory keystoreFactory = new KeystoreFactory(new DefaultResourceLoader());
+        keystoreFactory.loadKeystore("classpath:/localhost.cert", "classpath:/localhost.key.der", "alias", "password");
+        KeystoreFactory other = new KeystoreFactory(new DefaultResourceLoader());
+        assertThat(other.getCachedKeys()).isZero();
+    }
+
+    @Test
+    public void loadKeystore_cacheBounded() throws Exception {
+        KeystoreFactory keystoreFactory = new KeystoreFactory(new DefaultResourceLoader(), 1);
+        keystoreFactory.loadKeystore("classpath:/localhost.cert", "classpath:/localhost.key.der", "alias", "password");
+        keystoreFactory.loadKeystore("classpath:/localhost-chain.cert", "classpath:/localhost.key.pem", "alias", "password");
+        assertThat(keystoreFactory.getCachedKeys()).isEqualTo(1);
+        assertThat(new KeystoreFactory(new DefaultResourceLoader(), 0)
+                .loadKeystore("classpath:/localhost.cert", "classpath:/localhost.key.der", "alias", "password")
+                .containsAlias("alias")).isTrue();
+    }
+
+    @Test
+    public void loadKeystore_pemKeyAndChain() throws Exception {
+        KeystoreFactory keystoreFactory = new KeystoreFactory(new DefaultResourceLoader());
+        KeyStore keyStore = keystoreFactory.loadKeystore("classpath:/localhost-chain.cert", "classpath:/localhost.key.pem", "alias", "password");
+        assertThat(keyStore.containsAlias("alias")).isTrue();
+        assertThat(keyStore.getCertificateChain("alias")).hasSize(2);
+        Key key = keyStore.getKey("alias", "password".toCharArray());
+        assertThat(key.getAlgorithm()).isEqualTo("RSA");
+    }
+
+    @Test
+    public void loadKeystore_pkcs12() throws Exception {
+        KeystoreFactory keystoreFactory = new KeystoreFactory(new DefaultResourceLoader());
+        KeyStore keyStore = keystoreFactory.loadKeystore("classpath:/localhost.p12", "password", null);
+        assertThat(keyStore.getType()).isEqualToIgnoringCase("PKCS12");
+        assertThat(keyStore.containsAlias("localhost")).isTrue();
+        Key key = keyStore.getKey("localhost", "password".toCharArray());
+        assertThat(key.getAlgorithm()).isEqualTo("RSA");
+    }
+
+    @Test
+    public void loadKeystore_jks() throws Exception {
+        KeystoreFactory keystoreFactory = new KeystoreFactory(new DefaultResourceLoader());
+        KeyStore keyStore = keystoreFactory.loadKeystore("classpath:/KeyStore.jks", "password", null);
+        assertThat(keyStore.getType()).isEqualToIgnoringCase("JKS");
+        assertThat(keyStore.containsAlias("default")).isTrue();
+        assertThat(keystoreFactory.loadKeystore("classpath:/KeyStore.jks", "password", "JKS")).isNotSameAs(keyStore);
+    }
+
+    @Test
+    public void loadCertChain() throws Exception {
+        KeystoreFactory keystoreFactory = new KeystoreFactory(new DefaultResourceLoader());
+        X509Certificate[] chain = keystoreFactory.loadCertChain("classpath:/localhost-chain.cert");
+        assertThat(chain).hasSize(2);
+        assertThat(chain[0]).isEqualTo(keystoreFactory.loadCert("classpath:/localhost.cert"));
+    }
+
+    @Test
+    public void loadKey_pemPkcs8() throws Exception {
+        KeystoreFactory keystoreFactory = new KeystoreFactory(new DefaultResourceLoader());
+        RSAPrivateKey key = keystoreFactory.loadPrivateKey("classpath:/localhost.key.pem");
+        assertThat(key).isEqualTo(keystoreFactory.loadPrivateKey("classpath:/localhost.key.der"));
+    }
+
+    @Test
+    public void loadKey_pemPkcs1() throws Exception {
+        KeystoreFactory keystoreFactory = new KeystoreFactory(new DefaultResourceLoader());
+        RSAPrivateKey key = keystoreFactory.loadPrivateKey("classpath:/localhost-rsa.key.pem");
+        assertThat(key).isEqualTo(keystoreFactory.loadPrivateKey("classpath:/localhost.key.der"));
+    }
+
     @Test
     public void createEmptyKeystore() throws Exception {
         KeystoreFactory keystoreFactory = new KeystoreFactory(new DefaultResourceLoader());
@@ -0,0 +1,68 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.startup;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.opensaml.saml2.metadata.provider.MetadataProvider;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.security.saml.metadata.ExtendedMetadata;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author Ulises Bocchio
+ */
+public class StartupTimingsTest {
+
+    @Test
+    public void record() throws Exception {
+        StartupTimings timings = new StartupTimings();
+        StartupPhase phase = timings.record("sleep", () -> Thread.sleep(20));
+        assertThat(phase.getName()).isEqualTo("sleep");
+        assertThat(phase.getMillis()).isGreaterThanOrEqualTo(20L);
+        assertThat(phase.getAllocatedBytes()).isGreaterThanOrEqualTo(-1L);
+        assertThat(timings.getPhases()).containsExactly(phase);
+    }
+
+    @Test
+    public void record_failure() {
+        StartupTimings timings = new StartupTimings();
+        assertThatThrownBy(() -> timings.record("fail", () -> {
+            throw new IllegalStateException("boom");
+        })).isInstanceOf(IllegalStateException.class);
+        assertThat(timings.getPhases()).extracting(StartupPhase::getName).containsExactly("fail");
+    }
+
+    @Test
+    public void measure() {
+        StartupTimings timings = new StartupTimings();
+        assertThat(timings.measure("answer", () -> 42)).isEqualTo(42);
+        assertThat(timings.getPhases()).extracting(StartupPhase::getName).containsExactly("answer");
+    }
+
+    @Test
+    public void report() {
+        StartupTimings timings = new StartupTimings();
+        timings.add(new StartupPhase("SAMLBootstrap", 12, 1024));
+        timings.record("init", () -> {
+        });
+        ApplicationEventPublisher publisher = mock(ApplicationEventPublisher.class);
+        timings.report(this, publisher);
+        ArgumentCaptor<ServiceProviderStartupEvent> event = ArgumentCaptor.forClass(ServiceProviderStartupEvent.class);
+        verify(publisher).publishEvent(event.capture());
+        assertThat(event.getValue().getSource()).isSameAs(this);
+        assertThat(event.getValue().getPhases()).extracting(StartupPhase::getName).containsExactly("SAMLBootstrap", "init");
+    }
+
+    @Test
+    public void timedExtendedMetadataDelegate_recordsFirstInitialization() throws Exception {
+        StartupTimings timings = new StartupTimings();
+        TimedExtendedMetadataDelegate delegate = new TimedExtendedMetadataDelegate(mock(MetadataProvider.class),
+                new ExtendedMetadata(), timings, "initialize idp");
+        delegate.initialize();
+        delegate.initialize();
+        assertThat(timings.getPhases()).extracting(StartupPhase::getName).containsExactly("initialize idp");
+    }
+}
@@ -0,0 +1,168 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.storage;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+import org.opensaml.saml2.core.AuthnRequest;
+import org.opensaml.saml2.core.LogoutRequest;
+import org.opensaml.saml2.core.impl.AuthnRequestBuilder;
+import org.opensaml.saml2.core.impl.LogoutRequestBuilder;
+import org.opensaml.xml.XMLObject;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.saml.storage.SAMLMessageStorage;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Ulises Bocchio
+ */
+public class CookieSAMLMessageStorageFactoryTest {
+
+    private static final byte[] SECRET = "0123456789abcdef".getBytes();
+
+    @Test
+    public void storeAndRetrieve() throws Exception {
+        CookieSAMLMessageStorageFactory factory = new CookieSAMLMessageStorageFactory(SECRET, "SAML_REQ", null, 300, true);
+        DateTime issueInstant = new DateTime().withMillisOfSecond(0);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        CookieSAMLMessageStorage storage = (CookieSAMLMessageStorage) factory.getMessageStorage(request);
+        storage.storeMessage("a1b2c3", authnRequest("a1b2c3", issueInstant));
+        assertThat(factory.getMessageStorage(request)).isSameAs(storage);
+        assertThat(request.getSession(false)).isNull();
+        storage.writeCookies(response);
+
+        List<String> headers = response.getHeaders("Set-Cookie");
+        assertThat(headers).hasSize(1);
+        assertThat(headers.get(0)).contains("Max-Age=300", "Path=/", "HttpOnly", "Secure", "SameSite=None");
+
+        MockHttpServletRequest callback = new MockHttpServletRequest();
+        callback.setCookies(toCookie(headers.get(0)));
+        XMLObject message = factory.getMessageStorage(callback).retrieveMessage("a1b2c3");
+        assertThat(message).isInstanceOf(AuthnRequest.class);
+        assertThat(((AuthnRequest) message).getID()).isEqualTo("a1b2c3");
+        assertThat(((AuthnRequest) message).getIssueInstant()).isEqualTo(issueInstant);
+    }
+
+    @Test
+    public void storeAndRetrieve_logoutRequest() throws Exception {
+        CookieSAMLMessageStorageFactory factory = new CookieSAMLMessageStorageFactory(SECRET, "SAML_REQ", "/app", 300, false);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        CookieSAMLMessageStorage storage = (CookieSAMLMessageStorage) factory.getMessageStorage(request);
+        LogoutRequest logoutRequest = new LogoutRequestBuilder().buildObject();
+        logoutRequest.setID("logout1");
+        storage.storeMessage("logout1", logoutRequest);
+        storage.writeCookies(response);
+        assertThat(response.getHeader("Set-Cookie")).contains("Path=/app").doesNotContain("Secure");
+
+        MockHttpServletRequest callback = new MockHttpServletRequest();
+        callback.setCookies(toCookie(response.getHeader("Set-Cookie")));
+        assertThat(factory.getMessageStorage(callback).retrieveMessage("logout1")).isInstanceOf(LogoutRequest.class);
+    }
+
+    @Test
+    public void retrieve_wrongIdOrKey() throws Exception {
+        CookieSAMLMessageStorageFactory factory = new CookieSAMLMessageStorageFactory(SECRET, "SAML_REQ", null, 300, true);
+        Cookie cookie = storeAndGetCookie(factory, "a1b2c3");
+
+        MockHttpServletRequest callback = new MockHttpServletRequest();
+        callback.setCookies(new Cookie(factory.cookieName("other"), cookie.getValue()));
+        assertThat(factory.getMessageStorage(callback).retrieveMessage("other")).isNull();
+
+        CookieSAMLMessageStorageFactory otherFactory = new CookieSAMLMessageStorageFactory("fedcba9876543210".getBytes(), "SAML_REQ", null, 300, true);
+        MockHttpServletRequest otherCallback = new MockHttpServletRequest();
+        otherCallback.setCookies(cookie);
+        assertThat(otherFactory.getMessageStorage(otherCallback).retrieveMessage("a1b2c3")).isNull();
+    }
+
+    @Test
+    public void retrieve_tampered() throws Exception {
+        CookieSAMLMessageStorageFactory factory = new CookieSAMLMessageStorageFactory(SECRET, "SAML_REQ", null, 300, true);
+        Cookie cookie = storeAndGetCookie(factory, "a1b2c3");
+        char[] value = cookie.getValue().toCharArray();
+        value[0] = value[0] == 'A' ? 'B' : 'A';
+        MockHttpServletRequest callback = new MockHttpServletRequest();
+        callback.setCookies(new Cookie(cookie.getName(), new String(value)), new Cookie(cookie.getName() + "x", "garbage"));
+        assertThat(factory.getMessageStorage(callback).retrieveMessage("a1b2c3")).isNull();
+    }
+
+    @Test
+    public void retrieve_expired() throws Exception {
+        CookieSAMLMessageStorageFactory factory = new CookieSAMLMessageStorageFactory(SECRET, "SAML_REQ", null, 60, true);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        CookieSAMLMessageStorage storage = (CookieSAMLMessageStorage) factory.getMessageStorage(request);
+        storage.storeMessage("a1b2c3", authnRequest("a1b2c3", new DateTime().minusMinutes(2)));
+        storage.writeCookies(response);
+        MockHttpServletRequest callback = new MockHttpServletRequest();
+        callback.setCookies(toCookie(response.getHeader("Set-Cookie")));
+        assertThat(factory.getMessageStorage(callback).retrieveMessage("a1b2c3")).isNull();
+    }
+
+    @Test
+    public void retrieve_expiresConsumedCookie() throws Exception {
+        CookieSAMLMessageStorageFactory factory = new CookieSAMLMessageStorageFactory(SECRET, "SAML_REQ", null, 300, true);
+        Cookie cookie = storeAndGetCookie(factory, "a1b2c3");
+        MockHttpServletRequest callback = new MockHttpServletRequest();
+        callback.setCookies(cookie);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        new CookieSAMLMessageStorageFilter().doFilter(callback, response, (req, res) -> {
+            XMLObject message = factory.getMessageStorage((HttpServletRequest) req).retrieveMessage("a1b2c3");
+            assertThat(message).isInstanceOf(AuthnRequest.class);
+            ((HttpServletResponse) res).sendRedirect("/home");
+        });
+        assertThat(response.getRedirectedUrl()).isEqualTo("/home");
+        assertThat(response.getHeaders("Set-Cookie")).hasSize(1);
+        assertThat(response.getHeader("Set-Cookie")).startsWith(cookie.getName() + "=;").contains("Max-Age=0");
+    }
+
+    @Test
+    public void store_existingSession() throws Exception {
+        CookieSAMLMessageStorageFactory factory = new CookieSAMLMessageStorageFactory(SECRET, "SAML_REQ", null, 300, true);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.getSession(true);
+        CookieSAMLMessageStorage storage = (CookieSAMLMessageStorage) factory.getMessageStorage(request);
+        AuthnRequest authnRequest = authnRequest("a1b2c3", new DateTime());
+        storage.storeMessage("a1b2c3", authnRequest);
+        assertThat(storage.hasPendingCookies()).isFalse();
+        assertThat(storage.retrieveMessage("a1b2c3")).isSameAs(authnRequest);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidSecret() throws Exception {
+        new CookieSAMLMessageStorageFactory("short".getBytes(), "SAML_REQ", null, 300, true);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingSecret() throws Exception {
+        new CookieSAMLMessageStorageFactory(null, "SAML_REQ", null, 300, true);
+    }
+
+    private Cookie storeAndGetCookie(CookieSAMLMessageStorageFactory factory, String id) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        SAMLMessageStorage storage = factory.getMessageStorage(request);
+        storage.storeMessage(id, authnRequest(id, new DateTime()));
+        ((CookieSAMLMessageStorage) storage).writeCookies(response);
+        return toCookie(response.getHeader("Set-Cookie"));
+    }
+
+    private AuthnRequest authnRequest(String id, DateTime issueInstant) {
+        AuthnRequest authnRequest = new AuthnRequestBuilder().buildObject();
+        authnRequest.setID(id);
+        authnRequest.setIssueInstant(issueInstant);
+        return authnRequest;
+    }
+
+    private Cookie toCookie(String setCookieHeader) {
+        String nameValue = setCookieHeader.split(";")[0];
+        int separator = nameValue.indexOf('=');
+        return new Cookie(nameValue.substring(0, separator), nameValue.substring(separator + 1));
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.storage;
+
+import com.github.ulisesbocchio.spring.boot.security.saml.annotation.EnableSAMLSSO;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * @author Ulises Bocchio
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringBootTest(classes = StatelessMessageStorageIntegrationTest.TestConfig.class, properties = {
+        "saml.sso.context-provider.stateless-storage.enabled=true",
+        "saml.sso.context-provider.stateless-storage.secret=MDEyMzQ1Njc4OWFiY2RlZg==",
+        "saml.sso.metadata-generator.entity-id=localhost-demo",
+        "saml.sso.key-manager.private-key-der-location=classpath:localhost.key.der",
+        "saml.sso.key-manager.public-key-pem-location=classpath:localhost.cert"
+})
+@AutoConfigureMockMvc
+public class StatelessMessageStorageIntegrationTest {
+
+    @EnableAutoConfiguration
+    @EnableSAMLSSO
+    @Configuration
+    static class TestConfig {
+
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    public void protectedResource_noSession() throws Exception {
+        MvcResult result = mockMvc.perform(get("/protected")).andReturn();
+
+        assertThat(result.getRequest().getSession(false)).isNull();
+        assertThat(result.getResponse().getHeaders("Set-Cookie"))
+                .anySatisfy(cookie -> assertThat(cookie).startsWith("SAML_REQ_").contains("Max-Age=300"));
+    }
+
+    @Test
+    public void loginUrl_noSession() throws Exception {
+        MvcResult result = mockMvc.perform(get("/saml/login")).andReturn();
+
+        assertThat(result.getRequest().getSession(false)).isNull();
+        assertThat(result.getResponse().getHeaders("Set-Cookie")).anySatisfy(cookie -> assertThat(cookie).startsWith("SAML_REQ_"));
+    }
+}
@@ -0,0 +1,44 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.tenant;
+
+import org.junit.Test;
+import org.springframework.security.saml.metadata.MetadataGenerator;
+import org.springframework.security.saml.metadata.MetadataManager;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Ulises Bocchio
+ */
+public class ServiceProviderTenantsTest {
+
+    @Test
+    public void register_defaultWithoutBaseURL() throws Exception {
+        MetadataManager metadataManager = mock(MetadataManager.class);
+        MetadataGenerator metadataGenerator = new MetadataGenerator();
+        metadataGenerator.setEntityId("urn:default");
+        ServiceProviderTenants tenants = new ServiceProviderTenants(Collections.singletonList(
+                new ServiceProviderTenants.Tenant("acme", "urn:acme", "https://acme.example.com", null)));
+        assertThatThrownBy(() -> tenants.register(metadataManager, metadataGenerator))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("default Service Provider");
+        verify(metadataManager, never()).addMetadataProvider(any());
+        verify(metadataManager, never()).setHostedSPName(any());
+    }
+
+    @Test
+    public void register_hostedWithoutDefault() throws Exception {
+        MetadataManager metadataManager = mock(MetadataManager.class);
+        when(metadataManager.getHostedSPName()).thenReturn("urn:hosted");
+        ServiceProviderTenants tenants = new ServiceProviderTenants(Collections.emptyList());
+        tenants.register(metadataManager, new MetadataGenerator());
+        verify(metadataManager, never()).addMetadataProvider(any());
+        verify(metadataManager).refreshMetadata();
+    }
+}
@@ -0,0 +1,75 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.tenant;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opensaml.xml.security.CriteriaSet;
+import org.opensaml.xml.security.credential.Credential;
+import org.opensaml.xml.security.criteria.EntityIDCriteria;
+import org.springframework.security.saml.key.KeyManager;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Ulises Bocchio
+ */
+public class TenantKeyManagerTest {
+
+    private KeyManager defaultKeyManager;
+    private KeyManager acmeKeyManager;
+    private TenantKeyManager keyManager;
+
+    @Before
+    public void setup() {
+        defaultKeyManager = mock(KeyManager.class);
+        acmeKeyManager = mock(KeyManager.class);
+        when(defaultKeyManager.getAvailableCredentials()).thenReturn(Collections.singleton("default"));
+        when(acmeKeyManager.getAvailableCredentials()).thenReturn(Collections.singleton("acme"));
+        keyManager = new TenantKeyManager(defaultKeyManager, Collections.singletonMap("acme", acmeKeyManager));
+    }
+
+    @Test
+    public void getCredential() {
+        Credential acme = mock(Credential.class);
+        Credential defaultCredential = mock(Credential.class);
+        when(acmeKeyManager.getCredential("acme")).thenReturn(acme);
+        when(defaultKeyManager.getCredential("default")).thenReturn(defaultCredential);
+        assertThat(keyManager.getCredential("acme")).isSameAs(acme);
+        assertThat(keyManager.getCredential("default")).isSameAs(defaultCredential);
+    }
+
+    @Test
+    public void resolveSingle() throws Exception {
+        Credential acme = mock(Credential.class);
+        CriteriaSet criteria = new CriteriaSet(new EntityIDCriteria("acme"));
+        when(acmeKeyManager.resolveSingle(criteria)).thenReturn(acme);
+        assertThat(keyManager.resolveSingle(criteria)).isSameAs(acme);
+    }
+
+    @Test
+    public void defaultCredential() {
+        Credential defaultCredential = mock(Credential.class);
+        when(defaultKeyManager.getDefaultCredential()).thenReturn(defaultCredential);
+        when(defaultKeyManager.getDefaultCredentialName()).thenReturn("default");
+        assertThat(keyManager.getDefaultCredential()).isSameAs(defaultCredential);
+        assertThat(keyManager.getDefaultCredentialName()).isEqualTo("default");
+    }
+
+    @Test
+    public void getAvailableCredentials() {
+        assertThat(keyManager.getAvailableCredentials()).containsExactly("default", "acme");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shadowedDefaultKey() {
+        new TenantKeyManager(defaultKeyManager, Collections.singletonMap("default", acmeKeyManager));
+    }
+
+    @Test
+    public void keyName() {
+        assertThat(TenantKeyManager.keyName("acme")).isEqualTo("tenant:acme");
+    }
+}
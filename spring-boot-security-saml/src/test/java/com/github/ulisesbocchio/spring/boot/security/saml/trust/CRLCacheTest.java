@@ -0,0 +1,266 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.trust;
+
+import org.junit.After;
+import org.junit.Test;
+import org.opensaml.xml.security.CriteriaSet;
+import org.opensaml.xml.security.credential.Credential;
+import org.opensaml.xml.security.x509.BasicPKIXValidationInformation;
+import org.opensaml.xml.security.x509.PKIXValidationInformation;
+import org.opensaml.xml.security.x509.PKIXValidationInformationResolver;
+
+import java.nio.charset.StandardCharsets;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Ulises Bocchio
+ */
+public class CRLCacheTest {
+
+    private static final String URL = "http://crl.example.com/ca.crl";
+
+    private final AtomicLong clock = new AtomicLong(1000);
+    private final AtomicInteger fetched = new AtomicInteger();
+    private final Map<String, X509CRL> published = new HashMap<>();
+    private final List<Runnable> executed = new ArrayList<>();
+    private final List<Runnable> retries = new ArrayList<>();
+    private final List<Long> retryDelays = new ArrayList<>();
+    private boolean runExecuted = true;
+    private CRLCache cache;
+
+    @After
+    public void tearDown() {
+        if (cache != null) {
+            cache.destroy();
+        }
+    }
+
+    @Test
+    public void distributionPoints() {
+        X509Certificate certificate = certificate(URL, "ldap://ldap.example.com/cn=ca");
+        assertThat(CRLCache.distributionPoints(certificate)).containsExactly(URL);
+        assertThat(CRLCache.distributionPoints(mock(X509Certificate.class))).isEmpty();
+    }
+
+    @Test
+    public void fetchedOnceWhenWatched() {
+        X509CRL crl = crl(5000);
+        published.put(URL, crl);
+        cache = cache(CRLCache.StalePolicy.KEEP);
+        cache.watch(Collections.singletonList(certificate(URL)));
+        cache.watch(Collections.singletonList(certificate(URL)));
+        assertThat(fetched.get()).isEqualTo(1);
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.getCRLs()).containsExactly(crl);
+    }
+
+    @Test
+    public void watch_fetchesInBackground() {
+        X509CRL crl = crl(5000);
+        published.put(URL, crl);
+        runExecuted = false;
+        cache = cache(CRLCache.StalePolicy.KEEP);
+        cache.watch(Collections.singletonList(certificate(URL)));
+        assertThat(fetched.get()).isZero();
+        assertThat(cache.getCRLs()).isEmpty();
+        assertThat(executed).hasSize(1);
+
+        executed.get(0).run();
+        assertThat(fetched.get()).isEqualTo(1);
+        assertThat(cache.getCRLs()).containsExactly(crl);
+    }
+
+    @Test
+    public void watch_maxEntries() {
+        cache = cache(CRLCache.StalePolicy.KEEP);
+        cache.watch(Arrays.asList(certificate(URL, "http://crl.example.com/other.crl"),
+                certificate("http://crl.example.com/ignored.crl")));
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(fetched.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void firstFetchRetriedWithBackoff() {
+        cache = cache(CRLCache.StalePolicy.KEEP);
+        cache.watch(Collections.singletonList(certificate(URL)));
+        assertThat(cache.getFailureCount()).isEqualTo(1);
+        assertThat(retries).hasSize(1);
+        cache.refresh();
+        assertThat(fetched.get()).isEqualTo(1);
+
+        retries.get(0).run();
+        assertThat(retries).hasSize(2);
+        X509CRL crl = crl(5000);
+        published.put(URL, crl);
+        retries.get(1).run();
+        assertThat(retries).hasSize(2);
+        assertThat(retryDelays).containsExactly(1000L, 2000L);
+        assertThat(cache.getCRLs()).containsExactly(crl);
+        assertThat(cache.retryDelay(10)).isEqualTo(60000L);
+    }
+
+    @Test
+    public void refreshKeepsPreviousOnFailure() {
+        X509CRL crl = crl(5000);
+        published.put(URL, crl);
+        cache = cache(CRLCache.StalePolicy.KEEP);
+        cache.watch(Collections.singletonList(certificate(URL)));
+        published.remove(URL);
+        cache.refresh();
+        assertThat(cache.getFetchCount()).isEqualTo(2);
+        assertThat(cache.getFailureCount()).isEqualTo(1);
+        assertThat(cache.getCRLs()).containsExactly(crl);
+        assertThat(retries).isEmpty();
+
+        X509CRL newCrl = crl(10000);
+        published.put(URL, newCrl);
+        cache.refresh();
+        assertThat(cache.getCRLs()).containsExactly(newCrl);
+    }
+
+    @Test
+    public void listenersNotifiedOnNewCRL() {
+        published.put(URL, crl(5000));
+        cache = cache(CRLCache.StalePolicy.KEEP);
+        SignatureTrustCache trustCache = new SignatureTrustCache(10, 60000);
+        trustCache.put(Collections.singletonList("idp"), mock(Credential.class));
+        AtomicInteger notified = new AtomicInteger();
+        cache.addListener(notified::incrementAndGet);
+        cache.addListener(trustCache::clear);
+
+        cache.watch(Collections.singletonList(certificate(URL)));
+        assertThat(notified.get()).isEqualTo(1);
+        assertThat(trustCache.size()).isZero();
+
+        trustCache.put(Collections.singletonList("idp"), mock(Credential.class));
+        cache.refresh();
+        assertThat(notified.get()).isEqualTo(1);
+        assertThat(trustCache.size()).isEqualTo(1);
+
+        published.put(URL, crl(10000));
+        cache.refresh();
+        assertThat(notified.get()).isEqualTo(2);
+        assertThat(trustCache.size()).isZero();
+    }
+
+    @Test
+    public void staleKept() {
+        published.put(URL, crl(5000));
+        cache = cache(CRLCache.StalePolicy.KEEP);
+        cache.watch(Collections.singletonList(certificate(URL)));
+        clock.set(5000 + 2000);
+        assertThat(cache.getCRLs()).hasSize(1);
+        clock.set(5000 + 2001);
+        assertThat(cache.getCRLs()).isEmpty();
+    }
+
+    @Test
+    public void staleDropped() {
+        published.put(URL, crl(5000));
+        cache = cache(CRLCache.StalePolicy.DROP);
+        cache.watch(Collections.singletonList(certificate(URL)));
+        clock.set(5000);
+        assertThat(cache.getCRLs()).hasSize(1);
+        clock.set(5001);
+        assertThat(cache.getCRLs()).isEmpty();
+    }
+
+    @Test
+    public void resolverAddsCRLs() throws Exception {
+        X509CRL crl = crl(5000);
+        published.put(URL, crl);
+        cache = cache(CRLCache.StalePolicy.KEEP);
+        X509Certificate anchor = certificate(URL);
+        PKIXValidationInformationResolver delegate = mock(PKIXValidationInformationResolver.class);
+        when(delegate.resolve(any(CriteriaSet.class))).thenReturn(Collections.singletonList(
+                new BasicPKIXValidationInformation(Collections.singletonList(anchor), Collections.emptyList(), 5)));
+
+        PKIXValidationInformation information = cache.wrap(delegate).resolve(new CriteriaSet()).iterator().next();
+        assertThat(information.getCertificates()).containsExactly(anchor);
+        assertThat(information.getCRLs()).containsExactly(crl);
+        assertThat(information.getVerificationDepth()).isEqualTo(5);
+        assertThat(fetched.get()).isEqualTo(1);
+    }
+
+    private CRLCache cache(CRLCache.StalePolicy stalePolicy) {
+        ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+        doAnswer(invocation -> {
+            Runnable task = invocation.getArgument(0);
+            executed.add(task);
+            if (runExecuted) {
+                task.run();
+            }
+            return null;
+        }).when(executor).execute(any());
+        doAnswer(invocation -> {
+            retries.add(invocation.getArgument(0));
+            retryDelays.add(invocation.getArgument(1));
+            return null;
+        }).when(executor).schedule(any(Runnable.class), anyLong(), eq(TimeUnit.MILLISECONDS));
+        return new CRLCache(60000, stalePolicy, 2000, 2, 0, url -> {
+            fetched.incrementAndGet();
+            X509CRL crl = published.get(url);
+            if (crl == null) {
+                throw new IllegalStateException("Not found: " + url);
+            }
+            return crl;
+        }, clock::get, executor);
+    }
+
+    private static X509CRL crl(long nextUpdate) {
+        X509CRL crl = mock(X509CRL.class);
+        when(crl.getNextUpdate()).thenReturn(new Date(nextUpdate));
+        return crl;
+    }
+
+    private static X509Certificate certificate(String... urls) {
+        X509Certificate certificate = mock(X509Certificate.class);
+        when(certificate.getExtensionValue("2.5.29.31")).thenReturn(crlDistributionPoints(urls));
+        return certificate;
+    }
+
+    /**
+     * OCTET STRING { CRLDistributionPoints { DistributionPoint { [0] { fullName [0] { URI [6] } } } } }
+     */
+    private static byte[] crlDistributionPoints(String... urls) {
+        byte[] points = new byte[0];
+        for (String url : urls) {
+            byte[] uri = der(0x86, url.getBytes(StandardCharsets.US_ASCII));
+            points = concat(points, der(0x30, der(0xa0, der(0xa0, uri))));
+        }
+        return der(0x04, der(0x30, points));
+    }
+
+    private static byte[] der(int tag, byte[] content) {
+        byte[] header = content.length < 0x80
+                ? new byte[]{(byte) tag, (byte) content.length}
+                : new byte[]{(byte) tag, (byte) 0x81, (byte) content.length};
+        return concat(header, content);
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = new byte[first.length + second.length];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}
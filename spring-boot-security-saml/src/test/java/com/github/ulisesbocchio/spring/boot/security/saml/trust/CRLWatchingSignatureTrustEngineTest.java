@@ -0,0 +1,166 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.trust;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opensaml.DefaultBootstrap;
+import org.opensaml.xml.Configuration;
+import org.opensaml.xml.security.CriteriaSet;
+import org.opensaml.xml.security.x509.BasicPKIXValidationInformation;
+import org.opensaml.xml.security.x509.BasicX509Credential;
+import org.opensaml.xml.security.x509.CertPathPKIXTrustEvaluator;
+import org.opensaml.xml.security.x509.CertPathPKIXValidationOptions;
+import org.opensaml.xml.security.x509.PKIXValidationInformation;
+import org.opensaml.xml.security.x509.PKIXValidationInformationResolver;
+import org.opensaml.xml.security.x509.StaticPKIXValidationInformationResolver;
+import org.opensaml.xml.signature.SignatureConstants;
+import org.opensaml.xml.signature.SignatureTrustEngine;
+import org.opensaml.xml.signature.impl.PKIXSignatureTrustEngine;
+import org.springframework.util.StreamUtils;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Validates signatures of a leaf certificate issued by a trusted CA, with revocation checking forced.
+ *
+ * @author Ulises Bocchio
+ */
+public class CRLWatchingSignatureTrustEngineTest {
+
+    private static final String CRL_URL = "http://crl.example.com/test-ca.crl";
+    private static final byte[] CONTENT = "metadata".getBytes(StandardCharsets.UTF_8);
+
+    private static X509Certificate ca;
+    private static X509Certificate leaf;
+    private static PrivateKey leafKey;
+
+    private final Map<String, X509CRL> published = new ConcurrentHashMap<>();
+    private CRLCache cache;
+
+    @BeforeClass
+    public static void bootstrap() throws Exception {
+        DefaultBootstrap.bootstrap();
+        ca = (X509Certificate) generate("test-ca.cert");
+        leaf = (X509Certificate) generate("idp-leaf.cert");
+        leafKey = KeyFactory.getInstance("RSA").generatePrivate(new PKCS8EncodedKeySpec(read("idp-leaf.key.der")));
+    }
+
+    @After
+    public void tearDown() {
+        if (cache != null) {
+            cache.destroy();
+        }
+    }
+
+    @Test
+    public void chained() {
+        assertThat(CRLCache.chained(Collections.singleton(ca), Collections.singleton(leaf))).containsExactly(leaf);
+        assertThat(CRLCache.chained(Collections.singleton(leaf), Collections.singleton(ca))).isEmpty();
+        assertThat(CRLCache.chained(Collections.emptySet(), Collections.singleton(leaf))).isEmpty();
+    }
+
+    @Test
+    public void leafNotRevoked() throws Exception {
+        published.put(CRL_URL, crl("test-ca.crl"));
+        cache = cache(5000);
+
+        assertThat(validate(trustEngine())).isTrue();
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.getCRLs()).hasSize(1);
+    }
+
+    @Test
+    public void leafRevoked() throws Exception {
+        published.put(CRL_URL, crl("test-ca-revoked.crl"));
+        cache = cache(5000);
+
+        assertThat(validate(trustEngine())).isFalse();
+        assertThat(cache.getCRLs()).hasSize(1);
+    }
+
+    @Test
+    public void leafValidOnceLateCRLArrives() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        CountDownLatch notified = new CountDownLatch(1);
+        published.put(CRL_URL, crl("test-ca.crl"));
+        cache = new CRLCache(60000, CRLCache.StalePolicy.DROP, 0, 10, 100, url -> {
+            gate.await();
+            return published.get(url);
+        }, System::currentTimeMillis, Executors.newSingleThreadScheduledExecutor());
+        cache.addListener(notified::countDown);
+        SignatureTrustEngine engine = trustEngine();
+
+        assertThat(validate(engine)).isFalse();
+
+        gate.countDown();
+        assertThat(notified.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(validate(engine)).isTrue();
+    }
+
+    private CRLCache cache(long initialFetchTimeout) {
+        return new CRLCache(60000, CRLCache.StalePolicy.DROP, 0, 10, initialFetchTimeout, published::get,
+                System::currentTimeMillis, Executors.newSingleThreadScheduledExecutor());
+    }
+
+    private SignatureTrustEngine trustEngine() {
+        PKIXValidationInformation information = new BasicPKIXValidationInformation(Collections.singletonList(ca),
+                null, 5);
+        PKIXValidationInformationResolver resolver = cache.wrap(
+                new StaticPKIXValidationInformationResolver(Collections.singletonList(information), null));
+        CertPathPKIXValidationOptions options = new CertPathPKIXValidationOptions();
+        options.setForceRevocationEnabled(true);
+        return cache.wrap(new PKIXSignatureTrustEngine(resolver,
+                Configuration.getGlobalSecurityConfiguration().getDefaultKeyInfoCredentialResolver(),
+                new CertPathPKIXTrustEvaluator(options), null));
+    }
+
+    private static boolean validate(SignatureTrustEngine engine) throws Exception {
+        Signature signer = Signature.getInstance("SHA256withRSA");
+        signer.initSign(leafKey);
+        signer.update(CONTENT);
+        BasicX509Credential credential = new BasicX509Credential();
+        credential.setEntityCertificate(leaf);
+        credential.setEntityCertificateChain(Collections.singletonList(leaf));
+        credential.setPublicKey(leaf.getPublicKey());
+        return engine.validate(signer.sign(), CONTENT, SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA256,
+                new CriteriaSet(), credential);
+    }
+
+    private static X509CRL crl(String name) throws Exception {
+        try (InputStream in = resource(name)) {
+            return (X509CRL) CertificateFactory.getInstance("X.509").generateCRL(in);
+        }
+    }
+
+    private static Object generate(String name) throws Exception {
+        try (InputStream in = resource(name)) {
+            return CertificateFactory.getInstance("X.509").generateCertificate(in);
+        }
+    }
+
+    private static byte[] read(String name) throws Exception {
+        try (InputStream in = resource(name)) {
+            return StreamUtils.copyToByteArray(in);
+        }
+    }
+
+    private static InputStream resource(String name) {
+        return CRLWatchingSignatureTrustEngineTest.class.getResourceAsStream("/crl/" + name);
+    }
+}
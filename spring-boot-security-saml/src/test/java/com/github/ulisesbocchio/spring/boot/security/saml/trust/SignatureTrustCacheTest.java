@@ -0,0 +1,174 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.trust;
+
+import com.github.ulisesbocchio.spring.boot.security.saml.resource.KeystoreFactory;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opensaml.DefaultBootstrap;
+import org.opensaml.saml2.core.AuthnRequest;
+import org.opensaml.saml2.core.impl.AuthnRequestBuilder;
+import org.opensaml.saml2.metadata.IDPSSODescriptor;
+import org.opensaml.security.MetadataCriteria;
+import org.opensaml.xml.Configuration;
+import org.opensaml.xml.security.CriteriaSet;
+import org.opensaml.xml.security.SecurityHelper;
+import org.opensaml.xml.security.credential.UsageType;
+import org.opensaml.xml.security.criteria.EntityIDCriteria;
+import org.opensaml.xml.security.criteria.UsageCriteria;
+import org.opensaml.xml.security.x509.BasicX509Credential;
+import org.opensaml.xml.signature.Signature;
+import org.opensaml.xml.signature.SignatureTrustEngine;
+import org.opensaml.xml.signature.Signer;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.security.saml.SAMLConstants;
+
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Ulises Bocchio
+ */
+public class SignatureTrustCacheTest {
+
+    private static BasicX509Credential credential;
+    private final AtomicLong clock = new AtomicLong(1000);
+    private final SignatureTrustCache cache = new SignatureTrustCache(10, 5000, clock::get);
+    private SignatureTrustEngine delegate;
+    private SignatureTrustEngine engine;
+
+    @BeforeClass
+    public static void bootstrap() throws Exception {
+        DefaultBootstrap.bootstrap();
+        KeyStore keyStore = new KeystoreFactory(new DefaultResourceLoader())
+                .loadKeystore("classpath:/localhost.cert", "classpath:/localhost.key.der", "alias", "password");
+        credential = new BasicX509Credential();
+        credential.setEntityCertificate((X509Certificate) keyStore.getCertificate("alias"));
+        credential.setPrivateKey((PrivateKey) keyStore.getKey("alias", "password".toCharArray()));
+    }
+
+    @Before
+    public void setup() {
+        delegate = mock(SignatureTrustEngine.class);
+        when(delegate.getKeyInfoResolver()).thenReturn(Configuration.getGlobalSecurityConfiguration().getDefaultKeyInfoCredentialResolver());
+        engine = cache.wrap(delegate);
+    }
+
+    @Test
+    public void trusted() throws Exception {
+        when(delegate.validate(any(Signature.class), any(CriteriaSet.class))).thenReturn(true);
+        assertThat(engine.validate(signed("1"), criteria("idp"))).isTrue();
+        assertThat(engine.validate(signed("2"), criteria("idp"))).isTrue();
+        assertThat(engine.validate(signed("3"), criteria("idp"))).isTrue();
+        verify(delegate, times(1)).validate(any(Signature.class), any(CriteriaSet.class));
+        assertThat(cache.getHitCount()).isEqualTo(2);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+        assertThat(cache.getHitRate()).isEqualTo(2d / 3);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void untrusted() throws Exception {
+        when(delegate.validate(any(Signature.class), any(CriteriaSet.class))).thenReturn(false);
+        assertThat(engine.validate(signed("1"), criteria("idp"))).isFalse();
+        assertThat(engine.validate(signed("2"), criteria("idp"))).isFalse();
+        verify(delegate, times(2)).validate(any(Signature.class), any(CriteriaSet.class));
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    public void untrustedThenTrusted() throws Exception {
+        when(delegate.validate(any(Signature.class), any(CriteriaSet.class))).thenReturn(false, true);
+        assertThat(engine.validate(signed("1"), criteria("idp"))).isFalse();
+        assertThat(engine.validate(signed("2"), criteria("idp"))).isTrue();
+        assertThat(engine.validate(signed("3"), criteria("idp"))).isTrue();
+        verify(delegate, times(2)).validate(any(Signature.class), any(CriteriaSet.class));
+    }
+
+    @Test
+    public void leastRecentlyUsedEvicted() throws Exception {
+        SignatureTrustCache cache = new SignatureTrustCache(2, 5000, clock::get);
+        SignatureTrustEngine engine = cache.wrap(delegate);
+        when(delegate.validate(any(Signature.class), any(CriteriaSet.class))).thenReturn(true);
+        engine.validate(signed("1"), criteria("idp"));
+        engine.validate(signed("2"), criteria("other-idp"));
+        engine.validate(signed("3"), criteria("idp"));
+        engine.validate(signed("4"), criteria("third-idp"));
+        assertThat(cache.size()).isEqualTo(2);
+        verify(delegate, times(3)).validate(any(Signature.class), any(CriteriaSet.class));
+        engine.validate(signed("5"), criteria("idp"));
+        verify(delegate, times(3)).validate(any(Signature.class), any(CriteriaSet.class));
+        engine.validate(signed("6"), criteria("other-idp"));
+        verify(delegate, times(4)).validate(any(Signature.class), any(CriteriaSet.class));
+    }
+
+    @Test
+    public void tamperedNotCached() throws Exception {
+        when(delegate.validate(any(Signature.class), any(CriteriaSet.class))).thenReturn(false);
+        AuthnRequest request = signedRequest("1");
+        request.getDOM().setAttributeNS(null, AuthnRequest.ID_ATTRIB_NAME, "tampered");
+        assertThat(engine.validate(request.getSignature(), criteria("idp"))).isFalse();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    public void perEntity() throws Exception {
+        when(delegate.validate(any(Signature.class), any(CriteriaSet.class))).thenReturn(true);
+        engine.validate(signed("1"), criteria("idp"));
+        engine.validate(signed("2"), criteria("other-idp"));
+        verify(delegate, times(2)).validate(any(Signature.class), any(CriteriaSet.class));
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void expiredAndCleared() throws Exception {
+        when(delegate.validate(any(Signature.class), any(CriteriaSet.class))).thenReturn(true);
+        engine.validate(signed("1"), criteria("idp"));
+        clock.addAndGet(5000);
+        engine.validate(signed("2"), criteria("idp"));
+        verify(delegate, times(2)).validate(any(Signature.class), any(CriteriaSet.class));
+        cache.onEvent(null);
+        assertThat(cache.size()).isZero();
+        engine.validate(signed("3"), criteria("idp"));
+        verify(delegate, times(3)).validate(any(Signature.class), any(CriteriaSet.class));
+    }
+
+    @Test
+    public void wrapOnce() {
+        assertThat(cache.wrap(engine)).isSameAs(engine);
+        assertThat(cache.wrap(null)).isNull();
+    }
+
+    private static CriteriaSet criteria(String entityId) {
+        CriteriaSet criteria = new CriteriaSet();
+        criteria.add(new EntityIDCriteria(entityId));
+        criteria.add(new MetadataCriteria(IDPSSODescriptor.DEFAULT_ELEMENT_NAME, SAMLConstants.SAML20P_NS));
+        criteria.add(new UsageCriteria(UsageType.SIGNING));
+        return criteria;
+    }
+
+    private static Signature signed(String id) throws Exception {
+        return signedRequest(id).getSignature();
+    }
+
+    private static AuthnRequest signedRequest(String id) throws Exception {
+        AuthnRequest request = new AuthnRequestBuilder().buildObject();
+        request.setID(id);
+        Signature signature = (Signature) Configuration.getBuilderFactory().getBuilder(Signature.DEFAULT_ELEMENT_NAME)
+                .buildObject(Signature.DEFAULT_ELEMENT_NAME);
+        signature.setSigningCredential(credential);
+        SecurityHelper.prepareSignatureParams(signature, credential, null, null);
+        request.setSignature(signature);
+        Configuration.getMarshallerFactory().getMarshaller(request).marshall(request);
+        Signer.signObject(signature);
+        return request;
+    }
+}
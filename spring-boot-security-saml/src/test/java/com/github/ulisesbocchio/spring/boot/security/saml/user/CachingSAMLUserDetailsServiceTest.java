@@ -0,0 +1,182 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.user;
+
+import org.junit.Test;
+import org.opensaml.saml2.core.Assertion;
+import org.opensaml.saml2.core.Attribute;
+import org.opensaml.saml2.core.AttributeValue;
+import org.opensaml.saml2.core.AuthnStatement;
+import org.opensaml.saml2.core.NameID;
+import org.opensaml.saml2.core.impl.AssertionBuilder;
+import org.opensaml.saml2.core.impl.AttributeBuilder;
+import org.opensaml.saml2.core.impl.AuthnStatementBuilder;
+import org.opensaml.saml2.core.impl.NameIDBuilder;
+import org.opensaml.xml.schema.XSString;
+import org.opensaml.xml.schema.impl.XSStringBuilder;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.saml.SAMLCredential;
+import org.springframework.security.saml.userdetails.SAMLUserDetailsService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Ulises Bocchio
+ */
+public class CachingSAMLUserDetailsServiceTest {
+
+    private final AtomicLong clock = new AtomicLong(1000);
+    private final AtomicInteger loads = new AtomicInteger();
+    private final SAMLUserDetailsService delegate = credential -> "user-" + loads.incrementAndGet();
+
+    @Test
+    public void cached() {
+        CachingSAMLUserDetailsService service = new CachingSAMLUserDetailsService(delegate, 1000, 10, clock::get);
+        assertThat(service.loadUserBySAML(credential("idp", "jdoe", "admin", "user"))).isEqualTo("user-1");
+        assertThat(service.loadUserBySAML(credential("idp", "jdoe", "user", "admin"))).isEqualTo("user-1");
+        assertThat(service.loadUserBySAML(credential("idp", "jdoe", "admin"))).isEqualTo("user-2");
+        assertThat(service.loadUserBySAML(credential("other", "jdoe", "admin"))).isEqualTo("user-3");
+        assertThat(service.loadUserBySAML(credential("idp", "other", "admin"))).isEqualTo("user-4");
+        assertThat(service.getHitCount()).isEqualTo(1);
+        assertThat(service.getMissCount()).isEqualTo(4);
+        assertThat(service.getHitRatio()).isEqualTo(0.2);
+        assertThat(service.size()).isEqualTo(4);
+    }
+
+    @Test
+    public void expired() {
+        CachingSAMLUserDetailsService service = new CachingSAMLUserDetailsService(delegate, 1000, 10, clock::get);
+        assertThat(service.loadUserBySAML(credential("idp", "jdoe", "admin"))).isEqualTo("user-1");
+        clock.addAndGet(999);
+        assertThat(service.loadUserBySAML(credential("idp", "jdoe", "admin"))).isEqualTo("user-1");
+        clock.addAndGet(1);
+        assertThat(service.loadUserBySAML(credential("idp", "jdoe", "admin"))).isEqualTo("user-2");
+        assertThat(service.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void bounded() {
+        CachingSAMLUserDetailsService service = new CachingSAMLUserDetailsService(delegate, 1000, 2, clock::get);
+        service.loadUserBySAML(credential("idp", "a"));
+        clock.incrementAndGet();
+        service.loadUserBySAML(credential("idp", "b"));
+        clock.incrementAndGet();
+        service.loadUserBySAML(credential("idp", "c"));
+        assertThat(service.size()).isEqualTo(2);
+        assertThat(service.getEvictionCount()).isEqualTo(1);
+        assertThat(service.loadUserBySAML(credential("idp", "c"))).isEqualTo("user-3");
+        assertThat(service.loadUserBySAML(credential("idp", "b"))).isEqualTo("user-2");
+        assertThat(service.loadUserBySAML(credential("idp", "a"))).isEqualTo("user-4");
+    }
+
+    @Test
+    public void failuresNotCached() {
+        AtomicInteger calls = new AtomicInteger();
+        CachingSAMLUserDetailsService service = new CachingSAMLUserDetailsService(credential -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new UsernameNotFoundException("not yet");
+            }
+            return "user";
+        }, 1000, 10, clock::get);
+        try {
+            service.loadUserBySAML(credential("idp", "jdoe"));
+            fail("Expected UsernameNotFoundException");
+        } catch (UsernameNotFoundException e) {
+            assertThat(e).hasMessage("not yet");
+        }
+        assertThat(service.size()).isEqualTo(0);
+        assertThat(service.loadUserBySAML(credential("idp", "jdoe"))).isEqualTo("user");
+    }
+
+    @Test
+    public void concurrentLoadsCoalesced() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CachingSAMLUserDetailsService service = new CachingSAMLUserDetailsService(credential -> {
+            loading.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "user-" + loads.incrementAndGet();
+        }, 1000, 10, clock::get);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Object>> results = new ArrayList<>();
+            results.add(executor.submit(() -> service.loadUserBySAML(credential("idp", "jdoe"))));
+            assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+            for (int i = 0; i < 3; i++) {
+                results.add(executor.submit(() -> service.loadUserBySAML(credential("idp", "jdoe"))));
+            }
+            release.countDown();
+            for (Future<Object> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("user-1");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(service.getMissCount()).isEqualTo(1);
+        assertThat(service.getHitCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void samlUserDetailsBoundToEachLogin() {
+        CachingSAMLUserDetailsService service = new CachingSAMLUserDetailsService(new SimpleSAMLUserDetailsService(),
+                1000, 10, clock::get);
+        SAMLCredential first = credential("idp", "jdoe", "admin");
+        when(first.getAuthenticationAssertion()).thenReturn(assertion("session-1"));
+        SAMLCredential second = credential("idp", "jdoe", "admin");
+        when(second.getAuthenticationAssertion()).thenReturn(assertion("session-2"));
+
+        SAMLUserDetails firstUser = (SAMLUserDetails) service.loadUserBySAML(first);
+        SAMLUserDetails secondUser = (SAMLUserDetails) service.loadUserBySAML(second);
+
+        assertThat(service.getHitCount()).isEqualTo(1);
+        assertThat(firstUser.getSamlCredential()).isSameAs(first);
+        assertThat(secondUser.getSamlCredential()).isSameAs(second);
+        assertThat(secondUser.getSamlCredential().getAuthenticationAssertion().getAuthnStatements().get(0).getSessionIndex())
+                .isEqualTo("session-2");
+        assertThat(secondUser.getUsername()).isEqualTo("jdoe");
+        assertThat(secondUser.getAuthorities()).isEqualTo(firstUser.getAuthorities());
+        assertThat(secondUser.getAttributeArray("groups")).containsExactly("admin");
+    }
+
+    private Assertion assertion(String sessionIndex) {
+        Assertion assertion = new AssertionBuilder().buildObject();
+        AuthnStatement statement = new AuthnStatementBuilder().buildObject();
+        statement.setSessionIndex(sessionIndex);
+        assertion.getAuthnStatements().add(statement);
+        return assertion;
+    }
+
+    private SAMLCredential credential(String issuer, String nameId, String... groups) {
+        SAMLCredential credential = mock(SAMLCredential.class);
+        NameID nameID = new NameIDBuilder().buildObject();
+        nameID.setValue(nameId);
+        when(credential.getNameID()).thenReturn(nameID);
+        when(credential.getRemoteEntityID()).thenReturn(issuer);
+        Attribute attribute = new AttributeBuilder().buildObject();
+        attribute.setName("groups");
+        Arrays.stream(groups).forEach(group -> {
+            XSString value = new XSStringBuilder().buildObject(AttributeValue.DEFAULT_ELEMENT_NAME, XSString.TYPE_NAME);
+            value.setValue(group);
+            attribute.getAttributeValues().add(value);
+        });
+        when(credential.getAttributes()).thenReturn(Arrays.asList(attribute));
+        return credential;
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.user;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opensaml.saml2.core.NameID;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.saml.SAMLAuthenticationToken;
+import org.springframework.security.saml.SAMLConstants;
+import org.springframework.security.saml.SAMLCredential;
+import org.springframework.security.saml.context.SAMLMessageContext;
+import org.springframework.security.saml.log.SAMLLogger;
+import org.springframework.security.saml.websso.WebSSOProfileConsumer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Ulises Bocchio
+ */
+public class CompactSAMLAuthenticationProviderTest {
+
+    private CompactSAMLAuthenticationProvider provider;
+    private SAMLAuthenticationToken token;
+
+    @Before
+    public void setup() throws Exception {
+        WebSSOProfileConsumer consumer = mock(WebSSOProfileConsumer.class);
+        when(consumer.processAuthenticationResponse(any())).thenReturn(SAMLPrincipalTest.credential());
+        provider = new CompactSAMLAuthenticationProvider();
+        provider.setConsumer(consumer);
+        provider.setSamlLogger(mock(SAMLLogger.class));
+        provider.setUserDetails(new SimpleSAMLUserDetailsService());
+        SAMLMessageContext context = new SAMLMessageContext();
+        context.setCommunicationProfileId(SAMLConstants.SAML2_WEBSSO_PROFILE_URI);
+        token = new SAMLAuthenticationToken(context);
+    }
+
+    @Test
+    public void authenticate() {
+        Authentication authentication = provider.authenticate(token);
+        assertThat(authentication.getPrincipal()).isInstanceOf(SAMLUserDetails.class);
+        assertThat(authentication.getDetails()).isSameAs(authentication.getPrincipal());
+        assertThat(authentication.getName()).isEqualTo("user@example.com");
+        assertThat(authentication.getAuthorities()).isNotEmpty();
+        assertThat(authentication.getCredentials()).isInstanceOf(CompactSAMLCredential.class);
+        SAMLUserDetails details = (SAMLUserDetails) authentication.getPrincipal();
+        assertThat(details.getSamlCredential()).isSameAs(authentication.getCredentials());
+        assertThat(details.getAttributeArray("groups")).containsExactly("admin", "user", "dev");
+        assertThat(((SAMLCredential) authentication.getCredentials()).getNameID().getValue()).isEqualTo("user@example.com");
+    }
+
+    @Test
+    public void authenticate_keepsMappedAuthorities() throws Exception {
+        provider.setUserDetails(credential -> new SAMLUserDetails(credential,
+                Collections.singletonList(new SimpleGrantedAuthority("ROLE_ADMIN"))));
+        Authentication authentication = provider.authenticate(token);
+        assertThat(authentication.getPrincipal()).isInstanceOf(SAMLUserDetails.class);
+        assertThat(((SAMLUserDetails) authentication.getPrincipal()).getAuthorities())
+                .extracting(GrantedAuthority::getAuthority)
+                .containsExactly("ROLE_ADMIN");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(authentication);
+        }
+        assertThat(bytes.size()).isLessThan(4096);
+        Authentication copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (Authentication) in.readObject();
+        }
+        SAMLUserDetails details = (SAMLUserDetails) copy.getPrincipal();
+        assertThat(details.getUsername()).isEqualTo("user@example.com");
+        assertThat(details.getAuthorities()).extracting(GrantedAuthority::getAuthority).containsExactly("ROLE_ADMIN");
+        assertThat(details.getAttribute("email")).isEqualTo("user@example.com");
+    }
+
+    @Test
+    public void authenticate_nameIdPrincipal() {
+        provider.setUserDetails(null);
+        Authentication authentication = provider.authenticate(token);
+        assertThat(authentication.getPrincipal()).isInstanceOf(NameID.class);
+        assertThat(authentication.getPrincipal())
+                .isSameAs(((SAMLCredential) authentication.getCredentials()).getNameID());
+    }
+
+    @Test
+    public void authenticate_excludeCredential() {
+        provider.setExcludeCredential(true);
+        assertThat(provider.isExcludeCredential()).isTrue();
+        Authentication authentication = provider.authenticate(token);
+        assertThat(authentication.getPrincipal()).isInstanceOf(SAMLUserDetails.class);
+        assertThat(authentication.getCredentials()).isNull();
+    }
+
+    @Test
+    public void authenticate_forcePrincipalAsString() {
+        provider.setForcePrincipalAsString(true);
+        Authentication authentication = provider.authenticate(token);
+        assertThat(authentication.getPrincipal()).isEqualTo("user@example.com");
+        assertThat(authentication.getDetails()).isInstanceOf(SAMLUserDetails.class);
+    }
+
+    @Test
+    public void authenticate_customUserDetails() {
+        provider.setUserDetails(credential -> "custom");
+        Authentication authentication = provider.authenticate(token);
+        assertThat(authentication.getPrincipal()).isEqualTo("custom");
+        assertThat(authentication.getDetails()).isEqualTo("custom");
+        assertThat(authentication.getCredentials()).isInstanceOf(CompactSAMLCredential.class);
+    }
+}
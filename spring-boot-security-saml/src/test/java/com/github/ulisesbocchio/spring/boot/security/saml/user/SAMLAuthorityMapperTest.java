@@ -0,0 +1,83 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.user;
+
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.AuthorityMappingProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.AuthorityMappingRuleProperties;
+import org.junit.Test;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Ulises Bocchio
+ */
+public class SAMLAuthorityMapperTest {
+
+    @Test
+    public void map() {
+        AuthorityMappingProperties properties = new AuthorityMappingProperties();
+        properties.getRules().add(rule(null, "groups", "admin", null, null, false, "ROLE_ADMIN"));
+        properties.getRules().add(rule(null, "groups", "OPS", null, null, true, "ROLE_OPS"));
+        properties.getRules().add(rule(null, "email", null, "@example.com", null, false, "ROLE_EMPLOYEE"));
+        properties.getRules().add(rule(null, "department", null, null, "eng-.*", false, "ROLE_ENGINEER", "ROLE_ADMIN"));
+        properties.getRules().add(rule("idp2", "groups", "user", null, null, false, "ROLE_IDP2"));
+        SAMLAuthorityMapper mapper = new SAMLAuthorityMapper(properties);
+
+        Map<String, List<String>> attributes = new HashMap<>();
+        attributes.put("groups", Arrays.asList("admin", "ops", "user", null));
+        attributes.put("email", Collections.singletonList("jdoe@example.com"));
+        attributes.put("department", Collections.singletonList("eng-platform"));
+
+        assertThat(mapper.map("idp1", attributes)).extracting(GrantedAuthority::getAuthority)
+                .containsExactly("ROLE_USER", "ROLE_ADMIN", "ROLE_OPS", "ROLE_EMPLOYEE", "ROLE_ENGINEER");
+        assertThat(mapper.map("idp2", attributes)).extracting(GrantedAuthority::getAuthority)
+                .containsExactly("ROLE_USER", "ROLE_ADMIN", "ROLE_OPS", "ROLE_EMPLOYEE", "ROLE_ENGINEER", "ROLE_IDP2");
+        assertThat(mapper.map(null, Collections.emptyMap())).extracting(GrantedAuthority::getAuthority)
+                .containsExactly("ROLE_USER");
+    }
+
+    @Test
+    public void map_noMatch() {
+        AuthorityMappingProperties properties = new AuthorityMappingProperties();
+        properties.setDefaultAuthorities(Collections.emptyList());
+        properties.getRules().add(rule(null, "groups", "Admin", null, null, false, "ROLE_ADMIN"));
+        properties.getRules().add(rule(null, "department", null, null, "eng", false, "ROLE_ENGINEER"));
+        SAMLAuthorityMapper mapper = new SAMLAuthorityMapper(properties);
+        Map<String, List<String>> attributes = new HashMap<>();
+        attributes.put("groups", Collections.singletonList("admin"));
+        attributes.put("department", Collections.singletonList("eng-platform"));
+        assertThat(mapper.map("idp", attributes)).isEmpty();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidRule_multipleMatchers() {
+        AuthorityMappingProperties properties = new AuthorityMappingProperties();
+        properties.getRules().add(rule(null, "groups", "admin", "adm", null, false, "ROLE_ADMIN"));
+        new SAMLAuthorityMapper(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidRule_noAuthorities() {
+        AuthorityMappingProperties properties = new AuthorityMappingProperties();
+        properties.getRules().add(rule(null, "groups", "admin", null, null, false));
+        new SAMLAuthorityMapper(properties);
+    }
+
+    private AuthorityMappingRuleProperties rule(String idp, String attribute, String equals, String contains,
+                                                String regex, boolean ignoreCase, String... authorities) {
+        AuthorityMappingRuleProperties rule = new AuthorityMappingRuleProperties();
+        rule.setIdp(idp);
+        rule.setAttribute(attribute);
+        rule.setEquals(equals);
+        rule.setContains(contains);
+        rule.setRegex(regex);
+        rule.setIgnoreCase(ignoreCase);
+        rule.setAuthorities(Arrays.asList(authorities));
+        return rule;
+    }
+}
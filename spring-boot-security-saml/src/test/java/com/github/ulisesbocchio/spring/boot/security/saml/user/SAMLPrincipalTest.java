@@ -0,0 +1,145 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.user;
+
+import org.junit.Test;
+import org.opensaml.saml2.core.Assertion;
+import org.opensaml.saml2.core.Attribute;
+import org.opensaml.saml2.core.AttributeValue;
+import org.opensaml.saml2.core.AuthnStatement;
+import org.opensaml.saml2.core.NameID;
+import org.opensaml.saml2.core.impl.AssertionBuilder;
+import org.opensaml.saml2.core.impl.AttributeBuilder;
+import org.opensaml.saml2.core.impl.AuthnStatementBuilder;
+import org.opensaml.saml2.core.impl.NameIDBuilder;
+import org.opensaml.xml.schema.XSString;
+import org.opensaml.xml.schema.impl.XSStringBuilder;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.providers.ExpiringUsernameAuthenticationToken;
+import org.springframework.security.saml.SAMLCredential;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author Ulises Bocchio
+ */
+public class SAMLPrincipalTest {
+
+    @Test
+    public void from() {
+        SAMLPrincipal principal = SAMLPrincipal.from(credential());
+        assertThat(principal.getName()).isEqualTo("user@example.com");
+        assertThat(principal.getNameIdFormat()).isEqualTo(NameID.EMAIL);
+        assertThat(principal.getNameIdNameQualifier()).isEqualTo("idp");
+        assertThat(principal.getSessionIndexes()).containsExactly("s1", "s2");
+        assertThat(principal.getRemoteEntityId()).isEqualTo("idp");
+        assertThat(principal.getLocalEntityId()).isEqualTo("sp");
+        assertThat(principal.getAttributes()).containsOnlyKeys("groups", "email");
+        assertThat(principal.getAttributeArray("groups")).containsExactly("admin", "user", "dev");
+        assertThat(principal.getAttribute("email")).isEqualTo("user@example.com");
+        assertThat(principal.getAttribute("missing")).isNull();
+        assertThat(principal.getAttributeArray("missing")).isNull();
+    }
+
+    @Test
+    public void serialization() throws Exception {
+        SAMLPrincipal principal = SAMLPrincipal.from(credential());
+        CompactSAMLCredential credential = new CompactSAMLCredential(principal, "relay");
+        ExpiringUsernameAuthenticationToken token = new ExpiringUsernameAuthenticationToken(null, principal, credential,
+                Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER")));
+        token.setDetails(principal);
+
+        byte[] bytes = serialize(token);
+        assertThat(bytes.length).isLessThan(2048);
+        ExpiringUsernameAuthenticationToken copy = (ExpiringUsernameAuthenticationToken) deserialize(bytes);
+
+        assertThat(copy.getPrincipal()).isEqualTo(principal);
+        assertThat(copy.getDetails()).isSameAs(copy.getPrincipal());
+        assertThat(copy.getCredentials()).isInstanceOf(CompactSAMLCredential.class);
+        CompactSAMLCredential credentialCopy = (CompactSAMLCredential) copy.getCredentials();
+        assertThat(credentialCopy.getPrincipal()).isSameAs(copy.getPrincipal());
+        assertThat(credentialCopy.getRelayState()).isEqualTo("relay");
+    }
+
+    @Test
+    public void serialization_rejectsOversizedString() throws Exception {
+        char[] value = new char[(1 << 20) + 1];
+        Arrays.fill(value, 'a');
+        SAMLCredential credential = new SAMLCredential(credential().getNameID(), new AssertionBuilder().buildObject(),
+                "idp", null, Collections.singletonList(attribute("big", new String(value))), "sp", null);
+        byte[] bytes = serialize(SAMLPrincipal.from(credential));
+        assertThatThrownBy(() -> deserialize(bytes)).isInstanceOf(InvalidObjectException.class);
+    }
+
+    @Test
+    public void compactCredential() {
+        SAMLPrincipal principal = SAMLPrincipal.from(credential());
+        CompactSAMLCredential credential = new CompactSAMLCredential(principal, null);
+        assertThat(credential.getNameID().getValue()).isEqualTo("user@example.com");
+        assertThat(credential.getNameID().getFormat()).isEqualTo(NameID.EMAIL);
+        assertThat(credential.getNameID().getNameQualifier()).isEqualTo("idp");
+        assertThat(credential.getAuthenticationAssertion().getIssuer().getValue()).isEqualTo("idp");
+        assertThat(credential.getAuthenticationAssertion().getAuthnStatements())
+                .extracting(AuthnStatement::getSessionIndex)
+                .containsExactly("s1", "s2");
+        assertThat(credential.getRemoteEntityID()).isEqualTo("idp");
+        assertThat(credential.getLocalEntityID()).isEqualTo("sp");
+        assertThat(credential.getAttributeAsString("email")).isEqualTo("user@example.com");
+        assertThat(credential.getAttributeAsStringArray("groups")).containsExactly("admin", "user", "dev");
+        assertThat(credential.getAttributes()).extracting(Attribute::getName).containsExactly("groups", "email");
+        assertThat(credential.getAttribute("groups").getAttributeValues()).hasSize(3);
+        assertThat(credential.getAttribute("missing")).isNull();
+        assertThat(SAMLPrincipal.from(credential)).isEqualTo(principal);
+    }
+
+    static SAMLCredential credential() {
+        NameID nameID = new NameIDBuilder().buildObject();
+        nameID.setValue("user@example.com");
+        nameID.setFormat(NameID.EMAIL);
+        nameID.setNameQualifier("idp");
+        Assertion assertion = new AssertionBuilder().buildObject();
+        assertion.getAuthnStatements().add(authnStatement("s1"));
+        assertion.getAuthnStatements().add(authnStatement("s2"));
+        return new SAMLCredential(nameID, assertion, "idp", null,
+                Arrays.asList(attribute("groups", "admin", "user"), attribute("email", "user@example.com"), attribute("groups", "dev")),
+                "sp", null);
+    }
+
+    private static AuthnStatement authnStatement(String sessionIndex) {
+        AuthnStatement statement = new AuthnStatementBuilder().buildObject();
+        statement.setSessionIndex(sessionIndex);
+        return statement;
+    }
+
+    private static Attribute attribute(String name, String... values) {
+        Attribute attribute = new AttributeBuilder().buildObject();
+        attribute.setName(name);
+        for (String value : values) {
+            XSString attributeValue = new XSStringBuilder().buildObject(AttributeValue.DEFAULT_ELEMENT_NAME, XSString.TYPE_NAME);
+            attributeValue.setValue(value);
+            attribute.getAttributeValues().add(attributeValue);
+        }
+        return attribute;
+    }
+
+    private static byte[] serialize(Object object) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) throws Exception {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+}
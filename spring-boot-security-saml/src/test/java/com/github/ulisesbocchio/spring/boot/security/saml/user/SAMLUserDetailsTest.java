@@ -2,14 +2,21 @@ package com.github.ulisesbocchio.spring.boot.security.saml.user;
 
 import org.junit.Test;
 import org.opensaml.saml2.core.Attribute;
+import org.opensaml.saml2.core.AttributeValue;
 import org.opensaml.saml2.core.NameID;
+import org.opensaml.saml2.core.impl.AttributeBuilder;
+import org.opensaml.xml.schema.XSString;
+import org.opensaml.xml.schema.impl.XSStringBuilder;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.saml.SAMLCredential;
 
+import java.util.Arrays;
 import java.util.Collections;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -22,12 +29,7 @@ public class SAMLUserDetailsTest {
         SAMLCredential samlCredential = mock(SAMLCredential.class);
         NameID nameId = mock(NameID.class);
         when(samlCredential.getNameID()).thenReturn(nameId);
-        Attribute attribute = mock(Attribute.class);
-        when(attribute.getName()).thenReturn("attr");
-        when(samlCredential.getAttributes()).thenReturn(Collections.singletonList(attribute));
-        when(samlCredential.getAttribute("attr")).thenReturn(attribute);
-        when(samlCredential.getAttributeAsString("attr")).thenReturn("value");
-        when(samlCredential.getAttributeAsStringArray("attr")).thenReturn(new String[]{"value"});
+        when(samlCredential.getAttributes()).thenReturn(Collections.singletonList(attribute("attr", "value")));
         when(nameId.toString()).thenReturn(NameID.UNSPECIFIED);
         SAMLUserDetails details = new SAMLUserDetails(samlCredential);
         assertThat(details.getPassword()).isEmpty();
@@ -43,4 +45,46 @@ public class SAMLUserDetailsTest {
         assertThat(details.getAttributesArrays().get("attr")).containsExactly("value");
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testAttributes_multiValuedAndDuplicates() {
+        SAMLCredential samlCredential = mock(SAMLCredential.class);
+        when(samlCredential.getAttributes()).thenReturn(Arrays.asList(
+                attribute("groups", "admin", "user"),
+                attribute("email", "user@example.com"),
+                attribute("groups", "dev"),
+                attribute("empty")));
+        SAMLUserDetails details = new SAMLUserDetails(samlCredential);
+        assertThat(details.getAttribute("groups")).isEqualTo("admin");
+        assertThat(details.getAttributeArray("groups")).containsExactly("admin", "user", "dev");
+        assertThat(details.getAttribute("empty")).isNull();
+        assertThat(details.getAttributeArray("empty")).isEmpty();
+        assertThat(details.getAttribute("missing")).isNull();
+        assertThat(details.getAttributeArray("missing")).isNull();
+        assertThat(details.getAttributes()).containsOnlyKeys("groups", "email", "empty")
+                .containsEntry("groups", "admin")
+                .containsEntry("email", "user@example.com");
+        assertThat(details.getAttributes()).isSameAs(details.getAttributes());
+        assertThat(details.getAttributesArrays().get("groups")).containsExactly("admin", "user", "dev");
+        assertThat(details.getAttributesArrays()).isSameAs(details.getAttributesArrays());
+        assertThat(details.getAttributeValues().get("groups")).containsExactly("admin", "user", "dev");
+        verify(samlCredential, times(1)).getAttributes();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testAttributes_immutable() {
+        SAMLCredential samlCredential = mock(SAMLCredential.class);
+        when(samlCredential.getAttributes()).thenReturn(Collections.singletonList(attribute("attr", "value")));
+        new SAMLUserDetails(samlCredential).getAttributeValues().get("attr").add("other");
+    }
+
+    private static Attribute attribute(String name, String... values) {
+        Attribute attribute = new AttributeBuilder().buildObject();
+        attribute.setName(name);
+        for (String value : values) {
+            XSString attributeValue = new XSStringBuilder().buildObject(AttributeValue.DEFAULT_ELEMENT_NAME, XSString.TYPE_NAME);
+            attributeValue.setValue(value);
+            attribute.getAttributeValues().add(attributeValue);
+        }
+        return attribute;
+    }
+}
@@ -1,8 +1,14 @@
 package com.github.ulisesbocchio.spring.boot.security.saml.user;
 
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.AuthorityMappingProperties;
+import com.github.ulisesbocchio.spring.boot.security.saml.properties.AuthorityMappingRuleProperties;
 import org.junit.Test;
 import org.opensaml.saml2.core.Attribute;
+import org.opensaml.saml2.core.AttributeValue;
 import org.opensaml.saml2.core.NameID;
+import org.opensaml.saml2.core.impl.AttributeBuilder;
+import org.opensaml.xml.schema.XSString;
+import org.opensaml.xml.schema.impl.XSStringBuilder;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.saml.SAMLCredential;
 
@@ -10,6 +16,8 @@ import java.util.Collections;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -21,12 +29,12 @@ public class SimpleSAMLUserDetailsServiceTest {
         SAMLCredential samlCredential = mock(SAMLCredential.class);
         NameID nameId = mock(NameID.class);
         when(samlCredential.getNameID()).thenReturn(nameId);
-        Attribute attribute = mock(Attribute.class);
-        when(attribute.getName()).thenReturn("attr");
+        Attribute attribute = new AttributeBuilder().buildObject();
+        attribute.setName("attr");
+        XSString value = new XSStringBuilder().buildObject(AttributeValue.DEFAULT_ELEMENT_NAME, XSString.TYPE_NAME);
+        value.setValue("value");
+        attribute.getAttributeValues().add(value);
         when(samlCredential.getAttributes()).thenReturn(Collections.singletonList(attribute));
-        when(samlCredential.getAttribute("attr")).thenReturn(attribute);
-        when(samlCredential.getAttributeAsString("attr")).thenReturn("value");
-        when(samlCredential.getAttributeAsStringArray("attr")).thenReturn(new String[]{"value"});
         when(nameId.toString()).thenReturn(NameID.UNSPECIFIED);
         SAMLUserDetails details = (SAMLUserDetails) new SimpleSAMLUserDetailsService().loadUserBySAML(samlCredential);
         assertThat(details.getPassword()).isEmpty();
@@ -41,4 +49,28 @@ public class SimpleSAMLUserDetailsServiceTest {
         assertThat(details.getAttributesArrays()).containsOnlyKeys("attr");
         assertThat(details.getAttributesArrays().get("attr")).containsExactly("value");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testAuthorityMapping() {
+        SAMLCredential samlCredential = mock(SAMLCredential.class);
+        Attribute attribute = new AttributeBuilder().buildObject();
+        attribute.setName("groups");
+        XSString value = new XSStringBuilder().buildObject(AttributeValue.DEFAULT_ELEMENT_NAME, XSString.TYPE_NAME);
+        value.setValue("admin");
+        attribute.getAttributeValues().add(value);
+        when(samlCredential.getAttributes()).thenReturn(Collections.singletonList(attribute));
+        when(samlCredential.getRemoteEntityID()).thenReturn("idp");
+        AuthorityMappingRuleProperties rule = new AuthorityMappingRuleProperties();
+        rule.setIdp("idp");
+        rule.setAttribute("groups");
+        rule.setEquals("admin");
+        rule.setAuthorities(Collections.singletonList("ROLE_ADMIN"));
+        AuthorityMappingProperties properties = new AuthorityMappingProperties();
+        properties.getRules().add(rule);
+        SimpleSAMLUserDetailsService service = new SimpleSAMLUserDetailsService(new SAMLAuthorityMapper(properties));
+        SAMLUserDetails details = (SAMLUserDetails) service.loadUserBySAML(samlCredential);
+        assertThat(details.getAuthorities()).extracting(GrantedAuthority::getAuthority).containsExactly("ROLE_USER", "ROLE_ADMIN");
+        assertThat(details.getAttribute("groups")).isEqualTo("admin");
+        verify(samlCredential, times(1)).getAttributes();
+    }
+}
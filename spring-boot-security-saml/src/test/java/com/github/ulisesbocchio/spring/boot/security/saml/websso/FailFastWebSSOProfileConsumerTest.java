@@ -0,0 +1,268 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.websso;
+
+import org.joda.time.DateTime;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opensaml.DefaultBootstrap;
+import org.opensaml.common.SAMLException;
+import org.opensaml.common.xml.SAMLConstants;
+import org.opensaml.saml2.core.Assertion;
+import org.opensaml.saml2.core.Audience;
+import org.opensaml.saml2.core.AudienceRestriction;
+import org.opensaml.saml2.core.AuthnRequest;
+import org.opensaml.saml2.core.Conditions;
+import org.opensaml.saml2.core.Issuer;
+import org.opensaml.saml2.core.Response;
+import org.opensaml.saml2.core.Status;
+import org.opensaml.saml2.core.StatusCode;
+import org.opensaml.saml2.core.Subject;
+import org.opensaml.saml2.core.SubjectConfirmation;
+import org.opensaml.saml2.core.SubjectConfirmationData;
+import org.opensaml.saml2.core.impl.AssertionBuilder;
+import org.opensaml.saml2.core.impl.AudienceBuilder;
+import org.opensaml.saml2.core.impl.AudienceRestrictionBuilder;
+import org.opensaml.saml2.core.impl.AuthnRequestBuilder;
+import org.opensaml.saml2.core.impl.AuthnStatementBuilder;
+import org.opensaml.saml2.core.impl.ConditionsBuilder;
+import org.opensaml.saml2.core.impl.IssuerBuilder;
+import org.opensaml.saml2.core.impl.ResponseBuilder;
+import org.opensaml.saml2.core.impl.StatusBuilder;
+import org.opensaml.saml2.core.impl.StatusCodeBuilder;
+import org.opensaml.saml2.core.impl.SubjectBuilder;
+import org.opensaml.saml2.core.impl.SubjectConfirmationBuilder;
+import org.opensaml.saml2.core.impl.SubjectConfirmationDataBuilder;
+import org.opensaml.saml2.metadata.AssertionConsumerService;
+import org.opensaml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml2.metadata.SPSSODescriptor;
+import org.opensaml.saml2.metadata.impl.AssertionConsumerServiceBuilder;
+import org.opensaml.saml2.metadata.impl.EntityDescriptorBuilder;
+import org.opensaml.saml2.metadata.impl.SPSSODescriptorBuilder;
+import org.opensaml.ws.security.SecurityPolicyException;
+import org.springframework.security.saml.context.SAMLMessageContext;
+import org.springframework.security.saml.metadata.ExtendedMetadata;
+import org.springframework.security.saml.storage.SAMLMessageStorage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Ulises Bocchio
+ */
+public class FailFastWebSSOProfileConsumerTest {
+
+    private final FailFastWebSSOProfileConsumer consumer = new FailFastWebSSOProfileConsumer();
+
+    @BeforeClass
+    public static void bootstrap() throws Exception {
+        DefaultBootstrap.bootstrap();
+    }
+
+    @Test
+    public void expiredResponse() {
+        Response response = response(null);
+        response.setIssueInstant(new DateTime().minusHours(1));
+        assertThat(catchThrowable(() -> consumer.processAuthenticationResponse(context(response, null))))
+                .isInstanceOf(SAMLException.class)
+                .hasMessageStartingWith("Response issue time");
+    }
+
+    @Test
+    public void misroutedResponse() {
+        Response response = response(null);
+        response.setDestination("https://other.example.com/saml/SSO");
+        assertThat(catchThrowable(() -> consumer.processAuthenticationResponse(context(response, null))))
+                .isInstanceOf(SAMLException.class)
+                .hasMessageStartingWith("Intended destination");
+    }
+
+    @Test
+    public void unknownIssuer() {
+        Response response = response(null);
+        response.setIssuer(issuer("other-idp"));
+        assertThat(catchThrowable(() -> consumer.processAuthenticationResponse(context(response, null))))
+                .isInstanceOf(SAMLException.class)
+                .hasMessageStartingWith("Issuer invalidated");
+    }
+
+    @Test
+    public void unknownInResponseTo() {
+        SAMLMessageStorage storage = mock(SAMLMessageStorage.class);
+        Response response = response("request-id");
+        assertThat(catchThrowable(() -> consumer.processAuthenticationResponse(context(response, storage))))
+                .isInstanceOf(SAMLException.class)
+                .hasMessageStartingWith("InResponseToField of the Response doesn't correspond");
+    }
+
+    @Test
+    public void expiredAssertion() {
+        Response response = response(null);
+        response.getAssertions().get(0).getConditions().setNotOnOrAfter(new DateTime().minusHours(1));
+        Throwable failure = catchThrowable(() -> consumer.processAuthenticationResponse(context(response, null)));
+        assertThat(failure).isInstanceOf(SAMLException.class)
+                .hasMessageStartingWith("Response doesn't have any valid assertion");
+        assertThat(failure.getCause()).hasMessageStartingWith("Assertion is no longer valid");
+    }
+
+    @Test
+    public void wrongAudience() {
+        Response response = response(null);
+        response.getAssertions().get(0).getConditions().getAudienceRestrictions().get(0).getAudiences().get(0)
+                .setAudienceURI("other-sp");
+        Throwable failure = catchThrowable(() -> consumer.processAuthenticationResponse(context(response, null)));
+        assertThat(failure).isInstanceOf(SAMLException.class);
+        assertThat(failure.getCause()).hasMessageStartingWith("Local entity is not the intended audience");
+    }
+
+    @Test
+    public void requestRetrievedOnce() {
+        AuthnRequest request = new AuthnRequestBuilder().buildObject();
+        request.setID("request-id");
+        SAMLMessageStorage storage = mock(SAMLMessageStorage.class);
+        when(storage.retrieveMessage("request-id")).thenReturn(request).thenReturn(null);
+        Response response = response("request-id");
+        SAMLMessageContext context = context(response, storage);
+        Throwable failure = catchThrowable(() -> consumer.processAuthenticationResponse(context));
+        // the unsigned Assertion is rejected by the default processing, after it found the request
+        assertThat(failure).isInstanceOf(SAMLException.class)
+                .hasMessageStartingWith("Response doesn't have any valid assertion");
+        verify(storage, times(1)).retrieveMessage("request-id");
+        assertThat(context.getMessageStorage()).isSameAs(storage);
+    }
+
+    @Test
+    public void securityPolicyRule_expiredResponse() {
+        Response response = response(null);
+        response.setIssueInstant(new DateTime().minusHours(1));
+        SAMLMessageContext context = decodingContext(response, null);
+        Throwable failure = catchThrowable(() -> consumer.getSecurityPolicyRule().evaluate(context));
+        assertThat(failure).isInstanceOf(SecurityPolicyException.class)
+                .hasMessageStartingWith("Response issue time");
+        assertThat(failure.getCause()).isInstanceOf(SAMLException.class);
+    }
+
+    @Test
+    public void securityPolicyRule_requestHandedToProcessing() throws Exception {
+        AuthnRequest request = new AuthnRequestBuilder().buildObject();
+        request.setID("request-id");
+        SAMLMessageStorage storage = mock(SAMLMessageStorage.class);
+        when(storage.retrieveMessage("request-id")).thenReturn(request).thenReturn(null);
+        SAMLMessageContext context = decodingContext(response("request-id"), storage);
+        consumer.getSecurityPolicyRule().evaluate(context);
+        assertThat(context.getMessageStorage().retrieveMessage("request-id")).isSameAs(request);
+        verify(storage, times(1)).retrieveMessage("request-id");
+    }
+
+    @Test
+    public void securityPolicyRule_holderOfKeyConfirmation() throws Exception {
+        Response response = response(null);
+        Subject subject = new SubjectBuilder().buildObject();
+        subject.getSubjectConfirmations().add(confirmation(SubjectConfirmation.METHOD_HOLDER_OF_KEY));
+        response.getAssertions().get(0).setSubject(subject);
+        consumer.getSecurityPolicyRule().evaluate(decodingContext(response, null));
+
+        subject.getSubjectConfirmations().clear();
+        subject.getSubjectConfirmations().add(confirmation("urn:oasis:names:tc:SAML:2.0:cm:sender-vouches"));
+        assertThat(catchThrowable(() -> consumer.getSecurityPolicyRule().evaluate(decodingContext(response, null))))
+                .isInstanceOf(SecurityPolicyException.class);
+    }
+
+    @Test
+    public void securityPolicyRule_failFastDisabled() throws Exception {
+        consumer.setFailFast(false);
+        Response response = response(null);
+        response.setIssueInstant(new DateTime().minusHours(1));
+        consumer.getSecurityPolicyRule().evaluate(decodingContext(response, null));
+    }
+
+    @Test
+    public void securityPolicyRule_notRunByConsumer() {
+        consumer.getSecurityPolicyRule();
+        Response response = response("request-id");
+        response.setDestination("https://other.example.com/saml/SSO");
+        // the default processing checks InResponseTo before Destination, unlike the inexpensive checks
+        SAMLMessageContext context = context(response, mock(SAMLMessageStorage.class));
+        assertThat(catchThrowable(() -> consumer.processAuthenticationResponse(context)))
+                .isInstanceOf(SAMLException.class)
+                .hasMessageStartingWith("InResponseToField of the Response doesn't correspond");
+    }
+
+    private static Response response(String inResponseTo) {
+        StatusCode statusCode = new StatusCodeBuilder().buildObject();
+        statusCode.setValue(StatusCode.SUCCESS_URI);
+        Status status = new StatusBuilder().buildObject();
+        status.setStatusCode(statusCode);
+
+        Audience audience = new AudienceBuilder().buildObject();
+        audience.setAudienceURI("sp");
+        AudienceRestriction audienceRestriction = new AudienceRestrictionBuilder().buildObject();
+        audienceRestriction.getAudiences().add(audience);
+        Conditions conditions = new ConditionsBuilder().buildObject();
+        conditions.setNotOnOrAfter(new DateTime().plusMinutes(5));
+        conditions.getAudienceRestrictions().add(audienceRestriction);
+        Assertion assertion = new AssertionBuilder().buildObject();
+        assertion.setID("assertion-id");
+        assertion.setIssueInstant(new DateTime());
+        assertion.setIssuer(issuer("idp"));
+        assertion.setConditions(conditions);
+        assertion.getAuthnStatements().add(new AuthnStatementBuilder().buildObject());
+
+        Response response = new ResponseBuilder().buildObject();
+        response.setID("response-id");
+        response.setIssueInstant(new DateTime());
+        response.setInResponseTo(inResponseTo);
+        response.setDestination("https://sp.example.com/saml/SSO");
+        response.setIssuer(issuer("idp"));
+        response.setStatus(status);
+        response.getAssertions().add(assertion);
+        return response;
+    }
+
+    private static Issuer issuer(String value) {
+        Issuer issuer = new IssuerBuilder().buildObject();
+        issuer.setValue(value);
+        return issuer;
+    }
+
+    private static SubjectConfirmation confirmation(String method) {
+        SubjectConfirmationData data = new SubjectConfirmationDataBuilder().buildObject();
+        data.setNotOnOrAfter(new DateTime().plusMinutes(5));
+        data.setRecipient("https://sp.example.com/saml/SSO");
+        SubjectConfirmation confirmation = new SubjectConfirmationBuilder().buildObject();
+        confirmation.setMethod(method);
+        confirmation.setSubjectConfirmationData(data);
+        return confirmation;
+    }
+
+    // while the Response is decoded, the local endpoint and the peer extended metadata aren't known yet
+    private static SAMLMessageContext decodingContext(Response response, SAMLMessageStorage storage) {
+        SAMLMessageContext context = context(response, storage);
+        context.setLocalEntityEndpoint(null);
+        context.setPeerExtendedMetadata(null);
+        return context;
+    }
+
+    private static SAMLMessageContext context(Response response, SAMLMessageStorage storage) {
+        AssertionConsumerService acs = new AssertionConsumerServiceBuilder().buildObject();
+        acs.setBinding(SAMLConstants.SAML2_POST_BINDING_URI);
+        acs.setLocation("https://sp.example.com/saml/SSO");
+        SPSSODescriptor spDescriptor = new SPSSODescriptorBuilder().buildObject();
+        spDescriptor.setWantAssertionsSigned(true);
+        EntityDescriptor idp = new EntityDescriptorBuilder().buildObject();
+        idp.setEntityID("idp");
+
+        SAMLMessageContext context = new SAMLMessageContext();
+        context.setInboundSAMLMessage(response);
+        context.setLocalEntityId("sp");
+        context.setLocalEntityRoleMetadata(spDescriptor);
+        context.setLocalEntityEndpoint(acs);
+        context.setPeerEntityId("idp");
+        context.setPeerEntityMetadata(idp);
+        context.setPeerExtendedMetadata(new ExtendedMetadata());
+        context.setMessageStorage(storage);
+        return context;
+    }
+}
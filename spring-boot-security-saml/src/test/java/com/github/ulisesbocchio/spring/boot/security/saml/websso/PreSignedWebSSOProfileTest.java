@@ -0,0 +1,203 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.websso;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.invocation.Invocation;
+import org.opensaml.DefaultBootstrap;
+import org.opensaml.common.xml.SAMLConstants;
+import org.opensaml.saml2.core.AuthnRequest;
+import org.opensaml.saml2.metadata.AssertionConsumerService;
+import org.opensaml.saml2.metadata.IDPSSODescriptor;
+import org.opensaml.saml2.metadata.SPSSODescriptor;
+import org.opensaml.saml2.metadata.SingleSignOnService;
+import org.opensaml.saml2.metadata.impl.AssertionConsumerServiceBuilder;
+import org.opensaml.saml2.metadata.impl.IDPSSODescriptorBuilder;
+import org.opensaml.saml2.metadata.impl.SPSSODescriptorBuilder;
+import org.opensaml.saml2.metadata.impl.SingleSignOnServiceBuilder;
+import org.opensaml.xml.security.SecurityHelper;
+import org.opensaml.xml.security.credential.Credential;
+import org.opensaml.xml.signature.SignatureValidator;
+import org.opensaml.saml2.metadata.provider.ObservableMetadataProvider;
+import org.springframework.security.saml.context.SAMLMessageContext;
+import org.springframework.security.saml.metadata.MetadataManager;
+import org.springframework.security.saml.processor.SAMLProcessor;
+import org.springframework.security.saml.websso.WebSSOProfileOptions;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Ulises Bocchio
+ */
+public class PreSignedWebSSOProfileTest {
+
+    private static Credential credential;
+    private static Credential otherCredential;
+    private final AtomicLong clock = new AtomicLong(1000);
+    private final WebSSOProfileOptions options = new WebSSOProfileOptions();
+    private final ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+    private PreSignedWebSSOProfile profile;
+
+    @BeforeClass
+    public static void bootstrap() throws Exception {
+        DefaultBootstrap.bootstrap();
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+        credential = SecurityHelper.getSimpleCredential(keyPair.getPublic(), keyPair.getPrivate());
+        KeyPair otherKeyPair = generator.generateKeyPair();
+        otherCredential = SecurityHelper.getSimpleCredential(otherKeyPair.getPublic(), otherKeyPair.getPrivate());
+    }
+
+    @Before
+    public void setup() {
+        doAnswer(invocation -> {
+            ((Runnable) invocation.getArgument(0)).run();
+            return null;
+        }).when(executor).execute(any());
+        profile = new PreSignedWebSSOProfile(2, 10000, clock::get, executor);
+    }
+
+    @After
+    public void destroy() {
+        profile.destroy();
+    }
+
+    @Test
+    public void preSigned() throws Exception {
+        SingleSignOnService sso = ssoService(SAMLConstants.SAML2_POST_BINDING_URI);
+        AssertionConsumerService acs = assertionConsumer();
+        AuthnRequest first = profile.getAuthnRequest(context(true), options, acs, sso);
+        assertThat(first.isSigned()).isFalse();
+        assertThat(profile.getMissCount()).isEqualTo(1);
+        assertThat(profile.size()).isEqualTo(2);
+
+        AuthnRequest second = profile.getAuthnRequest(context(true), options, acs, sso);
+        AuthnRequest third = profile.getAuthnRequest(context(true), options, acs, sso);
+        assertThat(profile.getHitCount()).isEqualTo(2);
+        for (AuthnRequest request : new AuthnRequest[]{second, third}) {
+            assertThat(request.isSigned()).isTrue();
+            assertThat(request.getDOM()).isNotNull();
+            assertThat(request.getDestination()).isEqualTo("https://idp.example.com/sso");
+            assertThat(request.getIssuer().getValue()).isEqualTo("sp");
+            new SignatureValidator(credential).validate(request.getSignature());
+        }
+        assertThat(second.getID()).isNotEqualTo(third.getID()).isNotEqualTo(first.getID());
+    }
+
+    @Test
+    public void expired() throws Exception {
+        SingleSignOnService sso = ssoService(SAMLConstants.SAML2_POST_BINDING_URI);
+        AssertionConsumerService acs = assertionConsumer();
+        profile.getAuthnRequest(context(true), options, acs, sso);
+        assertThat(profile.size()).isEqualTo(2);
+        clock.addAndGet(10000);
+        assertThat(profile.getAuthnRequest(context(true), options, acs, sso).isSigned()).isFalse();
+        assertThat(profile.getHitCount()).isZero();
+        assertThat(profile.getMissCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void notPooled() throws Exception {
+        AssertionConsumerService acs = assertionConsumer();
+        profile.getAuthnRequest(context(true), options, acs, ssoService(SAMLConstants.SAML2_REDIRECT_BINDING_URI));
+        profile.getAuthnRequest(context(false), options, acs, ssoService(SAMLConstants.SAML2_POST_BINDING_URI));
+        verify(executor, never()).execute(any());
+        assertThat(profile.size()).isZero();
+        assertThat(profile.getMissCount()).isZero();
+    }
+
+    @Test
+    public void sendMessage_notSignedAgain() throws Exception {
+        SAMLProcessor processor = mock(SAMLProcessor.class);
+        profile.setProcessor(processor);
+        SingleSignOnService sso = ssoService(SAMLConstants.SAML2_POST_BINDING_URI);
+        profile.getAuthnRequest(context(true), options, assertionConsumer(), sso);
+        assertThat(profile.size()).isEqualTo(2);
+        SAMLMessageContext context = context(true);
+        context.setPeerEntityEndpoint(sso);
+        context.setOutboundSAMLMessage(profile.getAuthnRequest(context, options, assertionConsumer(), sso));
+        profile.sendMessage(context, true);
+        Invocation send = mockingDetails(processor).getInvocations().iterator().next();
+        assertThat(send.getMethod().getName()).isEqualTo("sendMessage");
+        assertThat(send.getArguments()[1]).isEqualTo(false);
+    }
+
+    @Test
+    public void signingKeyChanged() throws Exception {
+        SingleSignOnService sso = ssoService(SAMLConstants.SAML2_POST_BINDING_URI);
+        AssertionConsumerService acs = assertionConsumer();
+        profile.getAuthnRequest(context(true), options, acs, sso);
+        assertThat(profile.size()).isEqualTo(2);
+
+        SAMLMessageContext context = context(true);
+        context.setLocalSigningCredential(otherCredential);
+        assertThat(profile.getAuthnRequest(context, options, acs, sso).isSigned()).isFalse();
+        assertThat(profile.getHitCount()).isZero();
+        assertThat(profile.getMissCount()).isEqualTo(2);
+
+        AuthnRequest request = profile.getAuthnRequest(context, options, acs, sso);
+        assertThat(profile.getHitCount()).isEqualTo(1);
+        new SignatureValidator(otherCredential).validate(request.getSignature());
+    }
+
+    @Test
+    public void metadataRefresh() throws Exception {
+        MetadataManager metadata = mock(MetadataManager.class);
+        List<ObservableMetadataProvider.Observer> observers = new ArrayList<>();
+        when(metadata.getObservers()).thenReturn(observers);
+        profile.setMetadata(metadata);
+        profile.setMetadata(metadata);
+        assertThat(observers).containsExactly(profile);
+
+        SingleSignOnService sso = ssoService(SAMLConstants.SAML2_POST_BINDING_URI);
+        profile.getAuthnRequest(context(true), options, assertionConsumer(), sso);
+        assertThat(profile.size()).isEqualTo(2);
+        observers.forEach(observer -> observer.onEvent(metadata));
+        assertThat(profile.size()).isZero();
+    }
+
+    private static SAMLMessageContext context(boolean signed) {
+        SPSSODescriptor spDescriptor = new SPSSODescriptorBuilder().buildObject();
+        spDescriptor.setAuthnRequestsSigned(signed);
+        IDPSSODescriptor idpDescriptor = new IDPSSODescriptorBuilder().buildObject();
+        idpDescriptor.setWantAuthnRequestsSigned(false);
+        SAMLMessageContext context = new SAMLMessageContext();
+        context.setLocalEntityId("sp");
+        context.setLocalEntityRoleMetadata(spDescriptor);
+        context.setLocalSigningCredential(credential);
+        context.setPeerEntityId("idp");
+        context.setPeerEntityRoleMetadata(idpDescriptor);
+        return context;
+    }
+
+    private static SingleSignOnService ssoService(String binding) {
+        SingleSignOnService sso = new SingleSignOnServiceBuilder().buildObject();
+        sso.setBinding(binding);
+        sso.setLocation("https://idp.example.com/sso");
+        return sso;
+    }
+
+    private static AssertionConsumerService assertionConsumer() {
+        AssertionConsumerService acs = new AssertionConsumerServiceBuilder().buildObject();
+        acs.setBinding(SAMLConstants.SAML2_POST_BINDING_URI);
+        acs.setLocation("https://sp.example.com/saml/SSO");
+        acs.setIndex(0);
+        return acs;
+    }
+}
@@ -0,0 +1,107 @@
+package com.github.ulisesbocchio.spring.boot.security.saml.websso;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opensaml.DefaultBootstrap;
+import org.opensaml.common.xml.SAMLConstants;
+import org.opensaml.saml2.core.AuthnRequest;
+import org.opensaml.saml2.metadata.AssertionConsumerService;
+import org.opensaml.saml2.metadata.SingleSignOnService;
+import org.opensaml.saml2.metadata.impl.AssertionConsumerServiceBuilder;
+import org.opensaml.saml2.metadata.impl.SingleSignOnServiceBuilder;
+import org.opensaml.saml2.metadata.provider.ObservableMetadataProvider;
+import org.opensaml.xml.Configuration;
+import org.opensaml.xml.util.XMLHelper;
+import org.springframework.security.saml.context.SAMLMessageContext;
+import org.springframework.security.saml.metadata.MetadataManager;
+import org.springframework.security.saml.websso.WebSSOProfileOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Ulises Bocchio
+ */
+public class TemplateWebSSOProfileTest {
+
+    private final TemplateWebSSOProfile profile = new TemplateWebSSOProfile();
+    private final WebSSOProfileOptions options = new WebSSOProfileOptions();
+
+    @BeforeClass
+    public static void bootstrap() throws Exception {
+        DefaultBootstrap.bootstrap();
+    }
+
+    @Test
+    public void fromTemplate() throws Exception {
+        AuthnRequest first = profile.getAuthnRequest(context(), options, assertionConsumer(), ssoService("https://idp.example.com/sso"));
+        assertThat(profile.size()).isEqualTo(1);
+        AuthnRequest second = profile.getAuthnRequest(context(), options, assertionConsumer(), ssoService("https://idp.example.com/sso"));
+        AuthnRequest third = profile.getAuthnRequest(context(), options, assertionConsumer(), ssoService("https://idp.example.com/sso"));
+        assertThat(profile.size()).isEqualTo(1);
+
+        assertThat(second.getID()).isNotEqualTo(first.getID()).isNotEqualTo(third.getID());
+        assertThat(second.getIssueInstant()).isNotNull();
+        assertThat(second.getDOM()).isNotNull();
+        assertThat(second.getDestination()).isEqualTo("https://idp.example.com/sso");
+        assertThat(second.getIssuer().getValue()).isEqualTo("sp");
+        assertThat(second.getAssertionConsumerServiceURL()).isEqualTo(first.getAssertionConsumerServiceURL());
+        assertThat(withoutVariableFields(second)).isEqualTo(withoutVariableFields(first));
+    }
+
+    @Test
+    public void templatePerCombination() throws Exception {
+        profile.getAuthnRequest(context(), options, assertionConsumer(), ssoService("https://idp.example.com/sso"));
+        AuthnRequest other = profile.getAuthnRequest(context(), options, assertionConsumer(), ssoService("https://idp.example.com/other"));
+        options.setForceAuthN(true);
+        AuthnRequest forced = profile.getAuthnRequest(context(), options, assertionConsumer(), ssoService("https://idp.example.com/sso"));
+        assertThat(profile.size()).isEqualTo(3);
+        assertThat(other.getDestination()).isEqualTo("https://idp.example.com/other");
+        assertThat(forced.isForceAuthn()).isTrue();
+    }
+
+    @Test
+    public void metadataRefresh() throws Exception {
+        MetadataManager metadata = mock(MetadataManager.class);
+        List<ObservableMetadataProvider.Observer> observers = new ArrayList<>();
+        when(metadata.getObservers()).thenReturn(observers);
+        profile.setMetadata(metadata);
+        profile.setMetadata(metadata);
+        assertThat(observers).containsExactly(profile);
+        profile.getAuthnRequest(context(), options, assertionConsumer(), ssoService("https://idp.example.com/sso"));
+        assertThat(profile.size()).isEqualTo(1);
+        observers.forEach(observer -> observer.onEvent(metadata));
+        assertThat(profile.size()).isZero();
+    }
+
+    private static String withoutVariableFields(AuthnRequest request) throws Exception {
+        String xml = XMLHelper.nodeToString(Configuration.getMarshallerFactory().getMarshaller(request).marshall(request));
+        return xml.replace(request.getID(), "ID").replaceAll("IssueInstant=\"[^\"]+\"", "");
+    }
+
+    private static SAMLMessageContext context() {
+        SAMLMessageContext context = new SAMLMessageContext();
+        context.setLocalEntityId("sp");
+        context.setPeerEntityId("idp");
+        return context;
+    }
+
+    private static SingleSignOnService ssoService(String location) {
+        SingleSignOnService sso = new SingleSignOnServiceBuilder().buildObject();
+        sso.setBinding(SAMLConstants.SAML2_REDIRECT_BINDING_URI);
+        sso.setLocation(location);
+        return sso;
+    }
+
+    private static AssertionConsumerService assertionConsumer() {
+        AssertionConsumerService acs = new AssertionConsumerServiceBuilder().buildObject();
+        acs.setBinding(SAMLConstants.SAML2_POST_BINDING_URI);
+        acs.setLocation("https://sp.example.com/saml/SSO");
+        acs.setIndex(0);
+        return acs;
+    }
+}